@@ -0,0 +1,168 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+import org.nuxeo.common.xmap.XMap;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.blobholder.SimpleBlobHolder;
+import org.nuxeo.ecm.core.api.impl.blob.ByteArrayBlob;
+import org.nuxeo.ecm.core.convert.api.ConversionException;
+import org.nuxeo.ecm.core.convert.extension.Converter;
+import org.nuxeo.ecm.core.convert.plugins.text.extractors.DOCX2TextConverter;
+import org.nuxeo.ecm.core.convert.plugins.text.extractors.PDF2TextConverter;
+import org.nuxeo.natural.language.google.fake.FakeLanguageService;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageDescriptor;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageImpl;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageTextReader;
+
+import com.google.cloud.language.v1.AnnotateTextResponse;
+import com.google.cloud.language.v1.EncodingType;
+
+/**
+ * Fixtures of the benchmarks, built without the Nuxeo runtime: the files of
+ * the Google tests, the converters used by <code>any2text</code> for them,
+ * the service configured from XML, and documents implementing only what
+ * {@link NaturalLanguageImpl#canProcessDocument} reads.
+ *
+ * @since 9.10
+ */
+public class BenchmarkFixtures {
+
+	public static final String PDF_EN = "DocumentManagement-EN-2017.pdf";
+
+	public static final String PDF_JP = "DocumentManagement-JP-2017.pdf";
+
+	public static final String WORD_EN = "GPU.docx";
+
+	public static final String PDF_MIME_TYPE = "application/pdf";
+
+	public static final String DOCX_MIME_TYPE = "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+
+	protected static final String CONFIGURATION = "<configuration>" //
+			+ "<defaultProviderName>google</defaultProviderName>" //
+			+ "<doNotAnalyzeIf>" //
+			+ "<facet>Picture</facet><facet>Video</facet><facet>Audio</facet>" //
+			+ "<type>Note</type>" //
+			+ "</doNotAnalyzeIf>" //
+			+ "</configuration>";
+
+	/**
+	 * Configured without the runtime
+	 */
+	public static class BenchmarkNaturalLanguage extends NaturalLanguageImpl {
+
+		public BenchmarkNaturalLanguage() {
+			XMap xmap = new XMap();
+			xmap.register(NaturalLanguageDescriptor.class);
+			try (InputStream in = IOUtils.toInputStream(CONFIGURATION, "UTF-8")) {
+				registerContribution(xmap.load(in), CONFIG_EXT_POINT, null);
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	private BenchmarkFixtures() {
+		// Utility class
+	}
+
+	public static Blob loadBlob(String fileName) {
+		try (InputStream in = BenchmarkFixtures.class.getResourceAsStream("/files/" + fileName)) {
+			if (in == null) {
+				throw new IllegalArgumentException("No fixture " + fileName);
+			}
+			Blob blob = new ByteArrayBlob(IOUtils.toByteArray(in),
+					fileName.endsWith(".pdf") ? PDF_MIME_TYPE : DOCX_MIME_TYPE);
+			blob.setFilename(fileName);
+			blob.setDigest(fileName);
+			return blob;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Converts the blob to text as the service does, with the converter
+	 * <code>any2text</code> uses for its mime type
+	 */
+	public static String extractText(Blob blob) {
+		Converter converter = PDF_MIME_TYPE.equals(blob.getMimeType()) ? new PDF2TextConverter()
+				: new DOCX2TextConverter();
+		try {
+			return NaturalLanguageTextReader.read(converter.convert(new SimpleBlobHolder(blob), null).getBlob(), 0);
+		} catch (ConversionException | IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return the response of Google for all the features, as computed by the
+	 *         fake Language service
+	 */
+	public static AnnotateTextResponse annotate(String text) {
+		try (FakeLanguageService service = new FakeLanguageService()) {
+			return service.annotate(text, EncodingType.UTF16);
+		}
+	}
+
+	/**
+	 * @param type
+	 * @param facets
+	 * @param blob
+	 *            The <code>file:content</code> of the document, or
+	 *            {@code null} if it has no file schema
+	 * @param properties
+	 *            Other properties
+	 * @return a document answering only the calls of
+	 *         {@link NaturalLanguageImpl#canProcessDocument}
+	 */
+	public static DocumentModel newDocument(String type, String[] facets, Blob blob, Map<String, Object> properties) {
+
+		Set<String> facetSet = new HashSet<>(Arrays.asList(facets));
+		return (DocumentModel) Proxy.newProxyInstance(DocumentModel.class.getClassLoader(),
+				new Class<?>[] { DocumentModel.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getType":
+						return type;
+					case "getFacets":
+						return facetSet;
+					case "hasFacet":
+						return facetSet.contains(args[0]);
+					case "hasSchema":
+						return "file".equals(args[0]) && blob != null;
+					case "getPropertyValue":
+						return "file:content".equals(args[0]) ? blob : properties.get(args[0]);
+					default:
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+
+}
@@ -0,0 +1,106 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.benchmarks;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.natural.language.benchmarks.BenchmarkFixtures.BenchmarkNaturalLanguage;
+import org.nuxeo.natural.language.service.api.NaturalLanguage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link NaturalLanguage#canProcessDocument}, called by the listener for
+ * every document saved, for each of its outcomes.
+ *
+ * @since 9.10
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CanProcessDocumentBenchmark {
+
+	/**
+	 * <ul>
+	 * <li>newFile: a File never analyzed</li>
+	 * <li>analyzed: a File analyzed, whose blob did not change</li>
+	 * <li>excludedFacet: a Picture</li>
+	 * <li>excludedType: a Note</li>
+	 * <li>noBlob: a Folder</li>
+	 * </ul>
+	 */
+	@Param({ "newFile", "analyzed", "excludedFacet", "excludedType", "noBlob" })
+	public String scenario;
+
+	protected NaturalLanguage service;
+
+	protected DocumentModel doc;
+
+	@Setup
+	public void setUp() {
+
+		service = new BenchmarkNaturalLanguage();
+		Blob blob = BenchmarkFixtures.loadBlob(BenchmarkFixtures.PDF_EN);
+		String[] fileFacets = { "Versionable", "Publishable", "Commentable", "HasRelatedText", "Downloadable" };
+		switch (scenario) {
+		case "newFile":
+			doc = BenchmarkFixtures.newDocument("File", fileFacets, blob, Collections.emptyMap());
+			break;
+		case "analyzed":
+			String[] facets = Arrays.copyOf(fileFacets, fileFacets.length + 1);
+			facets[fileFacets.length] = NaturalLanguage.FACET_NAME;
+			doc = BenchmarkFixtures.newDocument("File", facets, blob,
+					Collections.singletonMap(NaturalLanguage.XPATH_SOURCE_DIGEST, blob.getDigest()));
+			break;
+		case "excludedFacet":
+			String[] pictureFacets = Arrays.copyOf(fileFacets, fileFacets.length + 1);
+			pictureFacets[fileFacets.length] = "Picture";
+			doc = BenchmarkFixtures.newDocument("Picture", pictureFacets, blob, Collections.emptyMap());
+			break;
+		case "excludedType":
+			doc = BenchmarkFixtures.newDocument("Note", fileFacets, null, Collections.emptyMap());
+			break;
+		default:
+			doc = BenchmarkFixtures.newDocument("Folder", new String[] { "Folderish" }, null,
+					Collections.emptyMap());
+		}
+	}
+
+	@Benchmark
+	public boolean canProcessDocument() {
+		return service.canProcessDocument(doc);
+	}
+
+}
@@ -0,0 +1,95 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.nuxeo.natural.language.google.GoogleNaturalLanguageResponse;
+import org.nuxeo.natural.language.service.api.NaturalLanguageEntity;
+import org.nuxeo.natural.language.service.api.NaturalLanguageSentence;
+import org.nuxeo.natural.language.service.api.NaturalLanguageToken;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.cloud.language.v1.AnnotateTextResponse;
+
+/**
+ * Mapping of a Google response to the generic API, and its serialization.
+ * The response wraps the native response and maps it lazily, so each
+ * invocation maps a new one.
+ *
+ * @since 9.10
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseMappingBenchmark {
+
+	@Param({ BenchmarkFixtures.PDF_EN, BenchmarkFixtures.PDF_JP, BenchmarkFixtures.WORD_EN })
+	public String fileName;
+
+	protected AnnotateTextResponse nativeResponse;
+
+	@Setup
+	public void setUp() {
+		nativeResponse = BenchmarkFixtures
+				.annotate(BenchmarkFixtures.extractText(BenchmarkFixtures.loadBlob(fileName)));
+	}
+
+	@Benchmark
+	public List<NaturalLanguageToken> getTokens() {
+		return new GoogleNaturalLanguageResponse(nativeResponse).getTokens();
+	}
+
+	@Benchmark
+	public List<NaturalLanguageEntity> getEntities() {
+		return new GoogleNaturalLanguageResponse(nativeResponse).getEntities();
+	}
+
+	@Benchmark
+	public List<NaturalLanguageSentence> getSentences() {
+		return new GoogleNaturalLanguageResponse(nativeResponse).getSentences();
+	}
+
+	@Benchmark
+	public JSONObject toJSON() throws JSONException {
+		return new GoogleNaturalLanguageResponse(nativeResponse).toJSON();
+	}
+
+	@Benchmark
+	public String toJSONString() throws JSONException {
+		return new GoogleNaturalLanguageResponse(nativeResponse).toJSON().toString();
+	}
+
+}
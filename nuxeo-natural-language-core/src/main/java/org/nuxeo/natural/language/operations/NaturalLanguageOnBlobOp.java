@@ -31,6 +31,7 @@ import org.nuxeo.ecm.automation.core.annotations.Context;
 import org.nuxeo.ecm.automation.core.annotations.Operation;
 import org.nuxeo.ecm.automation.core.annotations.OperationMethod;
 import org.nuxeo.ecm.automation.core.annotations.Param;
+import org.nuxeo.ecm.automation.core.util.BlobList;
 import org.nuxeo.ecm.automation.core.util.StringList;
 import org.nuxeo.ecm.core.api.Blob;
 import org.nuxeo.ecm.core.api.NuxeoException;
@@ -41,7 +42,7 @@ import org.nuxeo.natural.language.service.api.NaturalLanguageResponse;
 /**
  * @since9.2
  */
-@Operation(id = NaturalLanguageOnBlobOp.ID, category = Constants.CAT_SERVICES, label = "Natural Language: Process Blob", description = "Calls the Computer Natural Language Service for the input blob, returns the input unchanged. Put the NaturalLanguageResponse result in the output context variable")
+@Operation(id = NaturalLanguageOnBlobOp.ID, category = Constants.CAT_SERVICES, label = "Natural Language: Process Blob", description = "Calls the Computer Natural Language Service for the input blob(s), returns the input unchanged. Put the NaturalLanguageResponse result (or the list of results, in the same order, when the input is a list of blobs) in the output context variable")
 public class NaturalLanguageOnBlobOp {
 
 	public static final String ID = "Services.NaturalLanguageOnBlobOp";
@@ -60,8 +61,12 @@ public class NaturalLanguageOnBlobOp {
 	@Param(name = "features", description = "A StringList of features to request from the API", required = true)
 	protected StringList features;
 
+	@Param(name = "timeoutMillis", description = "Max. duration of the call, in ms (0 or not passed: the default of the provider)", required = false)
+	protected long timeoutMillis = 0;
+
 	@Param(name = "outputVariable", description = "The key of the context output variable. "
-			+ "The output variable is the NaturalLanguageResponse object. ", required = true)
+			+ "The output variable is the NaturalLanguageResponse object (a list of NaturalLanguageResponse "
+			+ "when the input is a list). ", required = true)
 	protected String outputVariable;
 
 	@OperationMethod
@@ -77,7 +82,7 @@ public class NaturalLanguageOnBlobOp {
 
 		try {
 
-			response = naturalLanguageService.processBlob(provider, blob, featureList);
+			response = naturalLanguageService.processBlob(provider, blob, featureList, timeoutMillis);
 			ctx.put(outputVariable, response);
 
 		} catch (NuxeoException e) {
@@ -101,4 +106,37 @@ public class NaturalLanguageOnBlobOp {
 		return blob;
 	}
 
+	/**
+	 * All the texts are sent to the service in one call, so they are
+	 * analyzed in parallel (instead of one after the other if the operation
+	 * was called for each element)
+	 *
+	 * @since 9.10
+	 */
+	@OperationMethod
+	public BlobList run(BlobList blobs) {
+
+		List<NaturalLanguageFeature> featureList = new ArrayList<>();
+		for (String feature : features) {
+			featureList.add(NaturalLanguageFeature.valueOf(feature));
+		}
+
+		try {
+
+			List<NaturalLanguageResponse> responses = naturalLanguageService.processBlobs(provider, blobs, featureList,
+					timeoutMillis);
+			ctx.put(outputVariable, responses);
+
+		} catch (Exception e) {
+			if (StringUtils.isEmpty(provider)) {
+				log.error("Call to the Natural Language API failed for the default provider:\n" + e.getMessage());
+			} else {
+				log.error("Call to the Natural Language API failed for provider " + provider + ":\n" + e.getMessage());
+			}
+			throw new NuxeoException("Call to the Natural Language API failed: ", e);
+		}
+
+		return blobs;
+	}
+
 }
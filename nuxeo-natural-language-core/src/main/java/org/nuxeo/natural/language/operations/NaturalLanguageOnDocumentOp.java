@@ -33,6 +33,7 @@ import org.nuxeo.ecm.automation.core.annotations.OperationMethod;
 import org.nuxeo.ecm.automation.core.annotations.Param;
 import org.nuxeo.ecm.automation.core.util.StringList;
 import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentModelList;
 import org.nuxeo.ecm.core.api.NuxeoException;
 import org.nuxeo.natural.language.service.api.NaturalLanguage;
 import org.nuxeo.natural.language.service.api.NaturalLanguageFeature;
@@ -42,7 +43,7 @@ import org.nuxeo.natural.language.service.api.NaturalLanguageResponse;
  *
  * @since 9.2
  */
-@Operation(id = NaturalLanguageOnDocumentOp.ID, category = Constants.CAT_SERVICES, label = "Natural Language: Process Document", description = "Calls the Computer Natural Language Service for the input document, returns the input unchanged. Put the NaturalLanguageResponse result in the output context variable")
+@Operation(id = NaturalLanguageOnDocumentOp.ID, category = Constants.CAT_SERVICES, label = "Natural Language: Process Document", description = "Calls the Computer Natural Language Service for the input document(s), returns the input unchanged. Put the NaturalLanguageResponse result (or the list of results, in the same order, when the input is a list of documents) in the output context variable")
 public class NaturalLanguageOnDocumentOp {
 
 	public static final String ID = "Services.NaturalLanguageDocumentOp";
@@ -65,8 +66,12 @@ public class NaturalLanguageOnDocumentOp {
 			"file:content" }, required = false)
 	protected String xpath;
 
+	@Param(name = "timeoutMillis", description = "Max. duration of the call, in ms (0 or not passed: the default of the provider)", required = false)
+	protected long timeoutMillis = 0;
+
 	@Param(name = "outputVariable", description = "The key of the context output variable. "
-			+ "The output variable is the NaturalLanguageResponse object. ", required = true)
+			+ "The output variable is the NaturalLanguageResponse object (a list of NaturalLanguageResponse "
+			+ "when the input is a list). ", required = true)
 	protected String outputVariable;
 
 	@OperationMethod
@@ -82,7 +87,7 @@ public class NaturalLanguageOnDocumentOp {
 
 		try {
 
-			response = naturalLanguageService.processDocument(provider, doc, xpath, featureList);
+			response = naturalLanguageService.processDocument(provider, doc, xpath, featureList, timeoutMillis);
 			ctx.put(outputVariable, response);
 
 		} catch (NuxeoException e) {
@@ -106,4 +111,37 @@ public class NaturalLanguageOnDocumentOp {
 		return doc;
 	}
 
+	/**
+	 * All the texts are sent to the service in one call, so they are
+	 * analyzed in parallel (instead of one after the other if the operation
+	 * was called for each element)
+	 *
+	 * @since 9.10
+	 */
+	@OperationMethod
+	public DocumentModelList run(DocumentModelList docs) {
+
+		List<NaturalLanguageFeature> featureList = new ArrayList<>();
+		for (String feature : features) {
+			featureList.add(NaturalLanguageFeature.valueOf(feature));
+		}
+
+		try {
+
+			List<NaturalLanguageResponse> responses = naturalLanguageService.processDocuments(provider, docs, xpath,
+					featureList, timeoutMillis);
+			ctx.put(outputVariable, responses);
+
+		} catch (Exception e) {
+			if (StringUtils.isEmpty(provider)) {
+				log.error("Call to the Natural Language API failed for the default provider:\n" + e.getMessage());
+			} else {
+				log.error("Call to the Natural Language API failed for provider " + provider + ":\n" + e.getMessage());
+			}
+			throw new NuxeoException("Call to the Natural Language API failed: ", e);
+		}
+
+		return docs;
+	}
+
 }
@@ -63,6 +63,9 @@ public class NaturalLanguageOnStringOp {
 	@Param(name = "encoding", description = "The encoding of the input. UTF8, UTF16 or UTF32 (or not passed)", required = false)
 	protected String encoding;
 
+	@Param(name = "timeoutMillis", description = "Max. duration of the call, in ms (0 or not passed: the default of the provider)", required = false)
+	protected long timeoutMillis = 0;
+
 	@Param(name = "outputVariable", description = "The key of the context output variable. "
 			+ "The output variable is the NaturalLanguageResponse object. ", required = true)
 	protected String outputVariable;
@@ -85,7 +88,7 @@ public class NaturalLanguageOnStringOp {
 			} else {
 				nlEncoding = NaturalLanguageEncoding.fromString(encoding);
 			}
-			response = naturalLanguageService.processText(provider, text, featureList, nlEncoding);
+			response = naturalLanguageService.processText(provider, text, featureList, nlEncoding, timeoutMillis);
 			ctx.put(outputVariable, response);
 
 		} catch (NuxeoException e) {
@@ -22,6 +22,7 @@ package org.nuxeo.natural.language.service.api;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.json.JSONObject;
 import org.nuxeo.ecm.core.api.Blob;
@@ -48,8 +49,33 @@ public interface NaturalLanguage {
 
 	public static final String XPATH_SOURCE_DIGEST = "natural_language:source_digest";
 
+	/** @since 9.10 */
+	public static final String XPATH_LANGUAGE = "natural_language:language";
+
+	/** @since 9.10 */
+	public static final String XPATH_SENTIMENT_SCORE = "natural_language:sentimentScore";
+
+	/** @since 9.10 */
+	public static final String XPATH_SENTIMENT_MAGNITUDE = "natural_language:sentimentMagnitude";
+
+	/**
+	 * List of complex (name, type, salience), most salient first
+	 *
+	 * @since 9.10
+	 */
+	public static final String XPATH_ENTITIES = "natural_language:entities";
+
 	public static final String EVENT_DOCUMENT_HANDLED = "naturalLanguageDocumentHandled";
 
+	/**
+	 * Put this key (value <code>true</code>) in the context data of a
+	 * document before saving it, so the save does not trigger the document
+	 * listener.
+	 *
+	 * @since 9.10
+	 */
+	public static final String DISABLE_DOCUMENT_LISTENER = "disableNaturalLanguageListener";
+
 	/**
 	 *
 	 * @return Returns a JSON object of the service configuration. If doc is
@@ -125,6 +151,179 @@ public interface NaturalLanguage {
 	NaturalLanguageResponse processDocument(String providerName, DocumentModel doc, String xpath,
 			List<NaturalLanguageFeature> features) throws NuxeoException;
 
+	/**
+	 * Asynchronous version of {@link #processText}. The response cache is
+	 * checked (and filled) the same way. The future completes exceptionally
+	 * with a NuxeoException if the call fails.
+	 *
+	 * @param providerName
+	 *            Provider to use. Can be {@code null} (using default provider
+	 *            then)
+	 * @param text
+	 *            Text to analyze
+	 * @param features
+	 *            Feature to request from the service
+	 * @param encoding
+	 *            Encoding to use. Can be {@code null}
+	 * @return the future {@link NaturalLanguageResponse}
+	 * @since 9.10
+	 */
+	CompletableFuture<NaturalLanguageResponse> processTextAsync(String providerName, String text,
+			List<NaturalLanguageFeature> features, NaturalLanguageEncoding encoding);
+
+	/**
+	 * Asynchronous version of {@link #processBlob}. The text extraction is
+	 * done in the service executor, not in the calling thread.
+	 *
+	 * @param providerName
+	 *            Provider to use. Can be {@code null} (using default provider
+	 *            then)
+	 * @param blob
+	 *            Raw text will be extracted from this blob
+	 * @param features
+	 *            Features to request from the service
+	 * @return the future {@link NaturalLanguageResponse}
+	 * @since 9.10
+	 */
+	CompletableFuture<NaturalLanguageResponse> processBlobAsync(String providerName, Blob blob,
+			List<NaturalLanguageFeature> features);
+
+	/**
+	 * Send several texts to the provider, using the same features and
+	 * encoding. Texts already in the response cache are not sent again. The
+	 * provider is called for the other texts with a bounded parallelism (see
+	 * {@link NaturalLanguageProvider#processTexts}).
+	 *
+	 * If any call fails, a NuxeoException is thrown.
+	 *
+	 * @param providerName
+	 *            Provider to use. Can be {@code null} (using default provider
+	 *            then)
+	 * @param texts
+	 *            Texts to analyze
+	 * @param features
+	 *            Feature to request from the service
+	 * @param encoding
+	 *            Encoding to use. Can be {@code null}
+	 * @return the list of {@link NaturalLanguageResponse}, in the same order
+	 *         as the texts
+	 * @throws NuxeoException
+	 * @since 9.10
+	 */
+	List<NaturalLanguageResponse> processTexts(String providerName, List<String> texts,
+			List<NaturalLanguageFeature> features, NaturalLanguageEncoding encoding) throws NuxeoException;
+
+	/**
+	 * Extract the text from each blob and send them to the provider (see
+	 * {@link #processTexts}).
+	 *
+	 * @param providerName
+	 *            Provider to use. Can be {@code null} (using default provider
+	 *            then)
+	 * @param blobs
+	 *            Raw text will be extracted from these blobs
+	 * @param features
+	 *            Features to request from the service
+	 * @return the list of {@link NaturalLanguageResponse}, in the same order
+	 *         as the blobs
+	 * @throws NuxeoException
+	 * @since 9.10
+	 */
+	List<NaturalLanguageResponse> processBlobs(String providerName, List<Blob> blobs,
+			List<NaturalLanguageFeature> features) throws NuxeoException;
+
+	/**
+	 * Extract the text from the blob at xpath of each document and send them
+	 * to the provider (see {@link #processTexts}).
+	 *
+	 * @param providerName
+	 *            Provider to use. Can be {@code null} (using default provider
+	 *            then)
+	 * @param docs
+	 *            The documents containing the blob to analyze
+	 * @param xpath
+	 *            The xpath where to find the blob (null or empty: uses
+	 *            file:content)
+	 * @param features
+	 *            Features to request from the service
+	 * @return the list of {@link NaturalLanguageResponse}, in the same order
+	 *         as the documents
+	 * @throws NuxeoException
+	 * @since 9.10
+	 */
+	List<NaturalLanguageResponse> processDocuments(String providerName, List<DocumentModel> docs, String xpath,
+			List<NaturalLanguageFeature> features) throws NuxeoException;
+
+	/**
+	 * Same as {@link #processText(String, String, List, NaturalLanguageEncoding)},
+	 * within a time budget.
+	 *
+	 * @param timeoutMillis
+	 *            Max. duration of the call, including the requests for all the
+	 *            chunks of the text and the retries. 0 or less uses the
+	 *            default of the provider
+	 * @throws NaturalLanguageDeadlineException
+	 *             if the budget is spent
+	 * @since 9.10
+	 */
+	default NaturalLanguageResponse processText(String providerName, String text,
+			List<NaturalLanguageFeature> features, NaturalLanguageEncoding encoding, long timeoutMillis)
+			throws NuxeoException {
+		return NaturalLanguageDeadline.call(timeoutMillis > 0 ? NaturalLanguageDeadline.after(timeoutMillis) : null,
+				() -> processText(providerName, text, features, encoding));
+	}
+
+	/**
+	 * Same as {@link #processBlob(String, Blob, List)}, within a time budget
+	 * (see {@link #processText(String, String, List, NaturalLanguageEncoding, long)})
+	 *
+	 * @since 9.10
+	 */
+	default NaturalLanguageResponse processBlob(String providerName, Blob blob,
+			List<NaturalLanguageFeature> features, long timeoutMillis) throws NuxeoException {
+		return NaturalLanguageDeadline.call(timeoutMillis > 0 ? NaturalLanguageDeadline.after(timeoutMillis) : null,
+				() -> processBlob(providerName, blob, features));
+	}
+
+	/**
+	 * Same as {@link #processDocument(String, DocumentModel, String, List)},
+	 * within a time budget (see
+	 * {@link #processText(String, String, List, NaturalLanguageEncoding, long)})
+	 *
+	 * @since 9.10
+	 */
+	default NaturalLanguageResponse processDocument(String providerName, DocumentModel doc, String xpath,
+			List<NaturalLanguageFeature> features, long timeoutMillis) throws NuxeoException {
+		return NaturalLanguageDeadline.call(timeoutMillis > 0 ? NaturalLanguageDeadline.after(timeoutMillis) : null,
+				() -> processDocument(providerName, doc, xpath, features));
+	}
+
+	/**
+	 * Same as {@link #processBlobs(String, List, List)}, within a time budget
+	 * for the whole batch (see
+	 * {@link #processText(String, String, List, NaturalLanguageEncoding, long)})
+	 *
+	 * @since 9.10
+	 */
+	default List<NaturalLanguageResponse> processBlobs(String providerName, List<Blob> blobs,
+			List<NaturalLanguageFeature> features, long timeoutMillis) throws NuxeoException {
+		return NaturalLanguageDeadline.call(timeoutMillis > 0 ? NaturalLanguageDeadline.after(timeoutMillis) : null,
+				() -> processBlobs(providerName, blobs, features));
+	}
+
+	/**
+	 * Same as {@link #processDocuments(String, List, String, List)}, within a
+	 * time budget for the whole batch (see
+	 * {@link #processText(String, String, List, NaturalLanguageEncoding, long)})
+	 *
+	 * @since 9.10
+	 */
+	default List<NaturalLanguageResponse> processDocuments(String providerName, List<DocumentModel> docs,
+			String xpath, List<NaturalLanguageFeature> features, long timeoutMillis) throws NuxeoException {
+		return NaturalLanguageDeadline.call(timeoutMillis > 0 ? NaturalLanguageDeadline.after(timeoutMillis) : null,
+				() -> processDocuments(providerName, docs, xpath, features));
+	}
+
 	/**
 	 * @return The name of default provider or {@code null} is not found
 	 */
@@ -142,6 +341,17 @@ public interface NaturalLanguage {
 	 */
 	Map<String, NaturalLanguageProvider> getProviders();
 
+	/**
+	 * The cache is used by the processText/processBlob/processDocument methods,
+	 * so a text already analyzed (same provider, features and encoding) is not
+	 * sent again to the provider.
+	 *
+	 * @return the response cache, or {@code null} if it is disabled in the
+	 *         configuration
+	 * @since 9.10
+	 */
+	NaturalLanguageResponseCache getResponseCache();
+
 	/**
 	 *
 	 * @return true if documents must be analyze in a listener automatically
@@ -159,10 +369,18 @@ public interface NaturalLanguage {
 	/**
 	 *
 	 * @return the automation chain used to process documents when isAutoAnalyze
-	 *         is true
+	 *         is true. {@code null} (the default) means the
+	 *         {@link #getDocumentProcessor() document processor} is used
 	 */
 	String getDefaultDocumentProcessingChainName();
 
+	/**
+	 * @return the processor used by the listener when no processing chain is
+	 *         configured
+	 * @since 9.10
+	 */
+	NaturalLanguageDocumentProcessor getDocumentProcessor();
+
 	/**
 	 *
 	 * @return the list of facets that force a document to _not_ be processed
@@ -0,0 +1,68 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.service.api;
+
+/**
+ * Thrown when a call to a provider is short-circuited because its circuit
+ * breaker is open: the provider failed too many times recently, so it is not
+ * called until {@link #getRetryAfterMillis()}.
+ *
+ * @since 9.10
+ */
+public class NaturalLanguageCircuitOpenException extends NaturalLanguageProviderException {
+
+	private static final long serialVersionUID = 1L;
+
+	protected final String providerName;
+
+	protected final long retryAfterMillis;
+
+	public NaturalLanguageCircuitOpenException(String providerName, long retryAfterMillis) {
+		super("Circuit open for provider " + providerName + ", retry in " + retryAfterMillis + "ms", true);
+		this.providerName = providerName;
+		this.retryAfterMillis = retryAfterMillis;
+	}
+
+	public String getProviderName() {
+		return providerName;
+	}
+
+	/**
+	 * @return the number of milliseconds before the provider can be called
+	 *         again
+	 */
+	public long getRetryAfterMillis() {
+		return retryAfterMillis;
+	}
+
+	/**
+	 * @param t
+	 * @return the NaturalLanguageCircuitOpenException in the cause chain, or
+	 *         {@code null}
+	 */
+	public static NaturalLanguageCircuitOpenException find(Throwable t) {
+		for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+			if (cause instanceof NaturalLanguageCircuitOpenException) {
+				return (NaturalLanguageCircuitOpenException) cause;
+			}
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,148 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.service.api;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * The time budget of a call to the service, shared by all the requests it
+ * sends to the provider (chunks, retries, waits for a rate permit or a
+ * concurrency slot).
+ * <p>
+ * The deadline of the current call is held by the thread: it is set with
+ * {@link #call}, and read by the layers and providers with {@link #current()}.
+ * Code continuing the call in another thread (asynchronous calls) must get
+ * the deadline in the calling thread and set it again with {@link #call}.
+ *
+ * @since 9.10
+ */
+public class NaturalLanguageDeadline {
+
+	protected static final ThreadLocal<NaturalLanguageDeadline> CURRENT = new ThreadLocal<>();
+
+	protected static ScheduledThreadPoolExecutor timer;
+
+	protected final long expiresAt;
+
+	protected NaturalLanguageDeadline(long expiresAt) {
+		this.expiresAt = expiresAt;
+	}
+
+	/**
+	 * @param timeoutMillis
+	 * @return a deadline in <code>timeoutMillis</code> ms
+	 */
+	public static NaturalLanguageDeadline after(long timeoutMillis) {
+		return new NaturalLanguageDeadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+	}
+
+	/**
+	 * @return the deadline of the current call, {@code null} if there is none
+	 */
+	public static NaturalLanguageDeadline current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Runs the supplier with this deadline as the current one. If the current
+	 * deadline is earlier, it is kept.
+	 *
+	 * @param deadline
+	 *            Can be {@code null}, then the current deadline is unchanged
+	 * @param supplier
+	 * @return the result of the supplier
+	 */
+	public static <T> T call(NaturalLanguageDeadline deadline, Supplier<T> supplier) {
+
+		NaturalLanguageDeadline previous = CURRENT.get();
+		if (deadline == null || (previous != null && previous.expiresAt - deadline.expiresAt <= 0)) {
+			return supplier.get();
+		}
+
+		CURRENT.set(deadline);
+		try {
+			return supplier.get();
+		} finally {
+			if (previous == null) {
+				CURRENT.remove();
+			} else {
+				CURRENT.set(previous);
+			}
+		}
+	}
+
+	public long getRemainingNanos() {
+		return Math.max(0, expiresAt - System.nanoTime());
+	}
+
+	public long getRemainingMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(getRemainingNanos());
+	}
+
+	public boolean isExpired() {
+		return expiresAt - System.nanoTime() <= 0;
+	}
+
+	/**
+	 * @throws NaturalLanguageDeadlineException
+	 *             if the deadline is passed
+	 */
+	public void check() throws NaturalLanguageDeadlineException {
+		if (isExpired()) {
+			throw new NaturalLanguageDeadlineException("Deadline exceeded");
+		}
+	}
+
+	/**
+	 * Completes the future with a {@link NaturalLanguageDeadlineException} if
+	 * it is not completed before the deadline.
+	 *
+	 * @param future
+	 * @return the same future
+	 */
+	public <T> CompletableFuture<T> orTimeout(CompletableFuture<T> future) {
+
+		if (!future.isDone()) {
+			ScheduledFuture<?> timeout = getTimer().schedule(() -> future.completeExceptionally(
+					new NaturalLanguageDeadlineException("Deadline exceeded while waiting for the provider")),
+					getRemainingNanos(), TimeUnit.NANOSECONDS);
+			future.whenComplete((result, t) -> timeout.cancel(false));
+		}
+
+		return future;
+	}
+
+	protected static synchronized ScheduledThreadPoolExecutor getTimer() {
+		if (timer == null) {
+			timer = new ScheduledThreadPoolExecutor(1, r -> {
+				Thread t = new Thread(r, "NaturalLanguage-deadline");
+				t.setDaemon(true);
+				return t;
+			});
+			// Most futures complete before their deadline
+			timer.setRemoveOnCancelPolicy(true);
+		}
+		return timer;
+	}
+
+}
@@ -0,0 +1,36 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.service.api;
+
+/**
+ * Thrown when the time budget of a call (see {@link NaturalLanguageDeadline})
+ * is spent before the provider answered. Not retryable: there is no time left
+ * for another attempt.
+ *
+ * @since 9.10
+ */
+public class NaturalLanguageDeadlineException extends NaturalLanguageProviderException {
+
+	private static final long serialVersionUID = 1L;
+
+	public NaturalLanguageDeadlineException(String message) {
+		super(message, false);
+	}
+
+}
@@ -0,0 +1,80 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.service.api;
+
+import java.util.Map;
+
+/**
+ * Collapses the events received for the same document during the debounce
+ * window (<code>documentDebounceMillis</code> in the configuration), so a
+ * document created then modified several times is analyzed only once, with
+ * its latest blob.
+ * <p>
+ * The listener calls {@link #touch} for every event. When the work analyzing
+ * a document runs while the window of its document is not over, it
+ * {@link #defer}s the analysis, and it calls {@link #done} once it handled
+ * the document, whatever the outcome.
+ *
+ * @since 9.10
+ */
+public interface NaturalLanguageDocumentCoalescer {
+
+	/**
+	 * @return the current debounce window, 0 if events are not coalesced
+	 */
+	long getDebounceMillis();
+
+	/**
+	 * Records an event for the document, (re)starting its debounce window.
+	 */
+	void touch(String repositoryName, String docId);
+
+	/**
+	 * @return the number of milliseconds before the end of the debounce window
+	 *         of the document, 0 if the document can be analyzed now
+	 */
+	long getRemainingMillis(String repositoryName, String docId);
+
+	/**
+	 * Analyzes the document in <code>delayMillis</code>. A previously deferred
+	 * analysis of the same document is replaced.
+	 *
+	 * @param originatingUsername
+	 *            The user the analysis runs as, {@code null} for system
+	 */
+	void defer(String repositoryName, String docId, String originatingUsername, long delayMillis);
+
+	/**
+	 * Called once the document was handled. Forgets its window, unless a new
+	 * event was received after <code>startedAt</code>.
+	 */
+	void done(String repositoryName, String docId, long startedAt);
+
+	/**
+	 * @return the number of documents waiting for the end of their debounce
+	 *         window (no work is scheduled for them yet)
+	 */
+	int getDeferredCount();
+
+	/**
+	 * @return the statistics of the coalescer, as a map ready to be serialized
+	 */
+	Map<String, Object> getStatistics();
+
+}
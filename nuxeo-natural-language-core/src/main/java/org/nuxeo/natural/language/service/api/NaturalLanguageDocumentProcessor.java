@@ -0,0 +1,51 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.service.api;
+
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+
+/**
+ * Processes a document when the document listener is enabled: analyzes its
+ * blob and stores the result. Used when no processing chain is configured
+ * (see {@link NaturalLanguage#getDefaultDocumentProcessingChainName()}).
+ *
+ * Implementations are contributed in the <code>documentProcessor</code>
+ * element of the <code>configuration</code> extension point, must be thread
+ * safe and provide a public constructor accepting a
+ * {@code Map<String, String>} of parameters.
+ *
+ * @since 9.10
+ */
+public interface NaturalLanguageDocumentProcessor {
+
+	/**
+	 * Called after {@link NaturalLanguage#canProcessDocument} returned
+	 * <code>true</code> for this document.
+	 *
+	 * @param session
+	 * @param doc
+	 * @return the document, saved if it was modified
+	 * @throws NaturalLanguageCircuitOpenException
+	 *             if the provider is unavailable, so the document is analyzed
+	 *             later
+	 */
+	DocumentModel process(CoreSession session, DocumentModel doc);
+
+}
@@ -23,7 +23,16 @@ package org.nuxeo.natural.language.service.api;
 
 import java.io.IOException;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.nuxeo.ecm.core.api.NuxeoException;
 
@@ -35,6 +44,14 @@ import org.nuxeo.ecm.core.api.NuxeoException;
  */
 public interface NaturalLanguageProvider {
 
+	/**
+	 * Parameter set by the service to the name the provider is contributed
+	 * with, so the provider can report it (in its events, ...)
+	 *
+	 * @since 9.10
+	 */
+	String PROVIDER_NAME_PARAM = "providerName";
+
 	/**
 	 *
 	 * The NuxeoException should encapsulate any exception:
@@ -42,6 +59,9 @@ public interface NaturalLanguageProvider {
 	 * unsupported language (i.e. an error when the string is written in a
 	 * language not supported by the provider, like latin for Google)
 	 *
+	 * Since 9.10, providers should not wait for the response after the
+	 * deadline of the call, if any (see {@link NaturalLanguageDeadline}).
+	 *
 	 * @param text
 	 *            Text to analyze
 	 * @param features
@@ -58,6 +78,179 @@ public interface NaturalLanguageProvider {
 	NaturalLanguageResponse processText(String text, List<NaturalLanguageFeature> features,
 			NaturalLanguageEncoding encoding) throws NuxeoException;
 
+	/**
+	 * Asynchronous version of {@link #processText}. The future completes
+	 * exceptionally with a NuxeoException if the call fails.
+	 *
+	 * The default implementation runs {@link #processText} in the executor.
+	 * Providers whose client has a non blocking API should override it, so
+	 * no thread is blocked while waiting for the response.
+	 *
+	 * @param text
+	 *            Text to analyze
+	 * @param features
+	 *            Features to request
+	 * @param encoding
+	 *            Encoding to use. Can be {@code null}
+	 * @param executor
+	 *            The executor to use when the provider has no asynchronous
+	 *            API. Can be {@code null} (then the call is done in the
+	 *            calling thread)
+	 * @return the future {@link NaturalLanguageResponse}
+	 * @since 9.10
+	 */
+	default CompletableFuture<NaturalLanguageResponse> processTextAsync(String text,
+			List<NaturalLanguageFeature> features, NaturalLanguageEncoding encoding, Executor executor) {
+
+		if (executor == null) {
+			CompletableFuture<NaturalLanguageResponse> future = new CompletableFuture<>();
+			try {
+				future.complete(processText(text, features, encoding));
+			} catch (RuntimeException e) {
+				future.completeExceptionally(e);
+			}
+			return future;
+		}
+
+		// The executor thread continues the call of the caller, with its
+		// deadline
+		NaturalLanguageDeadline deadline = NaturalLanguageDeadline.current();
+		return CompletableFuture.supplyAsync(
+				() -> NaturalLanguageDeadline.call(deadline, () -> processText(text, features, encoding)), executor);
+	}
+
+	/**
+	 * Analyzes several texts with the same features and encoding, returning the
+	 * responses in the same order as the texts.
+	 *
+	 * The default implementation calls {@link #processTextAsync} for each text
+	 * (so, by default, the parallelism is bounded by the executor) and waits
+	 * for all the responses. Providers can override it to control the number
+	 * of requests in flight, or to use a batch API if they have one.
+	 *
+	 * If any call fails, a NuxeoException is thrown (the other responses are
+	 * lost)
+	 *
+	 * @param texts
+	 *            Texts to analyze
+	 * @param features
+	 *            Features to request
+	 * @param encoding
+	 *            Encoding to use. Can be {@code null}
+	 * @param executor
+	 *            The executor to use to run the calls in parallel. Can be
+	 *            {@code null}
+	 * @return the list of {@link NaturalLanguageResponse}, in the same order
+	 *         as the texts
+	 * @throws NuxeoException
+	 * @since 9.10
+	 */
+	default List<NaturalLanguageResponse> processTexts(List<String> texts, List<NaturalLanguageFeature> features,
+			NaturalLanguageEncoding encoding, ExecutorService executor) throws NuxeoException {
+
+		List<CompletableFuture<NaturalLanguageResponse>> futures = new ArrayList<>(texts.size());
+		for (String text : texts) {
+			futures.add(processTextAsync(text, features, encoding, executor));
+		}
+
+		return getAll(futures);
+	}
+
+	/**
+	 * Static utility waiting for all the futures, returning their results in
+	 * the same order. If one fails, the others are cancelled and the failure
+	 * is thrown as a NuxeoException.
+	 *
+	 * @param futures
+	 * @return the results
+	 * @throws NuxeoException
+	 * @since 9.10
+	 */
+	static <T> List<T> getAll(List<? extends Future<T>> futures) throws NuxeoException {
+
+		List<T> results = new ArrayList<>(futures.size());
+		try {
+			for (Future<T> future : futures) {
+				results.add(get(future));
+			}
+		} finally {
+			if (results.size() < futures.size()) {
+				for (Future<T> future : futures) {
+					future.cancel(true);
+				}
+			}
+		}
+
+		return results;
+	}
+
+	/**
+	 * Static utility waiting for the future and unwrapping its failure, so
+	 * callers get the NuxeoException thrown by the provider. Does not wait
+	 * after the deadline of the current call, if any: the future is then
+	 * cancelled and a {@link NaturalLanguageDeadlineException} is thrown.
+	 *
+	 * @param future
+	 * @return the result
+	 * @throws NuxeoException
+	 * @since 9.10
+	 */
+	static <T> T get(Future<T> future) throws NuxeoException {
+		NaturalLanguageDeadline deadline = NaturalLanguageDeadline.current();
+		try {
+			if (deadline == null) {
+				return future.get();
+			}
+			return future.get(deadline.getRemainingNanos(), TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			future.cancel(true);
+			throw new NaturalLanguageDeadlineException("Deadline exceeded while waiting for the provider");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new NuxeoException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof NuxeoException) {
+				throw (NuxeoException) e.getCause();
+			}
+			throw new NuxeoException(e.getCause());
+		} catch (CancellationException e) {
+			throw new NuxeoException(e);
+		}
+	}
+
+	/**
+	 * Tells if a call which failed with this error can be retried. The
+	 * default implementation uses the classification of the
+	 * {@link NaturalLanguageProviderException} thrown by the provider, so
+	 * providers should throw it with the right classification, or override
+	 * this method.
+	 *
+	 * @param t
+	 *            The error thrown by {@link #processText}, or the failure of
+	 *            the future returned by {@link #processTextAsync}
+	 * @return true if the call can be retried
+	 * @since 9.10
+	 */
+	default boolean isRetryable(Throwable t) {
+		return NaturalLanguageProviderException.isRetryable(t);
+	}
+
+	/**
+	 * Tells if a call which failed with this error is a sign the provider is
+	 * overloaded (quota exceeded, timeout, ...), so fewer requests should be
+	 * sent at the same time. The default implementation only checks the type
+	 * of the errors, providers override it to check their own status codes.
+	 *
+	 * @param t
+	 *            The error thrown by {@link #processText}, or the failure of
+	 *            the future returned by {@link #processTextAsync}
+	 * @return true if the provider is overloaded
+	 * @since 9.10
+	 */
+	default boolean isOverload(Throwable t) {
+		return NaturalLanguageProviderException.isOverload(t);
+	}
+
 	/**
 	 * @return The list of feature supported by the provider
 	 */
@@ -68,4 +261,14 @@ public interface NaturalLanguageProvider {
 	 */
 	Object getNativeClient();
 
+	/**
+	 * Frees the resources held by the provider (connections, threads, ...).
+	 * Called when the service is stopped or the provider is replaced by
+	 * another contribution. Does nothing by default.
+	 *
+	 * @since 9.10
+	 */
+	default void close() {
+	}
+
 }
@@ -0,0 +1,106 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.service.api;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeoutException;
+
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+/**
+ * Error of a provider, telling if the call can be retried (the service was
+ * unavailable, overloaded, the call timed out, ...) or not (invalid text,
+ * unsupported language, invalid credentials, ...).
+ *
+ * @since 9.10
+ */
+public class NaturalLanguageProviderException extends NuxeoException {
+
+	private static final long serialVersionUID = 1L;
+
+	protected final boolean retryable;
+
+	public NaturalLanguageProviderException(String message, boolean retryable) {
+		super(message);
+		this.retryable = retryable;
+	}
+
+	public NaturalLanguageProviderException(Throwable cause, boolean retryable) {
+		super(cause);
+		this.retryable = retryable;
+	}
+
+	public NaturalLanguageProviderException(String message, Throwable cause, boolean retryable) {
+		super(message, cause);
+		this.retryable = retryable;
+	}
+
+	/**
+	 * @return true if the same call may succeed if done again later
+	 */
+	public boolean isRetryable() {
+		return retryable;
+	}
+
+	/**
+	 * Looks for a NaturalLanguageProviderException in the cause chain and
+	 * returns its classification. Without one, only timeouts are retryable.
+	 *
+	 * @param t
+	 * @return true if the call which failed with this error can be retried
+	 */
+	public static boolean isRetryable(Throwable t) {
+
+		for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+			if (cause instanceof NaturalLanguageProviderException) {
+				return ((NaturalLanguageProviderException) cause).isRetryable();
+			}
+		}
+		for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+			if (cause instanceof TimeoutException || cause instanceof SocketTimeoutException) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Tells if the error is a sign of overload of the provider, by type: a
+	 * timeout or a {@link NaturalLanguageDeadlineException} in the cause
+	 * chain. Providers know their own quota and timeout errors, see
+	 * {@link NaturalLanguageProvider#isOverload}.
+	 *
+	 * @param t
+	 * @return true if the call which failed with this error overloaded the
+	 *         provider
+	 */
+	public static boolean isOverload(Throwable t) {
+
+		for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+			if (cause instanceof NaturalLanguageDeadlineException || cause instanceof TimeoutException
+					|| cause instanceof SocketTimeoutException) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+}
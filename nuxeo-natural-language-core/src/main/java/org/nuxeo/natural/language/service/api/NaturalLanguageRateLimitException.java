@@ -0,0 +1,44 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.service.api;
+
+/**
+ * Thrown when a call to a provider is rejected by its rate limiter (no permit
+ * was available in fail-fast mode, or before the timeout in blocking mode) or
+ * by its concurrency limiter (no free slot before the timeout). The provider
+ * was not called. Not retryable: the caller asked not to wait longer.
+ *
+ * @since 9.10
+ */
+public class NaturalLanguageRateLimitException extends NaturalLanguageProviderException {
+
+	private static final long serialVersionUID = 1L;
+
+	protected final String providerName;
+
+	public NaturalLanguageRateLimitException(String providerName, String message) {
+		super(message, false);
+		this.providerName = providerName;
+	}
+
+	public String getProviderName() {
+		return providerName;
+	}
+
+}
@@ -101,6 +101,15 @@ public interface NaturalLanguageResponse {
 	 */
 	Object getNativeObject();
 
+	/**
+	 * @return the strategy used to reduce the text to the text budget of the
+	 *         requested features, {@code null} if the whole text was analyzed
+	 * @since 9.10
+	 */
+	default NaturalLanguageSamplingStrategy getSamplingStrategy() {
+		return null;
+	}
+
 	/**
 	 * Utility returning the JSON representation of the response
 	 *
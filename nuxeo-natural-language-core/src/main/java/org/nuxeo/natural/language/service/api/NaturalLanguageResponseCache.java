@@ -0,0 +1,128 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.service.api;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * A cache of {@link NaturalLanguageResponse}, used by the service to avoid
+ * calling the provider again for a text it already analyzed.
+ *
+ * The key is built by the service from a digest of the text, the provider
+ * name, the features, the encoding and the text budget (see
+ * {@link #buildKey}).
+ *
+ * Implementations must be thread safe and provide a public constructor
+ * accepting a {@code Map<String, String>} of parameters (as contributed in the
+ * <code>responseCache</code> element of the <code>configuration</code>
+ * extension point)
+ *
+ * @since 9.10
+ */
+public interface NaturalLanguageResponseCache {
+
+	/**
+	 * @param key
+	 * @return the cached response or {@code null} if not found (or expired)
+	 */
+	NaturalLanguageResponse get(String key);
+
+	/**
+	 * @param key
+	 * @param response
+	 */
+	void put(String key, NaturalLanguageResponse response);
+
+	/**
+	 * Removes all the entries. Hit/miss counters are not reset.
+	 */
+	void clear();
+
+	/**
+	 * @return the current number of entries
+	 */
+	int size();
+
+	/**
+	 * @return the number of times {@code get} found a response
+	 */
+	long getHitCount();
+
+	/**
+	 * @return the number of times {@code get} did not find a response
+	 */
+	long getMissCount();
+
+	/**
+	 * @return the statistics of the cache (size, hits, misses, ...), as a map
+	 *         ready to be serialized
+	 */
+	Map<String, Object> getStatistics();
+
+	/**
+	 * Static utility building a cache key. The text is digested, so the key
+	 * stays small whatever the size of the text. Features are sorted, so
+	 * [ENTITIES, DOCUMENT_SENTIMENT] and [DOCUMENT_SENTIMENT, ENTITIES] give the
+	 * same key.
+	 *
+	 * @param providerName
+	 * @param text
+	 * @param features
+	 * @param encoding
+	 *            Can be {@code null}
+	 * @return the key
+	 */
+	static String buildKey(String providerName, String text, List<NaturalLanguageFeature> features,
+			NaturalLanguageEncoding encoding) {
+
+		EnumSet<NaturalLanguageFeature> sortedFeatures = EnumSet.noneOf(NaturalLanguageFeature.class);
+		sortedFeatures.addAll(features);
+
+		return providerName + "/" + sortedFeatures + "/" + encoding + "/" + DigestUtils.sha256Hex(text);
+	}
+
+	/**
+	 * Same as {@link #buildKey(String, String, List, NaturalLanguageEncoding)}
+	 * for a text reduced to a text budget before calling the provider: the
+	 * same text sampled differently gives another response.
+	 *
+	 * @param textBudget
+	 *            The max. number of chars sent to the provider, 0 or less if
+	 *            the text is not sampled
+	 * @param strategy
+	 *            The sampling strategy, ignored if there is no text budget
+	 * @return the key
+	 * @since 9.10
+	 */
+	static String buildKey(String providerName, String text, List<NaturalLanguageFeature> features,
+			NaturalLanguageEncoding encoding, int textBudget, NaturalLanguageSamplingStrategy strategy) {
+
+		String key = buildKey(providerName, text, features, encoding);
+		if (textBudget <= 0) {
+			return key;
+		}
+
+		return key + "/" + strategy + ":" + textBudget;
+	}
+
+}
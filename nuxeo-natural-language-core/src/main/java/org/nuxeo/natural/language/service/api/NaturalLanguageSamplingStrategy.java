@@ -0,0 +1,55 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.service.api;
+
+/**
+ * How the text is reduced when it is bigger than the text budget of the
+ * requested features.
+ *
+ * @since 9.10
+ */
+public enum NaturalLanguageSamplingStrategy {
+
+	/**
+	 * The beginning of the text
+	 */
+	HEAD,
+
+	/**
+	 * The beginning and the end of the text (half of the budget each)
+	 */
+	HEAD_TAIL,
+
+	/**
+	 * Paragraphs evenly spaced in the text
+	 */
+	PARAGRAPHS;
+
+	/**
+	 * @param value
+	 * @return the strategy, {@link #HEAD_TAIL} (the default) if the value is
+	 *         blank
+	 */
+	public static NaturalLanguageSamplingStrategy fromString(String value) {
+		if (value == null || value.trim().isEmpty()) {
+			return HEAD_TAIL;
+		}
+		return valueOf(value.trim().toUpperCase());
+	}
+}
@@ -0,0 +1,224 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.service.impl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.JSONException;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.natural.language.service.api.NaturalLanguage;
+import org.nuxeo.natural.language.service.api.NaturalLanguageCircuitOpenException;
+import org.nuxeo.natural.language.service.api.NaturalLanguageDocumentProcessor;
+import org.nuxeo.natural.language.service.api.NaturalLanguageEntity;
+import org.nuxeo.natural.language.service.api.NaturalLanguageFeature;
+import org.nuxeo.natural.language.service.api.NaturalLanguageResponse;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageEvents.Phase;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageEvents.Span;
+import org.nuxeo.runtime.api.Framework;
+
+/**
+ * Default document processor, doing what the
+ * <code>javascript.NaturalLanguageDefaultDocumentProcessing</code> chain does,
+ * without the cost of the scripting engine:
+ * <ul>
+ * <li>Removes the NaturalLanguage facet if there is no blob</li>
+ * <li>Else, if the blob was not already analyzed, analyzes it (default
+ * provider, DOCUMENT_SENTIMENT and ENTITIES), adds the facet and stores the
+ * result and the digest of the blob. The document is saved once, and this
+ * save does not trigger the listener again (see
+ * {@link NaturalLanguage#DISABLE_DOCUMENT_LISTENER})</li>
+ * </ul>
+ * The result is stored in the queryable fields of the schema (language,
+ * sentiment score and magnitude, the <code>maxEntities</code> most salient
+ * entities) and, if <code>storeJson</code> is <code>true</code>, as JSON.
+ * <p>
+ * Parameters:
+ * <ul>
+ * <li><code>storeJson</code>: default true</li>
+ * <li><code>maxEntities</code>: default 10. 0 means no entities are
+ * stored</li>
+ * </ul>
+ *
+ * @since 9.10
+ */
+public class DefaultNaturalLanguageDocumentProcessor implements NaturalLanguageDocumentProcessor {
+
+	private static final Log log = LogFactory.getLog(DefaultNaturalLanguageDocumentProcessor.class);
+
+	public static final List<NaturalLanguageFeature> FEATURES = Collections.unmodifiableList(
+			Arrays.asList(NaturalLanguageFeature.DOCUMENT_SENTIMENT, NaturalLanguageFeature.ENTITIES));
+
+	public static final String STORE_JSON_PARAM = "storeJson";
+
+	public static final String MAX_ENTITIES_PARAM = "maxEntities";
+
+	public static final int DEFAULT_MAX_ENTITIES = 10;
+
+	protected final boolean storeJson;
+
+	protected final int maxEntities;
+
+	public DefaultNaturalLanguageDocumentProcessor(Map<String, String> parameters) {
+
+		String value = parameters == null ? null : parameters.get(STORE_JSON_PARAM);
+		storeJson = StringUtils.isBlank(value) ? true : Boolean.parseBoolean(value.trim());
+
+		value = parameters == null ? null : parameters.get(MAX_ENTITIES_PARAM);
+		maxEntities = StringUtils.isBlank(value) ? DEFAULT_MAX_ENTITIES : Integer.parseInt(value.trim());
+	}
+
+	/**
+	 * The events of the analysis (see {@link NaturalLanguageEvents}) are
+	 * recorded for this document
+	 */
+	@Override
+	public DocumentModel process(CoreSession session, DocumentModel doc) {
+		return NaturalLanguageEvents.call(doc.getId(), () -> processDocument(session, doc));
+	}
+
+	/**
+	 * @since 9.10
+	 */
+	protected DocumentModel processDocument(CoreSession session, DocumentModel doc) {
+
+		Blob blob = doc.hasSchema("file") ? (Blob) doc.getPropertyValue("file:content") : null;
+
+		if (blob == null) {
+			if (doc.hasFacet(NaturalLanguage.FACET_NAME)) {
+				doc.removeFacet(NaturalLanguage.FACET_NAME);
+				doc = saveDocument(session, doc);
+			}
+			return doc;
+		}
+
+		if (doc.hasSchema(NaturalLanguage.SCHEMA_NAME)
+				&& blob.getDigest().equals(doc.getPropertyValue(NaturalLanguage.XPATH_SOURCE_DIGEST))) {
+			// No need to recompute
+			return doc;
+		}
+
+		NaturalLanguageResponse response;
+		String json = null;
+		try {
+			NaturalLanguage naturalLanguage = Framework.getService(NaturalLanguage.class);
+			response = naturalLanguage.processBlob(null, blob, FEATURES);
+			if (storeJson) {
+				try (Span span = NaturalLanguageEvents.begin(Phase.JSON_SERIALIZATION)) {
+					json = response.toJSON().toString();
+					span.textLength(json.length());
+				}
+			}
+		} catch (NuxeoException e) {
+			if (NaturalLanguageCircuitOpenException.find(e) != null) {
+				// The caller can analyze the document later
+				throw e;
+			}
+			log.warn("Error when calling the Natural Language API for document " + doc.getId(), e);
+			return doc;
+		} catch (JSONException e) {
+			log.warn("Error when serializing the response for document " + doc.getId(), e);
+			return doc;
+		}
+
+		return saveResult(session, doc, response, json, blob.getDigest());
+	}
+
+	/**
+	 * Adds the facet if needed, sets the fields of the schema, and saves the
+	 * document once, without triggering the document listener.
+	 *
+	 * @param session
+	 * @param doc
+	 * @param response
+	 * @param json
+	 *            The JSON to store, can be {@code null}
+	 * @param sourceDigest
+	 * @return the saved document
+	 */
+	protected DocumentModel saveResult(CoreSession session, DocumentModel doc, NaturalLanguageResponse response,
+			String json, String sourceDigest) {
+
+		doc.addFacet(NaturalLanguage.FACET_NAME);
+		doc.setPropertyValue(NaturalLanguage.XPATH_JSON, json);
+		doc.setPropertyValue(NaturalLanguage.XPATH_SOURCE_DIGEST, sourceDigest);
+
+		doc.setPropertyValue(NaturalLanguage.XPATH_LANGUAGE, response.getLanguage());
+		doc.setPropertyValue(NaturalLanguage.XPATH_SENTIMENT_SCORE, toDouble(response.getSentimentScore()));
+		doc.setPropertyValue(NaturalLanguage.XPATH_SENTIMENT_MAGNITUDE,
+				toDouble(response.getSentimentMagnitude()));
+		doc.setPropertyValue(NaturalLanguage.XPATH_ENTITIES, getTopEntities(response.getEntities()));
+
+		return saveDocument(session, doc);
+	}
+
+	protected static Double toDouble(Float value) {
+		return value == null ? null : Double.valueOf(value.doubleValue());
+	}
+
+	/*
+	 * The maxEntities most salient entities, as a list of
+	 * natural_language:entities items
+	 */
+	protected ArrayList<HashMap<String, Serializable>> getTopEntities(List<NaturalLanguageEntity> entities) {
+
+		ArrayList<HashMap<String, Serializable>> result = new ArrayList<>();
+		if (entities == null || maxEntities <= 0) {
+			return result;
+		}
+
+		List<NaturalLanguageEntity> sorted = new ArrayList<>(entities);
+		sorted.sort(Comparator.comparingDouble(NaturalLanguageEntity::getSalience).reversed());
+		for (NaturalLanguageEntity entity : sorted.subList(0, Math.min(maxEntities, sorted.size()))) {
+			HashMap<String, Serializable> item = new HashMap<>();
+			item.put("name", entity.getName());
+			item.put("type", entity.getType());
+			item.put("salience", Double.valueOf(entity.getSalience()));
+			result.add(item);
+		}
+
+		return result;
+	}
+
+	/*
+	 * The modification is the result of the analysis: no need to be notified
+	 * again by the listener
+	 */
+	protected static DocumentModel saveDocument(CoreSession session, DocumentModel doc) {
+		doc.putContextData(NaturalLanguage.DISABLE_DOCUMENT_LISTENER, Boolean.TRUE);
+		try (Span span = NaturalLanguageEvents.begin(Phase.DOCUMENT_SAVE)) {
+			return session.saveDocument(doc);
+		} finally {
+			doc.putContextData(NaturalLanguage.DISABLE_DOCUMENT_LISTENER, null);
+		}
+	}
+
+}
@@ -0,0 +1,196 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.service.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.natural.language.service.api.NaturalLanguageCircuitOpenException;
+
+/**
+ * Circuit breaker for the calls to a provider, configured with the parameters
+ * of the provider contribution:
+ * <ul>
+ * <li><code>circuitBreaker.failureThreshold</code>: number of consecutive
+ * failures opening the circuit. 0 (default) disables the breaker</li>
+ * <li><code>circuitBreaker.openMillis</code>: how long the circuit stays open
+ * (default 30000)</li>
+ * <li><code>circuitBreaker.halfOpenMaxCalls</code>: number of trial calls
+ * allowed at the same time once this delay is over (default 1)</li>
+ * </ul>
+ * States:
+ * <ul>
+ * <li>CLOSED: calls go through. Only failures telling the provider is
+ * unhealthy (unavailable, timeout, deadline exceeded, ...) are counted, an
+ * invalid text does not open the circuit. Calls rejected before reaching the
+ * provider (local rate limit) are neither a success nor a failure</li>
+ * <li>OPEN: calls are rejected right away with a
+ * {@link NaturalLanguageCircuitOpenException}, so no thread waits for a
+ * provider which is down</li>
+ * <li>HALF_OPEN: a few trial calls go through. The circuit closes if they
+ * succeed, opens again if they fail</li>
+ * </ul>
+ *
+ * @since 9.10
+ */
+public class NaturalLanguageCircuitBreaker {
+
+	private static final Log log = LogFactory.getLog(NaturalLanguageCircuitBreaker.class);
+
+	public static final String FAILURE_THRESHOLD_PARAM = "circuitBreaker.failureThreshold";
+
+	public static final String OPEN_MILLIS_PARAM = "circuitBreaker.openMillis";
+
+	public static final String HALF_OPEN_MAX_CALLS_PARAM = "circuitBreaker.halfOpenMaxCalls";
+
+	public static final long DEFAULT_OPEN_MILLIS = 30000;
+
+	public static final int DEFAULT_HALF_OPEN_MAX_CALLS = 1;
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	protected final String providerName;
+
+	protected final int failureThreshold;
+
+	protected final long openMillis;
+
+	protected final int halfOpenMaxCalls;
+
+	protected State state = State.CLOSED;
+
+	protected int consecutiveFailures = 0;
+
+	protected long openedAt = 0;
+
+	protected int trialCalls = 0;
+
+	protected long openedCount = 0;
+
+	protected long shortCircuitedCount = 0;
+
+	protected long ignoredCount = 0;
+
+	public NaturalLanguageCircuitBreaker(String providerName, Map<String, String> parameters) {
+		this.providerName = providerName;
+		failureThreshold = (int) NaturalLanguageParameters.getLong(parameters, FAILURE_THRESHOLD_PARAM, 0);
+		openMillis = NaturalLanguageParameters.getLong(parameters, OPEN_MILLIS_PARAM, DEFAULT_OPEN_MILLIS);
+		halfOpenMaxCalls = Math.max(1, (int) NaturalLanguageParameters.getLong(parameters, HALF_OPEN_MAX_CALLS_PARAM,
+				DEFAULT_HALF_OPEN_MAX_CALLS));
+	}
+
+	/**
+	 * @param parameters
+	 *            The parameters of the provider
+	 * @return true if the parameters define a failure threshold
+	 */
+	public static boolean isConfigured(Map<String, String> parameters) {
+		return NaturalLanguageParameters.getLong(parameters, FAILURE_THRESHOLD_PARAM, 0) > 0;
+	}
+
+	/**
+	 * Checks the call can be made. The caller must then call
+	 * {@link #onResult} when the call completes.
+	 *
+	 * @throws NaturalLanguageCircuitOpenException
+	 *             if the circuit is open
+	 */
+	public synchronized void acquire() throws NaturalLanguageCircuitOpenException {
+
+		switch (state) {
+		case OPEN:
+			long remaining = openedAt + openMillis - System.currentTimeMillis();
+			if (remaining > 0) {
+				shortCircuitedCount++;
+				throw new NaturalLanguageCircuitOpenException(providerName, remaining);
+			}
+			state = State.HALF_OPEN;
+			trialCalls = 0;
+			// Fall through
+		case HALF_OPEN:
+			if (trialCalls >= halfOpenMaxCalls) {
+				shortCircuitedCount++;
+				// Wait for the result of the trial calls
+				throw new NaturalLanguageCircuitOpenException(providerName, Math.max(1000, openMillis / 10));
+			}
+			trialCalls++;
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * @param healthy
+	 *            false if the call failed with an error telling the provider
+	 *            is unhealthy
+	 */
+	public synchronized void onResult(boolean healthy) {
+
+		if (healthy) {
+			if (state != State.CLOSED) {
+				log.info("Provider " + providerName + " is available again, closing the circuit");
+			}
+			state = State.CLOSED;
+			consecutiveFailures = 0;
+			return;
+		}
+
+		consecutiveFailures++;
+		if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+			log.warn("Provider " + providerName + " failed " + consecutiveFailures
+					+ " times in a row, opening the circuit for " + openMillis + "ms");
+			state = State.OPEN;
+			openedAt = System.currentTimeMillis();
+			openedCount++;
+		}
+	}
+
+	/**
+	 * The call was rejected before reaching the provider: tells nothing about
+	 * its health. A trial call of the half-open state is given back.
+	 */
+	public synchronized void onIgnored() {
+		ignoredCount++;
+		if (state == State.HALF_OPEN && trialCalls > 0) {
+			trialCalls--;
+		}
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+
+	public synchronized Map<String, Object> getStatistics() {
+
+		Map<String, Object> stats = new HashMap<>();
+		stats.put("state", state.name());
+		stats.put("consecutiveFailures", consecutiveFailures);
+		stats.put("opened", openedCount);
+		stats.put("shortCircuited", shortCircuitedCount);
+		stats.put("ignored", ignoredCount);
+
+		return stats;
+	}
+
+}
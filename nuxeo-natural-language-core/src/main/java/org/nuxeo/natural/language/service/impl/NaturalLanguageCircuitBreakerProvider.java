@@ -0,0 +1,149 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.service.impl;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.natural.language.service.api.NaturalLanguageEncoding;
+import org.nuxeo.natural.language.service.api.NaturalLanguageFeature;
+import org.nuxeo.natural.language.service.api.NaturalLanguageProvider;
+import org.nuxeo.natural.language.service.api.NaturalLanguageRateLimitException;
+import org.nuxeo.natural.language.service.api.NaturalLanguageResponse;
+
+/**
+ * Wraps a provider with a {@link NaturalLanguageCircuitBreaker}. A batch
+ * ({@link #processTexts}) is one call for the breaker: it is rejected as a
+ * whole when the circuit is open, and fails the breaker if any of its texts
+ * fails with an unhealthy error. See {@link NaturalLanguageCircuitBreaker} for
+ * how the errors are counted.
+ *
+ * @since 9.10
+ */
+public class NaturalLanguageCircuitBreakerProvider extends NaturalLanguageProviderWrapper {
+
+	protected final NaturalLanguageCircuitBreaker circuitBreaker;
+
+	public NaturalLanguageCircuitBreakerProvider(NaturalLanguageProvider provider,
+			NaturalLanguageCircuitBreaker circuitBreaker) {
+		super(provider);
+		this.circuitBreaker = circuitBreaker;
+	}
+
+	public NaturalLanguageCircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	@Override
+	public NaturalLanguageResponse processText(String text, List<NaturalLanguageFeature> features,
+			NaturalLanguageEncoding encoding) throws NuxeoException {
+
+		circuitBreaker.acquire();
+		try {
+			NaturalLanguageResponse response = provider.processText(text, features, encoding);
+			circuitBreaker.onResult(true);
+			return response;
+		} catch (RuntimeException e) {
+			onError(e);
+			throw e;
+		}
+	}
+
+	@Override
+	public CompletableFuture<NaturalLanguageResponse> processTextAsync(String text,
+			List<NaturalLanguageFeature> features, NaturalLanguageEncoding encoding, Executor executor) {
+
+		try {
+			circuitBreaker.acquire();
+		} catch (NuxeoException e) {
+			return failedFuture(e);
+		}
+
+		CompletableFuture<NaturalLanguageResponse> future;
+		try {
+			future = provider.processTextAsync(text, features, encoding, executor);
+		} catch (RuntimeException e) {
+			onError(e);
+			return failedFuture(e);
+		}
+		future.whenComplete((response, t) -> {
+			if (t == null) {
+				circuitBreaker.onResult(true);
+			} else {
+				onError(t instanceof CompletionException && t.getCause() != null ? t.getCause() : t);
+			}
+		});
+
+		return future;
+	}
+
+	@Override
+	public List<NaturalLanguageResponse> processTexts(List<String> texts, List<NaturalLanguageFeature> features,
+			NaturalLanguageEncoding encoding, ExecutorService executor) throws NuxeoException {
+
+		circuitBreaker.acquire();
+		try {
+			List<NaturalLanguageResponse> responses = provider.processTexts(texts, features, encoding, executor);
+			circuitBreaker.onResult(true);
+			return responses;
+		} catch (RuntimeException e) {
+			onError(e);
+			throw e;
+		}
+	}
+
+	/*
+	 * Reports the error to the circuit breaker: a rejection by a local
+	 * limiter is ignored, a timeout, an overload or a retryable error
+	 * (unavailable, ...) is a failure, any other error (invalid text, ...)
+	 * means the provider answered
+	 */
+	protected void onError(Throwable t) {
+		if (isRejected(t)) {
+			circuitBreaker.onIgnored();
+		} else {
+			circuitBreaker.onResult(!isFailure(t));
+		}
+	}
+
+	protected boolean isFailure(Throwable t) {
+		return provider.isOverload(t) || provider.isRetryable(t);
+	}
+
+	protected static boolean isRejected(Throwable t) {
+		for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+			if (cause instanceof NaturalLanguageRateLimitException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void collectStatistics(Map<String, Object> stats) {
+		stats.put("circuitBreaker", circuitBreaker.getStatistics());
+		super.collectStatistics(stats);
+	}
+
+}
@@ -0,0 +1,150 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.service.impl;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.natural.language.service.api.NaturalLanguageDeadline;
+import org.nuxeo.natural.language.service.api.NaturalLanguageEncoding;
+import org.nuxeo.natural.language.service.api.NaturalLanguageFeature;
+import org.nuxeo.natural.language.service.api.NaturalLanguageProvider;
+import org.nuxeo.natural.language.service.api.NaturalLanguageResponse;
+
+/**
+ * Wraps a provider so the number of its requests in flight is bounded by a
+ * {@link NaturalLanguageConcurrencyLimiter}, for all the callers of the
+ * service. The slot is released when the response is received.
+ * <ul>
+ * <li>{@link #processText}: waits for the slot in the calling thread</li>
+ * <li>{@link #processTextAsync}: no thread waits, the request is sent when a
+ * slot is released by another request, from the thread which received its
+ * response</li>
+ * <li>{@link #processTexts}: each text of the batch takes a slot</li>
+ * </ul>
+ *
+ * @since 9.10
+ */
+public class NaturalLanguageConcurrencyLimitedProvider extends NaturalLanguageProviderWrapper {
+
+	protected final NaturalLanguageConcurrencyLimiter concurrencyLimiter;
+
+	protected ScheduledExecutorService timer = null;
+
+	public NaturalLanguageConcurrencyLimitedProvider(NaturalLanguageProvider provider,
+			NaturalLanguageConcurrencyLimiter concurrencyLimiter) {
+		super(provider);
+		this.concurrencyLimiter = concurrencyLimiter;
+	}
+
+	public NaturalLanguageConcurrencyLimiter getConcurrencyLimiter() {
+		return concurrencyLimiter;
+	}
+
+	@Override
+	public NaturalLanguageResponse processText(String text, List<NaturalLanguageFeature> features,
+			NaturalLanguageEncoding encoding) throws NuxeoException {
+
+		long start = concurrencyLimiter.acquire();
+		NaturalLanguageResponse response;
+		try {
+			response = provider.processText(text, features, encoding);
+		} catch (RuntimeException e) {
+			concurrencyLimiter.onError(start, provider.isOverload(e));
+			throw e;
+		}
+		concurrencyLimiter.onSuccess(start);
+
+		return response;
+	}
+
+	@Override
+	public CompletableFuture<NaturalLanguageResponse> processTextAsync(String text,
+			List<NaturalLanguageFeature> features, NaturalLanguageEncoding encoding, Executor executor) {
+
+		NaturalLanguageDeadline deadline = NaturalLanguageDeadline.current();
+		return concurrencyLimiter.acquireAsync(getTimer()).thenCompose(start -> {
+			CompletableFuture<NaturalLanguageResponse> future;
+			try {
+				future = NaturalLanguageDeadline.call(deadline,
+						() -> provider.processTextAsync(text, features, encoding, executor));
+			} catch (RuntimeException e) {
+				concurrencyLimiter.onError(start, provider.isOverload(e));
+				return failedFuture(e);
+			}
+			future.whenComplete((response, t) -> {
+				if (t == null) {
+					concurrencyLimiter.onSuccess(start);
+				} else {
+					concurrencyLimiter.onError(start, provider.isOverload(unwrap(t)));
+				}
+			});
+			return future;
+		});
+	}
+
+	/**
+	 * Each text of the batch is a request taking its own slot
+	 */
+	@Override
+	public List<NaturalLanguageResponse> processTexts(List<String> texts, List<NaturalLanguageFeature> features,
+			NaturalLanguageEncoding encoding, ExecutorService executor) throws NuxeoException {
+		return processEachText(texts, features, encoding, executor);
+	}
+
+	@Override
+	public void collectStatistics(Map<String, Object> stats) {
+		stats.put("concurrencyLimiter", concurrencyLimiter.getStatistics());
+		super.collectStatistics(stats);
+	}
+
+	protected static Throwable unwrap(Throwable t) {
+		return t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+	}
+
+	protected synchronized ScheduledExecutorService getTimer() {
+		if (timer == null) {
+			timer = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "NaturalLanguage-concurrencyLimiter");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return timer;
+	}
+
+	@Override
+	public void shutdown() {
+		synchronized (this) {
+			if (timer != null) {
+				timer.shutdownNow();
+				timer = null;
+			}
+		}
+		super.shutdown();
+	}
+
+}
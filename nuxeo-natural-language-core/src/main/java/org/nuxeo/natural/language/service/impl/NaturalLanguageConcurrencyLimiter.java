@@ -0,0 +1,338 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.service.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.nuxeo.natural.language.service.api.NaturalLanguageDeadline;
+import org.nuxeo.natural.language.service.api.NaturalLanguageDeadlineException;
+import org.nuxeo.natural.language.service.api.NaturalLanguageProviderException;
+import org.nuxeo.natural.language.service.api.NaturalLanguageRateLimitException;
+
+/**
+ * Adaptive limit of the number of requests in flight to a provider (AIMD:
+ * additive increase, multiplicative decrease), configured with the parameters
+ * of the provider contribution:
+ * <ul>
+ * <li><code>concurrency.maxLimit</code>: max. number of requests in flight. 0
+ * (default) disables the limiter</li>
+ * <li><code>concurrency.initialLimit</code> (default 4) and
+ * <code>concurrency.minLimit</code> (default 1)</li>
+ * <li><code>concurrency.backoffRatio</code>: the limit is multiplied by this
+ * ratio when the provider is overloaded (default 0.9)</li>
+ * <li><code>concurrency.latencyTolerance</code>: a request slower than this
+ * factor times the usual latency means the provider is overloaded (default
+ * 2)</li>
+ * <li><code>concurrency.timeoutMillis</code>: max. time to wait for a free
+ * slot (default 30000), or less if the deadline of the call is earlier (see
+ * {@link NaturalLanguageDeadline})</li>
+ * </ul>
+ * The limit grows by one every time a full limit of requests succeeded at the
+ * usual latency, as long as the limit is actually used. It shrinks on an
+ * overload error (see
+ * {@link org.nuxeo.natural.language.service.api.NaturalLanguageProvider#isOverload}:
+ * timeout, quota exceeded, ...) or a slow response; at most once per
+ * round-trip, so a burst of failures does not collapse it. Other errors
+ * (invalid text, ...) do not change it.
+ *
+ * @since 9.10
+ */
+public class NaturalLanguageConcurrencyLimiter {
+
+	public static final String MAX_LIMIT_PARAM = "concurrency.maxLimit";
+
+	public static final String INITIAL_LIMIT_PARAM = "concurrency.initialLimit";
+
+	public static final String MIN_LIMIT_PARAM = "concurrency.minLimit";
+
+	public static final String BACKOFF_RATIO_PARAM = "concurrency.backoffRatio";
+
+	public static final String LATENCY_TOLERANCE_PARAM = "concurrency.latencyTolerance";
+
+	public static final String TIMEOUT_MILLIS_PARAM = "concurrency.timeoutMillis";
+
+	public static final int DEFAULT_INITIAL_LIMIT = 4;
+
+	public static final int DEFAULT_MIN_LIMIT = 1;
+
+	public static final double DEFAULT_BACKOFF_RATIO = 0.9;
+
+	public static final double DEFAULT_LATENCY_TOLERANCE = 2;
+
+	public static final long DEFAULT_TIMEOUT_MILLIS = 30000;
+
+	/*
+	 * Weight of a new round-trip in the usual latency
+	 */
+	protected static final double RTT_SMOOTHING = 0.1;
+
+	protected final String providerName;
+
+	protected final int minLimit;
+
+	protected final int maxLimit;
+
+	protected final double backoffRatio;
+
+	protected final double latencyTolerance;
+
+	protected final long timeoutNanos;
+
+	protected double limit;
+
+	protected int inFlight = 0;
+
+	protected double usualRttNanos = 0;
+
+	protected long lastDecrease = System.nanoTime();
+
+	protected long successCount = 0;
+
+	protected long overloadCount = 0;
+
+	protected long rejectedCount = 0;
+
+	protected final Queue<CompletableFuture<Long>> waiters = new ArrayDeque<>();
+
+	public NaturalLanguageConcurrencyLimiter(String providerName, Map<String, String> parameters) {
+
+		this.providerName = providerName;
+		maxLimit = (int) NaturalLanguageParameters.getDouble(parameters, MAX_LIMIT_PARAM, 0);
+		minLimit = Math.max(1, (int) NaturalLanguageParameters.getDouble(parameters, MIN_LIMIT_PARAM,
+				DEFAULT_MIN_LIMIT));
+		double initialLimit = NaturalLanguageParameters.getDouble(parameters, INITIAL_LIMIT_PARAM,
+				DEFAULT_INITIAL_LIMIT);
+		limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+		backoffRatio = NaturalLanguageParameters.getDouble(parameters, BACKOFF_RATIO_PARAM, DEFAULT_BACKOFF_RATIO);
+		latencyTolerance = NaturalLanguageParameters.getDouble(parameters, LATENCY_TOLERANCE_PARAM,
+				DEFAULT_LATENCY_TOLERANCE);
+		timeoutNanos = TimeUnit.MILLISECONDS
+				.toNanos((long) NaturalLanguageParameters.getDouble(parameters, TIMEOUT_MILLIS_PARAM,
+						DEFAULT_TIMEOUT_MILLIS));
+	}
+
+	/**
+	 * @param parameters
+	 *            The parameters of the provider
+	 * @return true if the parameters define a max. limit
+	 */
+	public static boolean isConfigured(Map<String, String> parameters) {
+		return NaturalLanguageParameters.getDouble(parameters, MAX_LIMIT_PARAM, 0) > 0;
+	}
+
+	/**
+	 * Waits for a free slot. The caller must then call {@link #onSuccess} or
+	 * {@link #onError} when the request completes.
+	 *
+	 * @return the start time of the request, to pass to onSuccess/onError
+	 * @throws NaturalLanguageRateLimitException
+	 *             if no slot was free before the timeout
+	 * @throws NaturalLanguageDeadlineException
+	 *             if no slot was free before the deadline of the call
+	 */
+	public long acquire() throws NaturalLanguageRateLimitException {
+
+		NaturalLanguageDeadline callDeadline = NaturalLanguageDeadline.current();
+		boolean callDeadlineFirst = isCallDeadlineFirst(callDeadline);
+		long deadline = System.nanoTime() + (callDeadlineFirst ? callDeadline.getRemainingNanos() : timeoutNanos);
+		synchronized (this) {
+			while (inFlight >= (int) limit) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					throw reject(callDeadlineFirst);
+				}
+				try {
+					TimeUnit.NANOSECONDS.timedWait(this, remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new NaturalLanguageRateLimitException(providerName,
+							"Interrupted while waiting for a free slot for provider " + providerName);
+				}
+			}
+			inFlight++;
+		}
+
+		return System.nanoTime();
+	}
+
+	/**
+	 * Asynchronous version of {@link #acquire}: no thread waits for the slot.
+	 * When no slot is free, the returned future is queued and completed when
+	 * a request in flight releases its slot, in the thread completing that
+	 * request. It fails when the timeout or the deadline of the call is
+	 * reached first.
+	 *
+	 * @param timer
+	 *            Used to fail the future when no slot was free in time
+	 * @return the future start time of the request, to pass to
+	 *         onSuccess/onError
+	 */
+	public CompletableFuture<Long> acquireAsync(ScheduledExecutorService timer) {
+
+		CompletableFuture<Long> slot = new CompletableFuture<>();
+		synchronized (this) {
+			if (waiters.isEmpty() && inFlight < (int) limit) {
+				inFlight++;
+				slot.complete(System.nanoTime());
+				return slot;
+			}
+			waiters.add(slot);
+		}
+
+		NaturalLanguageDeadline callDeadline = NaturalLanguageDeadline.current();
+		boolean callDeadlineFirst = isCallDeadlineFirst(callDeadline);
+		long remaining = callDeadlineFirst ? callDeadline.getRemainingNanos() : timeoutNanos;
+		ScheduledFuture<?> expiry = timer.schedule(() -> {
+			synchronized (this) {
+				if (!waiters.remove(slot)) {
+					// Got a slot in the meantime
+					return;
+				}
+			}
+			slot.completeExceptionally(reject(callDeadlineFirst));
+		}, Math.max(0, remaining), TimeUnit.NANOSECONDS);
+		slot.whenComplete((start, t) -> expiry.cancel(false));
+
+		return slot;
+	}
+
+	protected boolean isCallDeadlineFirst(NaturalLanguageDeadline callDeadline) {
+		return callDeadline != null && callDeadline.getRemainingNanos() < timeoutNanos;
+	}
+
+	protected synchronized NaturalLanguageProviderException reject(boolean callDeadlineFirst) {
+		rejectedCount++;
+		NaturalLanguageMetrics.meter("provider", providerName, "concurrencyLimit", "rejected").mark();
+		if (callDeadlineFirst) {
+			return new NaturalLanguageDeadlineException(
+					"Deadline exceeded while waiting for a free slot for provider " + providerName);
+		}
+		return new NaturalLanguageRateLimitException(providerName,
+				"No free slot for provider " + providerName + " (" + (int) limit + " in flight)");
+	}
+
+	public void onSuccess(long start) {
+
+		long now = System.nanoTime();
+		long rtt = now - start;
+		List<CompletableFuture<Long>> granted;
+		synchronized (this) {
+			successCount++;
+			if (usualRttNanos == 0) {
+				usualRttNanos = rtt;
+			}
+			if (rtt > latencyTolerance * usualRttNanos) {
+				decrease(now);
+			} else if (inFlight >= limit / 2) {
+				// Only grow when the limit is actually used
+				limit = Math.min(maxLimit, limit + 1 / limit);
+			}
+			usualRttNanos += RTT_SMOOTHING * (rtt - usualRttNanos);
+			granted = release();
+		}
+		grant(granted);
+	}
+
+	/**
+	 * @param start
+	 *            The start time returned by {@link #acquire}
+	 * @param overload
+	 *            true if the error is a sign of overload, see
+	 *            {@link org.nuxeo.natural.language.service.api.NaturalLanguageProvider#isOverload}
+	 */
+	public void onError(long start, boolean overload) {
+
+		List<CompletableFuture<Long>> granted;
+		synchronized (this) {
+			if (overload) {
+				decrease(System.nanoTime());
+			}
+			granted = release();
+		}
+		grant(granted);
+	}
+
+	protected void decrease(long now) {
+		overloadCount++;
+		if (now - lastDecrease >= usualRttNanos) {
+			limit = Math.max(minLimit, limit * backoffRatio);
+			lastDecrease = now;
+		}
+	}
+
+	/*
+	 * Frees the slot, gives the free slots to the queued asynchronous
+	 * callers. Called with the lock held, the returned futures must be
+	 * completed without it (see grant()), as this runs the calls chained to
+	 * them
+	 */
+	protected List<CompletableFuture<Long>> release() {
+		inFlight--;
+		List<CompletableFuture<Long>> granted = new ArrayList<>();
+		while (inFlight < (int) limit && !waiters.isEmpty()) {
+			inFlight++;
+			granted.add(waiters.poll());
+		}
+		notifyAll();
+		return granted;
+	}
+
+	protected void grant(List<CompletableFuture<Long>> granted) {
+		for (CompletableFuture<Long> slot : granted) {
+			if (!slot.complete(System.nanoTime())) {
+				// Cancelled by the caller
+				onError(System.nanoTime(), false);
+			}
+		}
+	}
+
+	public synchronized int getLimit() {
+		return (int) limit;
+	}
+
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	public synchronized Map<String, Object> getStatistics() {
+
+		Map<String, Object> stats = new HashMap<>();
+		stats.put("limit", (int) limit);
+		stats.put("minLimit", minLimit);
+		stats.put("maxLimit", maxLimit);
+		stats.put("inFlight", inFlight);
+		stats.put("usualLatencyMillis", TimeUnit.NANOSECONDS.toMillis((long) usualRttNanos));
+		stats.put("succeeded", successCount);
+		stats.put("overloaded", overloadCount);
+		stats.put("rejected", rejectedCount);
+		stats.put("queued", waiters.size());
+
+		return stats;
+	}
+
+}
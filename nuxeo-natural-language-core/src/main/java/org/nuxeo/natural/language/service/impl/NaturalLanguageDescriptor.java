@@ -20,20 +20,43 @@
 package org.nuxeo.natural.language.service.impl;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.apache.commons.lang.StringUtils;
 import org.nuxeo.common.xmap.annotation.XNode;
 import org.nuxeo.common.xmap.annotation.XNodeList;
+import org.nuxeo.common.xmap.annotation.XNodeMap;
 import org.nuxeo.common.xmap.annotation.XObject;
 import org.nuxeo.natural.language.service.api.NaturalLanguage;
+import org.nuxeo.natural.language.service.api.NaturalLanguageFeature;
+import org.nuxeo.natural.language.service.api.NaturalLanguageSamplingStrategy;
 
 @XObject("configuration")
 public class NaturalLanguageDescriptor {
 
+	/**
+	 * @since 9.10
+	 */
+	public static final long DEFAULT_DOCUMENT_DEBOUNCE_MILLIS = 2000;
+
+	/**
+	 * @since 9.10
+	 */
+	public static final int DEFAULT_EXTRACTION_MAX_CHARS = 10000000;
+
 	@XNode("defaultProviderName")
 	protected String defaultProviderName = NaturalLanguage.DEFAULT_PROVIDER_NAME;
 
 	@XNode("defaultDocumentProcessingChainName")
-	protected String defaultDocumentProcessingChainName = NaturalLanguage.DEFAULT_PROCESSING_CHAIN;
+	protected String defaultDocumentProcessingChainName;
+
+	@XNode("documentProcessor@class")
+	protected Class<?> documentProcessorClass = DefaultNaturalLanguageDocumentProcessor.class;
+
+	@XNodeMap(value = "documentProcessor/parameters/parameter", key = "@name", type = HashMap.class, componentType = String.class)
+	protected Map<String, String> documentProcessorParameters = new HashMap<>();
 
 	@XNode("enableDocumentListener")
 	protected Boolean enableDocumentListener = false;
@@ -44,6 +67,39 @@ public class NaturalLanguageDescriptor {
 	@XNodeList(value = "doNotAnalyzeIf/type", type = ArrayList.class, componentType = String.class)
 	protected ArrayList<String> autoAnalyzeExcludedDocTypes;
 
+	@XNode("responseCache@enabled")
+	protected boolean responseCacheEnabled = true;
+
+	@XNode("responseCache@class")
+	protected Class<?> responseCacheClass = NaturalLanguageResponseCacheImpl.class;
+
+	@XNodeMap(value = "responseCache/parameters/parameter", key = "@name", type = HashMap.class, componentType = String.class)
+	protected Map<String, String> responseCacheParameters = new HashMap<>();
+
+	@XNode("batchParallelism")
+	protected int batchParallelism = 4;
+
+	@XNode("extraction@maxChars")
+	protected int extractionMaxChars = DEFAULT_EXTRACTION_MAX_CHARS;
+
+	@XNode("textBudget@strategy")
+	protected String samplingStrategy;
+
+	@XNodeMap(value = "textBudget/maxChars", key = "@feature", type = HashMap.class, componentType = Integer.class)
+	protected Map<String, Integer> textBudgets = new HashMap<>();
+
+	@XNode("chunking@maxBytes")
+	protected int chunkMaxBytes = 0;
+
+	@XNode("documentDebounceMillis")
+	protected long documentDebounceMillis = DEFAULT_DOCUMENT_DEBOUNCE_MILLIS;
+
+	@XNode("textCache@enabled")
+	protected boolean textCacheEnabled = true;
+
+	@XNodeMap(value = "textCache/parameters/parameter", key = "@name", type = HashMap.class, componentType = String.class)
+	protected Map<String, String> textCacheParameters = new HashMap<>();
+
 	public String getDefaultProviderName() {
 		if (StringUtils.isBlank(defaultProviderName)) {
 			return NaturalLanguage.DEFAULT_PROVIDER_NAME;
@@ -55,8 +111,30 @@ public class NaturalLanguageDescriptor {
 		return enableDocumentListener;
 	}
 
+	/**
+	 * @return the chain used to process documents, {@code null} if the
+	 *         document processor must be used
+	 */
 	public String getDefaultDocumentProcessingChainName() {
-		return defaultDocumentProcessingChainName;
+		return StringUtils.isBlank(defaultDocumentProcessingChainName) ? null
+				: defaultDocumentProcessingChainName.trim();
+	}
+
+	/**
+	 * @since 9.10
+	 */
+	public Class<?> getDocumentProcessorClass() {
+		if (documentProcessorClass == null) {
+			return DefaultNaturalLanguageDocumentProcessor.class;
+		}
+		return documentProcessorClass;
+	}
+
+	/**
+	 * @since 9.10
+	 */
+	public Map<String, String> getDocumentProcessorParameters() {
+		return documentProcessorParameters;
 	}
 
 	public ArrayList<String> getAnalyzeExcludedFacets() {
@@ -66,4 +144,108 @@ public class NaturalLanguageDescriptor {
 	public ArrayList<String> getAnalyzeExcludedDocTypes() {
 		return autoAnalyzeExcludedDocTypes;
 	}
+
+	/**
+	 * @since 9.10
+	 */
+	public boolean isResponseCacheEnabled() {
+		return responseCacheEnabled;
+	}
+
+	/**
+	 * @since 9.10
+	 */
+	public Class<?> getResponseCacheClass() {
+		if (responseCacheClass == null) {
+			return NaturalLanguageResponseCacheImpl.class;
+		}
+		return responseCacheClass;
+	}
+
+	/**
+	 * @since 9.10
+	 */
+	public Map<String, String> getResponseCacheParameters() {
+		return responseCacheParameters;
+	}
+
+	/**
+	 * @return the max number of texts analyzed in parallel by the batch APIs
+	 * @since 9.10
+	 */
+	public int getBatchParallelism() {
+		return batchParallelism <= 0 ? 1 : batchParallelism;
+	}
+
+	/**
+	 * @return the max. number of chars read from the text extracted from a
+	 *         blob. 0 means no limit
+	 * @since 9.10
+	 */
+	public int getExtractionMaxChars() {
+		return extractionMaxChars;
+	}
+
+	/**
+	 * @return the strategy used to reduce a text bigger than the budget of the
+	 *         requested features
+	 * @since 9.10
+	 */
+	public NaturalLanguageSamplingStrategy getSamplingStrategy() {
+		return NaturalLanguageSamplingStrategy.fromString(samplingStrategy);
+	}
+
+	/**
+	 * @param features
+	 * @return the max. number of chars to send to the provider for these
+	 *         features: the biggest budget of the features, as each feature
+	 *         must get at least its own budget. 0 (no limit) if one of them
+	 *         has no budget
+	 * @since 9.10
+	 */
+	public int getTextBudget(List<NaturalLanguageFeature> features) {
+
+		int budget = 0;
+		for (NaturalLanguageFeature feature : features) {
+			Integer maxChars = textBudgets.get(feature.name());
+			if (maxChars == null || maxChars <= 0) {
+				return 0;
+			}
+			budget = Math.max(budget, maxChars);
+		}
+
+		return budget;
+	}
+
+	/**
+	 * @return the max. UTF-8 size of the text sent in one call to the
+	 *         provider. Bigger texts are split in chunks. 0 means no limit
+	 * @since 9.10
+	 */
+	public int getChunkMaxBytes() {
+		return chunkMaxBytes;
+	}
+
+	/**
+	 * @return the window during which the events received for a document are
+	 *         coalesced before analyzing it. 0 means no debounce
+	 * @since 9.10
+	 */
+	public long getDocumentDebounceMillis() {
+		return documentDebounceMillis;
+	}
+
+	/**
+	 * @since 9.10
+	 */
+	public boolean isTextCacheEnabled() {
+		return textCacheEnabled;
+	}
+
+	/**
+	 * @since 9.10
+	 */
+	public Map<String, String> getTextCacheParameters() {
+		return textCacheParameters;
+	}
 }
@@ -0,0 +1,182 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.service.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.work.api.WorkManager;
+import org.nuxeo.ecm.core.work.api.WorkManager.Scheduling;
+import org.nuxeo.natural.language.service.api.NaturalLanguageDocumentCoalescer;
+import org.nuxeo.runtime.api.Framework;
+
+/**
+ * Default {@link NaturalLanguageDocumentCoalescer}. A deferred analysis
+ * schedules a single {@link NaturalLanguageWork} when the window ends. Works
+ * have one id per document, so the ones scheduled meanwhile are coalesced by
+ * the WorkManager.
+ * <p>
+ * The state is local to the node. In a cluster, the work of a document can
+ * run on another node than the one which received the event, so the windows
+ * are also forgotten once expired.
+ *
+ * @since 9.10
+ */
+public class NaturalLanguageDocumentCoalescerImpl implements NaturalLanguageDocumentCoalescer {
+
+	private static final Log log = LogFactory.getLog(NaturalLanguageDocumentCoalescerImpl.class);
+
+	protected final LongSupplier debounceMillis;
+
+	protected final Map<String, Long> lastEvents = new ConcurrentHashMap<>();
+
+	protected final Map<String, ScheduledFuture<?>> deferred = new ConcurrentHashMap<>();
+
+	protected final AtomicLong coalescedCount = new AtomicLong();
+
+	protected final AtomicLong nextPurge = new AtomicLong();
+
+	protected ScheduledExecutorService timer;
+
+	/**
+	 * @param debounceMillis
+	 *            supplies the current debounce window, so a new configuration
+	 *            is used without re-creating the coalescer
+	 */
+	public NaturalLanguageDocumentCoalescerImpl(LongSupplier debounceMillis) {
+		this.debounceMillis = debounceMillis;
+	}
+
+	protected static String getKey(String repositoryName, String docId) {
+		return repositoryName + ":" + docId;
+	}
+
+	@Override
+	public long getDebounceMillis() {
+		return Math.max(0, debounceMillis.getAsLong());
+	}
+
+	@Override
+	public void touch(String repositoryName, String docId) {
+		long window = getDebounceMillis();
+		if (window > 0) {
+			long now = System.currentTimeMillis();
+			if (lastEvents.put(getKey(repositoryName, docId), now) != null) {
+				coalescedCount.incrementAndGet();
+			}
+			purgeExpired(now, window);
+		}
+	}
+
+	/*
+	 * Forgets the windows which are over, at most once per window. They are
+	 * normally removed by done(), but not when the work ran on another node.
+	 */
+	protected void purgeExpired(long now, long window) {
+		long next = nextPurge.get();
+		if (now >= next && nextPurge.compareAndSet(next, now + window)) {
+			lastEvents.values().removeIf(last -> last + window <= now);
+		}
+	}
+
+	@Override
+	public long getRemainingMillis(String repositoryName, String docId) {
+		Long last = lastEvents.get(getKey(repositoryName, docId));
+		if (last == null) {
+			return 0;
+		}
+		return Math.max(0, last + getDebounceMillis() - System.currentTimeMillis());
+	}
+
+	@Override
+	public void defer(String repositoryName, String docId, String originatingUsername, long delayMillis) {
+
+		String key = getKey(repositoryName, docId);
+		ScheduledFuture<?> future = getTimer().schedule(() -> {
+			Framework.getService(WorkManager.class).schedule(
+					new NaturalLanguageWork(repositoryName, docId, originatingUsername), Scheduling.IF_NOT_SCHEDULED);
+			// Remove it, unless it was replaced by a new one in the meantime
+			deferred.computeIfPresent(key, (k, f) -> f.getDelay(TimeUnit.MILLISECONDS) <= 0 ? null : f);
+		}, delayMillis, TimeUnit.MILLISECONDS);
+
+		ScheduledFuture<?> previous = deferred.put(key, future);
+		if (previous != null) {
+			previous.cancel(false);
+		}
+	}
+
+	@Override
+	public void done(String repositoryName, String docId, long startedAt) {
+		String key = getKey(repositoryName, docId);
+		Long last = lastEvents.get(key);
+		if (last != null && last <= startedAt) {
+			lastEvents.remove(key, last);
+		}
+	}
+
+	@Override
+	public int getDeferredCount() {
+		return deferred.size();
+	}
+
+	@Override
+	public Map<String, Object> getStatistics() {
+
+		Map<String, Object> stats = new HashMap<>();
+		stats.put("debounceMillis", getDebounceMillis());
+		stats.put("pendingDocuments", lastEvents.size());
+		stats.put("deferredDocuments", getDeferredCount());
+		stats.put("coalescedEvents", coalescedCount.get());
+
+		return stats;
+	}
+
+	protected synchronized ScheduledExecutorService getTimer() {
+		if (timer == null) {
+			timer = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "NaturalLanguage-coalescer");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return timer;
+	}
+
+	public synchronized void shutdown() {
+		if (timer != null) {
+			int dropped = timer.shutdownNow().size();
+			if (dropped > 0) {
+				log.warn(dropped + " deferred document analysis dropped at shutdown");
+			}
+			timer = null;
+		}
+		deferred.clear();
+		lastEvents.clear();
+	}
+
+}
@@ -0,0 +1,184 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.service.impl;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.natural.language.service.api.NaturalLanguageFeature;
+
+/**
+ * Marks the phases of an analysis (text extraction, provider call, response
+ * mapping, JSON serialization, document save) so profilers can show them as
+ * discrete operations, with the document, the length of the text, the
+ * provider and the features.
+ * <p>
+ * The events are Java Flight Recorder events, emitted by the
+ * <code>nuxeo-natural-language-jfr</code> module when its jar is deployed
+ * and the JVM has the JFR API (<code>jdk.jfr</code>, JDK 11 or a JDK 8 with
+ * the backport). Otherwise, and on older JDK 8, {@link #begin} returns a span
+ * doing nothing.
+ * <p>
+ * A span is used in a try-with-resources:
+ *
+ * <pre>
+ * try (Span span = NaturalLanguageEvents.begin(Phase.EXTRACTION)) {
+ * 	text = ...;
+ * 	span.textLength(text.length());
+ * }
+ * </pre>
+ *
+ * @since 9.10
+ */
+public class NaturalLanguageEvents {
+
+	private static final Log log = LogFactory.getLog(NaturalLanguageEvents.class);
+
+	public enum Phase {
+		EXTRACTION, PROVIDER_CALL, RESPONSE_MAPPING, JSON_SERIALIZATION, DOCUMENT_SAVE
+	}
+
+	/**
+	 * A phase in progress. Closing it records the event
+	 */
+	public interface Span extends AutoCloseable {
+
+		Span provider(String providerName);
+
+		Span features(List<NaturalLanguageFeature> features);
+
+		Span textLength(long textLength);
+
+		@Override
+		void close();
+	}
+
+	/**
+	 * Creates the spans, implemented by the JFR module
+	 */
+	public interface Factory {
+
+		/**
+		 * @param phase
+		 * @param documentId
+		 *            The document being analyzed, can be {@code null}
+		 * @return the span, already started
+		 */
+		Span begin(Phase phase, String documentId);
+	}
+
+	protected static final String JFR_EVENT_CLASS = "jdk.jfr.Event";
+
+	protected static final String JFR_FACTORY_CLASS = "org.nuxeo.natural.language.jfr.NaturalLanguageJfrEventFactory";
+
+	protected static final Span NOOP = new Span() {
+
+		@Override
+		public Span provider(String providerName) {
+			return this;
+		}
+
+		@Override
+		public Span features(List<NaturalLanguageFeature> features) {
+			return this;
+		}
+
+		@Override
+		public Span textLength(long textLength) {
+			return this;
+		}
+
+		@Override
+		public void close() {
+			// Nothing recorded
+		}
+	};
+
+	protected static final ThreadLocal<String> DOCUMENT_ID = new ThreadLocal<>();
+
+	protected static final Factory factory = loadFactory();
+
+	private NaturalLanguageEvents() {
+		// Utility class
+	}
+
+	/*
+	 * The JFR factory, only if the JVM has the JFR API: the module is
+	 * compiled against it and cannot even be loaded otherwise
+	 */
+	protected static Factory loadFactory() {
+		try {
+			Class.forName(JFR_EVENT_CLASS);
+		} catch (ClassNotFoundException e) {
+			return null;
+		}
+		try {
+			return (Factory) Class.forName(JFR_FACTORY_CLASS).newInstance();
+		} catch (ClassNotFoundException e) {
+			// Module not deployed
+			return null;
+		} catch (ReflectiveOperationException | LinkageError e) {
+			log.warn("Cannot load the JFR events of the natural language service", e);
+			return null;
+		}
+	}
+
+	/**
+	 * @return true if the events are emitted
+	 */
+	public static boolean isEnabled() {
+		return factory != null;
+	}
+
+	/**
+	 * Starts a phase, for the document of the current thread, if any (see
+	 * {@link #call})
+	 */
+	public static Span begin(Phase phase) {
+		return factory == null ? NOOP : factory.begin(phase, DOCUMENT_ID.get());
+	}
+
+	/**
+	 * Calls the supplier with this document as the one of the events of the
+	 * current thread
+	 *
+	 * @param documentId
+	 * @param supplier
+	 * @return the result of the supplier
+	 */
+	public static <T> T call(String documentId, Supplier<T> supplier) {
+		if (factory == null) {
+			return supplier.get();
+		}
+		String previous = DOCUMENT_ID.get();
+		DOCUMENT_ID.set(documentId);
+		try {
+			return supplier.get();
+		} finally {
+			if (previous == null) {
+				DOCUMENT_ID.remove();
+			} else {
+				DOCUMENT_ID.set(previous);
+			}
+		}
+	}
+
+}
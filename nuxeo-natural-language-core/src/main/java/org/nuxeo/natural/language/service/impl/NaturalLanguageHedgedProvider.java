@@ -0,0 +1,220 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.service.impl;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.natural.language.service.api.NaturalLanguageDeadline;
+import org.nuxeo.natural.language.service.api.NaturalLanguageEncoding;
+import org.nuxeo.natural.language.service.api.NaturalLanguageFeature;
+import org.nuxeo.natural.language.service.api.NaturalLanguageProvider;
+import org.nuxeo.natural.language.service.api.NaturalLanguageResponse;
+
+/**
+ * Wraps a provider so a call still waiting for its response after the delay
+ * given by a {@link NaturalLanguageHedgingPolicy} sends a second request for
+ * the same text. The first response received is used, the other request is
+ * cancelled. The call fails only if both requests fail.
+ * <p>
+ * Only single texts ({@link #processText}, {@link #processTextAsync}) are
+ * hedged: {@link #processTexts} is a batch, where the latency of one text
+ * matters less, and is delegated as is.
+ *
+ * @since 9.10
+ */
+public class NaturalLanguageHedgedProvider extends NaturalLanguageProviderWrapper {
+
+	protected final NaturalLanguageHedgingPolicy hedgingPolicy;
+
+	protected ScheduledExecutorService timer = null;
+
+	/*
+	 * Sends the requests when the caller gives no executor, so the first
+	 * request does not block the thread which would send the second one.
+	 * Bounded by the hedge.executorThreads parameter
+	 */
+	protected ExecutorService executor = null;
+
+	public NaturalLanguageHedgedProvider(NaturalLanguageProvider provider, NaturalLanguageHedgingPolicy hedgingPolicy) {
+		super(provider);
+		this.hedgingPolicy = hedgingPolicy;
+	}
+
+	public NaturalLanguageHedgingPolicy getHedgingPolicy() {
+		return hedgingPolicy;
+	}
+
+	@Override
+	public NaturalLanguageResponse processText(String text, List<NaturalLanguageFeature> features,
+			NaturalLanguageEncoding encoding) throws NuxeoException {
+		return NaturalLanguageProvider.get(processTextAsync(text, features, encoding, null));
+	}
+
+	@Override
+	public CompletableFuture<NaturalLanguageResponse> processTextAsync(String text,
+			List<NaturalLanguageFeature> features, NaturalLanguageEncoding encoding, Executor executor) {
+
+		Executor requestExecutor = executor == null ? getExecutor() : executor;
+		long delayNanos = hedgingPolicy.onCall(text);
+		HedgedCall call = new HedgedCall();
+		call.send(false, () -> provider.processTextAsync(text, features, encoding, requestExecutor));
+
+		if (delayNanos >= 0) {
+			NaturalLanguageDeadline deadline = NaturalLanguageDeadline.current();
+			ScheduledFuture<?> trigger = getTimer().schedule(() -> {
+				if (!call.result.isDone() && hedgingPolicy.tryHedge()) {
+					// Sent by the executor, the wrapped providers may wait
+					// for a permit
+					requestExecutor.execute(() -> call.send(true, () -> NaturalLanguageDeadline.call(deadline,
+							() -> provider.processTextAsync(text, features, encoding, requestExecutor))));
+				}
+			}, delayNanos, TimeUnit.NANOSECONDS);
+			call.result.whenComplete((response, t) -> trigger.cancel(false));
+		}
+
+		return call.result;
+	}
+
+	/*
+	 * The requests sent for a text, completing the result with the first
+	 * response
+	 */
+	protected class HedgedCall {
+
+		protected final CompletableFuture<NaturalLanguageResponse> result = new CompletableFuture<>();
+
+		protected final AtomicInteger pending = new AtomicInteger();
+
+		protected void send(boolean hedge, Supplier<CompletableFuture<NaturalLanguageResponse>> request) {
+
+			synchronized (this) {
+				if (result.isDone()) {
+					return;
+				}
+				pending.incrementAndGet();
+			}
+
+			long start = System.nanoTime();
+			CompletableFuture<NaturalLanguageResponse> future;
+			try {
+				future = request.get();
+			} catch (RuntimeException e) {
+				future = failedFuture(e);
+			}
+			// Cancelling the call, or completing it with the other request,
+			// cancels this one
+			CompletableFuture<NaturalLanguageResponse> sent = future;
+			result.whenComplete((response, t) -> {
+				if (!sent.isDone()) {
+					sent.cancel(true);
+				}
+			});
+
+			sent.whenComplete((response, t) -> {
+				long latency = System.nanoTime() - start;
+				if (t == null) {
+					if (result.complete(response)) {
+						hedgingPolicy.onResponse(latency, hedge);
+					} else {
+						// Lost to the other request
+						hedgingPolicy.onLatency(latency);
+					}
+					return;
+				}
+				if (t instanceof CancellationException) {
+					// Cancelled as the other request answered first: it
+					// took at least this long
+					hedgingPolicy.onLatency(latency);
+				}
+				Throwable error = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+				synchronized (this) {
+					// The last pending request fails the call
+					if (pending.decrementAndGet() == 0) {
+						result.completeExceptionally(error);
+					}
+				}
+			});
+		}
+	}
+
+	@Override
+	public void collectStatistics(Map<String, Object> stats) {
+		stats.put("hedging", hedgingPolicy.getStatistics());
+		super.collectStatistics(stats);
+	}
+
+	protected synchronized ScheduledExecutorService getTimer() {
+		if (timer == null) {
+			timer = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "NaturalLanguage-hedge-timer");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return timer;
+	}
+
+	protected synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			AtomicInteger count = new AtomicInteger();
+			int threads = hedgingPolicy.getExecutorThreads();
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<>(), r -> {
+						Thread t = new Thread(r, "NaturalLanguage-hedge-" + count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					});
+			// Idle threads are not kept
+			pool.allowCoreThreadTimeOut(true);
+			executor = pool;
+		}
+		return executor;
+	}
+
+	@Override
+	public void shutdown() {
+		synchronized (this) {
+			if (timer != null) {
+				timer.shutdownNow();
+				timer = null;
+			}
+			if (executor != null) {
+				executor.shutdownNow();
+				executor = null;
+			}
+		}
+		super.shutdown();
+	}
+
+}
@@ -0,0 +1,231 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.service.impl;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hedging policy for the calls to a provider, configured with the parameters
+ * of the provider contribution:
+ * <ul>
+ * <li><code>hedge.percentile</code>: a second request is sent for a call which
+ * did not get its response after this percentile of the recent latencies
+ * (e.g. 95). 0 (default) disables hedging</li>
+ * <li><code>hedge.minDelayMillis</code>: min. delay before sending the second
+ * request (default 50)</li>
+ * <li><code>hedge.maxTextLength</code>: only the texts up to this number of
+ * chars are hedged (default 2000), as duplicating a big request costs
+ * more than it saves. 0 means any text</li>
+ * <li><code>hedge.maxRatio</code>: max. number of second requests, as a ratio
+ * of the calls (default 0.05), so hedging cannot add more than this to the
+ * load of a slow provider</li>
+ * <li><code>hedge.executorThreads</code>: max. number of threads sending the
+ * requests when the caller gives no executor (default
+ * {@value #DEFAULT_EXECUTOR_THREADS}), the requests wait in a queue
+ * beyond</li>
+ * </ul>
+ * The percentile is computed on the latencies of the last
+ * {@value #WINDOW_SIZE} requests. The requests cancelled because the other
+ * one answered first count with the time they waited, so the slow requests
+ * which lost are not missing from the latencies. No call is hedged before
+ * {@value #MIN_SAMPLES} latencies were recorded.
+ *
+ * @since 9.10
+ */
+public class NaturalLanguageHedgingPolicy {
+
+	public static final String PERCENTILE_PARAM = "hedge.percentile";
+
+	public static final String MIN_DELAY_MILLIS_PARAM = "hedge.minDelayMillis";
+
+	public static final String MAX_TEXT_LENGTH_PARAM = "hedge.maxTextLength";
+
+	public static final String MAX_RATIO_PARAM = "hedge.maxRatio";
+
+	public static final String EXECUTOR_THREADS_PARAM = "hedge.executorThreads";
+
+	public static final long DEFAULT_MIN_DELAY_MILLIS = 50;
+
+	public static final int DEFAULT_MAX_TEXT_LENGTH = 2000;
+
+	public static final double DEFAULT_MAX_RATIO = 0.05;
+
+	public static final int DEFAULT_EXECUTOR_THREADS = 16;
+
+	public static final int WINDOW_SIZE = 1000;
+
+	public static final int MIN_SAMPLES = 20;
+
+	/*
+	 * The percentile is computed again after this number of new samples
+	 */
+	protected static final int REFRESH_INTERVAL = 50;
+
+	/*
+	 * Max. number of second requests which can be sent in a row, after a
+	 * period without hedging
+	 */
+	protected static final double MAX_BUDGET = 10;
+
+	protected final double percentile;
+
+	protected final long minDelayNanos;
+
+	protected final int maxTextLength;
+
+	protected final double maxRatio;
+
+	protected final int executorThreads;
+
+	protected final long[] latencies = new long[WINDOW_SIZE];
+
+	protected int sampleCount = 0;
+
+	protected int samplesSinceRefresh = 0;
+
+	protected long delayNanos = -1;
+
+	protected double budget = MAX_BUDGET;
+
+	protected long callCount = 0;
+
+	protected long hedgedCount = 0;
+
+	protected long hedgeWonCount = 0;
+
+	protected long budgetRejectedCount = 0;
+
+	public NaturalLanguageHedgingPolicy(Map<String, String> parameters) {
+		percentile = Math.min(100, NaturalLanguageParameters.getDouble(parameters, PERCENTILE_PARAM, 0));
+		minDelayNanos = TimeUnit.MILLISECONDS
+				.toNanos((long) NaturalLanguageParameters.getDouble(parameters, MIN_DELAY_MILLIS_PARAM,
+						DEFAULT_MIN_DELAY_MILLIS));
+		maxTextLength = (int) NaturalLanguageParameters.getDouble(parameters, MAX_TEXT_LENGTH_PARAM,
+				DEFAULT_MAX_TEXT_LENGTH);
+		maxRatio = NaturalLanguageParameters.getDouble(parameters, MAX_RATIO_PARAM, DEFAULT_MAX_RATIO);
+		executorThreads = Math.max(1, (int) NaturalLanguageParameters.getDouble(parameters, EXECUTOR_THREADS_PARAM,
+				DEFAULT_EXECUTOR_THREADS));
+	}
+
+	/**
+	 * @param parameters
+	 *            The parameters of the provider
+	 * @return true if the parameters define a percentile
+	 */
+	public static boolean isConfigured(Map<String, String> parameters) {
+		return NaturalLanguageParameters.getDouble(parameters, PERCENTILE_PARAM, 0) > 0;
+	}
+
+	/**
+	 * Called at the start of each call. Adds to the budget of second requests.
+	 *
+	 * @param text
+	 * @return the delay after which a second request can be sent, -1 if the
+	 *         call must not be hedged
+	 */
+	public synchronized long onCall(String text) {
+		callCount++;
+		budget = Math.min(MAX_BUDGET, budget + maxRatio);
+		if (maxTextLength > 0 && text.length() > maxTextLength) {
+			return -1;
+		}
+		return delayNanos < 0 ? -1 : Math.max(minDelayNanos, delayNanos);
+	}
+
+	/**
+	 * Takes a second request from the budget.
+	 *
+	 * @return true if the second request can be sent
+	 */
+	public synchronized boolean tryHedge() {
+		if (budget < 1) {
+			budgetRejectedCount++;
+			return false;
+		}
+		budget--;
+		hedgedCount++;
+		return true;
+	}
+
+	/**
+	 * @param latencyNanos
+	 *            The latency of the request whose response was used
+	 * @param hedge
+	 *            If the response of the second request was used
+	 */
+	public synchronized void onResponse(long latencyNanos, boolean hedge) {
+		if (hedge) {
+			hedgeWonCount++;
+		}
+		onLatency(latencyNanos);
+	}
+
+	/**
+	 * Records the latency of a request whose response was not used: received
+	 * after the other one, or the time waited until it was cancelled
+	 *
+	 * @param latencyNanos
+	 */
+	public synchronized void onLatency(long latencyNanos) {
+		latencies[sampleCount % WINDOW_SIZE] = latencyNanos;
+		sampleCount++;
+		samplesSinceRefresh++;
+		if (sampleCount == MIN_SAMPLES || (sampleCount > MIN_SAMPLES && samplesSinceRefresh >= REFRESH_INTERVAL)) {
+			samplesSinceRefresh = 0;
+			int size = Math.min(sampleCount, WINDOW_SIZE);
+			long[] sorted = Arrays.copyOf(latencies, size);
+			Arrays.sort(sorted);
+			int index = (int) Math.ceil(size * percentile / 100) - 1;
+			delayNanos = sorted[Math.max(0, Math.min(size - 1, index))];
+		}
+	}
+
+	public int getExecutorThreads() {
+		return executorThreads;
+	}
+
+	/**
+	 * @return the current delay before a second request, -1 if not known yet
+	 */
+	public synchronized long getDelayMillis() {
+		return delayNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(Math.max(minDelayNanos, delayNanos));
+	}
+
+	public synchronized long getHedgedCount() {
+		return hedgedCount;
+	}
+
+	public synchronized Map<String, Object> getStatistics() {
+
+		Map<String, Object> stats = new HashMap<>();
+		stats.put("percentile", percentile);
+		stats.put("delayMillis", getDelayMillis());
+		stats.put("calls", callCount);
+		stats.put("hedged", hedgedCount);
+		stats.put("hedgeWon", hedgeWonCount);
+		stats.put("budgetRejected", budgetRejectedCount);
+		stats.put("samples", sampleCount);
+
+		return stats;
+	}
+
+}
@@ -21,9 +21,16 @@ package org.nuxeo.natural.language.service.impl;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
@@ -37,16 +44,30 @@ import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
 import org.nuxeo.ecm.core.api.blobholder.SimpleBlobHolder;
 import org.nuxeo.ecm.core.convert.api.ConversionException;
 import org.nuxeo.ecm.core.convert.api.ConversionService;
+import org.nuxeo.ecm.core.work.api.Work;
+import org.nuxeo.ecm.core.work.api.WorkManager;
 import org.nuxeo.natural.language.service.api.NaturalLanguage;
+import org.nuxeo.natural.language.service.api.NaturalLanguageDeadline;
+import org.nuxeo.natural.language.service.api.NaturalLanguageDocumentCoalescer;
+import org.nuxeo.natural.language.service.api.NaturalLanguageDocumentProcessor;
 import org.nuxeo.natural.language.service.api.NaturalLanguageEncoding;
 import org.nuxeo.natural.language.service.api.NaturalLanguageFeature;
 import org.nuxeo.natural.language.service.api.NaturalLanguageProvider;
 import org.nuxeo.natural.language.service.api.NaturalLanguageResponse;
+import org.nuxeo.natural.language.service.api.NaturalLanguageResponseCache;
+import org.nuxeo.natural.language.service.api.NaturalLanguageSamplingStrategy;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageEvents.Phase;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageEvents.Span;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageTextChunker.Chunk;
 import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.model.ComponentContext;
 import org.nuxeo.runtime.model.ComponentInstance;
 import org.nuxeo.runtime.model.DefaultComponent;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
 /**
  * Implementation of the NaturalLanguage service
  *
@@ -64,8 +85,31 @@ public class NaturalLanguageImpl extends DefaultComponent implements NaturalLang
 
 	protected Map<String, NaturalLanguageProvider> providers = new HashMap<>();
 
+	/*
+	 * Providers whose parameters define limits or retries, wrapped. Used for
+	 * the calls made by the service
+	 */
+	protected Map<String, NaturalLanguageProviderWrapper> wrappedProviders = new HashMap<>();
+
+	/*
+	 * Max. duration of a call, by provider name
+	 */
+	protected Map<String, Long> defaultTimeouts = new HashMap<>();
+
 	protected Boolean documentListenerEnabled = null;
 
+	protected NaturalLanguageResponseCache responseCache = null;
+
+	protected NaturalLanguageTextCache textCache = null;
+
+	protected ExecutorService batchExecutor = null;
+
+	protected NaturalLanguageDocumentProcessor documentProcessor = null;
+
+	protected final NaturalLanguageDocumentCoalescerImpl documentCoalescer = new NaturalLanguageDocumentCoalescerImpl(
+			() -> config == null ? NaturalLanguageDescriptor.DEFAULT_DOCUMENT_DEBOUNCE_MILLIS
+					: config.getDocumentDebounceMillis());
+
 	@Override
 	public JSONObject getServiceConfiguration(DocumentModel doc) {
 
@@ -74,11 +118,29 @@ public class NaturalLanguageImpl extends DefaultComponent implements NaturalLang
 		try {
 
 			obj.put("listenerEnabled", isDocumentListenerEnabled());
-			obj.put("defaultProcessingChainName", getDefaultDocumentProcessingChainName());
+			obj.put("defaultProcessingChainName", StringUtils.defaultString(getDefaultDocumentProcessingChainName()));
+			obj.put("documentProcessor", getDocumentProcessor().getClass().getName());
 			obj.put("excludedFacets", getAnalyzeExcludedFacets());
 			obj.put("excludedDocTypes", getAnalyzeExcludedDocTypes());
 			obj.put("canProcessDocument", doc == null ? false : canProcessDocument(doc));
 
+			NaturalLanguageResponseCache cache = getResponseCache();
+			obj.put("responseCache", cache == null ? null : new JSONObject(cache.getStatistics()));
+
+			NaturalLanguageTextCache extractedTextCache = getTextCache();
+			obj.put("textCache",
+					extractedTextCache == null ? null : new JSONObject(extractedTextCache.getStatistics()));
+
+			obj.put("documentCoalescer", new JSONObject(documentCoalescer.getStatistics()));
+
+			JSONObject policies = new JSONObject();
+			for (Map.Entry<String, NaturalLanguageProviderWrapper> entry : wrappedProviders.entrySet()) {
+				Map<String, Object> stats = new HashMap<>();
+				entry.getValue().collectStatistics(stats);
+				policies.put(entry.getKey(), new JSONObject(stats));
+			}
+			obj.put("providerPolicies", policies);
+
 		} catch (JSONException e) {
 			// Ignore the error
 		}
@@ -97,6 +159,29 @@ public class NaturalLanguageImpl extends DefaultComponent implements NaturalLang
 	@Override
 	public void activate(ComponentContext context) {
 		super.activate(context);
+		registerGauges();
+	}
+
+	/*
+	 * Documents waiting to be analyzed: scheduled in the queue of the
+	 * listener, and deferred by the coalescer
+	 */
+	protected void registerGauges() {
+		MetricRegistry registry = NaturalLanguageMetrics.getRegistry();
+		unregisterGauges();
+		registry.register(NaturalLanguageMetrics.name("listener", "queue"), (Gauge<Integer>) () -> {
+			WorkManager workManager = Framework.getService(WorkManager.class);
+			return workManager == null ? 0
+					: workManager.getQueueSize(NaturalLanguageWork.CATEGORY, Work.State.SCHEDULED);
+		});
+		registry.register(NaturalLanguageMetrics.name("listener", "deferred"),
+				(Gauge<Integer>) documentCoalescer::getDeferredCount);
+	}
+
+	protected void unregisterGauges() {
+		MetricRegistry registry = NaturalLanguageMetrics.getRegistry();
+		registry.remove(NaturalLanguageMetrics.name("listener", "queue"));
+		registry.remove(NaturalLanguageMetrics.name("listener", "deferred"));
 	}
 
 	/**
@@ -109,9 +194,27 @@ public class NaturalLanguageImpl extends DefaultComponent implements NaturalLang
 	 */
 	@Override
 	public void deactivate(ComponentContext context) {
+		synchronized (this) {
+			if (batchExecutor != null) {
+				batchExecutor.shutdownNow();
+				batchExecutor = null;
+			}
+		}
+		documentCoalescer.shutdown();
+		unregisterGauges();
+		wrappedProviders.values().forEach(NaturalLanguageProviderWrapper::shutdown);
+		providers.values().forEach(NaturalLanguageProvider::close);
 		super.deactivate(context);
 	}
 
+	@Override
+	public <T> T getAdapter(Class<T> adapter) {
+		if (adapter.isAssignableFrom(NaturalLanguageDocumentCoalescer.class)) {
+			return adapter.cast(documentCoalescer);
+		}
+		return super.getAdapter(adapter);
+	}
+
 	/**
 	 * Application started notification. Called after the application started.
 	 * You can do here any initialization that requires a working application
@@ -130,18 +233,84 @@ public class NaturalLanguageImpl extends DefaultComponent implements NaturalLang
 	public void registerContribution(Object contribution, String extensionPoint, ComponentInstance contributor) {
 		if (CONFIG_EXT_POINT.equals(extensionPoint)) {
 			config = (NaturalLanguageDescriptor) contribution;
+			// Will be re-created with the new configuration
+			synchronized (this) {
+				responseCache = null;
+				textCache = null;
+				documentProcessor = null;
+				if (batchExecutor != null) {
+					batchExecutor.shutdown();
+					batchExecutor = null;
+				}
+			}
 		} else if (PROVIDER_EXT_POINT.equals(extensionPoint)) {
 			NaturalLanguageProviderDescriptor desc = (NaturalLanguageProviderDescriptor) contribution;
 			try {
+				Map<String, String> parameters = new HashMap<>(desc.getParameters());
+				parameters.put(NaturalLanguageProvider.PROVIDER_NAME_PARAM, desc.getProviderName());
 				NaturalLanguageProvider provider = (NaturalLanguageProvider) desc.getKlass().getConstructor(Map.class)
-						.newInstance(desc.getParameters());
-				providers.put(desc.getProviderName(), provider);
+						.newInstance(parameters);
+				NaturalLanguageProvider previousProvider = providers.put(desc.getProviderName(), provider);
+				defaultTimeouts.put(desc.getProviderName(), desc.getDefaultTimeoutMillis());
+				NaturalLanguageProviderWrapper previous = wrappedProviders.remove(desc.getProviderName());
+				if (previous != null) {
+					previous.shutdown();
+				}
+				if (previousProvider != null) {
+					previousProvider.close();
+				}
+				NaturalLanguageProvider wrapped = wrapProvider(desc.getProviderName(), provider,
+						desc.getParameters());
+				if (wrapped != provider) {
+					wrappedProviders.put(desc.getProviderName(), (NaturalLanguageProviderWrapper) wrapped);
+				}
 			} catch (ReflectiveOperationException e) {
 				throw new NuxeoException(e);
 			}
 		}
 	}
 
+	/*
+	 * Wraps the provider with the metrics, the limiters, the retry policy, the
+	 * hedging and the circuit breaker defined in its parameters. The metrics
+	 * are the inner wrapper, so they measure each request actually sent. The
+	 * concurrency limiter comes next, so only the requests actually sent count
+	 * as in flight. The rate limiter is inside the retry policy: each attempt
+	 * takes a permit and is charged its characters, so the retries of a quota
+	 * error are paced too. The second requests of the hedging go through the
+	 * limiters, as they add to the load. The circuit breaker is the outer
+	 * one, so calls are rejected right away while it is open
+	 */
+	protected NaturalLanguageProvider wrapProvider(String providerName, NaturalLanguageProvider provider,
+			Map<String, String> parameters) {
+
+		NaturalLanguageProvider wrapped = provider;
+		if (NaturalLanguageMetrics.isConfigured(parameters)) {
+			wrapped = new NaturalLanguageMetricsProvider(providerName, wrapped);
+		}
+		if (NaturalLanguageConcurrencyLimiter.isConfigured(parameters)) {
+			wrapped = new NaturalLanguageConcurrencyLimitedProvider(wrapped,
+					new NaturalLanguageConcurrencyLimiter(providerName, parameters));
+		}
+		if (NaturalLanguageRateLimiter.isConfigured(parameters)) {
+			wrapped = new NaturalLanguageRateLimitedProvider(wrapped,
+					new NaturalLanguageRateLimiter(providerName, parameters));
+		}
+		if (NaturalLanguageRetryPolicy.isConfigured(parameters)) {
+			wrapped = new NaturalLanguageRetryingProvider(providerName, wrapped,
+					new NaturalLanguageRetryPolicy(parameters));
+		}
+		if (NaturalLanguageHedgingPolicy.isConfigured(parameters)) {
+			wrapped = new NaturalLanguageHedgedProvider(wrapped, new NaturalLanguageHedgingPolicy(parameters));
+		}
+		if (NaturalLanguageCircuitBreaker.isConfigured(parameters)) {
+			wrapped = new NaturalLanguageCircuitBreakerProvider(wrapped,
+					new NaturalLanguageCircuitBreaker(providerName, parameters));
+		}
+
+		return wrapped;
+	}
+
 	@Override
 	public NaturalLanguageResponse processText(String providerName, String text, List<NaturalLanguageFeature> features,
 			NaturalLanguageEncoding encoding) throws NuxeoException {
@@ -158,19 +327,511 @@ public class NaturalLanguageImpl extends DefaultComponent implements NaturalLang
 					+ (StringUtils.isBlank(providerName) ? getDefaultProviderName() : providerName));
 		}
 
-		return provider.processText(text, features, encoding);
+		return analyze(getProviderNameOrDefault(providerName), provider, text, features, encoding);
+	}
+
+	/*
+	 * The deadline of a call with this provider when the caller set none. A
+	 * deadline set by the caller is kept as it is, even if it is later than
+	 * the default of the provider
+	 */
+	protected NaturalLanguageDeadline getDefaultDeadline(String providerName) {
+		if (NaturalLanguageDeadline.current() != null) {
+			return null;
+		}
+		Long timeout = defaultTimeouts.get(providerName);
+		return timeout == null || timeout <= 0 ? null : NaturalLanguageDeadline.after(timeout);
+	}
+
+	/*
+	 * Calls the provider, unless the exact same text was already analyzed
+	 * with the same provider, features, encoding and text budget.
+	 */
+	protected NaturalLanguageResponse analyze(String providerName, NaturalLanguageProvider provider, String text,
+			List<NaturalLanguageFeature> features, NaturalLanguageEncoding encoding) throws NuxeoException {
+
+		NaturalLanguageDeadline deadline = getDefaultDeadline(providerName);
+		NaturalLanguageResponseCache cache = getResponseCache();
+		if (cache == null) {
+			return NaturalLanguageDeadline.call(deadline, () -> trace(providerName, text.length(), features,
+					() -> callProvider(provider, text, features, encoding)));
+		}
+
+		String key = getCacheKey(providerName, text, features, encoding);
+		NaturalLanguageResponse response = getCachedResponse(cache, providerName, key);
+		if (response == null) {
+			response = NaturalLanguageDeadline.call(deadline, () -> trace(providerName, text.length(), features,
+					() -> callProvider(provider, text, features, encoding)));
+			cache.put(key, response);
+		}
+
+		return response;
+	}
+
+	@Override
+	public CompletableFuture<NaturalLanguageResponse> processTextAsync(String providerName, String text,
+			List<NaturalLanguageFeature> features, NaturalLanguageEncoding encoding) {
+
+		if (text == null) {
+			throw new IllegalArgumentException("Input text cannot be null");
+		} else if (features == null || features.size() == 0) {
+			throw new IllegalArgumentException("The feature list cannot be empty or null");
+		}
+
+		NaturalLanguageProvider provider = getProviderOrDefault(providerName);
+		if (provider == null) {
+			throw new NuxeoException("Unknown provider: "
+					+ (StringUtils.isBlank(providerName) ? getDefaultProviderName() : providerName));
+		}
+
+		return analyzeAsync(getProviderNameOrDefault(providerName), provider, text, features, encoding);
 	}
 
-	protected String extractRawText(Blob blob) {
+	/*
+	 * Asynchronous version of analyze()
+	 */
+	protected CompletableFuture<NaturalLanguageResponse> analyzeAsync(String providerName,
+			NaturalLanguageProvider provider, String text, List<NaturalLanguageFeature> features,
+			NaturalLanguageEncoding encoding) {
+
+		NaturalLanguageDeadline deadline = getDefaultDeadline(providerName);
+		NaturalLanguageResponseCache cache = getResponseCache();
+		if (cache == null) {
+			return NaturalLanguageDeadline.call(deadline, () -> traceAsync(providerName, text.length(), features,
+					() -> callProviderAsync(provider, text, features, encoding)));
+		}
+
+		String key = getCacheKey(providerName, text, features, encoding);
+		NaturalLanguageResponse response = getCachedResponse(cache, providerName, key);
+		if (response != null) {
+			return CompletableFuture.completedFuture(response);
+		}
+
+		return NaturalLanguageDeadline.call(deadline, () -> traceAsync(providerName, text.length(), features,
+				() -> callProviderAsync(provider, text, features, encoding))).thenApply(r -> {
+					cache.put(key, r);
+					return r;
+				});
+	}
+
+	@Override
+	public CompletableFuture<NaturalLanguageResponse> processBlobAsync(String providerName, Blob blob,
+			List<NaturalLanguageFeature> features) {
+
+		if (blob == null) {
+			throw new IllegalArgumentException("Input Blob cannot be null");
+		} else if (features == null || features.size() == 0) {
+			throw new IllegalArgumentException("The feature list cannot be empty or null");
+		}
+
+		NaturalLanguageProvider provider = getProviderOrDefault(providerName);
+		if (provider == null) {
+			throw new NuxeoException("Unknown provider: "
+					+ (StringUtils.isBlank(providerName) ? getDefaultProviderName() : providerName));
+		}
+
+		String name = getProviderNameOrDefault(providerName);
+		// The text is analyzed in another thread, which continues the call
+		NaturalLanguageDeadline deadline = NaturalLanguageDeadline.current();
+		return CompletableFuture.supplyAsync(() -> extractRawText(blob, features), getBatchExecutor())
+				.thenCompose(text -> NaturalLanguageDeadline.call(deadline,
+						() -> analyzeAsync(name, provider, text, features, NaturalLanguageEncoding.UTF8)));
+	}
+
+	@Override
+	public List<NaturalLanguageResponse> processTexts(String providerName, List<String> texts,
+			List<NaturalLanguageFeature> features, NaturalLanguageEncoding encoding) throws NuxeoException {
+
+		if (texts == null) {
+			throw new IllegalArgumentException("Input texts cannot be null");
+		} else if (features == null || features.size() == 0) {
+			throw new IllegalArgumentException("The feature list cannot be empty or null");
+		}
+		for (String text : texts) {
+			if (text == null) {
+				throw new IllegalArgumentException("Input text cannot be null");
+			}
+		}
+
+		NaturalLanguageProvider provider = getProviderOrDefault(providerName);
+		if (provider == null) {
+			throw new NuxeoException("Unknown provider: "
+					+ (StringUtils.isBlank(providerName) ? getDefaultProviderName() : providerName));
+		}
+
+		return analyze(getProviderNameOrDefault(providerName), provider, texts, features, encoding);
+	}
+
+	/*
+	 * Batch version of analyze(): only the texts not found in the cache are
+	 * sent to the provider (and only once if the same text is passed several
+	 * times)
+	 */
+	protected List<NaturalLanguageResponse> analyze(String providerName, NaturalLanguageProvider provider,
+			List<String> texts, List<NaturalLanguageFeature> features, NaturalLanguageEncoding encoding)
+			throws NuxeoException {
+
+		NaturalLanguageResponseCache cache = getResponseCache();
+
+		String[] keys = new String[texts.size()];
+		Map<String, NaturalLanguageResponse> responsesByKey = new HashMap<>();
+		Map<String, String> textsToProcess = new LinkedHashMap<>();
+		for (int i = 0; i < keys.length; i++) {
+			String text = texts.get(i);
+			keys[i] = getCacheKey(providerName, text, features, encoding);
+			if (responsesByKey.containsKey(keys[i]) || textsToProcess.containsKey(keys[i])) {
+				continue;
+			}
+			NaturalLanguageResponse response = cache == null ? null
+					: getCachedResponse(cache, providerName, keys[i]);
+			if (response == null) {
+				textsToProcess.put(keys[i], text);
+			} else {
+				responsesByKey.put(keys[i], response);
+			}
+		}
+
+		if (!textsToProcess.isEmpty()) {
+			List<String> keysToProcess = new ArrayList<>(textsToProcess.keySet());
+			List<String> textList = new ArrayList<>(textsToProcess.values());
+			long textLength = textList.stream().mapToLong(String::length).sum();
+			List<NaturalLanguageResponse> newResponses = NaturalLanguageDeadline.call(getDefaultDeadline(providerName),
+					() -> trace(providerName, textLength, features,
+							() -> callProvider(provider, textList, features, encoding)));
+			for (int i = 0; i < keysToProcess.size(); i++) {
+				NaturalLanguageResponse response = newResponses.get(i);
+				responsesByKey.put(keysToProcess.get(i), response);
+				if (cache != null) {
+					cache.put(keysToProcess.get(i), response);
+				}
+			}
+		}
+
+		List<NaturalLanguageResponse> responses = new ArrayList<>(keys.length);
+		for (String key : keys) {
+			responses.add(responsesByKey.get(key));
+		}
+
+		return responses;
+	}
+
+	/*
+	 * Calls the provider in a PROVIDER_CALL event
+	 */
+	protected static <T> T trace(String providerName, long textLength, List<NaturalLanguageFeature> features,
+			Supplier<T> call) {
+		try (Span span = NaturalLanguageEvents.begin(Phase.PROVIDER_CALL).provider(providerName).features(features)
+				.textLength(textLength)) {
+			return call.get();
+		}
+	}
+
+	/*
+	 * Asynchronous version of trace(), the event ends with the future
+	 */
+	protected static <T> CompletableFuture<T> traceAsync(String providerName, long textLength,
+			List<NaturalLanguageFeature> features, Supplier<CompletableFuture<T>> call) {
+		Span span = NaturalLanguageEvents.begin(Phase.PROVIDER_CALL).provider(providerName).features(features)
+				.textLength(textLength);
+		CompletableFuture<T> future;
+		try {
+			future = call.get();
+		} catch (RuntimeException e) {
+			span.close();
+			throw e;
+		}
+		future.whenComplete((r, t) -> span.close());
+		return future;
+	}
+
+	/*
+	 * Sends the text to the provider. A text bigger than the chunking budget
+	 * is split, its chunks are analyzed in parallel and their responses are
+	 * merged.
+	 */
+	protected NaturalLanguageResponse callProvider(NaturalLanguageProvider provider, String text,
+			List<NaturalLanguageFeature> features, NaturalLanguageEncoding encoding) throws NuxeoException {
+
+		String sampledText = sample(text, features);
+		List<Chunk> chunks = NaturalLanguageTextChunker.split(sampledText, getChunkMaxBytes());
+		NaturalLanguageResponse response;
+		if (chunks.size() == 1) {
+			response = provider.processText(sampledText, features, encoding);
+		} else {
+			List<NaturalLanguageResponse> responses = provider.processTexts(getTexts(chunks), features, encoding,
+					getBatchExecutor());
+			response = new NaturalLanguageMergedResponse(sampledText, chunks, responses, encoding);
+		}
+
+		return toSampledResponse(response, text, sampledText);
+	}
+
+	/*
+	 * Asynchronous version of callProvider()
+	 */
+	protected CompletableFuture<NaturalLanguageResponse> callProviderAsync(NaturalLanguageProvider provider,
+			String text, List<NaturalLanguageFeature> features, NaturalLanguageEncoding encoding) {
+
+		String sampledText = sample(text, features);
+		List<Chunk> chunks = NaturalLanguageTextChunker.split(sampledText, getChunkMaxBytes());
+		if (chunks.size() == 1) {
+			return provider.processTextAsync(sampledText, features, encoding, getBatchExecutor())
+					.thenApply(r -> toSampledResponse(r, text, sampledText));
+		}
+
+		List<CompletableFuture<NaturalLanguageResponse>> futures = new ArrayList<>();
+		for (Chunk chunk : chunks) {
+			futures.add(provider.processTextAsync(chunk.getText(), features, encoding, getBatchExecutor()));
+		}
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).thenApply(v -> {
+			List<NaturalLanguageResponse> responses = new ArrayList<>();
+			futures.forEach(f -> responses.add(f.join()));
+			return toSampledResponse(new NaturalLanguageMergedResponse(sampledText, chunks, responses, encoding),
+					text, sampledText);
+		});
+	}
+
+	/*
+	 * Batch version of callProvider(): the chunks of all the texts are sent in
+	 * a single batch
+	 */
+	protected List<NaturalLanguageResponse> callProvider(NaturalLanguageProvider provider, List<String> texts,
+			List<NaturalLanguageFeature> features, NaturalLanguageEncoding encoding) throws NuxeoException {
+
+		int maxBytes = getChunkMaxBytes();
+		List<String> sampledTexts = new ArrayList<>(texts.size());
+		List<List<Chunk>> chunksByText = new ArrayList<>();
+		List<String> allChunks = new ArrayList<>();
+		for (String text : texts) {
+			String sampledText = sample(text, features);
+			List<Chunk> chunks = NaturalLanguageTextChunker.split(sampledText, maxBytes);
+			sampledTexts.add(sampledText);
+			chunksByText.add(chunks);
+			allChunks.addAll(getTexts(chunks));
+		}
+
+		List<NaturalLanguageResponse> chunkResponses = provider.processTexts(allChunks, features, encoding,
+				getBatchExecutor());
+
+		List<NaturalLanguageResponse> responses = new ArrayList<>(texts.size());
+		int index = 0;
+		for (int i = 0; i < texts.size(); i++) {
+			List<Chunk> chunks = chunksByText.get(i);
+			List<NaturalLanguageResponse> textResponses = chunkResponses.subList(index, index + chunks.size());
+			index += chunks.size();
+			NaturalLanguageResponse response;
+			if (chunks.size() == 1) {
+				response = textResponses.get(0);
+			} else {
+				response = new NaturalLanguageMergedResponse(sampledTexts.get(i), chunks, textResponses, encoding);
+			}
+			responses.add(toSampledResponse(response, texts.get(i), sampledTexts.get(i)));
+		}
+
+		return responses;
+	}
+
+	/*
+	 * Looks the response up in the cache, and reports the hit or the miss in
+	 * the metrics, whatever the implementation of the cache
+	 */
+	protected NaturalLanguageResponse getCachedResponse(NaturalLanguageResponseCache cache, String providerName,
+			String key) {
+		NaturalLanguageResponse response = cache.get(key);
+		NaturalLanguageMetrics.meter("responseCache", providerName, response == null ? "misses" : "hits").mark();
+		return response;
+	}
+
+	protected String getCacheKey(String providerName, String text, List<NaturalLanguageFeature> features,
+			NaturalLanguageEncoding encoding) {
+		if (config == null) {
+			return NaturalLanguageResponseCache.buildKey(providerName, text, features, encoding);
+		}
+		return NaturalLanguageResponseCache.buildKey(providerName, text, features, encoding,
+				config.getTextBudget(features), config.getSamplingStrategy());
+	}
+
+	/*
+	 * Reduces the text to the text budget of the features
+	 */
+	protected String sample(String text, List<NaturalLanguageFeature> features) {
+		if (config == null) {
+			return text;
+		}
+		return NaturalLanguageTextSampler.sample(text, config.getTextBudget(features), config.getSamplingStrategy());
+	}
+
+	protected NaturalLanguageResponse toSampledResponse(NaturalLanguageResponse response, String text,
+			String sampledText) {
+		// The sampler returns the text itself when it is under the budget
+		if (text == sampledText) {
+			return response;
+		}
+		return new NaturalLanguageSampledResponse(response, config.getSamplingStrategy(), text.length(),
+				sampledText.length());
+	}
+
+	protected static List<String> getTexts(List<Chunk> chunks) {
+		List<String> texts = new ArrayList<>(chunks.size());
+		for (Chunk chunk : chunks) {
+			texts.add(chunk.getText());
+		}
+		return texts;
+	}
+
+	protected int getChunkMaxBytes() {
+		return config == null ? 0 : config.getChunkMaxBytes();
+	}
+
+	/*
+	 * Lazy creation of the executor used by the batch and async APIs. Its
+	 * size is the max number of texts analyzed in parallel, for all callers,
+	 * by providers which have no asynchronous API.
+	 */
+	protected synchronized ExecutorService getBatchExecutor() {
+
+		if (batchExecutor == null) {
+			int parallelism = config == null ? 1 : config.getBatchParallelism();
+			batchExecutor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+
+				protected final AtomicInteger count = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "NaturalLanguage-batch-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+
+		return batchExecutor;
+	}
+
+	@Override
+	public synchronized NaturalLanguageResponseCache getResponseCache() {
+
+		if (responseCache == null && config != null && config.isResponseCacheEnabled()) {
+			try {
+				responseCache = (NaturalLanguageResponseCache) config.getResponseCacheClass()
+						.getConstructor(Map.class)
+						.newInstance(config.getResponseCacheParameters());
+			} catch (ReflectiveOperationException e) {
+				throw new NuxeoException(e);
+			}
+		}
+
+		return responseCache;
+	}
+
+	@Override
+	public synchronized NaturalLanguageDocumentProcessor getDocumentProcessor() {
+
+		if (documentProcessor == null) {
+			try {
+				documentProcessor = (NaturalLanguageDocumentProcessor) config.getDocumentProcessorClass()
+						.getConstructor(Map.class)
+						.newInstance(config.getDocumentProcessorParameters());
+			} catch (ReflectiveOperationException e) {
+				throw new NuxeoException(e);
+			}
+		}
+
+		return documentProcessor;
+	}
+
+	/**
+	 * @return the cache of extracted text, or {@code null} if it is disabled
+	 *         in the configuration
+	 * @since 9.10
+	 */
+	public synchronized NaturalLanguageTextCache getTextCache() {
+
+		if (textCache == null && config != null && config.isTextCacheEnabled()) {
+			textCache = new NaturalLanguageTextCache(config.getTextCacheParameters());
+		}
+
+		return textCache;
+	}
+
+	/*
+	 * The text is cached by blob digest, so we don't convert the same blob
+	 * again (listener then operation on the same document for example). Only
+	 * the chars the features can use are read (see getReadLimit())
+	 */
+	protected String extractRawText(Blob blob, List<NaturalLanguageFeature> features) {
+
+		int readLimit = getReadLimit(features);
+		String digest = blob.getDigest();
+		NaturalLanguageTextCache cache = StringUtils.isBlank(digest) ? null : getTextCache();
+		String key = cache == null ? null : getTextCacheKey(digest, readLimit);
+		if (cache != null) {
+			String text = cache.get(key);
+			if (text != null) {
+				NaturalLanguageMetrics.meter("extraction", "cacheHits").mark();
+				return text;
+			}
+		}
+
+		String text;
+		try (Timer.Context context = NaturalLanguageMetrics.timer("extraction").time();
+				Span span = NaturalLanguageEvents.begin(Phase.EXTRACTION)) {
+			text = convertToRawText(blob, readLimit);
+			span.textLength(text.length());
+		}
+		NaturalLanguageMetrics.histogram("extraction", "characters").update(text.length());
+		if (cache != null) {
+			cache.put(key, text);
+		}
+
+		return text;
+	}
+
+	/*
+	 * The text may be truncated to the read limit: the limit is part of the
+	 * key, so the texts cached on disk are not used any more once it changes
+	 */
+	protected String getTextCacheKey(String digest, int readLimit) {
+		return readLimit > 0 ? digest + "-" + readLimit : digest;
+	}
+
+	/*
+	 * Max. number of chars to read from the extracted text: the extraction
+	 * limit or, when the text is sampled from its head, the text budget of
+	 * the features (plus one char, so the sampler still cuts the head after a
+	 * whitespace). 0 means no limit
+	 */
+	protected int getReadLimit(List<NaturalLanguageFeature> features) {
+
+		int maxChars = getExtractionMaxChars();
+		if (config != null && config.getSamplingStrategy() == NaturalLanguageSamplingStrategy.HEAD) {
+			int budget = config.getTextBudget(features);
+			if (budget > 0 && budget < Integer.MAX_VALUE && (maxChars <= 0 || budget + 1 < maxChars)) {
+				return budget + 1;
+			}
+		}
+
+		return maxChars;
+	}
+
+	protected int getExtractionMaxChars() {
+		return config == null ? NaturalLanguageDescriptor.DEFAULT_EXTRACTION_MAX_CHARS
+				: config.getExtractionMaxChars();
+	}
+
+	protected String convertToRawText(Blob blob, int readLimit) {
 
 		try {
 			SimpleBlobHolder blobHolder = new SimpleBlobHolder(blob);
 			ConversionService conversionService = Framework.getLocalService(ConversionService.class);
 			BlobHolder resultBlob = conversionService.convert("any2text", blobHolder, null);
-			String text;
-			text = new String(resultBlob.getBlob().getByteArray(), "UTF-8");
 
-			return text;
+			int maxChars = getExtractionMaxChars();
+			if (readLimit > 0 && (maxChars <= 0 || readLimit < maxChars)) {
+				// Only the head is analyzed: not a truncation
+				return NaturalLanguageTextReader.readHead(resultBlob.getBlob(), readLimit);
+			}
+			return NaturalLanguageTextReader.read(resultBlob.getBlob(), maxChars);
 		} catch (ConversionException | IOException e) {
 			throw new NuxeoException(e);
 		}
@@ -191,8 +852,56 @@ public class NaturalLanguageImpl extends DefaultComponent implements NaturalLang
 					+ (StringUtils.isBlank(providerName) ? getDefaultProviderName() : providerName));
 		}
 
-		String text = extractRawText(blob);
-		return provider.processText(text, features, NaturalLanguageEncoding.UTF8);
+		String text = extractRawText(blob, features);
+		return analyze(getProviderNameOrDefault(providerName), provider, text, features,
+				NaturalLanguageEncoding.UTF8);
+	}
+
+	@Override
+	public List<NaturalLanguageResponse> processBlobs(String providerName, List<Blob> blobs,
+			List<NaturalLanguageFeature> features) throws NuxeoException {
+
+		if (blobs == null) {
+			throw new IllegalArgumentException("Input Blobs cannot be null");
+		} else if (features == null || features.size() == 0) {
+			throw new IllegalArgumentException("The feature list cannot be empty or null");
+		}
+
+		NaturalLanguageProvider provider = getProviderOrDefault(providerName);
+		if (provider == null) {
+			throw new NuxeoException("Unknown provider: "
+					+ (StringUtils.isBlank(providerName) ? getDefaultProviderName() : providerName));
+		}
+
+		List<String> texts = new ArrayList<>(blobs.size());
+		for (Blob blob : blobs) {
+			if (blob == null) {
+				throw new IllegalArgumentException("Input Blob cannot be null");
+			}
+			texts.add(extractRawText(blob, features));
+		}
+
+		return analyze(getProviderNameOrDefault(providerName), provider, texts, features,
+				NaturalLanguageEncoding.UTF8);
+	}
+
+	@Override
+	public List<NaturalLanguageResponse> processDocuments(String providerName, List<DocumentModel> docs,
+			String xpath, List<NaturalLanguageFeature> features) throws NuxeoException {
+
+		if (docs == null) {
+			throw new IllegalArgumentException("Input DocumentModel list cannot be null");
+		}
+
+		if (StringUtils.isBlank(xpath)) {
+			xpath = "file:content";
+		}
+		List<Blob> blobs = new ArrayList<>(docs.size());
+		for (DocumentModel doc : docs) {
+			blobs.add((Blob) doc.getPropertyValue(xpath));
+		}
+
+		return processBlobs(providerName, blobs, features);
 	}
 
 	@Override
@@ -208,7 +917,7 @@ public class NaturalLanguageImpl extends DefaultComponent implements NaturalLang
 			xpath = "file:content";
 		}
 		blob = (Blob) doc.getPropertyValue(xpath);
-		return processBlob(providerName, blob, features);
+		return NaturalLanguageEvents.call(doc.getId(), () -> processBlob(providerName, blob, features));
 
 	}
 
@@ -223,14 +932,21 @@ public class NaturalLanguageImpl extends DefaultComponent implements NaturalLang
 	}
 
 	/*
-	 * Utility to handle a null provider name
+	 * Utility to handle a null provider name. Returns the wrapped provider if
+	 * there is one, as this is the provider the service calls
 	 */
 	protected NaturalLanguageProvider getProviderOrDefault(String name) {
+		String providerName = getProviderNameOrDefault(name);
+		NaturalLanguageProvider provider = wrappedProviders.get(providerName);
+		return provider == null ? getProvider(providerName) : provider;
+	}
+
+	protected String getProviderNameOrDefault(String name) {
 		if (StringUtils.isBlank(name)) {
-			name = getDefaultProviderName();
+			return getDefaultProviderName();
 		}
 
-		return getProvider(name);
+		return name;
 	}
 
 	@Override
@@ -281,9 +997,9 @@ public class NaturalLanguageImpl extends DefaultComponent implements NaturalLang
 					// originally have the facet, Natural Language was processed
 					// => caller should remove it
 					if (hasNLFacet) {
-						return true;
+						return onCanProcessDocument(true, "excludedFacetRemoval");
 					}
-					return false;
+					return onCanProcessDocument(false, "excludedFacet");
 				}
 			}
 		}
@@ -292,7 +1008,7 @@ public class NaturalLanguageImpl extends DefaultComponent implements NaturalLang
 		List<String> excludedDocTypes = getAnalyzeExcludedDocTypes();
 		if (excludedDocTypes != null && excludedDocTypes.size() > 0) {
 			if (excludedDocTypes.indexOf(doc.getType()) > -1) {
-				return false;
+				return onCanProcessDocument(false, "excludedType");
 			}
 		}
 
@@ -302,19 +1018,27 @@ public class NaturalLanguageImpl extends DefaultComponent implements NaturalLang
 			blob = (Blob) doc.getPropertyValue("file:content");
 		}
 		if (blob == null && !hasNLFacet) {
-			return false;
+			return onCanProcessDocument(false, "noBlob");
 		}
 
 		// So we have a blob, let's check if it was already processed
 		if (blob != null && hasNLFacet) {
 			String sourceDigest = (String) doc.getPropertyValue(NaturalLanguage.XPATH_SOURCE_DIGEST);
 			if (sourceDigest != null && blob.getDigest().equals(sourceDigest)) {
-				return false;
+				return onCanProcessDocument(false, "alreadyAnalyzed");
 			}
 		}
 
 		// Ok, looks like we _really_ want to process this document after all
-		return true;
+		return onCanProcessDocument(true, "accepted");
+	}
+
+	/*
+	 * Counts the outcomes of canProcessDocument, by reason
+	 */
+	protected boolean onCanProcessDocument(boolean result, String reason) {
+		NaturalLanguageMetrics.meter("documents", reason).mark();
+		return result;
 	}
 
 }
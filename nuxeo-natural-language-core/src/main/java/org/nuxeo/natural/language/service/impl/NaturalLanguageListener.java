@@ -18,79 +18,50 @@
  */
 package org.nuxeo.natural.language.service.impl;
 
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
-import org.nuxeo.ecm.automation.AutomationService;
-import org.nuxeo.ecm.automation.OperationChain;
-import org.nuxeo.ecm.automation.OperationContext;
-import org.nuxeo.ecm.automation.OperationException;
-import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.event.Event;
-import org.nuxeo.ecm.core.event.EventBundle;
 import org.nuxeo.ecm.core.event.EventContext;
-import org.nuxeo.ecm.core.event.EventService;
-import org.nuxeo.ecm.core.event.PostCommitEventListener;
+import org.nuxeo.ecm.core.event.EventListener;
 import org.nuxeo.ecm.core.event.impl.DocumentEventContext;
-import org.nuxeo.ecm.core.event.impl.EventContextImpl;
+import org.nuxeo.ecm.core.work.api.WorkManager;
+import org.nuxeo.ecm.core.work.api.WorkManager.Scheduling;
 import org.nuxeo.natural.language.service.api.NaturalLanguage;
+import org.nuxeo.natural.language.service.api.NaturalLanguageDocumentCoalescer;
 import org.nuxeo.runtime.api.Framework;
 
 /**
+ * Synchronous listener: it only checks the document must be analyzed and
+ * schedules a {@link NaturalLanguageWork} (after the commit) in the
+ * <code>naturalLanguage</code> queue. The call to the provider and the
+ * processing of the document are done by the work. Events received for a
+ * document already scheduled are coalesced.
  *
  * @since 9.2
  */
-public class NaturalLanguageListener implements PostCommitEventListener {
-
-	private static final Log log = LogFactory.getLog(NaturalLanguageListener.class);
-
-	protected NaturalLanguage naturalLanguageService;
+public class NaturalLanguageListener implements EventListener {
 
 	@Override
-	public void handleEvent(EventBundle events) {
-
-		naturalLanguageService = Framework.getService(NaturalLanguage.class);
-
-		for (Event event : events) {
-			handleEvent(event);
-		}
-	}
-
-	protected void handleEvent(Event event) {
+	public void handleEvent(Event event) {
 
+		NaturalLanguage naturalLanguageService = Framework.getService(NaturalLanguage.class);
 		if (naturalLanguageService == null || !naturalLanguageService.isDocumentListenerEnabled()) {
 			return;
 		}
 
 		EventContext ectx = event.getContext();
-		if (!(ectx instanceof DocumentEventContext)) {
+		if (!(ectx instanceof DocumentEventContext)
+				|| Boolean.TRUE.equals(ectx.getProperty(NaturalLanguage.DISABLE_DOCUMENT_LISTENER))) {
 			return;
 		}
 		DocumentModel doc = ((DocumentEventContext) ectx).getSourceDocument();
 
 		if (naturalLanguageService.canProcessDocument(doc)) {
-			String mapperChainName = naturalLanguageService.getDefaultDocumentProcessingChainName();
-
-			CoreSession session = doc.getCoreSession();
-			AutomationService as = Framework.getService(AutomationService.class);
-			OperationContext octx = new OperationContext();
-			octx.setInput(doc);
-			octx.setCoreSession(session);
-			OperationChain chain = new OperationChain("NaturalLanguageListenerChain");
-			chain.add(mapperChainName);
-
-			try {
-				as.run(octx, chain);
-
-				EventContextImpl evctx = new DocumentEventContext(session, session.getPrincipal(), doc);
-
-				Event eventToSend = evctx.newEvent(NaturalLanguage.EVENT_DOCUMENT_HANDLED);
-				EventService eventService = Framework.getLocalService(EventService.class);
-				eventService.fireEvent(eventToSend);
-
-			} catch (OperationException e) {
-				log.warn("Error running the chain <" + mapperChainName + ">", e);
-			}
+			String username = ectx.getPrincipal() == null ? null : ectx.getPrincipal().getName();
+			Framework.getService(NaturalLanguageDocumentCoalescer.class).touch(doc.getRepositoryName(), doc.getId());
+			Framework.getService(WorkManager.class).schedule(
+					new NaturalLanguageWork(doc.getRepositoryName(), doc.getId(), username), Scheduling.IF_NOT_SCHEDULED,
+					true);
+			NaturalLanguageMetrics.meter("listener", "scheduled").mark();
 		}
 
 	}
@@ -0,0 +1,274 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.service.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.nuxeo.natural.language.service.api.NaturalLanguageEncoding;
+import org.nuxeo.natural.language.service.api.NaturalLanguageEntity;
+import org.nuxeo.natural.language.service.api.NaturalLanguageResponse;
+import org.nuxeo.natural.language.service.api.NaturalLanguageSentence;
+import org.nuxeo.natural.language.service.api.NaturalLanguageToken;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageTextChunker.Chunk;
+
+/**
+ * The response for a text analyzed in several chunks (see
+ * {@link NaturalLanguageTextChunker}), merging the responses of every chunk:
+ * <ul>
+ * <li>Language: the one of the biggest part of the text</li>
+ * <li>Sentiment: magnitudes are added (as the magnitude of a text is the sum
+ * of the emotions it contains), the score is the average of the chunk scores
+ * weighted by their magnitude</li>
+ * <li>Sentences: in the order of the text</li>
+ * <li>Entities: entities with the same name and type are merged, their
+ * salience is the sum of their salience in each chunk weighted by the size of
+ * the chunk, so it stays in [0, 1]. Most salient first</li>
+ * <li>Tokens: their offset is converted to an offset in the whole text</li>
+ * </ul>
+ * The native object is the list of the native objects of the chunk
+ * responses.
+ *
+ * @since 9.10
+ */
+public class NaturalLanguageMergedResponse implements NaturalLanguageResponse {
+
+	protected final String language;
+
+	protected final Float sentimentScore;
+
+	protected final Float sentimentMagnitude;
+
+	protected final List<NaturalLanguageSentence> sentences;
+
+	protected final List<NaturalLanguageEntity> entities;
+
+	protected final List<NaturalLanguageToken> tokens;
+
+	protected final List<Object> nativeObjects = new ArrayList<>();
+
+	protected final int chunkCount;
+
+	/**
+	 * @param text
+	 *            The whole text
+	 * @param chunks
+	 *            The chunks of the text
+	 * @param responses
+	 *            The response for each chunk, in the same order
+	 * @param encoding
+	 *            The encoding used to call the provider, can be {@code null}
+	 */
+	public NaturalLanguageMergedResponse(String text, List<Chunk> chunks, List<NaturalLanguageResponse> responses,
+			NaturalLanguageEncoding encoding) {
+
+		if (chunks.size() != responses.size()) {
+			throw new IllegalArgumentException("Expecting one response per chunk");
+		}
+
+		chunkCount = chunks.size();
+		int totalLength = Math.max(1, text.length());
+
+		Map<String, Integer> lengthByLanguage = new HashMap<>();
+		double scoreSum = 0;
+		double magnitudeSum = 0;
+		double lengthWeightedScoreSum = 0;
+		boolean hasSentiment = false;
+		List<NaturalLanguageSentence> allSentences = null;
+		Map<String, MergedEntity> entitiesByKey = new LinkedHashMap<>();
+		List<NaturalLanguageToken> allTokens = null;
+
+		for (int i = 0; i < chunkCount; i++) {
+			Chunk chunk = chunks.get(i);
+			NaturalLanguageResponse response = responses.get(i);
+			int chunkLength = chunk.getText().length();
+			nativeObjects.add(response.getNativeObject());
+
+			if (response.getLanguage() != null) {
+				lengthByLanguage.merge(response.getLanguage(), chunkLength, Integer::sum);
+			}
+
+			Float score = response.getSentimentScore();
+			Float magnitude = response.getSentimentMagnitude();
+			if (score != null && magnitude != null) {
+				hasSentiment = true;
+				scoreSum += score * magnitude;
+				magnitudeSum += magnitude;
+				lengthWeightedScoreSum += score * chunkLength;
+			}
+
+			if (response.getSentences() != null) {
+				if (allSentences == null) {
+					allSentences = new ArrayList<>();
+				}
+				allSentences.addAll(response.getSentences());
+			}
+
+			if (response.getEntities() != null) {
+				double weight = (double) chunkLength / totalLength;
+				for (NaturalLanguageEntity entity : response.getEntities()) {
+					entitiesByKey.computeIfAbsent(entity.getName() + "/" + entity.getType(),
+							k -> new MergedEntity(entity.getName(), entity.getType())).add(entity, weight);
+				}
+			}
+
+			if (response.getTokens() != null) {
+				if (allTokens == null) {
+					allTokens = new ArrayList<>();
+				}
+				int offset = NaturalLanguageTextChunker.toOffset(text, chunk.getBeginIndex(), encoding);
+				for (NaturalLanguageToken token : response.getTokens()) {
+					allTokens.add(offset < 0 || token.getBeginOffset() < 0 ? token : shift(token, offset));
+				}
+			}
+		}
+
+		String mainLanguage = null;
+		for (Map.Entry<String, Integer> entry : lengthByLanguage.entrySet()) {
+			if (mainLanguage == null || entry.getValue() > lengthByLanguage.get(mainLanguage)) {
+				mainLanguage = entry.getKey();
+			}
+		}
+		language = mainLanguage;
+
+		if (!hasSentiment) {
+			sentimentScore = null;
+			sentimentMagnitude = null;
+		} else if (magnitudeSum > 0) {
+			sentimentScore = (float) (scoreSum / magnitudeSum);
+			sentimentMagnitude = (float) magnitudeSum;
+		} else {
+			// Neutral everywhere: average weighted by the size of the chunks
+			sentimentScore = (float) (lengthWeightedScoreSum / totalLength);
+			sentimentMagnitude = 0f;
+		}
+
+		sentences = allSentences;
+
+		if (entitiesByKey.isEmpty()) {
+			entities = null;
+		} else {
+			entities = new ArrayList<>();
+			entitiesByKey.values().forEach(e -> entities.add(e.toEntity()));
+			entities.sort((e1, e2) -> Float.compare(e2.getSalience(), e1.getSalience()));
+		}
+
+		tokens = allTokens;
+	}
+
+	protected static NaturalLanguageToken shift(NaturalLanguageToken token, int offset) {
+		return new NaturalLanguageTokenImpl(token.getText(), token.getBeginOffset() + offset, token.getTag(),
+				token.getLemma(), token.getNumber(), token.getGender(), token.getMood(), token.getPerson(),
+				token.getProper(), token.getForm(), token.getAspect(), token.getCase());
+	}
+
+	protected static class MergedEntity {
+
+		protected final String name;
+
+		protected final String type;
+
+		protected double salience = 0;
+
+		protected List<String> mentions;
+
+		protected Map<String, String> metadata;
+
+		protected MergedEntity(String name, String type) {
+			this.name = name;
+			this.type = type;
+		}
+
+		protected void add(NaturalLanguageEntity entity, double weight) {
+			salience += entity.getSalience() * weight;
+			if (entity.getMentions() != null) {
+				if (mentions == null) {
+					mentions = new ArrayList<>();
+				}
+				mentions.addAll(entity.getMentions());
+			}
+			if (entity.getMetadata() != null) {
+				if (metadata == null) {
+					metadata = new HashMap<>();
+				}
+				metadata.putAll(entity.getMetadata());
+			}
+		}
+
+		protected NaturalLanguageEntity toEntity() {
+			return new NaturalLanguageEntityImpl(name, type, (float) Math.min(1.0, salience), mentions, metadata);
+		}
+	}
+
+	/**
+	 * @return the number of chunks the text was split in
+	 */
+	public int getChunkCount() {
+		return chunkCount;
+	}
+
+	@Override
+	public String getLanguage() {
+		return language;
+	}
+
+	@Override
+	public Float getSentimentScore() {
+		return sentimentScore;
+	}
+
+	@Override
+	public Float getSentimentMagnitude() {
+		return sentimentMagnitude;
+	}
+
+	@Override
+	public List<NaturalLanguageSentence> getSentences() {
+		return sentences;
+	}
+
+	@Override
+	public List<NaturalLanguageEntity> getEntities() {
+		return entities;
+	}
+
+	@Override
+	public List<NaturalLanguageToken> getTokens() {
+		return tokens;
+	}
+
+	@Override
+	public Object getNativeObject() {
+		return nativeObjects;
+	}
+
+	@Override
+	public JSONObject toJSON() throws JSONException {
+		JSONObject obj = NaturalLanguageResponse.toJSON(this);
+		obj.put("chunks", chunkCount);
+
+		return obj;
+	}
+
+}
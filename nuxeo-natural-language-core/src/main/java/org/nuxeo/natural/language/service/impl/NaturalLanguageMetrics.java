@@ -0,0 +1,147 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.service.impl;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+import org.nuxeo.natural.language.service.api.NaturalLanguageDeadlineException;
+import org.nuxeo.natural.language.service.api.NaturalLanguageFeature;
+import org.nuxeo.natural.language.service.api.NaturalLanguageProviderException;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
+
+/**
+ * The metrics of the service, in the registry of Nuxeo (see
+ * {@link MetricsService}), so they are reported with the other metrics of the
+ * server. Their names start with <code>nuxeo.natural-language</code>:
+ * <ul>
+ * <li><code>provider.&lt;name&gt;.calls.&lt;features&gt;</code>: timer of the
+ * requests sent to the provider (each retry and hedged request counts)</li>
+ * <li><code>provider.&lt;name&gt;.characters</code>: meter of the characters
+ * sent, and <code>provider.&lt;name&gt;.textLength</code> their
+ * distribution</li>
+ * <li><code>provider.&lt;name&gt;.errors.&lt;cause&gt;</code>: meter of the
+ * failed requests, see {@link #getErrorCause}</li>
+ * <li><code>provider.&lt;name&gt;.retries</code>: meter of the attempts
+ * done again, <code>retries.recovered</code> and
+ * <code>retries.exhausted</code> the calls which succeeded after a retry or
+ * failed after the last attempt</li>
+ * <li><code>provider.&lt;name&gt;.rateLimit.rejected</code>: meter of the
+ * calls rejected by the rate limiter of the provider,
+ * <code>provider.&lt;name&gt;.concurrencyLimit.rejected</code> the calls
+ * which found no free slot</li>
+ * <li><code>provider.&lt;name&gt;.batches.&lt;features&gt;</code>: timer
+ * of the batches delegated as a whole to the provider</li>
+ * <li><code>responseCache.&lt;name&gt;.hits</code> and
+ * <code>responseCache.&lt;name&gt;.misses</code>: meters of the lookups in
+ * the response cache, by provider</li>
+ * <li><code>extraction</code>: timer of the conversions of blobs to text,
+ * <code>extraction.cacheHits</code> the texts found in the cache,
+ * <code>extraction.truncated</code> the texts longer than the max. number of
+ * chars</li>
+ * <li><code>documents.&lt;reason&gt;</code>: outcome of
+ * {@link NaturalLanguageImpl#canProcessDocument}</li>
+ * <li><code>listener.scheduled</code>: documents scheduled for analysis by
+ * the listener, <code>listener.queue</code> and
+ * <code>listener.deferred</code> the documents waiting</li>
+ * </ul>
+ * Providers can add their own metrics, like the response sizes and the
+ * errors by status of Google.
+ *
+ * @since 9.10
+ */
+public class NaturalLanguageMetrics {
+
+	public static final String PREFIX = "nuxeo.natural-language";
+
+	/**
+	 * Provider parameter, false disables the metrics of the calls to the
+	 * provider
+	 */
+	public static final String ENABLED_PARAM = "metrics.enabled";
+
+	protected static final MetricRegistry registry = SharedMetricRegistries
+			.getOrCreate(MetricsService.class.getName());
+
+	private NaturalLanguageMetrics() {
+		// Utility class
+	}
+
+	public static boolean isConfigured(Map<String, String> parameters) {
+		return !"false".equalsIgnoreCase(parameters.get(ENABLED_PARAM));
+	}
+
+	public static MetricRegistry getRegistry() {
+		return registry;
+	}
+
+	public static String name(String... names) {
+		return MetricRegistry.name(PREFIX, names);
+	}
+
+	public static Timer timer(String... names) {
+		return registry.timer(name(names));
+	}
+
+	public static Meter meter(String... names) {
+		return registry.meter(name(names));
+	}
+
+	public static Histogram histogram(String... names) {
+		return registry.histogram(name(names));
+	}
+
+	/**
+	 * @return the features in a stable order, like
+	 *         <code>DOCUMENT_SENTIMENT+ENTITIES</code>
+	 */
+	public static String getFeaturesKey(List<NaturalLanguageFeature> features) {
+		if (features == null || features.isEmpty()) {
+			return "none";
+		}
+		return features.stream().map(Enum::name).distinct().sorted().collect(Collectors.joining("+"));
+	}
+
+	/**
+	 * @return <code>deadline</code>, <code>retryable</code> or
+	 *         <code>nonRetryable</code> for the errors of the providers, the
+	 *         class of the exception otherwise
+	 */
+	public static String getErrorCause(Throwable t) {
+		while ((t instanceof CompletionException || t instanceof ExecutionException) && t.getCause() != null) {
+			t = t.getCause();
+		}
+		if (t instanceof NaturalLanguageDeadlineException) {
+			return "deadline";
+		} else if (t instanceof NaturalLanguageProviderException) {
+			return ((NaturalLanguageProviderException) t).isRetryable() ? "retryable" : "nonRetryable";
+		}
+		return t.getClass().getSimpleName();
+	}
+
+}
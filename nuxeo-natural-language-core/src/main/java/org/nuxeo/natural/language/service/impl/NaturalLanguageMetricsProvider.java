@@ -0,0 +1,125 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.service.impl;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.natural.language.service.api.NaturalLanguageEncoding;
+import org.nuxeo.natural.language.service.api.NaturalLanguageFeature;
+import org.nuxeo.natural.language.service.api.NaturalLanguageProvider;
+import org.nuxeo.natural.language.service.api.NaturalLanguageResponse;
+
+import com.codahale.metrics.Timer;
+
+/**
+ * Wraps a provider to report the duration, the size and the errors of its
+ * requests in the {@link NaturalLanguageMetrics}. This is the inner wrapper,
+ * so each request actually sent is measured, including retries and hedged
+ * requests. A batch is delegated to the provider as a whole: its texts are
+ * counted, and its duration is measured as one batch.
+ *
+ * @since 9.10
+ */
+public class NaturalLanguageMetricsProvider extends NaturalLanguageProviderWrapper {
+
+	protected final String providerName;
+
+	public NaturalLanguageMetricsProvider(String providerName, NaturalLanguageProvider provider) {
+		super(provider);
+		this.providerName = providerName;
+	}
+
+	@Override
+	public NaturalLanguageResponse processText(String text, List<NaturalLanguageFeature> features,
+			NaturalLanguageEncoding encoding) throws NuxeoException {
+
+		Timer.Context context = onRequest(text, features);
+		try {
+			return provider.processText(text, features, encoding);
+		} catch (RuntimeException e) {
+			onError(e);
+			throw e;
+		} finally {
+			context.stop();
+		}
+	}
+
+	@Override
+	public CompletableFuture<NaturalLanguageResponse> processTextAsync(String text,
+			List<NaturalLanguageFeature> features, NaturalLanguageEncoding encoding, Executor executor) {
+
+		Timer.Context context = onRequest(text, features);
+		CompletableFuture<NaturalLanguageResponse> future;
+		try {
+			future = provider.processTextAsync(text, features, encoding, executor);
+		} catch (RuntimeException e) {
+			context.stop();
+			onError(e);
+			return failedFuture(e);
+		}
+		future.whenComplete((response, t) -> {
+			context.stop();
+			if (t != null) {
+				onError(t);
+			}
+		});
+
+		return future;
+	}
+
+	@Override
+	public List<NaturalLanguageResponse> processTexts(List<String> texts, List<NaturalLanguageFeature> features,
+			NaturalLanguageEncoding encoding, ExecutorService executor) throws NuxeoException {
+
+		for (String text : texts) {
+			onText(text);
+		}
+		Timer.Context context = NaturalLanguageMetrics.timer("provider", providerName, "batches",
+				NaturalLanguageMetrics.getFeaturesKey(features)).time();
+		try {
+			return provider.processTexts(texts, features, encoding, executor);
+		} catch (RuntimeException e) {
+			onError(e);
+			throw e;
+		} finally {
+			context.stop();
+		}
+	}
+
+	protected Timer.Context onRequest(String text, List<NaturalLanguageFeature> features) {
+		onText(text);
+		return NaturalLanguageMetrics.timer("provider", providerName, "calls",
+				NaturalLanguageMetrics.getFeaturesKey(features)).time();
+	}
+
+	protected void onText(String text) {
+		NaturalLanguageMetrics.meter("provider", providerName, "characters").mark(text.length());
+		NaturalLanguageMetrics.histogram("provider", providerName, "textLength").update(text.length());
+	}
+
+	protected void onError(Throwable t) {
+		NaturalLanguageMetrics.meter("provider", providerName, "errors", NaturalLanguageMetrics.getErrorCause(t))
+				.mark();
+	}
+
+}
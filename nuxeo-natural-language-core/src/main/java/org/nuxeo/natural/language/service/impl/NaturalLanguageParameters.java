@@ -0,0 +1,62 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.service.impl;
+
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Reads the parameters of a provider (as contributed in its
+ * <code>parameters</code> element), used by the policies wrapping the
+ * providers. A missing or blank parameter gives the default value.
+ *
+ * @since 9.10
+ */
+public class NaturalLanguageParameters {
+
+	private NaturalLanguageParameters() {
+		// Utility class
+	}
+
+	/**
+	 * @return the trimmed value, {@code null} if the parameter is missing or
+	 *         blank
+	 */
+	public static String get(Map<String, String> parameters, String name) {
+		String value = parameters == null ? null : parameters.get(name);
+		return StringUtils.isBlank(value) ? null : value.trim();
+	}
+
+	public static double getDouble(Map<String, String> parameters, String name, double defaultValue) {
+		String value = get(parameters, name);
+		return value == null ? defaultValue : Double.parseDouble(value);
+	}
+
+	public static int getInt(Map<String, String> parameters, String name, int defaultValue) {
+		String value = get(parameters, name);
+		return value == null ? defaultValue : Integer.parseInt(value);
+	}
+
+	public static long getLong(Map<String, String> parameters, String name, long defaultValue) {
+		String value = get(parameters, name);
+		return value == null ? defaultValue : Long.parseLong(value);
+	}
+
+}
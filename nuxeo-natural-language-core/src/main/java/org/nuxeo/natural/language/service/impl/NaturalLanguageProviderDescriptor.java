@@ -40,6 +40,15 @@ public class NaturalLanguageProviderDescriptor {
 	@XNode("@class")
 	protected Class<?> klass;
 
+	/**
+	 * Max. duration of a call to the service with this provider, all chunks
+	 * and retries included. 0 (default) means no limit
+	 *
+	 * @since 9.10
+	 */
+	@XNode("@defaultTimeoutMillis")
+	protected long defaultTimeoutMillis = 0;
+
 	@XNodeMap(value = "parameters/parameter", key = "@name", type = HashMap.class, componentType = String.class)
 	protected Map<String, String> parameters = new HashMap<>();
 
@@ -51,6 +60,13 @@ public class NaturalLanguageProviderDescriptor {
 		return providerName;
 	}
 
+	/**
+	 * @since 9.10
+	 */
+	public long getDefaultTimeoutMillis() {
+		return defaultTimeoutMillis;
+	}
+
 	public Map<String, String> getParameters() {
 		return parameters;
 	}
@@ -0,0 +1,146 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.service.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.natural.language.service.api.NaturalLanguageEncoding;
+import org.nuxeo.natural.language.service.api.NaturalLanguageFeature;
+import org.nuxeo.natural.language.service.api.NaturalLanguageProvider;
+import org.nuxeo.natural.language.service.api.NaturalLanguageResponse;
+
+/**
+ * Base class of the providers wrapping another one to control the calls the
+ * service makes to it (rate limit, concurrency limit, ...). Wrappers can be
+ * stacked.
+ * <p>
+ * {@link #processTexts} is delegated, so a batch reaches the provider as a
+ * batch (the Google provider bounds the requests in flight of a batch).
+ * Wrappers whose policy applies to each request override it with
+ * {@link #processEachText}.
+ * <p>
+ * Wrappers are used by the service for its own calls,
+ * {@link org.nuxeo.natural.language.service.api.NaturalLanguage#getProvider}
+ * still returns the provider itself.
+ *
+ * @since 9.10
+ */
+public abstract class NaturalLanguageProviderWrapper implements NaturalLanguageProvider {
+
+	protected final NaturalLanguageProvider provider;
+
+	protected NaturalLanguageProviderWrapper(NaturalLanguageProvider provider) {
+		this.provider = provider;
+	}
+
+	/**
+	 * @return the wrapped provider, which can be another wrapper
+	 */
+	public NaturalLanguageProvider getProvider() {
+		return provider;
+	}
+
+	@Override
+	public NaturalLanguageResponse processText(String text, List<NaturalLanguageFeature> features,
+			NaturalLanguageEncoding encoding) throws NuxeoException {
+		return provider.processText(text, features, encoding);
+	}
+
+	@Override
+	public CompletableFuture<NaturalLanguageResponse> processTextAsync(String text,
+			List<NaturalLanguageFeature> features, NaturalLanguageEncoding encoding, Executor executor) {
+		return provider.processTextAsync(text, features, encoding, executor);
+	}
+
+	@Override
+	public List<NaturalLanguageResponse> processTexts(List<String> texts, List<NaturalLanguageFeature> features,
+			NaturalLanguageEncoding encoding, ExecutorService executor) throws NuxeoException {
+		return provider.processTexts(texts, features, encoding, executor);
+	}
+
+	/**
+	 * Sends each text of a batch with {@link #processTextAsync} of this
+	 * wrapper, so every request goes through its policy
+	 *
+	 * @return the responses, in the order of the texts
+	 */
+	protected List<NaturalLanguageResponse> processEachText(List<String> texts, List<NaturalLanguageFeature> features,
+			NaturalLanguageEncoding encoding, ExecutorService executor) throws NuxeoException {
+
+		List<CompletableFuture<NaturalLanguageResponse>> futures = new ArrayList<>(texts.size());
+		for (String text : texts) {
+			futures.add(processTextAsync(text, features, encoding, executor));
+		}
+
+		return NaturalLanguageProvider.getAll(futures);
+	}
+
+	@Override
+	public boolean isRetryable(Throwable t) {
+		return provider.isRetryable(t);
+	}
+
+	@Override
+	public boolean isOverload(Throwable t) {
+		return provider.isOverload(t);
+	}
+
+	@Override
+	public List<NaturalLanguageFeature> getSupportedFeatures() {
+		return provider.getSupportedFeatures();
+	}
+
+	@Override
+	public Object getNativeClient() {
+		return provider.getNativeClient();
+	}
+
+	/**
+	 * Adds the statistics of this wrapper, and of the wrapped ones, to the map
+	 *
+	 * @param stats
+	 */
+	public void collectStatistics(Map<String, Object> stats) {
+		if (provider instanceof NaturalLanguageProviderWrapper) {
+			((NaturalLanguageProviderWrapper) provider).collectStatistics(stats);
+		}
+	}
+
+	/**
+	 * Frees the resources held by this wrapper and the wrapped ones
+	 */
+	public void shutdown() {
+		if (provider instanceof NaturalLanguageProviderWrapper) {
+			((NaturalLanguageProviderWrapper) provider).shutdown();
+		}
+	}
+
+	protected static <T> CompletableFuture<T> failedFuture(Throwable t) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		future.completeExceptionally(t);
+		return future;
+	}
+
+}
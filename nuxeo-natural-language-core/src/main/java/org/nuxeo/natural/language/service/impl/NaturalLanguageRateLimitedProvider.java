@@ -0,0 +1,158 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.service.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.natural.language.service.api.NaturalLanguageDeadline;
+import org.nuxeo.natural.language.service.api.NaturalLanguageEncoding;
+import org.nuxeo.natural.language.service.api.NaturalLanguageFeature;
+import org.nuxeo.natural.language.service.api.NaturalLanguageProvider;
+import org.nuxeo.natural.language.service.api.NaturalLanguageResponse;
+
+/**
+ * Wraps a provider so every request it sends goes through a
+ * {@link NaturalLanguageRateLimiter}.
+ * <ul>
+ * <li>{@link #processText}: waits for the permit in the calling thread</li>
+ * <li>{@link #processTextAsync}: the request is sent by a timer once the
+ * permit is available, no thread waits</li>
+ * <li>{@link #processTexts}: the requests are sent one after the other as
+ * permits become available, so the timeout applies to each text, not to the
+ * whole batch</li>
+ * </ul>
+ *
+ * @since 9.10
+ */
+public class NaturalLanguageRateLimitedProvider extends NaturalLanguageProviderWrapper {
+
+	protected final NaturalLanguageRateLimiter rateLimiter;
+
+	protected ScheduledExecutorService timer = null;
+
+	public NaturalLanguageRateLimitedProvider(NaturalLanguageProvider provider,
+			NaturalLanguageRateLimiter rateLimiter) {
+		super(provider);
+		this.rateLimiter = rateLimiter;
+	}
+
+	public NaturalLanguageRateLimiter getRateLimiter() {
+		return rateLimiter;
+	}
+
+	@Override
+	public NaturalLanguageResponse processText(String text, List<NaturalLanguageFeature> features,
+			NaturalLanguageEncoding encoding) throws NuxeoException {
+		rateLimiter.acquire(text.length());
+		return provider.processText(text, features, encoding);
+	}
+
+	@Override
+	public CompletableFuture<NaturalLanguageResponse> processTextAsync(String text,
+			List<NaturalLanguageFeature> features, NaturalLanguageEncoding encoding, Executor executor) {
+
+		long waitNanos;
+		try {
+			waitNanos = rateLimiter.reserve(text.length());
+		} catch (NuxeoException e) {
+			return failedFuture(e);
+		}
+		if (waitNanos <= 0) {
+			return provider.processTextAsync(text, features, encoding, executor);
+		}
+
+		CompletableFuture<NaturalLanguageResponse> result = new CompletableFuture<>();
+		NaturalLanguageDeadline deadline = NaturalLanguageDeadline.current();
+		getTimer().schedule(() -> {
+			if (result.isDone()) {
+				// Cancelled while waiting
+				return;
+			}
+			CompletableFuture<NaturalLanguageResponse> call = NaturalLanguageDeadline.call(deadline,
+					() -> provider.processTextAsync(text, features, encoding, executor));
+			call.whenComplete((response, t) -> {
+				if (t == null) {
+					result.complete(response);
+				} else {
+					result.completeExceptionally(t);
+				}
+			});
+		}, waitNanos, TimeUnit.NANOSECONDS);
+
+		return result;
+	}
+
+	@Override
+	public List<NaturalLanguageResponse> processTexts(List<String> texts, List<NaturalLanguageFeature> features,
+			NaturalLanguageEncoding encoding, ExecutorService executor) throws NuxeoException {
+
+		List<CompletableFuture<NaturalLanguageResponse>> futures = new ArrayList<>(texts.size());
+		try {
+			for (String text : texts) {
+				rateLimiter.acquire(text.length());
+				futures.add(provider.processTextAsync(text, features, encoding, executor));
+			}
+		} catch (NuxeoException e) {
+			for (CompletableFuture<NaturalLanguageResponse> future : futures) {
+				future.cancel(true);
+			}
+			throw e;
+		}
+
+		return NaturalLanguageProvider.getAll(futures);
+	}
+
+	@Override
+	public void collectStatistics(Map<String, Object> stats) {
+		stats.put("rateLimiter", rateLimiter.getStatistics());
+		super.collectStatistics(stats);
+	}
+
+	protected synchronized ScheduledExecutorService getTimer() {
+		if (timer == null) {
+			timer = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "NaturalLanguage-rateLimiter");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return timer;
+	}
+
+	@Override
+	public void shutdown() {
+		synchronized (this) {
+			if (timer != null) {
+				timer.shutdownNow();
+				timer = null;
+			}
+		}
+		super.shutdown();
+	}
+
+}
@@ -0,0 +1,264 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.service.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.nuxeo.natural.language.service.api.NaturalLanguageDeadline;
+import org.nuxeo.natural.language.service.api.NaturalLanguageDeadlineException;
+import org.nuxeo.natural.language.service.api.NaturalLanguageRateLimitException;
+
+/**
+ * Token-bucket rate limiter for the calls to a provider, configured with the
+ * parameters of the provider contribution:
+ * <ul>
+ * <li><code>rateLimit.requestsPerSecond</code>: max. number of requests per
+ * second. 0 (default) means no limit</li>
+ * <li><code>rateLimit.charactersPerMinute</code>: max. number of characters
+ * sent per minute. 0 (default) means no limit</li>
+ * <li><code>rateLimit.mode</code>: <code>BLOCK</code> (default) waits for a
+ * permit, <code>FAIL_FAST</code> rejects the call if no permit is available
+ * right now</li>
+ * <li><code>rateLimit.timeoutMillis</code>: in <code>BLOCK</code> mode, max.
+ * time to wait for a permit (default 10000)</li>
+ * </ul>
+ * The request bucket holds one second of requests, the character bucket one
+ * minute of characters, so a burst never exceeds the quota of its period. A
+ * text bigger than the character bucket only waits for a full bucket.
+ * <p>
+ * Permits are reserved: a caller which has to wait takes its tokens right
+ * away (the bucket goes negative) and then waits, so callers are served in
+ * the order they arrived. A caller never waits after the deadline of its call
+ * (see {@link NaturalLanguageDeadline}).
+ *
+ * @since 9.10
+ */
+public class NaturalLanguageRateLimiter {
+
+	public static final String REQUESTS_PER_SECOND_PARAM = "rateLimit.requestsPerSecond";
+
+	public static final String CHARACTERS_PER_MINUTE_PARAM = "rateLimit.charactersPerMinute";
+
+	public static final String MODE_PARAM = "rateLimit.mode";
+
+	public static final String TIMEOUT_MILLIS_PARAM = "rateLimit.timeoutMillis";
+
+	public static final long DEFAULT_TIMEOUT_MILLIS = 10000;
+
+	public enum Mode {
+		BLOCK, FAIL_FAST
+	}
+
+	protected static class TokenBucket {
+
+		protected final double capacity;
+
+		protected final double tokensPerNano;
+
+		protected double tokens;
+
+		protected TokenBucket(double capacity, long periodNanos) {
+			this.capacity = capacity;
+			tokensPerNano = capacity / periodNanos;
+			tokens = capacity;
+		}
+
+		protected void refill(long elapsedNanos) {
+			tokens = Math.min(capacity, tokens + elapsedNanos * tokensPerNano);
+		}
+
+		protected double cost(int count) {
+			return Math.min(count, capacity);
+		}
+
+		protected long getWaitNanos(int count) {
+			double missing = cost(count) - tokens;
+			return missing <= 0 ? 0 : (long) Math.ceil(missing / tokensPerNano);
+		}
+
+		protected void take(int count) {
+			tokens -= cost(count);
+		}
+	}
+
+	protected final String providerName;
+
+	protected final TokenBucket requests;
+
+	protected final TokenBucket characters;
+
+	protected final Mode mode;
+
+	protected final long timeoutNanos;
+
+	protected long lastRefill = System.nanoTime();
+
+	protected final AtomicLong acquiredCount = new AtomicLong();
+
+	protected final AtomicLong delayedCount = new AtomicLong();
+
+	protected final AtomicLong rejectedCount = new AtomicLong();
+
+	protected final AtomicLong waitedNanos = new AtomicLong();
+
+	public NaturalLanguageRateLimiter(String providerName, Map<String, String> parameters) {
+
+		this.providerName = providerName;
+
+		double requestsPerSecond = NaturalLanguageParameters.getDouble(parameters, REQUESTS_PER_SECOND_PARAM, 0);
+		requests = requestsPerSecond > 0 ? new TokenBucket(requestsPerSecond, TimeUnit.SECONDS.toNanos(1)) : null;
+
+		double charactersPerMinute = NaturalLanguageParameters.getDouble(parameters, CHARACTERS_PER_MINUTE_PARAM, 0);
+		characters = charactersPerMinute > 0 ? new TokenBucket(charactersPerMinute, TimeUnit.MINUTES.toNanos(1))
+				: null;
+
+		String value = NaturalLanguageParameters.get(parameters, MODE_PARAM);
+		mode = value == null ? Mode.BLOCK : Mode.valueOf(value.toUpperCase());
+
+		timeoutNanos = TimeUnit.MILLISECONDS
+				.toNanos(NaturalLanguageParameters.getLong(parameters, TIMEOUT_MILLIS_PARAM, DEFAULT_TIMEOUT_MILLIS));
+	}
+
+	/**
+	 * @param parameters
+	 *            The parameters of the provider
+	 * @return true if the parameters define a request or a character limit
+	 */
+	public static boolean isConfigured(Map<String, String> parameters) {
+		return NaturalLanguageParameters.getDouble(parameters, REQUESTS_PER_SECOND_PARAM, 0) > 0
+				|| NaturalLanguageParameters.getDouble(parameters, CHARACTERS_PER_MINUTE_PARAM, 0) > 0;
+	}
+
+	/**
+	 * Waits (<code>BLOCK</code> mode) until the call can be made.
+	 *
+	 * @param chars
+	 *            The number of characters sent with the request
+	 * @throws NaturalLanguageRateLimitException
+	 *             if the call is rejected
+	 * @throws NaturalLanguageDeadlineException
+	 *             if the permit is not available before the deadline
+	 */
+	public void acquire(int chars) throws NaturalLanguageRateLimitException {
+
+		long waitNanos = reserve(chars);
+		if (waitNanos > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(waitNanos);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new NaturalLanguageRateLimitException(providerName,
+						"Interrupted while waiting for the rate limit of provider " + providerName);
+			}
+		}
+	}
+
+	/**
+	 * Reserves the permits for a call without waiting. The caller must wait
+	 * for the returned delay before calling the provider.
+	 *
+	 * @param chars
+	 *            The number of characters sent with the request
+	 * @return the delay to wait, in nanoseconds
+	 * @throws NaturalLanguageRateLimitException
+	 *             if the call is rejected
+	 * @throws NaturalLanguageDeadlineException
+	 *             if the permit is not available before the deadline
+	 */
+	public long reserve(int chars) throws NaturalLanguageRateLimitException {
+
+		long waitNanos;
+		synchronized (this) {
+			long now = System.nanoTime();
+			long elapsed = now - lastRefill;
+			lastRefill = now;
+			waitNanos = 0;
+			if (requests != null) {
+				requests.refill(elapsed);
+				waitNanos = requests.getWaitNanos(1);
+			}
+			if (characters != null) {
+				characters.refill(elapsed);
+				waitNanos = Math.max(waitNanos, characters.getWaitNanos(chars));
+			}
+
+			long maxWaitNanos = mode == Mode.FAIL_FAST ? 0 : timeoutNanos;
+			NaturalLanguageDeadline deadline = NaturalLanguageDeadline.current();
+			boolean deadlineFirst = deadline != null && deadline.getRemainingNanos() < maxWaitNanos;
+			if (deadlineFirst) {
+				maxWaitNanos = deadline.getRemainingNanos();
+			}
+			if (waitNanos > maxWaitNanos) {
+				rejectedCount.incrementAndGet();
+				NaturalLanguageMetrics.meter("provider", providerName, "rateLimit", "rejected").mark();
+				if (deadlineFirst) {
+					throw new NaturalLanguageDeadlineException(
+							"Deadline exceeded while waiting for the rate limit of provider " + providerName);
+				}
+				throw new NaturalLanguageRateLimitException(providerName,
+						"Rate limit exceeded for provider " + providerName + " (" + mode + ")");
+			}
+
+			if (requests != null) {
+				requests.take(1);
+			}
+			if (characters != null) {
+				characters.take(chars);
+			}
+		}
+
+		acquiredCount.incrementAndGet();
+		if (waitNanos > 0) {
+			delayedCount.incrementAndGet();
+			waitedNanos.addAndGet(waitNanos);
+		}
+
+		return waitNanos;
+	}
+
+	public String getProviderName() {
+		return providerName;
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	public Map<String, Object> getStatistics() {
+
+		Map<String, Object> stats = new HashMap<>();
+		stats.put("mode", mode.name());
+		stats.put("requestsPerSecond", requests == null ? 0 : requests.capacity);
+		stats.put("charactersPerMinute", characters == null ? 0 : characters.capacity);
+		stats.put("acquired", acquiredCount.get());
+		stats.put("delayed", delayedCount.get());
+		stats.put("rejected", rejectedCount.get());
+		stats.put("waitedMillis", TimeUnit.NANOSECONDS.toMillis(waitedNanos.get()));
+
+		return stats;
+	}
+
+}
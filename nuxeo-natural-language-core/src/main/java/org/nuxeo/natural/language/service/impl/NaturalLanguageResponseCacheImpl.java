@@ -0,0 +1,171 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.service.impl;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.nuxeo.natural.language.service.api.NaturalLanguageResponse;
+import org.nuxeo.natural.language.service.api.NaturalLanguageResponseCache;
+
+/**
+ * Default, in memory, implementation of the response cache. Entries are
+ * evicted in LRU order when the max number of entries is reached, and are
+ * ignored (and removed) when older than the time to live.
+ *
+ * Parameters:
+ * <ul>
+ * <li><code>maxEntries</code>: default 1000</li>
+ * <li><code>ttlSeconds</code>: default 3600. 0 means entries never expire</li>
+ * </ul>
+ *
+ * @since 9.10
+ */
+public class NaturalLanguageResponseCacheImpl implements NaturalLanguageResponseCache {
+
+	public static final String MAX_ENTRIES_PARAM = "maxEntries";
+
+	public static final String TTL_SECONDS_PARAM = "ttlSeconds";
+
+	public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+	public static final long DEFAULT_TTL_SECONDS = 3600;
+
+	protected final int maxEntries;
+
+	protected final long ttlMillis;
+
+	protected final Map<String, Entry> entries;
+
+	protected final AtomicLong hits = new AtomicLong();
+
+	protected final AtomicLong misses = new AtomicLong();
+
+	protected final AtomicLong evictions = new AtomicLong();
+
+	protected static class Entry {
+
+		protected final NaturalLanguageResponse response;
+
+		protected final long createdAt;
+
+		protected Entry(NaturalLanguageResponse response, long createdAt) {
+			this.response = response;
+			this.createdAt = createdAt;
+		}
+	}
+
+	public NaturalLanguageResponseCacheImpl(Map<String, String> parameters) {
+
+		maxEntries = NaturalLanguageParameters.getInt(parameters, MAX_ENTRIES_PARAM, DEFAULT_MAX_ENTRIES);
+		ttlMillis = NaturalLanguageParameters.getInt(parameters, TTL_SECONDS_PARAM, (int) DEFAULT_TTL_SECONDS)
+				* 1000L;
+
+		entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				if (size() > maxEntries) {
+					evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	@Override
+	public NaturalLanguageResponse get(String key) {
+
+		Entry entry;
+		synchronized (entries) {
+			entry = entries.get(key);
+			if (entry != null && isExpired(entry)) {
+				entries.remove(key);
+				evictions.incrementAndGet();
+				entry = null;
+			}
+		}
+
+		if (entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+
+		hits.incrementAndGet();
+		return entry.response;
+	}
+
+	@Override
+	public void put(String key, NaturalLanguageResponse response) {
+		if (maxEntries <= 0 || response == null) {
+			return;
+		}
+		synchronized (entries) {
+			entries.put(key, new Entry(response, System.currentTimeMillis()));
+		}
+	}
+
+	protected boolean isExpired(Entry entry) {
+		return ttlMillis > 0 && System.currentTimeMillis() - entry.createdAt > ttlMillis;
+	}
+
+	@Override
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	@Override
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	@Override
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	@Override
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	@Override
+	public Map<String, Object> getStatistics() {
+
+		Map<String, Object> stats = new HashMap<>();
+		stats.put("size", size());
+		stats.put("maxEntries", maxEntries);
+		stats.put("ttlSeconds", ttlMillis / 1000);
+		stats.put("hits", getHitCount());
+		stats.put("misses", getMissCount());
+		stats.put("evictions", evictions.get());
+
+		return stats;
+	}
+
+}
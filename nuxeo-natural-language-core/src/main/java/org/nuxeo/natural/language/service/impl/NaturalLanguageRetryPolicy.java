@@ -0,0 +1,191 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.service.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.nuxeo.natural.language.service.api.NaturalLanguageDeadline;
+
+/**
+ * Retry policy for the calls to a provider, configured with the parameters of
+ * the provider contribution:
+ * <ul>
+ * <li><code>retry.maxAttempts</code>: max. number of calls for a text,
+ * including the first one. 1 (default) disables the retries</li>
+ * <li><code>retry.initialDelayMillis</code>: delay before the first retry
+ * (default 200)</li>
+ * <li><code>retry.multiplier</code>: the delay is multiplied by this value at
+ * each retry (default 2)</li>
+ * <li><code>retry.maxDelayMillis</code>: max. delay between two calls
+ * (default 10000)</li>
+ * <li><code>retry.jitter</code>: the delay is randomly reduced by up to this
+ * ratio (default 0.5), so the callers which failed at the same time do not
+ * retry at the same time</li>
+ * </ul>
+ * Only the errors the provider classifies as retryable (see
+ * {@link org.nuxeo.natural.language.service.api.NaturalLanguageProvider#isRetryable})
+ * are retried, and never if the deadline of the call would pass during the
+ * delay (see {@link NaturalLanguageDeadline}).
+ *
+ * @since 9.10
+ */
+public class NaturalLanguageRetryPolicy {
+
+	public static final String MAX_ATTEMPTS_PARAM = "retry.maxAttempts";
+
+	public static final String INITIAL_DELAY_MILLIS_PARAM = "retry.initialDelayMillis";
+
+	public static final String MULTIPLIER_PARAM = "retry.multiplier";
+
+	public static final String MAX_DELAY_MILLIS_PARAM = "retry.maxDelayMillis";
+
+	public static final String JITTER_PARAM = "retry.jitter";
+
+	public static final long DEFAULT_INITIAL_DELAY_MILLIS = 200;
+
+	public static final double DEFAULT_MULTIPLIER = 2;
+
+	public static final long DEFAULT_MAX_DELAY_MILLIS = 10000;
+
+	public static final double DEFAULT_JITTER = 0.5;
+
+	protected final int maxAttempts;
+
+	protected final long initialDelayMillis;
+
+	protected final double multiplier;
+
+	protected final long maxDelayMillis;
+
+	protected final double jitter;
+
+	protected final AtomicLong retryCount = new AtomicLong();
+
+	protected final AtomicLong recoveredCount = new AtomicLong();
+
+	protected final AtomicLong exhaustedCount = new AtomicLong();
+
+	protected final AtomicLong notRetryableCount = new AtomicLong();
+
+	protected final AtomicLong deadlineCount = new AtomicLong();
+
+	public NaturalLanguageRetryPolicy(Map<String, String> parameters) {
+		maxAttempts = Math.max(1, (int) NaturalLanguageParameters.getDouble(parameters, MAX_ATTEMPTS_PARAM, 1));
+		initialDelayMillis = (long) NaturalLanguageParameters.getDouble(parameters, INITIAL_DELAY_MILLIS_PARAM,
+				DEFAULT_INITIAL_DELAY_MILLIS);
+		multiplier = NaturalLanguageParameters.getDouble(parameters, MULTIPLIER_PARAM, DEFAULT_MULTIPLIER);
+		maxDelayMillis = (long) NaturalLanguageParameters.getDouble(parameters, MAX_DELAY_MILLIS_PARAM,
+				DEFAULT_MAX_DELAY_MILLIS);
+		jitter = Math.min(1, Math.max(0, NaturalLanguageParameters.getDouble(parameters, JITTER_PARAM,
+				DEFAULT_JITTER)));
+	}
+
+	/**
+	 * @param parameters
+	 *            The parameters of the provider
+	 * @return true if the parameters allow more than one attempt
+	 */
+	public static boolean isConfigured(Map<String, String> parameters) {
+		return NaturalLanguageParameters.getDouble(parameters, MAX_ATTEMPTS_PARAM, 1) > 1;
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * @param attempt
+	 *            The number of the attempt which failed, starting at 1
+	 * @return the delay before the next attempt
+	 */
+	public long getDelayMillis(int attempt) {
+		double delay = Math.min(maxDelayMillis, initialDelayMillis * Math.pow(multiplier, attempt - 1));
+		return (long) (delay * (1 - jitter * ThreadLocalRandom.current().nextDouble()));
+	}
+
+	/**
+	 * @param attempt
+	 *            The number of the attempt which failed, starting at 1
+	 * @param retryable
+	 *            If the error can be retried
+	 * @return true if a new attempt must be done. Updates the statistics
+	 */
+	public boolean onFailure(int attempt, boolean retryable) {
+		return onFailure(attempt, retryable, 0, null);
+	}
+
+	/**
+	 * @param attempt
+	 *            The number of the attempt which failed, starting at 1
+	 * @param retryable
+	 *            If the error can be retried
+	 * @param delayMillis
+	 *            The delay before the next attempt
+	 * @param deadline
+	 *            The deadline of the call, can be {@code null}
+	 * @return true if a new attempt must be done. Updates the statistics
+	 */
+	public boolean onFailure(int attempt, boolean retryable, long delayMillis, NaturalLanguageDeadline deadline) {
+		if (!retryable) {
+			notRetryableCount.incrementAndGet();
+			return false;
+		}
+		if (attempt >= maxAttempts) {
+			exhaustedCount.incrementAndGet();
+			return false;
+		}
+		if (deadline != null && delayMillis >= deadline.getRemainingMillis()) {
+			deadlineCount.incrementAndGet();
+			return false;
+		}
+		retryCount.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * @param attempt
+	 *            The number of the attempt which succeeded, starting at 1
+	 */
+	public void onSuccess(int attempt) {
+		if (attempt > 1) {
+			recoveredCount.incrementAndGet();
+		}
+	}
+
+	public long getRetryCount() {
+		return retryCount.get();
+	}
+
+	public Map<String, Object> getStatistics() {
+
+		Map<String, Object> stats = new HashMap<>();
+		stats.put("maxAttempts", maxAttempts);
+		stats.put("retries", retryCount.get());
+		stats.put("recovered", recoveredCount.get());
+		stats.put("exhausted", exhaustedCount.get());
+		stats.put("notRetryable", notRetryableCount.get());
+		stats.put("deadline", deadlineCount.get());
+
+		return stats;
+	}
+
+}
@@ -0,0 +1,206 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.service.impl;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.natural.language.service.api.NaturalLanguageDeadline;
+import org.nuxeo.natural.language.service.api.NaturalLanguageEncoding;
+import org.nuxeo.natural.language.service.api.NaturalLanguageFeature;
+import org.nuxeo.natural.language.service.api.NaturalLanguageProvider;
+import org.nuxeo.natural.language.service.api.NaturalLanguageResponse;
+
+/**
+ * Wraps a provider so the calls failing with a retryable error are done
+ * again, following a {@link NaturalLanguageRetryPolicy}. With
+ * {@link #processTextAsync}, the next attempt is scheduled by a timer, no
+ * thread waits during the backoff. All the attempts share the deadline of the
+ * call, if any. The retries, and the calls recovered or exhausted, are
+ * reported in the {@link NaturalLanguageMetrics}.
+ *
+ * @since 9.10
+ */
+public class NaturalLanguageRetryingProvider extends NaturalLanguageProviderWrapper {
+
+	private static final Log log = LogFactory.getLog(NaturalLanguageRetryingProvider.class);
+
+	protected final String providerName;
+
+	protected final NaturalLanguageRetryPolicy retryPolicy;
+
+	protected ScheduledExecutorService timer = null;
+
+	public NaturalLanguageRetryingProvider(String providerName, NaturalLanguageProvider provider,
+			NaturalLanguageRetryPolicy retryPolicy) {
+		super(provider);
+		this.providerName = providerName;
+		this.retryPolicy = retryPolicy;
+	}
+
+	public NaturalLanguageRetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+	@Override
+	public NaturalLanguageResponse processText(String text, List<NaturalLanguageFeature> features,
+			NaturalLanguageEncoding encoding) throws NuxeoException {
+
+		for (int attempt = 1;; attempt++) {
+			try {
+				NaturalLanguageResponse response = provider.processText(text, features, encoding);
+				onSuccess(attempt);
+				return response;
+			} catch (RuntimeException e) {
+				long delay = retryPolicy.getDelayMillis(attempt);
+				if (!onFailure(attempt, e, delay, NaturalLanguageDeadline.current())) {
+					throw e;
+				}
+				log.debug("Attempt " + attempt + " failed for provider " + providerName + ", retrying in " + delay
+						+ "ms: " + e.getMessage());
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw e;
+				}
+			}
+		}
+	}
+
+	@Override
+	public CompletableFuture<NaturalLanguageResponse> processTextAsync(String text,
+			List<NaturalLanguageFeature> features, NaturalLanguageEncoding encoding, Executor executor) {
+
+		CompletableFuture<NaturalLanguageResponse> result = new CompletableFuture<>();
+		attempt(result, 1, NaturalLanguageDeadline.current(), text, features, encoding, executor);
+
+		return result;
+	}
+
+	protected void attempt(CompletableFuture<NaturalLanguageResponse> result, int attempt,
+			NaturalLanguageDeadline deadline, String text, List<NaturalLanguageFeature> features,
+			NaturalLanguageEncoding encoding, Executor executor) {
+
+		if (result.isDone()) {
+			// Cancelled during the backoff
+			return;
+		}
+
+		CompletableFuture<NaturalLanguageResponse> future;
+		try {
+			future = NaturalLanguageDeadline.call(deadline,
+					() -> provider.processTextAsync(text, features, encoding, executor));
+		} catch (RuntimeException e) {
+			future = failedFuture(e);
+		}
+
+		future.whenComplete((response, t) -> {
+			if (t == null) {
+				onSuccess(attempt);
+				result.complete(response);
+				return;
+			}
+			Throwable error = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+			long delay = retryPolicy.getDelayMillis(attempt);
+			if (result.isDone() || !onFailure(attempt, error, delay, deadline)) {
+				result.completeExceptionally(error);
+				return;
+			}
+			log.debug("Attempt " + attempt + " failed for provider " + providerName + ", retrying in " + delay
+					+ "ms: " + error.getMessage());
+			getTimer().schedule(() -> attempt(result, attempt + 1, deadline, text, features, encoding, executor),
+					delay, TimeUnit.MILLISECONDS);
+		});
+	}
+
+	/*
+	 * Updates the statistics of the policy and the metrics of the provider
+	 */
+	protected void onSuccess(int attempt) {
+		retryPolicy.onSuccess(attempt);
+		if (attempt > 1) {
+			NaturalLanguageMetrics.meter("provider", providerName, "retries", "recovered").mark();
+		}
+	}
+
+	/*
+	 * @return true if a new attempt must be done
+	 */
+	protected boolean onFailure(int attempt, Throwable t, long delayMillis, NaturalLanguageDeadline deadline) {
+		boolean retryable = provider.isRetryable(t);
+		if (retryPolicy.onFailure(attempt, retryable, delayMillis, deadline)) {
+			NaturalLanguageMetrics.meter("provider", providerName, "retries").mark();
+			return true;
+		}
+		if (retryable && attempt >= retryPolicy.getMaxAttempts()) {
+			NaturalLanguageMetrics.meter("provider", providerName, "retries", "exhausted").mark();
+		}
+		return false;
+	}
+
+	/**
+	 * Each text of the batch is retried on its own, so a failed text does not send the
+	 * whole batch again
+	 */
+	@Override
+	public List<NaturalLanguageResponse> processTexts(List<String> texts, List<NaturalLanguageFeature> features,
+			NaturalLanguageEncoding encoding, ExecutorService executor) throws NuxeoException {
+		return processEachText(texts, features, encoding, executor);
+	}
+
+	@Override
+	public void collectStatistics(Map<String, Object> stats) {
+		stats.put("retry", retryPolicy.getStatistics());
+		super.collectStatistics(stats);
+	}
+
+	protected synchronized ScheduledExecutorService getTimer() {
+		if (timer == null) {
+			timer = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "NaturalLanguage-retry");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return timer;
+	}
+
+	@Override
+	public void shutdown() {
+		synchronized (this) {
+			if (timer != null) {
+				timer.shutdownNow();
+				timer = null;
+			}
+		}
+		super.shutdown();
+	}
+
+}
@@ -0,0 +1,124 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.service.impl;
+
+import java.util.List;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.nuxeo.natural.language.service.api.NaturalLanguageEntity;
+import org.nuxeo.natural.language.service.api.NaturalLanguageResponse;
+import org.nuxeo.natural.language.service.api.NaturalLanguageSamplingStrategy;
+import org.nuxeo.natural.language.service.api.NaturalLanguageSentence;
+import org.nuxeo.natural.language.service.api.NaturalLanguageToken;
+
+/**
+ * The response for a text reduced by a {@link NaturalLanguageTextSampler}.
+ * Delegates to the response for the sampled text, and records the strategy
+ * and the sizes. Offsets (tokens) are offsets in the sampled text.
+ *
+ * @since 9.10
+ */
+public class NaturalLanguageSampledResponse implements NaturalLanguageResponse {
+
+	protected final NaturalLanguageResponse response;
+
+	protected final NaturalLanguageSamplingStrategy strategy;
+
+	protected final int originalLength;
+
+	protected final int sampledLength;
+
+	public NaturalLanguageSampledResponse(NaturalLanguageResponse response, NaturalLanguageSamplingStrategy strategy,
+			int originalLength, int sampledLength) {
+		this.response = response;
+		this.strategy = strategy;
+		this.originalLength = originalLength;
+		this.sampledLength = sampledLength;
+	}
+
+	@Override
+	public NaturalLanguageSamplingStrategy getSamplingStrategy() {
+		return strategy;
+	}
+
+	/**
+	 * @return the number of chars of the text before sampling
+	 */
+	public int getOriginalLength() {
+		return originalLength;
+	}
+
+	/**
+	 * @return the number of chars actually analyzed
+	 */
+	public int getSampledLength() {
+		return sampledLength;
+	}
+
+	@Override
+	public String getLanguage() {
+		return response.getLanguage();
+	}
+
+	@Override
+	public Float getSentimentScore() {
+		return response.getSentimentScore();
+	}
+
+	@Override
+	public Float getSentimentMagnitude() {
+		return response.getSentimentMagnitude();
+	}
+
+	@Override
+	public List<NaturalLanguageSentence> getSentences() {
+		return response.getSentences();
+	}
+
+	@Override
+	public List<NaturalLanguageEntity> getEntities() {
+		return response.getEntities();
+	}
+
+	@Override
+	public List<NaturalLanguageToken> getTokens() {
+		return response.getTokens();
+	}
+
+	@Override
+	public Object getNativeObject() {
+		return response.getNativeObject();
+	}
+
+	@Override
+	public JSONObject toJSON() throws JSONException {
+
+		JSONObject sampling = new JSONObject();
+		sampling.put("strategy", strategy.name());
+		sampling.put("originalLength", originalLength);
+		sampling.put("sampledLength", sampledLength);
+
+		JSONObject obj = response.toJSON();
+		obj.put("sampling", sampling);
+
+		return obj;
+	}
+
+}
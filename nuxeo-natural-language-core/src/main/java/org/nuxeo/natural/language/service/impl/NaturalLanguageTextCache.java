@@ -0,0 +1,280 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.service.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Cache of the raw text extracted from blobs, keyed by the digest of the blob,
+ * so the any2text conversion is not done again for a blob that was already
+ * converted.
+ *
+ * Two tiers:
+ * <ul>
+ * <li>Memory: LRU, bounded by the total number of characters
+ * (<code>maxMemoryChars</code>, default 10,000,000). A text bigger than this
+ * limit is not stored in memory</li>
+ * <li>Disk (optional): one UTF-8 file per digest in <code>directory</code>,
+ * bounded by <code>maxDiskEntries</code> (default 10,000). LRU too: a file
+ * is touched when read, and the least recently used files are removed first.
+ * Disabled when no directory is set</li>
+ * </ul>
+ *
+ * @since 9.10
+ */
+public class NaturalLanguageTextCache {
+
+	private static final Log log = LogFactory.getLog(NaturalLanguageTextCache.class);
+
+	public static final String MAX_MEMORY_CHARS_PARAM = "maxMemoryChars";
+
+	public static final String DIRECTORY_PARAM = "directory";
+
+	public static final String MAX_DISK_ENTRIES_PARAM = "maxDiskEntries";
+
+	public static final long DEFAULT_MAX_MEMORY_CHARS = 10000000L;
+
+	public static final int DEFAULT_MAX_DISK_ENTRIES = 10000;
+
+	protected static final String FILE_SUFFIX = ".txt";
+
+	protected static final String TMP_FILE_INFIX = ".tmp-";
+
+	protected final long maxMemoryChars;
+
+	protected final File directory;
+
+	protected final int maxDiskEntries;
+
+	protected final LinkedHashMap<String, String> memory = new LinkedHashMap<>(16, 0.75f, true);
+
+	protected long memoryChars = 0;
+
+	protected final AtomicInteger diskEntries = new AtomicInteger();
+
+	protected final AtomicLong memoryHits = new AtomicLong();
+
+	protected final AtomicLong diskHits = new AtomicLong();
+
+	protected final AtomicLong misses = new AtomicLong();
+
+	public NaturalLanguageTextCache(Map<String, String> parameters) {
+
+		String value = parameters == null ? null : parameters.get(MAX_MEMORY_CHARS_PARAM);
+		maxMemoryChars = StringUtils.isBlank(value) ? DEFAULT_MAX_MEMORY_CHARS : Long.parseLong(value.trim());
+
+		value = parameters == null ? null : parameters.get(MAX_DISK_ENTRIES_PARAM);
+		maxDiskEntries = StringUtils.isBlank(value) ? DEFAULT_MAX_DISK_ENTRIES : Integer.parseInt(value.trim());
+
+		value = parameters == null ? null : parameters.get(DIRECTORY_PARAM);
+		if (StringUtils.isBlank(value)) {
+			directory = null;
+		} else {
+			directory = new File(value.trim());
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new IllegalArgumentException("Cannot create the text cache directory: " + directory);
+			}
+			// Files being written when the server stopped
+			File[] tmpFiles = directory.listFiles((dir, name) -> name.contains(TMP_FILE_INFIX));
+			if (tmpFiles != null) {
+				for (File file : tmpFiles) {
+					file.delete();
+				}
+			}
+			File[] existing = directory.listFiles((dir, name) -> name.endsWith(FILE_SUFFIX));
+			diskEntries.set(existing == null ? 0 : existing.length);
+		}
+	}
+
+	/**
+	 * @param digest
+	 * @return the text extracted from the blob with this digest, or
+	 *         {@code null} if not found
+	 */
+	public String get(String digest) {
+
+		String text;
+		synchronized (memory) {
+			text = memory.get(digest);
+		}
+		if (text != null) {
+			memoryHits.incrementAndGet();
+			return text;
+		}
+
+		File file = getFile(digest);
+		if (file != null && file.isFile()) {
+			try {
+				text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+				diskHits.incrementAndGet();
+				// Keeps the recently used files away from the purge
+				file.setLastModified(System.currentTimeMillis());
+				putInMemory(digest, text);
+				return text;
+			} catch (IOException e) {
+				// Removed by another thread (cleanup) or unreadable: just
+				// consider it is not in the cache
+				log.debug("Cannot read the cached text for digest " + digest, e);
+			}
+		}
+
+		misses.incrementAndGet();
+		return null;
+	}
+
+	public void put(String digest, String text) {
+
+		if (digest == null || text == null) {
+			return;
+		}
+
+		putInMemory(digest, text);
+
+		File file = getFile(digest);
+		if (file != null && !file.exists()) {
+			try {
+				File tmp = new File(directory, digest + TMP_FILE_INFIX + Thread.currentThread().getId());
+				Files.write(tmp.toPath(), text.getBytes(StandardCharsets.UTF_8));
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+				if (diskEntries.incrementAndGet() > maxDiskEntries) {
+					purgeDisk();
+				}
+			} catch (IOException e) {
+				log.warn("Cannot store the extracted text for digest " + digest + " in " + directory, e);
+			}
+		}
+	}
+
+	protected void putInMemory(String digest, String text) {
+
+		if (text.length() > maxMemoryChars) {
+			return;
+		}
+
+		synchronized (memory) {
+			String previous = memory.put(digest, text);
+			if (previous != null) {
+				memoryChars -= previous.length();
+			}
+			memoryChars += text.length();
+
+			Iterator<String> it = memory.values().iterator();
+			while (memoryChars > maxMemoryChars && it.hasNext()) {
+				memoryChars -= it.next().length();
+				it.remove();
+			}
+		}
+	}
+
+	/*
+	 * Removes the least recently used 10% of the files
+	 */
+	protected synchronized void purgeDisk() {
+
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(FILE_SUFFIX));
+		if (files == null || files.length <= maxDiskEntries) {
+			return;
+		}
+
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		int toRemove = files.length - maxDiskEntries + Math.max(1, maxDiskEntries / 10);
+		int removed = 0;
+		for (int i = 0; i < toRemove && i < files.length; i++) {
+			if (files[i].delete()) {
+				removed += 1;
+			}
+		}
+		diskEntries.set(files.length - removed);
+	}
+
+	/*
+	 * The digest is used as file name. Just making sure it cannot be used to
+	 * go outside the directory.
+	 */
+	protected File getFile(String digest) {
+		if (directory == null || StringUtils.isEmpty(digest)
+				|| !StringUtils.isAlphanumeric(StringUtils.remove(digest, '-'))) {
+			return null;
+		}
+		return new File(directory, digest + FILE_SUFFIX);
+	}
+
+	public void clear() {
+		synchronized (memory) {
+			memory.clear();
+			memoryChars = 0;
+		}
+		if (directory != null) {
+			File[] files = directory.listFiles((dir, name) -> name.endsWith(FILE_SUFFIX));
+			if (files != null) {
+				for (File file : files) {
+					file.delete();
+				}
+			}
+			diskEntries.set(0);
+		}
+	}
+
+	public long getMemoryHitCount() {
+		return memoryHits.get();
+	}
+
+	public long getDiskHitCount() {
+		return diskHits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public Map<String, Object> getStatistics() {
+
+		Map<String, Object> stats = new HashMap<>();
+		synchronized (memory) {
+			stats.put("memoryEntries", memory.size());
+			stats.put("memoryChars", memoryChars);
+		}
+		stats.put("maxMemoryChars", maxMemoryChars);
+		stats.put("diskEnabled", directory != null);
+		stats.put("diskEntries", diskEntries.get());
+		stats.put("memoryHits", getMemoryHitCount());
+		stats.put("diskHits", getDiskHitCount());
+		stats.put("misses", getMissCount());
+
+		return stats;
+	}
+
+}
@@ -0,0 +1,203 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.service.impl;
+
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.nuxeo.natural.language.service.api.NaturalLanguageEncoding;
+
+/**
+ * Splits a text in chunks whose UTF-8 size is under a budget, so each chunk
+ * can be sent in its own request to the provider.
+ * <p>
+ * A chunk ends, by order of preference, after a paragraph (empty line), after
+ * a sentence, after a whitespace. A chunk is cut in the middle of a word only
+ * if it has no whitespace at all. Paragraph and sentence ends are used only if
+ * they are in the second half of the chunk, to avoid many small chunks.
+ * <p>
+ * Concatenating the texts of the chunks gives the original text.
+ *
+ * @since 9.10
+ */
+public class NaturalLanguageTextChunker {
+
+	/**
+	 * A part of the text, with its position in the original text
+	 */
+	public static class Chunk {
+
+		protected final String text;
+
+		protected final int beginIndex;
+
+		public Chunk(String text, int beginIndex) {
+			this.text = text;
+			this.beginIndex = beginIndex;
+		}
+
+		public String getText() {
+			return text;
+		}
+
+		/**
+		 * @return the index (in chars) of the chunk in the original text
+		 */
+		public int getBeginIndex() {
+			return beginIndex;
+		}
+	}
+
+	private NaturalLanguageTextChunker() {
+		// Utility class
+	}
+
+	/**
+	 * @param text
+	 * @param maxBytes
+	 *            The max. UTF-8 size of a chunk. 0 or less means no limit
+	 * @return the chunks. A single one if the text is under the budget
+	 */
+	public static List<Chunk> split(String text, int maxBytes) {
+
+		List<Chunk> chunks = new ArrayList<>();
+		if (maxBytes <= 0 || utf8Length(text, 0, text.length()) <= maxBytes) {
+			chunks.add(new Chunk(text, 0));
+			return chunks;
+		}
+
+		BreakIterator sentences = BreakIterator.getSentenceInstance();
+		sentences.setText(text);
+
+		int length = text.length();
+		int start = 0;
+		while (start < length) {
+			int end = getMaxEnd(text, start, maxBytes);
+			if (end < length) {
+				end = getBestBreak(text, sentences, start, end);
+			}
+			chunks.add(new Chunk(text.substring(start, end), start));
+			start = end;
+		}
+
+		return chunks;
+	}
+
+	/*
+	 * The max. end index such that [start, end[ fits in maxBytes, without
+	 * splitting a surrogate pair. At least one character, whatever the budget.
+	 */
+	protected static int getMaxEnd(String text, int start, int maxBytes) {
+
+		int bytes = 0;
+		int i = start;
+		int length = text.length();
+		while (i < length) {
+			int codePoint = text.codePointAt(i);
+			int size = utf8Length(codePoint);
+			if (bytes + size > maxBytes && i > start) {
+				break;
+			}
+			bytes += size;
+			i += Character.charCount(codePoint);
+		}
+
+		return i;
+	}
+
+	protected static int getBestBreak(String text, BreakIterator sentences, int start, int maxEnd) {
+
+		int half = start + (maxEnd - start) / 2;
+
+		// Paragraph
+		int paragraph = text.lastIndexOf("\n\n", maxEnd - 2);
+		if (paragraph >= half) {
+			return paragraph + 2;
+		}
+
+		// Sentence
+		int sentence = sentences.preceding(maxEnd);
+		if (sentence != BreakIterator.DONE && sentence >= half && sentence > start) {
+			return sentence;
+		}
+
+		// Whitespace
+		for (int i = maxEnd - 1; i > start; i--) {
+			if (Character.isWhitespace(text.charAt(i))) {
+				return i + 1;
+			}
+		}
+
+		return maxEnd;
+	}
+
+	/**
+	 * @return the size of [beginIndex, endIndex[ once encoded in UTF-8
+	 */
+	public static int utf8Length(String text, int beginIndex, int endIndex) {
+
+		int bytes = 0;
+		int i = beginIndex;
+		while (i < endIndex) {
+			int codePoint = text.codePointAt(i);
+			bytes += utf8Length(codePoint);
+			i += Character.charCount(codePoint);
+		}
+
+		return bytes;
+	}
+
+	protected static int utf8Length(int codePoint) {
+		if (codePoint < 0x80) {
+			return 1;
+		} else if (codePoint < 0x800) {
+			return 2;
+		} else if (codePoint < 0x10000) {
+			return 3;
+		}
+		return 4;
+	}
+
+	/**
+	 * Converts an index in the text (in chars) into an offset as returned by
+	 * the provider for this encoding.
+	 *
+	 * @param text
+	 * @param index
+	 * @param encoding
+	 * @return the offset, -1 if encoding is {@code null} (providers do not
+	 *         return offsets in this case)
+	 */
+	public static int toOffset(String text, int index, NaturalLanguageEncoding encoding) {
+
+		if (encoding == null) {
+			return -1;
+		}
+		switch (encoding) {
+		case UTF8:
+			return utf8Length(text, 0, index);
+		case UTF32:
+			return text.codePointCount(0, index);
+		default:
+			return index;
+		}
+	}
+
+}
@@ -0,0 +1,159 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.service.impl;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.impl.blob.StringBlob;
+
+/**
+ * Reads the text extracted from a blob, up to a max. number of chars.
+ * <p>
+ * A {@link StringBlob} (what most text converters return) already holds the
+ * text: it is returned as is. Other blobs are decoded from their stream (the
+ * content never exists as a byte array) straight into a char array sized
+ * from the length of the blob, capped at the max. number of chars, then
+ * copied once into the String.
+ * <p>
+ * A truncated text is logged and counted in the
+ * <code>extraction.truncated</code> meter (see {@link NaturalLanguageMetrics}),
+ * unless only its head was requested ({@link #readHead}, when the text is
+ * sampled from its head anyway). It is never cut in the middle of a
+ * surrogate pair.
+ * <p>
+ * The char array is the text itself, not a reusable buffer: the String is
+ * built from it with a single copy, and its size is bounded by the limit.
+ *
+ * @since 9.10
+ */
+public class NaturalLanguageTextReader {
+
+	private static final Log log = LogFactory.getLog(NaturalLanguageTextReader.class);
+
+	/**
+	 * Initial capacity when the length of the blob is unknown
+	 */
+	protected static final int DEFAULT_CAPACITY = 8192;
+
+	protected static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+	private NaturalLanguageTextReader() {
+		// Utility class
+	}
+
+	/**
+	 * @param blob
+	 *            A UTF-8 text blob
+	 * @param maxChars
+	 *            Stop reading after this number of chars. 0 or less means no
+	 *            limit
+	 * @return the text
+	 * @throws IOException
+	 */
+	public static String read(Blob blob, int maxChars) throws IOException {
+		return read(blob, maxChars, true);
+	}
+
+	/**
+	 * Reads the first chars of the text, without reporting the rest as
+	 * truncated
+	 *
+	 * @param blob
+	 *            A UTF-8 text blob
+	 * @param maxChars
+	 *            Stop reading after this number of chars. 0 or less means no
+	 *            limit
+	 * @return the head of the text
+	 * @throws IOException
+	 */
+	public static String readHead(Blob blob, int maxChars) throws IOException {
+		return read(blob, maxChars, false);
+	}
+
+	protected static String read(Blob blob, int maxChars, boolean reportTruncation) throws IOException {
+
+		int limit = maxChars <= 0 ? MAX_ARRAY_LENGTH : Math.min(maxChars, MAX_ARRAY_LENGTH);
+
+		if (blob instanceof StringBlob) {
+			String text = blob.getString();
+			if (text.length() <= limit) {
+				return text;
+			}
+			if (reportTruncation) {
+				onTruncated(blob, limit);
+			}
+			return text.substring(0, getCutIndex(text.charAt(limit - 1), limit));
+		}
+
+		long length = blob.getLength();
+		// In UTF-8, the number of chars is at most the number of bytes
+		int capacity = length < 0 ? Math.min(DEFAULT_CAPACITY, limit) : (int) Math.min(length, limit);
+		char[] chars = new char[capacity];
+		int count = 0;
+		boolean truncated = false;
+		try (Reader reader = new InputStreamReader(blob.getStream(), StandardCharsets.UTF_8)) {
+			while (true) {
+				if (count == chars.length) {
+					if (count == limit) {
+						truncated = reader.read() != -1;
+						break;
+					}
+					// Length unknown, or the blob is longer than announced
+					long grown = Math.max(count + (long) (count >> 1), DEFAULT_CAPACITY);
+					chars = Arrays.copyOf(chars, (int) Math.min(grown, limit));
+				}
+				int read = reader.read(chars, count, chars.length - count);
+				if (read == -1) {
+					break;
+				}
+				count += read;
+			}
+		}
+
+		if (truncated) {
+			if (reportTruncation) {
+				onTruncated(blob, limit);
+			}
+			count = getCutIndex(chars[count - 1], count);
+		}
+
+		return new String(chars, 0, count);
+	}
+
+	/*
+	 * Do not keep the first half of a surrogate pair
+	 */
+	protected static int getCutIndex(char last, int index) {
+		return Character.isHighSurrogate(last) ? index - 1 : index;
+	}
+
+	protected static void onTruncated(Blob blob, int limit) {
+		NaturalLanguageMetrics.meter("extraction", "truncated").mark();
+		log.warn("Text of blob " + blob.getFilename() + " truncated to " + limit
+				+ " chars, only this part is analyzed (extraction maxChars in the configuration)");
+	}
+
+}
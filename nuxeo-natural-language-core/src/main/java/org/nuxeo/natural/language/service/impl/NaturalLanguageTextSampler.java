@@ -0,0 +1,176 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.service.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.nuxeo.natural.language.service.api.NaturalLanguageSamplingStrategy;
+
+/**
+ * Reduces a text to a max. number of chars, following a
+ * {@link NaturalLanguageSamplingStrategy}. Texts are cut after a whitespace
+ * when possible, never in the middle of a surrogate pair.
+ *
+ * @since 9.10
+ */
+public class NaturalLanguageTextSampler {
+
+	protected static final String SEPARATOR = "\n\n";
+
+	protected static final Pattern PARAGRAPH_END = Pattern.compile("\\n\\s*\\n");
+
+	private NaturalLanguageTextSampler() {
+		// Utility class
+	}
+
+	/**
+	 * @param text
+	 * @param maxChars
+	 * @param strategy
+	 * @return the sampled text, or the text itself if it has no more than
+	 *         <code>maxChars</code> chars
+	 */
+	public static String sample(String text, int maxChars, NaturalLanguageSamplingStrategy strategy) {
+
+		if (maxChars <= 0 || text.length() <= maxChars) {
+			return text;
+		}
+
+		switch (strategy) {
+		case HEAD_TAIL:
+			return headTail(text, maxChars);
+		case PARAGRAPHS:
+			return paragraphs(text, maxChars);
+		default:
+			return head(text, maxChars);
+		}
+	}
+
+	protected static String head(String text, int maxChars) {
+		return text.substring(0, getHeadEnd(text, 0, maxChars));
+	}
+
+	protected static String headTail(String text, int maxChars) {
+
+		int half = (maxChars - SEPARATOR.length()) / 2;
+		if (half <= 0) {
+			return head(text, maxChars);
+		}
+
+		String head = text.substring(0, getHeadEnd(text, 0, half));
+		String tail = text.substring(getTailStart(text, half));
+
+		return head + SEPARATOR + tail;
+	}
+
+	/*
+	 * Takes paragraphs spread over the text by character position: each
+	 * sampled char stands for length / maxChars chars of the text, so after a
+	 * paragraph is taken, the paragraphs starting before the position it
+	 * stands for are skipped. Short and long paragraphs weigh their length,
+	 * not one paragraph each.
+	 */
+	protected static String paragraphs(String text, int maxChars) {
+
+		List<String> paragraphs = new ArrayList<>();
+		List<Integer> starts = new ArrayList<>();
+		Matcher matcher = PARAGRAPH_END.matcher(text);
+		int start = 0;
+		while (matcher.find()) {
+			paragraphs.add(text.substring(start, matcher.start()));
+			starts.add(start);
+			start = matcher.end();
+		}
+		paragraphs.add(text.substring(start));
+		starts.add(start);
+
+		if (paragraphs.size() < 3) {
+			return headTail(text, maxChars);
+		}
+
+		double charsPerSampledChar = (double) text.length() / maxChars;
+		double next = 0;
+		StringBuilder sb = new StringBuilder(maxChars);
+		for (int i = 0; i < paragraphs.size(); i++) {
+			if (starts.get(i) < next) {
+				continue;
+			}
+			String paragraph = paragraphs.get(i);
+			int length = sb.length();
+			int remaining = maxChars - length - (length == 0 ? 0 : SEPARATOR.length());
+			if (remaining <= 0) {
+				break;
+			}
+			if (length > 0) {
+				sb.append(SEPARATOR);
+			}
+			if (paragraph.length() > remaining) {
+				sb.append(paragraph, 0, getHeadEnd(paragraph, 0, remaining));
+				break;
+			}
+			sb.append(paragraph);
+			next = starts.get(i) + (sb.length() - length) * charsPerSampledChar;
+		}
+
+		return sb.toString();
+	}
+
+	/*
+	 * End of the head of max. maxChars chars, after the last whitespace if
+	 * there is one in the second half
+	 */
+	protected static int getHeadEnd(String text, int start, int maxChars) {
+
+		int end = Math.min(text.length(), start + maxChars);
+		if (end < text.length() && Character.isHighSurrogate(text.charAt(end - 1))) {
+			end -= 1;
+		}
+		for (int i = end - 1; i > start + maxChars / 2; i--) {
+			if (Character.isWhitespace(text.charAt(i))) {
+				return i + 1;
+			}
+		}
+
+		return end;
+	}
+
+	/*
+	 * Start of the tail of max. maxChars chars, after the first whitespace if
+	 * there is one in its first half
+	 */
+	protected static int getTailStart(String text, int maxChars) {
+
+		int start = Math.max(0, text.length() - maxChars);
+		if (start > 0 && Character.isLowSurrogate(text.charAt(start))) {
+			start += 1;
+		}
+		int limit = Math.min(text.length(), start + maxChars / 2);
+		for (int i = start; i < limit; i++) {
+			if (Character.isWhitespace(text.charAt(i))) {
+				return i + 1;
+			}
+		}
+
+		return start;
+	}
+
+}
@@ -0,0 +1,194 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.service.impl;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.automation.AutomationService;
+import org.nuxeo.ecm.automation.OperationChain;
+import org.nuxeo.ecm.automation.OperationContext;
+import org.nuxeo.ecm.automation.OperationException;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentRef;
+import org.nuxeo.ecm.core.api.IdRef;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.api.security.SecurityConstants;
+import org.nuxeo.ecm.core.event.Event;
+import org.nuxeo.ecm.core.event.EventService;
+import org.nuxeo.ecm.core.event.impl.DocumentEventContext;
+import org.nuxeo.ecm.core.event.impl.EventContextImpl;
+import org.nuxeo.ecm.core.work.AbstractWork;
+import org.nuxeo.natural.language.service.api.NaturalLanguage;
+import org.nuxeo.natural.language.service.api.NaturalLanguageCircuitOpenException;
+import org.nuxeo.natural.language.service.api.NaturalLanguageDocumentCoalescer;
+import org.nuxeo.runtime.api.Framework;
+
+/**
+ * Analyzes a document in the <code>naturalLanguage</code> work queue, so the
+ * (slow) calls to the provider do not use the threads of the async event
+ * listeners.
+ *
+ * The work only holds the document id, and there is one work id per document:
+ * while a work is scheduled, the next ones for the same document are
+ * coalesced by the WorkManager. The work always analyzes the current blob of
+ * the document. See {@link NaturalLanguageDocumentCoalescer} for the debounce
+ * window.
+ *
+ * When the circuit breaker of the provider is open, the analysis is deferred
+ * until the provider can be called again.
+ *
+ * The document is saved as the user who triggered the analysis (so
+ * <code>dc:lastContributor</code> is not changed to system), unless the event
+ * came from a system session.
+ *
+ * @since 9.10
+ */
+public class NaturalLanguageWork extends AbstractWork {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Log log = LogFactory.getLog(NaturalLanguageWork.class);
+
+	public static final String CATEGORY = "naturalLanguage";
+
+	public NaturalLanguageWork(String repositoryName, String docId) {
+		this(repositoryName, docId, null);
+	}
+
+	/**
+	 * @param originatingUsername
+	 *            The user the document is saved as, {@code null} for system
+	 */
+	public NaturalLanguageWork(String repositoryName, String docId, String originatingUsername) {
+		super(CATEGORY + ":" + repositoryName + ":" + docId);
+		setDocument(repositoryName, docId);
+		setOriginatingUsername(originatingUsername);
+	}
+
+	@Override
+	public String getCategory() {
+		return CATEGORY;
+	}
+
+	@Override
+	public String getTitle() {
+		return "Natural Language: " + docId;
+	}
+
+	@Override
+	public void work() {
+
+		NaturalLanguage naturalLanguageService = Framework.getService(NaturalLanguage.class);
+		if (naturalLanguageService == null) {
+			return;
+		}
+
+		NaturalLanguageDocumentCoalescer coalescer = Framework.getService(NaturalLanguageDocumentCoalescer.class);
+		long startedAt = System.currentTimeMillis();
+		if (!naturalLanguageService.isDocumentListenerEnabled()) {
+			coalescer.done(repositoryName, docId, startedAt);
+			return;
+		}
+
+		long remaining = coalescer.getRemainingMillis(repositoryName, docId);
+		if (remaining > 0) {
+			// Still receiving events for this document
+			coalescer.defer(repositoryName, docId, originatingUsername, remaining);
+			setStatus("Deferred");
+			return;
+		}
+
+		try {
+			analyze(naturalLanguageService, coalescer);
+		} finally {
+			// Whatever the outcome, so the window of the document is not kept
+			coalescer.done(repositoryName, docId, startedAt);
+		}
+	}
+
+	protected void analyze(NaturalLanguage naturalLanguageService, NaturalLanguageDocumentCoalescer coalescer) {
+
+		setStatus("Analyzing");
+		if (originatingUsername == null || SecurityConstants.SYSTEM_USERNAME.equals(originatingUsername)) {
+			openSystemSession();
+		} else {
+			openUserSession();
+		}
+
+		DocumentRef ref = new IdRef(docId);
+		if (session.exists(ref)) {
+			DocumentModel doc = session.getDocument(ref);
+			if (naturalLanguageService.canProcessDocument(doc)) {
+				try {
+					processDocument(naturalLanguageService, doc);
+				} catch (NuxeoException e) {
+					NaturalLanguageCircuitOpenException open = NaturalLanguageCircuitOpenException.find(e);
+					if (open == null) {
+						throw e;
+					}
+					// Spread the documents deferred during the outage
+					long delay = open.getRetryAfterMillis();
+					delay += ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+					log.debug("Provider unavailable, analysis of document " + docId + " deferred by " + delay
+							+ "ms");
+					coalescer.defer(repositoryName, docId, originatingUsername, delay);
+					setStatus("Deferred");
+					return;
+				}
+			}
+		}
+
+		setStatus("Done");
+	}
+
+	protected void processDocument(NaturalLanguage naturalLanguageService, DocumentModel doc) {
+
+		String mapperChainName = naturalLanguageService.getDefaultDocumentProcessingChainName();
+		if (mapperChainName == null) {
+			doc = naturalLanguageService.getDocumentProcessor().process(session, doc);
+		} else {
+			AutomationService as = Framework.getService(AutomationService.class);
+			OperationContext octx = new OperationContext();
+			octx.setInput(doc);
+			octx.setCoreSession(session);
+			OperationChain chain = new OperationChain("NaturalLanguageListenerChain");
+			chain.add(mapperChainName);
+
+			try {
+				as.run(octx, chain);
+			} catch (OperationException e) {
+				NaturalLanguageCircuitOpenException open = NaturalLanguageCircuitOpenException.find(e);
+				if (open != null) {
+					throw open;
+				}
+				log.warn("Error running the chain <" + mapperChainName + ">", e);
+				return;
+			}
+		}
+
+		EventContextImpl evctx = new DocumentEventContext(session, session.getPrincipal(), doc);
+
+		Event eventToSend = evctx.newEvent(NaturalLanguage.EVENT_DOCUMENT_HANDLED);
+		EventService eventService = Framework.getLocalService(EventService.class);
+		eventService.fireEvent(eventToSend);
+	}
+
+}
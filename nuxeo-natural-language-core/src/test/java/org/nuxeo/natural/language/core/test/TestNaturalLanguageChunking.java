@@ -0,0 +1,204 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.core.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.nuxeo.natural.language.service.api.NaturalLanguageEncoding;
+import org.nuxeo.natural.language.service.api.NaturalLanguageEntity;
+import org.nuxeo.natural.language.service.api.NaturalLanguageResponse;
+import org.nuxeo.natural.language.service.api.NaturalLanguageSentence;
+import org.nuxeo.natural.language.service.api.NaturalLanguageToken;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageEntityImpl;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageMergedResponse;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageTextChunker;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageTextChunker.Chunk;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageTokenImpl;
+
+public class TestNaturalLanguageChunking {
+
+	protected static class ChunkResponse implements NaturalLanguageResponse {
+
+		protected final float score;
+
+		protected final float magnitude;
+
+		protected final List<NaturalLanguageEntity> entities;
+
+		protected final List<NaturalLanguageToken> tokens;
+
+		protected ChunkResponse(float score, float magnitude, List<NaturalLanguageEntity> entities,
+				List<NaturalLanguageToken> tokens) {
+			this.score = score;
+			this.magnitude = magnitude;
+			this.entities = entities;
+			this.tokens = tokens;
+		}
+
+		@Override
+		public String getLanguage() {
+			return "en";
+		}
+
+		@Override
+		public Float getSentimentScore() {
+			return score;
+		}
+
+		@Override
+		public Float getSentimentMagnitude() {
+			return magnitude;
+		}
+
+		@Override
+		public List<NaturalLanguageSentence> getSentences() {
+			return null;
+		}
+
+		@Override
+		public List<NaturalLanguageEntity> getEntities() {
+			return entities;
+		}
+
+		@Override
+		public List<NaturalLanguageToken> getTokens() {
+			return tokens;
+		}
+
+		@Override
+		public Object getNativeObject() {
+			return null;
+		}
+
+		@Override
+		public JSONObject toJSON() throws JSONException {
+			return NaturalLanguageResponse.toJSON(this);
+		}
+	}
+
+	protected static String join(List<Chunk> chunks) {
+		StringBuilder sb = new StringBuilder();
+		for (Chunk chunk : chunks) {
+			assertEquals(sb.length(), chunk.getBeginIndex());
+			sb.append(chunk.getText());
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void testSmallTextIsNotSplit() {
+
+		String text = "A short text.";
+		List<Chunk> chunks = NaturalLanguageTextChunker.split(text, 100);
+		assertEquals(1, chunks.size());
+		assertEquals(text, chunks.get(0).getText());
+
+		chunks = NaturalLanguageTextChunker.split(text, 0);
+		assertEquals(1, chunks.size());
+	}
+
+	@Test
+	public void testSplitOnParagraphsAndSentences() {
+
+		String paragraph1 = "First sentence of the first paragraph. Second sentence of the first paragraph.\n\n";
+		String paragraph2 = "First sentence of the second paragraph. Second sentence of the second paragraph.";
+		String text = paragraph1 + paragraph2;
+
+		// Paragraph 1 fits, not the whole text
+		List<Chunk> chunks = NaturalLanguageTextChunker.split(text, paragraph1.length() + 10);
+		assertEquals(2, chunks.size());
+		assertEquals(paragraph1, chunks.get(0).getText());
+		assertEquals(text, join(chunks));
+
+		// Only sentences fit
+		chunks = NaturalLanguageTextChunker.split(text, 50);
+		assertTrue(chunks.size() >= 4);
+		assertEquals("First sentence of the first paragraph. ", chunks.get(0).getText());
+		assertEquals(text, join(chunks));
+		for (Chunk chunk : chunks) {
+			assertTrue(NaturalLanguageTextChunker.utf8Length(chunk.getText(), 0, chunk.getText().length()) <= 50);
+		}
+	}
+
+	@Test
+	public void testBudgetIsInBytes() {
+
+		// 3 bytes per char in UTF-8, and no whitespace
+		String text = "文文文文文文文文文文";
+		List<Chunk> chunks = NaturalLanguageTextChunker.split(text, 9);
+		assertEquals(4, chunks.size());
+		assertEquals(3, chunks.get(0).getText().length());
+		assertEquals(text, join(chunks));
+	}
+
+	@Test
+	public void testMergedResponse() {
+
+		String text = "0123456789" + "01234567890123456789";
+		List<Chunk> chunks = Arrays.asList(new Chunk(text.substring(0, 10), 0), new Chunk(text.substring(10), 10));
+
+		NaturalLanguageEntity nuxeo1 = new NaturalLanguageEntityImpl("Nuxeo", "ORGANIZATION", 0.9f,
+				Arrays.asList("Nuxeo"), null);
+		NaturalLanguageEntity paris = new NaturalLanguageEntityImpl("Paris", "LOCATION", 0.3f, null, null);
+		NaturalLanguageEntity nuxeo2 = new NaturalLanguageEntityImpl("Nuxeo", "ORGANIZATION", 0.6f,
+				Arrays.asList("the platform"), null);
+		NaturalLanguageToken token1 = new NaturalLanguageTokenImpl("0123", 0, "NUM", null, null, null, null, null,
+				null, null, null, null);
+		NaturalLanguageToken token2 = new NaturalLanguageTokenImpl("4567", 4, "NUM", null, null, null, null, null,
+				null, null, null, null);
+
+		List<NaturalLanguageResponse> responses = Arrays.asList(
+				new ChunkResponse(0.8f, 1.0f, Arrays.asList(nuxeo1, paris), Collections.singletonList(token1)),
+				new ChunkResponse(-0.4f, 3.0f, Collections.singletonList(nuxeo2), Collections.singletonList(token2)));
+
+		NaturalLanguageMergedResponse merged = new NaturalLanguageMergedResponse(text, chunks, responses,
+				NaturalLanguageEncoding.UTF8);
+
+		assertEquals(2, merged.getChunkCount());
+		assertEquals("en", merged.getLanguage());
+
+		// Magnitude-weighted score
+		assertEquals(4.0f, merged.getSentimentMagnitude(), 0.0001);
+		assertEquals((0.8f * 1.0f - 0.4f * 3.0f) / 4.0f, merged.getSentimentScore(), 0.0001);
+
+		// Nuxeo merged, weighted by the size of the chunks: 0.9 * 1/3 + 0.6 *
+		// 2/3
+		List<NaturalLanguageEntity> entities = merged.getEntities();
+		assertEquals(2, entities.size());
+		assertEquals("Nuxeo", entities.get(0).getName());
+		assertEquals(0.7f, entities.get(0).getSalience(), 0.0001);
+		assertEquals(2, entities.get(0).getMentions().size());
+		assertEquals("Paris", entities.get(1).getName());
+		assertEquals(0.1f, entities.get(1).getSalience(), 0.0001);
+
+		// Offsets of the tokens in the second chunk are shifted
+		List<NaturalLanguageToken> tokens = merged.getTokens();
+		assertEquals(2, tokens.size());
+		assertEquals(0, tokens.get(0).getBeginOffset());
+		assertEquals(14, tokens.get(1).getBeginOffset());
+	}
+
+}
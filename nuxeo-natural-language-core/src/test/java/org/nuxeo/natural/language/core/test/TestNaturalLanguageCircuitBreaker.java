@@ -0,0 +1,205 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.core.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.natural.language.core.test.mock.MockNaturalLanguageProvider;
+import org.nuxeo.natural.language.core.test.mock.MockParameters;
+import org.nuxeo.natural.language.service.api.NaturalLanguageCircuitOpenException;
+import org.nuxeo.natural.language.service.api.NaturalLanguageDeadlineException;
+import org.nuxeo.natural.language.service.api.NaturalLanguageEncoding;
+import org.nuxeo.natural.language.service.api.NaturalLanguageFeature;
+import org.nuxeo.natural.language.service.api.NaturalLanguageProviderException;
+import org.nuxeo.natural.language.service.api.NaturalLanguageRateLimitException;
+import org.nuxeo.natural.language.service.api.NaturalLanguageResponse;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageCircuitBreaker;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageCircuitBreakerProvider;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageCircuitBreaker.State;
+
+public class TestNaturalLanguageCircuitBreaker {
+
+	protected static final List<NaturalLanguageFeature> FEATURES = Collections
+			.singletonList(NaturalLanguageFeature.DOCUMENT_SENTIMENT);
+
+	/**
+	 * Throws the error it is given, or answers if there is none
+	 */
+	protected static class FailingProvider extends MockNaturalLanguageProvider {
+
+		protected RuntimeException error;
+
+		public FailingProvider() {
+			super(null);
+		}
+
+		@Override
+		public NaturalLanguageResponse processText(String text, List<NaturalLanguageFeature> features,
+				NaturalLanguageEncoding encoding) throws NuxeoException {
+			if (error != null) {
+				throw error;
+			}
+			return super.processText(text, features, encoding);
+		}
+	}
+
+	protected static void assertFails(NaturalLanguageCircuitBreakerProvider provider, Class<?> errorClass) {
+		try {
+			provider.processText("Some text", FEATURES, null);
+			fail("Expected an error");
+		} catch (NuxeoException e) {
+			assertEquals(errorClass, e.getClass());
+		}
+	}
+
+	protected static NaturalLanguageCircuitBreaker newBreaker() {
+		return new NaturalLanguageCircuitBreaker("test",
+				MockParameters.of(NaturalLanguageCircuitBreaker.FAILURE_THRESHOLD_PARAM, "2",
+						NaturalLanguageCircuitBreaker.OPEN_MILLIS_PARAM, "100"));
+	}
+
+	protected static void assertShortCircuited(NaturalLanguageCircuitBreaker breaker) {
+		try {
+			breaker.acquire();
+			fail("Expected the circuit to be open");
+		} catch (NaturalLanguageCircuitOpenException e) {
+			assertEquals("test", e.getProviderName());
+			assertTrue(e.getRetryAfterMillis() > 0);
+		}
+	}
+
+	@Test
+	public void testOpensOnConsecutiveFailures() {
+
+		NaturalLanguageCircuitBreaker breaker = newBreaker();
+
+		breaker.acquire();
+		breaker.onResult(false);
+		breaker.acquire();
+		// Healthy: resets the count
+		breaker.onResult(true);
+		breaker.acquire();
+		breaker.onResult(false);
+		assertEquals(State.CLOSED, breaker.getState());
+
+		breaker.acquire();
+		breaker.onResult(false);
+		assertEquals(State.OPEN, breaker.getState());
+		assertShortCircuited(breaker);
+		assertEquals(1L, breaker.getStatistics().get("shortCircuited"));
+	}
+
+	@Test
+	public void testHalfOpen() throws Exception {
+
+		NaturalLanguageCircuitBreaker breaker = newBreaker();
+		for (int i = 0; i < 2; i++) {
+			breaker.acquire();
+			breaker.onResult(false);
+		}
+		assertEquals(State.OPEN, breaker.getState());
+
+		Thread.sleep(150);
+		// One trial call at a time
+		breaker.acquire();
+		assertEquals(State.HALF_OPEN, breaker.getState());
+		assertShortCircuited(breaker);
+
+		// Trial failed: open again
+		breaker.onResult(false);
+		assertEquals(State.OPEN, breaker.getState());
+		assertShortCircuited(breaker);
+
+		Thread.sleep(150);
+		breaker.acquire();
+		breaker.onResult(true);
+		assertEquals(State.CLOSED, breaker.getState());
+		breaker.acquire();
+		assertEquals(2L, breaker.getStatistics().get("opened"));
+	}
+
+	@Test
+	public void testDeadlineIsAFailure() {
+
+		FailingProvider failing = new FailingProvider();
+		NaturalLanguageCircuitBreakerProvider provider = new NaturalLanguageCircuitBreakerProvider(failing,
+				newBreaker());
+
+		// Not retryable, but the provider did not answer in time
+		failing.error = new NaturalLanguageDeadlineException("Too late");
+		assertFails(provider, NaturalLanguageDeadlineException.class);
+		assertFails(provider, NaturalLanguageDeadlineException.class);
+		assertEquals(State.OPEN, provider.getCircuitBreaker().getState());
+	}
+
+	@Test
+	public void testInvalidRequestIsNotAFailure() {
+
+		FailingProvider failing = new FailingProvider();
+		NaturalLanguageCircuitBreakerProvider provider = new NaturalLanguageCircuitBreakerProvider(failing,
+				newBreaker());
+
+		failing.error = new NaturalLanguageProviderException("Unavailable", true);
+		assertFails(provider, NaturalLanguageProviderException.class);
+		assertEquals(1, provider.getCircuitBreaker().getStatistics().get("consecutiveFailures"));
+
+		// The provider answered: it is healthy
+		failing.error = new NaturalLanguageProviderException("Invalid argument", false);
+		assertFails(provider, NaturalLanguageProviderException.class);
+		assertEquals(0, provider.getCircuitBreaker().getStatistics().get("consecutiveFailures"));
+	}
+
+	@Test
+	public void testLocalRejectionsAreIgnored() throws Exception {
+
+		FailingProvider failing = new FailingProvider();
+		NaturalLanguageCircuitBreakerProvider provider = new NaturalLanguageCircuitBreakerProvider(failing,
+				newBreaker());
+		NaturalLanguageCircuitBreaker breaker = provider.getCircuitBreaker();
+
+		// Closed: a rejection does not reset the count of failures
+		failing.error = new NaturalLanguageProviderException("Unavailable", true);
+		assertFails(provider, NaturalLanguageProviderException.class);
+		failing.error = new NaturalLanguageRateLimitException("test", "Rejected");
+		assertFails(provider, NaturalLanguageRateLimitException.class);
+		assertEquals(1, breaker.getStatistics().get("consecutiveFailures"));
+
+		failing.error = new NaturalLanguageProviderException("Unavailable", true);
+		assertFails(provider, NaturalLanguageProviderException.class);
+		assertEquals(State.OPEN, breaker.getState());
+
+		// Half-open: a rejected trial does not close the circuit, and the
+		// trial is given back
+		Thread.sleep(150);
+		failing.error = new NaturalLanguageRateLimitException("test", "Rejected");
+		assertFails(provider, NaturalLanguageRateLimitException.class);
+		assertEquals(State.HALF_OPEN, breaker.getState());
+		assertEquals(1L, breaker.getStatistics().get("ignored"));
+
+		failing.error = null;
+		provider.processText("Some text", FEATURES, null);
+		assertEquals(State.CLOSED, breaker.getState());
+	}
+
+}
@@ -0,0 +1,151 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.core.test;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.natural.language.core.test.mock.MockParameters;
+import org.nuxeo.natural.language.service.api.NaturalLanguageDeadlineException;
+import org.nuxeo.natural.language.service.api.NaturalLanguageProviderException;
+import org.nuxeo.natural.language.service.api.NaturalLanguageRateLimitException;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageConcurrencyLimiter;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageMetrics;
+
+public class TestNaturalLanguageConcurrencyLimiter {
+
+	protected static NaturalLanguageConcurrencyLimiter newLimiter(int initialLimit, int maxLimit) {
+		return new NaturalLanguageConcurrencyLimiter("test",
+				MockParameters.of(NaturalLanguageConcurrencyLimiter.INITIAL_LIMIT_PARAM, String.valueOf(initialLimit),
+						NaturalLanguageConcurrencyLimiter.MAX_LIMIT_PARAM, String.valueOf(maxLimit),
+						NaturalLanguageConcurrencyLimiter.TIMEOUT_MILLIS_PARAM, "50",
+						// Latency of the test calls is not meaningful
+						NaturalLanguageConcurrencyLimiter.LATENCY_TOLERANCE_PARAM, "1000000"));
+	}
+
+	@Test
+	public void testNoFreeSlot() {
+
+		long rejected = NaturalLanguageMetrics.meter("provider", "test", "concurrencyLimit", "rejected").getCount();
+		NaturalLanguageConcurrencyLimiter limiter = newLimiter(2, 4);
+		long start = limiter.acquire();
+		limiter.acquire();
+		try {
+			limiter.acquire();
+			fail("Expected no free slot");
+		} catch (NaturalLanguageRateLimitException e) {
+			// Expected
+		}
+		assertEquals(2, limiter.getInFlight());
+		assertEquals(rejected + 1,
+				NaturalLanguageMetrics.meter("provider", "test", "concurrencyLimit", "rejected").getCount());
+
+		limiter.onSuccess(start);
+		limiter.acquire();
+		assertEquals(2, limiter.getInFlight());
+	}
+
+	@Test
+	public void testAdditiveIncrease() {
+
+		NaturalLanguageConcurrencyLimiter limiter = newLimiter(2, 4);
+		for (int i = 0; i < 50; i++) {
+			long[] starts = new long[limiter.getLimit()];
+			for (int j = 0; j < starts.length; j++) {
+				starts[j] = limiter.acquire();
+			}
+			for (long start : starts) {
+				limiter.onSuccess(start);
+			}
+		}
+		assertEquals(4, limiter.getLimit());
+		assertEquals(0, limiter.getInFlight());
+	}
+
+	@Test
+	public void testMultiplicativeDecrease() {
+
+		NaturalLanguageConcurrencyLimiter limiter = newLimiter(4, 4);
+
+		// Not an overload: no change
+		limiter.onError(limiter.acquire(), false);
+		assertEquals(4, limiter.getLimit());
+
+		limiter.onError(limiter.acquire(), true);
+		assertEquals(3, limiter.getLimit());
+		assertEquals(0, limiter.getInFlight());
+		assertEquals(1L, limiter.getStatistics().get("overloaded"));
+	}
+
+	@Test
+	public void testIsOverload() {
+		assertTrue(NaturalLanguageProviderException.isOverload(new NuxeoException(new TimeoutException())));
+		assertTrue(NaturalLanguageProviderException
+				.isOverload(new NuxeoException(new NaturalLanguageDeadlineException("Too late"))));
+		// The status codes of the providers are checked by the providers
+		assertFalse(NaturalLanguageProviderException
+				.isOverload(new NuxeoException(new RuntimeException("RESOURCE_EXHAUSTED: Quota exceeded"))));
+		assertFalse(NaturalLanguageProviderException.isOverload(new NuxeoException("Invalid argument")));
+		assertFalse(NaturalLanguageProviderException.isOverload(null));
+	}
+
+	@Test
+	public void testAsyncAcquire() throws Exception {
+
+		ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+		try {
+			NaturalLanguageConcurrencyLimiter limiter = newLimiter(1, 1);
+			CompletableFuture<Long> first = limiter.acquireAsync(timer);
+			assertTrue(first.isDone());
+
+			// No free slot: queued, the calling thread does not wait
+			CompletableFuture<Long> second = limiter.acquireAsync(timer);
+			assertFalse(second.isDone());
+			assertEquals(1, limiter.getStatistics().get("queued"));
+
+			// Released => given to the queued caller
+			limiter.onSuccess(first.get());
+			assertTrue(second.isDone());
+			assertEquals(1, limiter.getInFlight());
+			assertEquals(0, limiter.getStatistics().get("queued"));
+
+			// Not released in time => rejected
+			CompletableFuture<Long> third = limiter.acquireAsync(timer);
+			try {
+				third.get(1, TimeUnit.SECONDS);
+				fail("Expected no free slot");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof NaturalLanguageRateLimitException);
+			}
+			limiter.onSuccess(second.get());
+			assertEquals(0, limiter.getInFlight());
+		} finally {
+			timer.shutdownNow();
+		}
+	}
+
+}
@@ -0,0 +1,156 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.core.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.natural.language.core.test.mock.MockNaturalLanguageProvider;
+import org.nuxeo.natural.language.core.test.mock.MockParameters;
+import org.nuxeo.natural.language.service.api.NaturalLanguageDeadline;
+import org.nuxeo.natural.language.service.api.NaturalLanguageDeadlineException;
+import org.nuxeo.natural.language.service.api.NaturalLanguageEncoding;
+import org.nuxeo.natural.language.service.api.NaturalLanguageFeature;
+import org.nuxeo.natural.language.service.api.NaturalLanguageProvider;
+import org.nuxeo.natural.language.service.api.NaturalLanguageProviderException;
+import org.nuxeo.natural.language.service.api.NaturalLanguageResponse;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageRetryPolicy;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageRetryingProvider;
+
+public class TestNaturalLanguageDeadline {
+
+	protected static final List<NaturalLanguageFeature> FEATURES = Collections
+			.singletonList(NaturalLanguageFeature.DOCUMENT_SENTIMENT);
+
+	@Test
+	public void testEarliestDeadlineIsKept() {
+
+		assertNull(NaturalLanguageDeadline.current());
+
+		NaturalLanguageDeadline shortDeadline = NaturalLanguageDeadline.after(1000);
+		NaturalLanguageDeadline longDeadline = NaturalLanguageDeadline.after(60000);
+		assertSame(shortDeadline, NaturalLanguageDeadline.call(shortDeadline, NaturalLanguageDeadline::current));
+		// A later deadline does not extend the call
+		assertSame(shortDeadline, NaturalLanguageDeadline.call(shortDeadline,
+				() -> NaturalLanguageDeadline.call(longDeadline, NaturalLanguageDeadline::current)));
+		assertSame(shortDeadline, NaturalLanguageDeadline.call(longDeadline,
+				() -> NaturalLanguageDeadline.call(shortDeadline, NaturalLanguageDeadline::current)));
+		// No deadline keeps the current one
+		assertSame(shortDeadline, NaturalLanguageDeadline.call(shortDeadline,
+				() -> NaturalLanguageDeadline.call(null, NaturalLanguageDeadline::current)));
+		// The previous deadline is restored
+		assertSame(longDeadline, NaturalLanguageDeadline.call(longDeadline, () -> {
+			NaturalLanguageDeadline.call(shortDeadline, NaturalLanguageDeadline::current);
+			return NaturalLanguageDeadline.current();
+		}));
+		assertNull(NaturalLanguageDeadline.current());
+	}
+
+	@Test
+	public void testExpiredDeadline() throws Exception {
+
+		NaturalLanguageDeadline deadline = NaturalLanguageDeadline.after(10);
+		assertFalse(deadline.isExpired());
+		deadline.check();
+
+		Thread.sleep(20);
+		assertTrue(deadline.isExpired());
+		assertEquals(0, deadline.getRemainingMillis());
+		try {
+			deadline.check();
+			fail("The deadline is passed");
+		} catch (NaturalLanguageDeadlineException e) {
+			assertFalse(e.isRetryable());
+		}
+	}
+
+	@Test
+	public void testFutureTimesOut() throws Exception {
+
+		CompletableFuture<String> future = NaturalLanguageDeadline.after(20).orTimeout(new CompletableFuture<>());
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			fail("The future should fail at its deadline");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof NaturalLanguageDeadlineException);
+		}
+
+		// Completed in time
+		CompletableFuture<String> completed = NaturalLanguageDeadline.after(20).orTimeout(new CompletableFuture<>());
+		completed.complete("done");
+		Thread.sleep(40);
+		assertEquals("done", completed.get());
+	}
+
+	@Test
+	public void testWaitIsBoundedByTheDeadline() {
+
+		long start = System.nanoTime();
+		try {
+			NaturalLanguageDeadline.call(NaturalLanguageDeadline.after(50),
+					() -> NaturalLanguageProvider.get(new CompletableFuture<>()));
+			fail("The wait should stop at the deadline");
+		} catch (NaturalLanguageDeadlineException e) {
+			// Expected
+		}
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+	}
+
+	@Test
+	public void testRetriesStopAtTheDeadline() {
+
+		AtomicInteger calls = new AtomicInteger();
+		MockNaturalLanguageProvider failing = new MockNaturalLanguageProvider(null) {
+			@Override
+			public NaturalLanguageResponse processText(String text, List<NaturalLanguageFeature> features,
+					NaturalLanguageEncoding encoding) throws NuxeoException {
+				calls.incrementAndGet();
+				throw new NaturalLanguageProviderException("Unavailable", true);
+			}
+		};
+		NaturalLanguageRetryPolicy policy = new NaturalLanguageRetryPolicy(
+				MockParameters.of(NaturalLanguageRetryPolicy.MAX_ATTEMPTS_PARAM, "10",
+						NaturalLanguageRetryPolicy.INITIAL_DELAY_MILLIS_PARAM, "1000",
+						NaturalLanguageRetryPolicy.JITTER_PARAM, "0"));
+		NaturalLanguageRetryingProvider provider = new NaturalLanguageRetryingProvider("test", failing, policy);
+
+		long start = System.nanoTime();
+		try {
+			NaturalLanguageDeadline.call(NaturalLanguageDeadline.after(500),
+					() -> provider.processText("Some text", FEATURES, null));
+			fail("The call should fail");
+		} catch (NaturalLanguageProviderException e) {
+			assertEquals("Unavailable", e.getMessage());
+		}
+		// No retry, as the first delay is after the deadline
+		assertEquals(1, calls.get());
+		assertEquals(0, policy.getRetryCount());
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500);
+		assertEquals(1L, policy.getStatistics().get("deadline"));
+	}
+
+}
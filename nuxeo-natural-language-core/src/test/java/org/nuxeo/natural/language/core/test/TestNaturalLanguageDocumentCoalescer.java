@@ -0,0 +1,73 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.core.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageDocumentCoalescerImpl;
+
+public class TestNaturalLanguageDocumentCoalescer {
+
+	@Test
+	public void testWindow() throws Exception {
+
+		NaturalLanguageDocumentCoalescerImpl coalescer = new NaturalLanguageDocumentCoalescerImpl(() -> 200);
+		assertEquals(0, coalescer.getRemainingMillis("test", "doc1"));
+
+		coalescer.touch("test", "doc1");
+		long remaining = coalescer.getRemainingMillis("test", "doc1");
+		assertTrue(remaining > 0 && remaining <= 200);
+
+		// An event received after the work started keeps the window
+		long startedAt = System.currentTimeMillis() - 1000;
+		coalescer.done("test", "doc1", startedAt);
+		assertTrue(coalescer.getRemainingMillis("test", "doc1") > 0);
+
+		coalescer.done("test", "doc1", System.currentTimeMillis());
+		assertEquals(0, coalescer.getRemainingMillis("test", "doc1"));
+		assertEquals(0, coalescer.getStatistics().get("pendingDocuments"));
+	}
+
+	@Test
+	public void testExpiredWindowsArePurged() throws Exception {
+
+		NaturalLanguageDocumentCoalescerImpl coalescer = new NaturalLanguageDocumentCoalescerImpl(() -> 100);
+
+		// Documents analyzed by another node: done() is never called here
+		coalescer.touch("test", "doc1");
+		coalescer.touch("test", "doc2");
+		assertEquals(2, coalescer.getStatistics().get("pendingDocuments"));
+
+		Thread.sleep(150);
+		coalescer.touch("test", "doc3");
+		assertEquals(1, coalescer.getStatistics().get("pendingDocuments"));
+		assertTrue(coalescer.getRemainingMillis("test", "doc3") > 0);
+	}
+
+	@Test
+	public void testDisabled() {
+
+		NaturalLanguageDocumentCoalescerImpl coalescer = new NaturalLanguageDocumentCoalescerImpl(() -> 0);
+		coalescer.touch("test", "doc1");
+		assertEquals(0, coalescer.getRemainingMillis("test", "doc1"));
+		assertEquals(0, coalescer.getStatistics().get("pendingDocuments"));
+	}
+
+}
@@ -0,0 +1,174 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.core.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.apache.commons.lang.StringUtils;
+import org.junit.Test;
+import org.nuxeo.natural.language.core.test.mock.MockNaturalLanguageProvider;
+import org.nuxeo.natural.language.core.test.mock.MockNaturalLanguageResponse;
+import org.nuxeo.natural.language.core.test.mock.MockParameters;
+import org.nuxeo.natural.language.service.api.NaturalLanguageEncoding;
+import org.nuxeo.natural.language.service.api.NaturalLanguageFeature;
+import org.nuxeo.natural.language.service.api.NaturalLanguageResponse;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageHedgedProvider;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageHedgingPolicy;
+
+public class TestNaturalLanguageHedging {
+
+	protected static final List<NaturalLanguageFeature> FEATURES = Collections
+			.singletonList(NaturalLanguageFeature.DOCUMENT_SENTIMENT);
+
+	/**
+	 * Answers right away, except for the calls whose number is in the slow
+	 * set, which never answer
+	 */
+	protected static class SlowProvider extends MockNaturalLanguageProvider {
+
+		protected final AtomicInteger calls = new AtomicInteger();
+
+		protected final List<Integer> slowCalls;
+
+		protected CompletableFuture<NaturalLanguageResponse> slowFuture;
+
+		protected SlowProvider(List<Integer> slowCalls) {
+			super(null);
+			this.slowCalls = slowCalls;
+		}
+
+		@Override
+		public CompletableFuture<NaturalLanguageResponse> processTextAsync(String text,
+				List<NaturalLanguageFeature> features, NaturalLanguageEncoding encoding, Executor executor) {
+			if (slowCalls.contains(calls.incrementAndGet())) {
+				slowFuture = new CompletableFuture<>();
+				return slowFuture;
+			}
+			return CompletableFuture.completedFuture(new MockNaturalLanguageResponse());
+		}
+	}
+
+	protected static void waitFor(BooleanSupplier condition) {
+		long end = System.currentTimeMillis() + 5000;
+		while (!condition.getAsBoolean()) {
+			assertTrue("Timeout", System.currentTimeMillis() < end);
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				fail("Interrupted");
+			}
+		}
+	}
+
+	protected static Map<String, String> newParams(String maxRatio) {
+		return MockParameters.of(NaturalLanguageHedgingPolicy.PERCENTILE_PARAM, "95",
+				NaturalLanguageHedgingPolicy.MIN_DELAY_MILLIS_PARAM, "10",
+				NaturalLanguageHedgingPolicy.MAX_RATIO_PARAM, maxRatio);
+	}
+
+	@Test
+	public void testSlowCallIsHedged() {
+
+		int warmUp = NaturalLanguageHedgingPolicy.MIN_SAMPLES;
+		SlowProvider slow = new SlowProvider(Collections.singletonList(warmUp + 1));
+		NaturalLanguageHedgedProvider provider = new NaturalLanguageHedgedProvider(slow,
+				new NaturalLanguageHedgingPolicy(newParams("1")));
+		for (int i = 0; i < warmUp; i++) {
+			assertNotNull(provider.processText("text", FEATURES, null));
+		}
+		assertEquals(10, provider.getHedgingPolicy().getDelayMillis());
+
+		long start = System.nanoTime();
+		assertNotNull(provider.processText("text", FEATURES, null));
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+		assertEquals(warmUp + 2, slow.calls.get());
+		assertEquals(1, provider.getHedgingPolicy().getHedgedCount());
+		// The slow request is cancelled once the response is used
+		waitFor(() -> slow.slowFuture.isCancelled());
+		waitFor(() -> Long.valueOf(1).equals(provider.getHedgingPolicy().getStatistics().get("hedgeWon")));
+		// The time waited by the cancelled request is recorded as well
+		waitFor(() -> Integer.valueOf(warmUp + 2).equals(provider.getHedgingPolicy().getStatistics().get("samples")));
+		provider.shutdown();
+	}
+
+	@Test
+	public void testNoHedgingBeforeEnoughSamples() {
+
+		SlowProvider slow = new SlowProvider(Collections.emptyList());
+		NaturalLanguageHedgedProvider provider = new NaturalLanguageHedgedProvider(slow,
+				new NaturalLanguageHedgingPolicy(newParams("1")));
+		assertNotNull(provider.processText("text", FEATURES, null));
+		assertEquals(-1, provider.getHedgingPolicy().getDelayMillis());
+		provider.shutdown();
+	}
+
+	@Test
+	public void testLongTextsAreNotHedged() {
+
+		NaturalLanguageHedgingPolicy policy = new NaturalLanguageHedgingPolicy(newParams("1"));
+		for (int i = 0; i < NaturalLanguageHedgingPolicy.MIN_SAMPLES; i++) {
+			policy.onResponse(TimeUnit.MILLISECONDS.toNanos(100), false);
+		}
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(100), policy.onCall("text"));
+		String longText = StringUtils.repeat("a", NaturalLanguageHedgingPolicy.DEFAULT_MAX_TEXT_LENGTH + 1);
+		assertEquals(-1, policy.onCall(longText));
+	}
+
+	@Test
+	public void testLosingRequestsAreInTheLatencies() {
+
+		NaturalLanguageHedgingPolicy policy = new NaturalLanguageHedgingPolicy(newParams("1"));
+		assertEquals(NaturalLanguageHedgingPolicy.DEFAULT_EXECUTOR_THREADS, policy.getExecutorThreads());
+		for (int i = 0; i < NaturalLanguageHedgingPolicy.MIN_SAMPLES - 2; i++) {
+			policy.onResponse(TimeUnit.MILLISECONDS.toNanos(100), false);
+		}
+		// Slow requests which lost to their second request
+		policy.onLatency(TimeUnit.MILLISECONDS.toNanos(1000));
+		policy.onLatency(TimeUnit.MILLISECONDS.toNanos(1000));
+		assertEquals(1000, policy.getDelayMillis());
+	}
+
+	@Test
+	public void testExtraLoadIsCapped() {
+
+		NaturalLanguageHedgingPolicy policy = new NaturalLanguageHedgingPolicy(newParams("0.1"));
+		int hedged = 0;
+		for (int i = 0; i < 1000; i++) {
+			policy.onCall("text");
+			if (policy.tryHedge()) {
+				hedged++;
+			}
+		}
+		// 10% of the calls, plus the initial burst
+		assertTrue(hedged <= 110);
+		assertTrue(hedged >= 100);
+		assertTrue((Long) policy.getStatistics().get("budgetRejected") > 0);
+	}
+
+}
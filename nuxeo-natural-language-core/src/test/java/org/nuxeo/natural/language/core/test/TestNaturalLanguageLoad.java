@@ -0,0 +1,189 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.core.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.common.utils.FileUtils;
+import org.nuxeo.ecm.automation.test.AutomationFeature;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.event.EventService;
+import org.nuxeo.ecm.core.test.DefaultRepositoryInit;
+import org.nuxeo.ecm.core.test.annotations.Granularity;
+import org.nuxeo.ecm.core.test.annotations.RepositoryConfig;
+import org.nuxeo.ecm.core.work.api.WorkManager;
+import org.nuxeo.natural.language.core.test.mock.LoadTestEventRecorder;
+import org.nuxeo.natural.language.core.test.mock.MockNaturalLanguageProvider;
+import org.nuxeo.natural.language.service.api.NaturalLanguage;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageWork;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.LocalDeploy;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+import com.google.inject.Inject;
+
+/**
+ * Load test of the whole listener pipeline (listener, work, chain, save of
+ * the document) against the mock provider. Creates documents with blobs,
+ * waits for their analysis and logs the throughput, the latency percentiles
+ * (from the commit of the document to the save of its analysis) and the
+ * number of writes to the repository.
+ * <p>
+ * Skipped unless <code>-Dorg.nuxeo.natural.language.loadtest=true</code>.
+ * Other settings:
+ * <ul>
+ * <li><code>org.nuxeo.natural.language.loadtest.documents</code>: number of
+ * documents (500)</li>
+ * <li><code>org.nuxeo.natural.language.loadtest.batchSize</code>: documents
+ * created per transaction (50)</li>
+ * <li><code>org.nuxeo.natural.language.loadtest.latencyMillis</code>: time
+ * spent by the provider in each call (50)</li>
+ * <li><code>org.nuxeo.natural.language.work.maxThreads</code>: threads of the
+ * <code>naturalLanguage</code> queue (2)</li>
+ * </ul>
+ */
+@RunWith(FeaturesRunner.class)
+@Features(AutomationFeature.class)
+@RepositoryConfig(init = DefaultRepositoryInit.class, cleanup = Granularity.METHOD)
+@Deploy("nuxeo-natural-language-core")
+@LocalDeploy({ "nuxeo-natural-language:OSGI-INF/mock-provider-withAutoAnalyze-contrib.xml",
+		"nuxeo-natural-language:OSGI-INF/load-test-contrib.xml" })
+public class TestNaturalLanguageLoad {
+
+	private static final Log log = LogFactory.getLog(TestNaturalLanguageLoad.class);
+
+	protected static final String PROPERTY_PREFIX = "org.nuxeo.natural.language.loadtest";
+
+	protected String TEXT_FILE = "status_quo.txt";
+
+	@Inject
+	CoreSession coreSession;
+
+	@Inject
+	protected EventService eventService;
+
+	@Inject
+	protected WorkManager workManager;
+
+	@Before
+	public void setUp() {
+		Assume.assumeTrue("Load test not enabled", Boolean.getBoolean(PROPERTY_PREFIX));
+		LoadTestEventRecorder.reset();
+		MockNaturalLanguageProvider.LATENCY_MILLIS = Long.getLong(PROPERTY_PREFIX + ".latencyMillis", 50);
+	}
+
+	@After
+	public void tearDown() {
+		MockNaturalLanguageProvider.LATENCY_MILLIS = 0;
+	}
+
+	@Test
+	public void testListenerThroughput() throws IOException, InterruptedException {
+
+		int documentCount = Integer.getInteger(PROPERTY_PREFIX + ".documents", 500);
+		int batchSize = Math.max(1, Integer.getInteger(PROPERTY_PREFIX + ".batchSize", 50));
+		File file = FileUtils.getResourceFileFromContext(TEXT_FILE);
+		String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+		int callsBefore = MockNaturalLanguageProvider.CALL_COUNT.get();
+
+		// Each document has its own text, so the text cache does not help
+		Map<String, Long> committedAt = new HashMap<>();
+		List<String> batch = new ArrayList<>();
+		long start = System.nanoTime();
+		for (int i = 0; i < documentCount; i++) {
+			DocumentModel doc = coreSession.createDocumentModel("/", "load-" + i, "File");
+			doc.setPropertyValue("dc:title", "load-" + i);
+			doc.setPropertyValue("file:content", (Serializable) Blobs.createBlob(text + "\n\n" + i, "text/plain"));
+			batch.add(coreSession.createDocument(doc).getId());
+			if (batch.size() == batchSize || i == documentCount - 1) {
+				coreSession.save();
+				TransactionHelper.commitOrRollbackTransaction();
+				long now = System.nanoTime();
+				batch.forEach(id -> committedAt.put(id, now));
+				batch.clear();
+				TransactionHelper.startTransaction();
+			}
+		}
+		long created = System.nanoTime();
+
+		eventService.waitForAsyncCompletion();
+		assertTrue(workManager.awaitCompletion(NaturalLanguageWork.CATEGORY, 10, TimeUnit.MINUTES));
+		long end = System.nanoTime();
+
+		assertEquals(documentCount, LoadTestEventRecorder.ANALYZED_AT.size());
+		long[] latencies = new long[documentCount];
+		int i = 0;
+		for (Map.Entry<String, Long> entry : committedAt.entrySet()) {
+			latencies[i++] = LoadTestEventRecorder.ANALYZED_AT.get(entry.getKey()) - entry.getValue();
+		}
+		Arrays.sort(latencies);
+
+		double seconds = (end - start) / 1e9;
+		log.info(String.format(
+				"Load test: %d documents, %d per transaction, provider latency %d ms, %d work threads%n"
+						+ "  created in %.2f s, analyzed in %.2f s: %.1f documents/s%n"
+						+ "  latency (ms): p50 %.1f, p90 %.1f, p99 %.1f, max %.1f%n"
+						+ "  provider calls: %d%n"
+						+ "  repository writes: %d creations, %d modifications (%d saves of an analysis)",
+				documentCount, batchSize, MockNaturalLanguageProvider.LATENCY_MILLIS,
+				Integer.getInteger("org.nuxeo.natural.language.work.maxThreads", 2), (created - start) / 1e9,
+				seconds, documentCount / seconds, percentile(latencies, 0.5), percentile(latencies, 0.9),
+				percentile(latencies, 0.99), latencies[documentCount - 1] / 1e6,
+				MockNaturalLanguageProvider.CALL_COUNT.get() - callsBefore, LoadTestEventRecorder.CREATED_COUNT.get(),
+				LoadTestEventRecorder.MODIFIED_COUNT.get(), LoadTestEventRecorder.ANALYSIS_SAVE_COUNT.get()));
+
+		// One save per document: more means the analysis triggers itself
+		assertEquals(documentCount, LoadTestEventRecorder.ANALYSIS_SAVE_COUNT.get());
+		assertEquals(documentCount,
+				coreSession.query("SELECT * FROM File WHERE ecm:mixinType = '" + NaturalLanguage.FACET_NAME + "'")
+						.size());
+	}
+
+	/**
+	 * @return the percentile of the sorted latencies, in milliseconds
+	 */
+	protected static double percentile(long[] sortedNanos, double percentile) {
+		int index = (int) Math.ceil(percentile * sortedNanos.length) - 1;
+		return sortedNanos[Math.max(0, index)] / 1e6;
+	}
+
+}
@@ -0,0 +1,132 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.core.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.natural.language.core.test.mock.MockNaturalLanguageProvider;
+import org.nuxeo.natural.language.service.api.NaturalLanguageDeadlineException;
+import org.nuxeo.natural.language.service.api.NaturalLanguageEncoding;
+import org.nuxeo.natural.language.service.api.NaturalLanguageFeature;
+import org.nuxeo.natural.language.service.api.NaturalLanguageProviderException;
+import org.nuxeo.natural.language.service.api.NaturalLanguageResponse;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageMetrics;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageMetricsProvider;
+
+public class TestNaturalLanguageMetrics {
+
+	protected static final List<NaturalLanguageFeature> FEATURES = Collections
+			.singletonList(NaturalLanguageFeature.DOCUMENT_SENTIMENT);
+
+	@Test
+	public void testFeaturesKey() {
+		assertEquals("DOCUMENT_SENTIMENT+ENTITIES", NaturalLanguageMetrics.getFeaturesKey(Arrays
+				.asList(NaturalLanguageFeature.ENTITIES, NaturalLanguageFeature.DOCUMENT_SENTIMENT,
+						NaturalLanguageFeature.ENTITIES)));
+		assertEquals("none", NaturalLanguageMetrics.getFeaturesKey(null));
+	}
+
+	@Test
+	public void testErrorCause() {
+		assertEquals("deadline", NaturalLanguageMetrics.getErrorCause(new NaturalLanguageDeadlineException("late")));
+		assertEquals("retryable", NaturalLanguageMetrics
+				.getErrorCause(new CompletionException(new NaturalLanguageProviderException("busy", true))));
+		assertEquals("nonRetryable",
+				NaturalLanguageMetrics.getErrorCause(new NaturalLanguageProviderException("invalid", false)));
+		assertEquals("NuxeoException", NaturalLanguageMetrics.getErrorCause(new NuxeoException("other")));
+	}
+
+	@Test
+	public void testProviderCalls() {
+
+		NaturalLanguageMetricsProvider provider = new NaturalLanguageMetricsProvider("metrics-test",
+				new MockNaturalLanguageProvider(null));
+		provider.processText("Some text", FEATURES, null);
+		provider.processTextAsync("Other text", FEATURES, null, null).join();
+
+		assertEquals(2, NaturalLanguageMetrics.timer("provider", "metrics-test", "calls", "DOCUMENT_SENTIMENT")
+				.getCount());
+		assertEquals(19, NaturalLanguageMetrics.meter("provider", "metrics-test", "characters").getCount());
+		assertEquals(2, NaturalLanguageMetrics.histogram("provider", "metrics-test", "textLength").getCount());
+	}
+
+	@Test
+	public void testBatchIsDelegated() {
+
+		AtomicInteger batches = new AtomicInteger();
+		NaturalLanguageMetricsProvider provider = new NaturalLanguageMetricsProvider("metrics-test-batch",
+				new MockNaturalLanguageProvider(null) {
+					@Override
+					public List<NaturalLanguageResponse> processTexts(List<String> texts,
+							List<NaturalLanguageFeature> features, NaturalLanguageEncoding encoding,
+							ExecutorService executor) throws NuxeoException {
+						batches.incrementAndGet();
+						return super.processTexts(texts, features, encoding, executor);
+					}
+				});
+		assertEquals(2, provider.processTexts(Arrays.asList("Some text", "Other text"), FEATURES, null, null).size());
+
+		// The provider receives the batch itself, and bounds its requests
+		assertEquals(1, batches.get());
+		assertEquals(1, NaturalLanguageMetrics
+				.timer("provider", "metrics-test-batch", "batches", "DOCUMENT_SENTIMENT").getCount());
+		assertEquals(19, NaturalLanguageMetrics.meter("provider", "metrics-test-batch", "characters").getCount());
+		assertEquals(2, NaturalLanguageMetrics.histogram("provider", "metrics-test-batch", "textLength").getCount());
+	}
+
+	@Test
+	public void testProviderErrors() {
+
+		NaturalLanguageMetricsProvider provider = new NaturalLanguageMetricsProvider("metrics-test-errors",
+				new MockNaturalLanguageProvider(null) {
+					@Override
+					public NaturalLanguageResponse processText(String text, List<NaturalLanguageFeature> features,
+							NaturalLanguageEncoding encoding) throws NuxeoException {
+						throw new NaturalLanguageProviderException("busy", true);
+					}
+				});
+		try {
+			provider.processText("Some text", FEATURES, null);
+			fail("Expected an error");
+		} catch (NaturalLanguageProviderException e) {
+			// ok
+		}
+		try {
+			provider.processTextAsync("Some text", FEATURES, null, null).join();
+			fail("Expected an error");
+		} catch (CompletionException e) {
+			// ok
+		}
+
+		assertEquals(2, NaturalLanguageMetrics.meter("provider", "metrics-test-errors", "errors", "retryable")
+				.getCount());
+		assertEquals(2, NaturalLanguageMetrics
+				.timer("provider", "metrics-test-errors", "calls", "DOCUMENT_SENTIMENT").getCount());
+	}
+
+}
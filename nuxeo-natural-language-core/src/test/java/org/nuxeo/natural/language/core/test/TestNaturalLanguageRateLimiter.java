@@ -0,0 +1,151 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.core.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+import org.nuxeo.natural.language.core.test.mock.MockNaturalLanguageProvider;
+import org.nuxeo.natural.language.core.test.mock.MockParameters;
+import org.nuxeo.natural.language.service.api.NaturalLanguageFeature;
+import org.nuxeo.natural.language.service.api.NaturalLanguageRateLimitException;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageMetrics;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageRateLimitedProvider;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageRateLimiter;
+
+public class TestNaturalLanguageRateLimiter {
+
+	protected static final List<NaturalLanguageFeature> FEATURES = Collections
+			.singletonList(NaturalLanguageFeature.DOCUMENT_SENTIMENT);
+
+	@Test
+	public void testIsConfigured() {
+		assertFalse(NaturalLanguageRateLimiter.isConfigured(null));
+		assertFalse(NaturalLanguageRateLimiter.isConfigured(MockParameters.of("appName", "Nuxeo")));
+		assertFalse(NaturalLanguageRateLimiter
+				.isConfigured(MockParameters.of(NaturalLanguageRateLimiter.REQUESTS_PER_SECOND_PARAM, "0")));
+		assertTrue(NaturalLanguageRateLimiter
+				.isConfigured(MockParameters.of(NaturalLanguageRateLimiter.CHARACTERS_PER_MINUTE_PARAM, "1000")));
+	}
+
+	@Test
+	public void testFailFastOnRequests() {
+
+		long rejected = NaturalLanguageMetrics.meter("provider", "test", "rateLimit", "rejected").getCount();
+		NaturalLanguageRateLimiter limiter = new NaturalLanguageRateLimiter("test",
+				MockParameters.of(NaturalLanguageRateLimiter.REQUESTS_PER_SECOND_PARAM, "2",
+						NaturalLanguageRateLimiter.MODE_PARAM, "FAIL_FAST"));
+
+		limiter.acquire(10);
+		limiter.acquire(10);
+		try {
+			limiter.acquire(10);
+			fail("Expected the call to be rejected");
+		} catch (NaturalLanguageRateLimitException e) {
+			assertEquals("test", e.getProviderName());
+		}
+		assertEquals(1, limiter.getRejectedCount());
+		assertEquals(2L, limiter.getStatistics().get("acquired"));
+		assertEquals(rejected + 1, NaturalLanguageMetrics.meter("provider", "test", "rateLimit", "rejected").getCount());
+	}
+
+	@Test
+	public void testFailFastOnCharacters() {
+
+		NaturalLanguageRateLimiter limiter = new NaturalLanguageRateLimiter("test",
+				MockParameters.of(NaturalLanguageRateLimiter.CHARACTERS_PER_MINUTE_PARAM, "100",
+						NaturalLanguageRateLimiter.MODE_PARAM, "FAIL_FAST"));
+
+		limiter.acquire(60);
+		try {
+			limiter.acquire(60);
+			fail("Expected the call to be rejected");
+		} catch (NaturalLanguageRateLimitException e) {
+			// Expected
+		}
+		// Still room for a small one
+		limiter.acquire(30);
+		assertEquals(1, limiter.getRejectedCount());
+	}
+
+	@Test
+	public void testBlockWaitsForPermit() {
+
+		NaturalLanguageRateLimiter limiter = new NaturalLanguageRateLimiter("test",
+				MockParameters.of(NaturalLanguageRateLimiter.REQUESTS_PER_SECOND_PARAM, "10"));
+
+		long start = System.nanoTime();
+		for (int i = 0; i < 12; i++) {
+			limiter.acquire(10);
+		}
+		long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+		// 10 in the bucket, then one every 100ms
+		assertTrue("Elapsed: " + elapsedMillis, elapsedMillis >= 150);
+		assertEquals(0, limiter.getRejectedCount());
+		assertEquals(2L, limiter.getStatistics().get("delayed"));
+	}
+
+	@Test
+	public void testBlockTimeout() {
+
+		NaturalLanguageRateLimiter limiter = new NaturalLanguageRateLimiter("test",
+				MockParameters.of(NaturalLanguageRateLimiter.REQUESTS_PER_SECOND_PARAM, "1",
+						NaturalLanguageRateLimiter.TIMEOUT_MILLIS_PARAM, "100"));
+
+		limiter.acquire(10);
+		try {
+			limiter.acquire(10);
+			fail("Expected the call to time out");
+		} catch (NaturalLanguageRateLimitException e) {
+			// Expected
+		}
+		assertEquals(1, limiter.getRejectedCount());
+	}
+
+	@Test
+	public void testRateLimitedProvider() throws Exception {
+
+		NaturalLanguageRateLimitedProvider provider = new NaturalLanguageRateLimitedProvider(
+				new MockNaturalLanguageProvider(null),
+				new NaturalLanguageRateLimiter("mock", MockParameters.of(NaturalLanguageRateLimiter.REQUESTS_PER_SECOND_PARAM,
+						"2", NaturalLanguageRateLimiter.MODE_PARAM, "FAIL_FAST")));
+		try {
+			MockNaturalLanguageProvider.CALL_COUNT.set(0);
+
+			assertEquals(2, provider.processTexts(Arrays.asList("one", "two"), FEATURES, null, null).size());
+			try {
+				provider.processTextAsync("three", FEATURES, null, null).get();
+				fail("Expected the call to be rejected");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof NaturalLanguageRateLimitException);
+			}
+			// The provider was not called for the rejected text
+			assertEquals(2, MockNaturalLanguageProvider.CALL_COUNT.get());
+		} finally {
+			provider.shutdown();
+		}
+	}
+
+}
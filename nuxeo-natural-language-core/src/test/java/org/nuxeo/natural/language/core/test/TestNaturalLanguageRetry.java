@@ -0,0 +1,188 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.core.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.natural.language.core.test.mock.MockNaturalLanguageProvider;
+import org.nuxeo.natural.language.core.test.mock.MockNaturalLanguageResponse;
+import org.nuxeo.natural.language.core.test.mock.MockParameters;
+import org.nuxeo.natural.language.service.api.NaturalLanguageEncoding;
+import org.nuxeo.natural.language.service.api.NaturalLanguageFeature;
+import org.nuxeo.natural.language.service.api.NaturalLanguageProviderException;
+import org.nuxeo.natural.language.service.api.NaturalLanguageResponse;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageMetrics;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageRetryPolicy;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageRetryingProvider;
+
+public class TestNaturalLanguageRetry {
+
+	protected static final List<NaturalLanguageFeature> FEATURES = Collections
+			.singletonList(NaturalLanguageFeature.DOCUMENT_SENTIMENT);
+
+	/**
+	 * Fails the first calls with the given error
+	 */
+	protected static class FlakyProvider extends MockNaturalLanguageProvider {
+
+		protected final AtomicInteger failuresLeft;
+
+		protected final RuntimeException error;
+
+		protected final AtomicInteger calls = new AtomicInteger();
+
+		protected FlakyProvider(int failures, RuntimeException error) {
+			super(null);
+			failuresLeft = new AtomicInteger(failures);
+			this.error = error;
+		}
+
+		@Override
+		public NaturalLanguageResponse processText(String text, List<NaturalLanguageFeature> features,
+				NaturalLanguageEncoding encoding) throws NuxeoException {
+			calls.incrementAndGet();
+			if (failuresLeft.getAndDecrement() > 0) {
+				throw error;
+			}
+			return new MockNaturalLanguageResponse();
+		}
+	}
+
+	protected static NaturalLanguageRetryPolicy newPolicy(int maxAttempts) {
+		return new NaturalLanguageRetryPolicy(
+				MockParameters.of(NaturalLanguageRetryPolicy.MAX_ATTEMPTS_PARAM, String.valueOf(maxAttempts),
+						NaturalLanguageRetryPolicy.INITIAL_DELAY_MILLIS_PARAM, "1"));
+	}
+
+	protected static long getMeterCount(String... names) {
+		String[] path = new String[names.length + 2];
+		path[0] = "provider";
+		path[1] = "flaky";
+		System.arraycopy(names, 0, path, 2, names.length);
+		return NaturalLanguageMetrics.meter(path).getCount();
+	}
+
+	@Test
+	public void testDelay() {
+		NaturalLanguageRetryPolicy policy = new NaturalLanguageRetryPolicy(
+				MockParameters.of(NaturalLanguageRetryPolicy.INITIAL_DELAY_MILLIS_PARAM, "100",
+						NaturalLanguageRetryPolicy.MAX_DELAY_MILLIS_PARAM, "300",
+						NaturalLanguageRetryPolicy.JITTER_PARAM, "0.5"));
+
+		for (int i = 0; i < 20; i++) {
+			long delay = policy.getDelayMillis(1);
+			assertTrue(delay >= 50 && delay <= 100);
+			delay = policy.getDelayMillis(2);
+			assertTrue(delay >= 100 && delay <= 200);
+			// Capped
+			delay = policy.getDelayMillis(10);
+			assertTrue(delay >= 150 && delay <= 300);
+		}
+	}
+
+	@Test
+	public void testRetryableErrorIsRetried() throws Exception {
+
+		long retries = getMeterCount("retries");
+		long recovered = getMeterCount("retries", "recovered");
+		FlakyProvider flaky = new FlakyProvider(2, new NaturalLanguageProviderException("UNAVAILABLE", true));
+		NaturalLanguageRetryingProvider provider = new NaturalLanguageRetryingProvider("flaky", flaky, newPolicy(3));
+		assertNotNull(provider.processText("text", FEATURES, null));
+		assertEquals(3, flaky.calls.get());
+
+		flaky.failuresLeft.set(2);
+		assertNotNull(provider.processTextAsync("text", FEATURES, null, null).get());
+		assertEquals(6, flaky.calls.get());
+
+		Map<String, Object> stats = provider.getRetryPolicy().getStatistics();
+		assertEquals(4L, stats.get("retries"));
+		assertEquals(2L, stats.get("recovered"));
+		assertEquals(retries + 4, getMeterCount("retries"));
+		assertEquals(recovered + 2, getMeterCount("retries", "recovered"));
+		provider.shutdown();
+	}
+
+	@Test
+	public void testEachTextOfABatchIsRetried() {
+
+		FlakyProvider flaky = new FlakyProvider(1, new NaturalLanguageProviderException("UNAVAILABLE", true));
+		NaturalLanguageRetryingProvider provider = new NaturalLanguageRetryingProvider("flaky", flaky, newPolicy(3));
+		List<NaturalLanguageResponse> responses = provider.processTexts(Arrays.asList("one", "two", "three"),
+				FEATURES, null, null);
+
+		assertEquals(3, responses.size());
+		// Only the failed text was sent again
+		assertEquals(4, flaky.calls.get());
+		assertEquals(1L, provider.getRetryPolicy().getStatistics().get("retries"));
+		provider.shutdown();
+	}
+
+	@Test
+	public void testRetriesAreExhausted() throws Exception {
+
+		long exhausted = getMeterCount("retries", "exhausted");
+		FlakyProvider flaky = new FlakyProvider(10, new NaturalLanguageProviderException("UNAVAILABLE", true));
+		NaturalLanguageRetryingProvider provider = new NaturalLanguageRetryingProvider("flaky", flaky, newPolicy(3));
+		try {
+			provider.processTextAsync("text", FEATURES, null, null).get();
+			fail("Expected a failure");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof NaturalLanguageProviderException);
+		}
+		assertEquals(3, flaky.calls.get());
+		assertEquals(1L, provider.getRetryPolicy().getStatistics().get("exhausted"));
+		assertEquals(exhausted + 1, getMeterCount("retries", "exhausted"));
+		provider.shutdown();
+	}
+
+	@Test
+	public void testNotRetryableErrorIsNotRetried() {
+
+		FlakyProvider flaky = new FlakyProvider(1, new NaturalLanguageProviderException("INVALID_ARGUMENT", false));
+		NaturalLanguageRetryingProvider provider = new NaturalLanguageRetryingProvider("flaky", flaky, newPolicy(3));
+		try {
+			provider.processText("text", FEATURES, null);
+			fail("Expected a failure");
+		} catch (NaturalLanguageProviderException e) {
+			assertFalse(e.isRetryable());
+		}
+		assertEquals(1, flaky.calls.get());
+		assertEquals(0, provider.getRetryPolicy().getRetryCount());
+	}
+
+	@Test
+	public void testClassification() {
+		assertTrue(NaturalLanguageProviderException
+				.isRetryable(new NuxeoException(new NaturalLanguageProviderException("UNAVAILABLE", true))));
+		assertTrue(NaturalLanguageProviderException
+				.isRetryable(new NuxeoException(new TimeoutException())));
+		assertFalse(NaturalLanguageProviderException.isRetryable(new NuxeoException("Unknown error")));
+	}
+
+}
@@ -25,6 +25,8 @@ import java.security.GeneralSecurityException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -43,12 +45,16 @@ import org.nuxeo.natural.language.service.api.NaturalLanguage;
 import org.nuxeo.natural.language.service.api.NaturalLanguageFeature;
 import org.nuxeo.natural.language.service.api.NaturalLanguageProvider;
 import org.nuxeo.natural.language.service.api.NaturalLanguageResponse;
+import org.nuxeo.natural.language.service.api.NaturalLanguageResponseCache;
+import org.nuxeo.natural.language.service.impl.DefaultNaturalLanguageDocumentProcessor;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageMetrics;
 import org.nuxeo.runtime.test.runner.Deploy;
 import org.nuxeo.runtime.test.runner.Features;
 import org.nuxeo.runtime.test.runner.FeaturesRunner;
 import org.nuxeo.runtime.test.runner.LocalDeploy;
 import org.nuxeo.runtime.transaction.TransactionHelper;
 
+import com.codahale.metrics.Meter;
 import com.google.inject.Inject;
 
 @RunWith(FeaturesRunner.class)
@@ -73,7 +79,9 @@ public class TestNaturalLanguageService {
 
 		assertFalse(naturalLanguage.isDocumentListenerEnabled());
 
-		assertEquals(NaturalLanguage.DEFAULT_PROCESSING_CHAIN, naturalLanguage.getDefaultDocumentProcessingChainName());
+		// No chain => documents are handled by the default processor
+		assertNull(naturalLanguage.getDefaultDocumentProcessingChainName());
+		assertTrue(naturalLanguage.getDocumentProcessor() instanceof DefaultNaturalLanguageDocumentProcessor);
 
 		// We don't have doc types in the mock xml config. service
 		List<String> excludedDocTypes = naturalLanguage.getAnalyzeExcludedDocTypes();
@@ -89,7 +97,8 @@ public class TestNaturalLanguageService {
 		JSONObject obj = naturalLanguage.getServiceConfiguration(null);
 		assertNotNull(obj);
 		assertFalse(obj.getBoolean("listenerEnabled"));
-		assertEquals(NaturalLanguage.DEFAULT_PROCESSING_CHAIN, obj.getString("defaultProcessingChainName"));
+		assertEquals("", obj.getString("defaultProcessingChainName"));
+		assertEquals(DefaultNaturalLanguageDocumentProcessor.class.getName(), obj.getString("documentProcessor"));
 		assertFalse(obj.getBoolean("canProcessDocument"));
 
 	}
@@ -131,6 +140,78 @@ public class TestNaturalLanguageService {
 
 	}
 
+	@Test
+	public void testResponseCache() {
+
+		NaturalLanguageResponseCache cache = naturalLanguage.getResponseCache();
+		assertNotNull(cache);
+		cache.clear();
+		long hits = cache.getHitCount();
+		long misses = cache.getMissCount();
+		String providerName = naturalLanguage.getDefaultProviderName();
+		Meter hitMeter = NaturalLanguageMetrics.meter("responseCache", providerName, "hits");
+		Meter missMeter = NaturalLanguageMetrics.meter("responseCache", providerName, "misses");
+		long hitMeterCount = hitMeter.getCount();
+		long missMeterCount = missMeter.getCount();
+
+		NaturalLanguageResponse response1 = naturalLanguage.processText(null, "some text to cache",
+				Arrays.asList(NaturalLanguageFeature.DOCUMENT_SENTIMENT, NaturalLanguageFeature.ENTITIES), null);
+		assertEquals(misses + 1, cache.getMissCount());
+		assertEquals(1, cache.size());
+
+		// Same text and features (in another order) => from the cache
+		NaturalLanguageResponse response2 = naturalLanguage.processText(null, "some text to cache",
+				Arrays.asList(NaturalLanguageFeature.ENTITIES, NaturalLanguageFeature.DOCUMENT_SENTIMENT), null);
+		assertSame(response1, response2);
+		assertEquals(hits + 1, cache.getHitCount());
+
+		// Different features => calls the provider
+		NaturalLanguageResponse response3 = naturalLanguage.processText(null, "some text to cache",
+				Arrays.asList(NaturalLanguageFeature.DOCUMENT_SENTIMENT), null);
+		assertNotSame(response1, response3);
+		assertEquals(misses + 2, cache.getMissCount());
+		assertEquals(2, cache.size());
+
+		// Reported in the metrics too
+		assertEquals(hitMeterCount + 1, hitMeter.getCount());
+		assertEquals(missMeterCount + 2, missMeter.getCount());
+	}
+
+	@Test
+	public void testProcessTexts() {
+
+		List<String> texts = Arrays.asList("text 1", "text 2", "text 1", "text 3");
+		List<NaturalLanguageResponse> responses = naturalLanguage.processTexts(null, texts,
+				Arrays.asList(NaturalLanguageFeature.DOCUMENT_SENTIMENT), null);
+		assertNotNull(responses);
+		assertEquals(texts.size(), responses.size());
+		for (NaturalLanguageResponse response : responses) {
+			assertNotNull(response);
+			assertEquals(MockNaturalLanguageResponse.LANGUAGE, response.getLanguage());
+		}
+		// Same text => analyzed once
+		assertSame(responses.get(0), responses.get(2));
+		assertNotSame(responses.get(0), responses.get(1));
+
+	}
+
+	@Test
+	public void testProcessTextAsync() throws Exception {
+
+		CompletableFuture<NaturalLanguageResponse> future = naturalLanguage.processTextAsync(null, "async text",
+				Arrays.asList(NaturalLanguageFeature.DOCUMENT_SENTIMENT), null);
+		assertNotNull(future);
+		NaturalLanguageResponse response = future.get(10, TimeUnit.SECONDS);
+		assertNotNull(response);
+		assertEquals(MockNaturalLanguageResponse.LANGUAGE, response.getLanguage());
+
+		// Now in the cache => same response
+		NaturalLanguageResponse response2 = naturalLanguage.processText(null, "async text",
+				Arrays.asList(NaturalLanguageFeature.DOCUMENT_SENTIMENT), null);
+		assertSame(response, response2);
+
+	}
+
 	protected DocumentModel createTestDocAndWaitForAsyncCompletion() {
 
 		DocumentModel doc = coreSession.createDocumentModel("/", "test-doc", "File");
@@ -0,0 +1,128 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.core.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nuxeo.natural.language.core.test.mock.MockParameters;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageTextCache;
+
+public class TestNaturalLanguageTextCache {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testMemoryOnly() {
+
+		NaturalLanguageTextCache cache = new NaturalLanguageTextCache(
+				MockParameters.of(NaturalLanguageTextCache.MAX_MEMORY_CHARS_PARAM, "10"));
+
+		assertNull(cache.get("digest1"));
+		assertEquals(1, cache.getMissCount());
+
+		cache.put("digest1", "12345");
+		cache.put("digest2", "67890");
+		assertEquals("12345", cache.get("digest1"));
+		assertEquals("67890", cache.get("digest2"));
+		assertEquals(2, cache.getMemoryHitCount());
+
+		// Over the limit => the least recently used (digest1) is evicted
+		cache.put("digest3", "abc");
+		assertNull(cache.get("digest1"));
+		assertEquals("abc", cache.get("digest3"));
+
+		// Bigger than the limit => not stored
+		cache.put("digest4", "this is a long text");
+		assertNull(cache.get("digest4"));
+	}
+
+	@Test
+	public void testDiskTier() throws Exception {
+
+		File dir = folder.newFolder("text-cache");
+		Map<String, String> params = MockParameters.of(NaturalLanguageTextCache.MAX_MEMORY_CHARS_PARAM, "5",
+				NaturalLanguageTextCache.DIRECTORY_PARAM, dir.getAbsolutePath());
+		NaturalLanguageTextCache cache = new NaturalLanguageTextCache(params);
+
+		// Too big for memory, but stored on disk
+		cache.put("0123456789abcdef", "some extracted text");
+		assertTrue(new File(dir, "0123456789abcdef.txt").isFile());
+		assertEquals("some extracted text", cache.get("0123456789abcdef"));
+		assertEquals(1, cache.getDiskHitCount());
+
+		// A new cache (restart) on the same directory still finds it
+		NaturalLanguageTextCache otherCache = new NaturalLanguageTextCache(params);
+		assertEquals("some extracted text", otherCache.get("0123456789abcdef"));
+
+		// Not a valid digest => never used as a file name
+		cache.put("../evil", "text");
+		assertFalse(new File(dir.getParentFile(), "evil.txt").exists());
+
+		cache.clear();
+		assertNull(cache.get("0123456789abcdef"));
+	}
+
+	@Test
+	public void testDiskPurgeIsLru() throws Exception {
+
+		File dir = folder.newFolder("text-cache");
+		Map<String, String> params = MockParameters.of(NaturalLanguageTextCache.MAX_MEMORY_CHARS_PARAM, "1",
+				NaturalLanguageTextCache.MAX_DISK_ENTRIES_PARAM, "3", NaturalLanguageTextCache.DIRECTORY_PARAM,
+				dir.getAbsolutePath());
+		NaturalLanguageTextCache cache = new NaturalLanguageTextCache(params);
+
+		long now = System.currentTimeMillis();
+		String[] digests = { "aaaa", "bbbb", "cccc" };
+		for (int i = 0; i < digests.length; i++) {
+			cache.put(digests[i], "text " + digests[i]);
+			assertTrue(new File(dir, digests[i] + ".txt").setLastModified(now - (3 - i) * 10000));
+		}
+
+		// The oldest file is read, so the two others are purged first
+		assertEquals("text aaaa", cache.get("aaaa"));
+		cache.put("dddd", "text dddd");
+		assertTrue(new File(dir, "aaaa.txt").isFile());
+		assertFalse(new File(dir, "bbbb.txt").exists());
+		assertFalse(new File(dir, "cccc.txt").exists());
+		assertTrue(new File(dir, "dddd.txt").isFile());
+		assertEquals(2, cache.getStatistics().get("diskEntries"));
+	}
+
+	@Test
+	public void testStaleTmpFilesAreRemoved() throws Exception {
+
+		File dir = folder.newFolder("text-cache");
+		File tmp = new File(dir, "0123456789abcdef.tmp-42");
+		assertTrue(tmp.createNewFile());
+		assertTrue(new File(dir, "fedcba9876543210.txt").createNewFile());
+
+		NaturalLanguageTextCache cache = new NaturalLanguageTextCache(
+				MockParameters.of(NaturalLanguageTextCache.DIRECTORY_PARAM, dir.getAbsolutePath()));
+		assertFalse(tmp.exists());
+		assertEquals(1, cache.getStatistics().get("diskEntries"));
+	}
+
+}
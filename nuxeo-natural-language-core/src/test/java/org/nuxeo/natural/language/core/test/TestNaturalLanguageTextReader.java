@@ -0,0 +1,118 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.core.test;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.impl.blob.ByteArrayBlob;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageMetrics;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageTextReader;
+
+public class TestNaturalLanguageTextReader {
+
+	// The emoji is a surrogate pair
+	protected static final String TEXT = "Un été à Paris 😀 文字";
+
+	protected static Blob streamBlob(String text, boolean knownLength) {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		return new ByteArrayBlob(bytes, "text/plain") {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public long getLength() {
+				return knownLength ? super.getLength() : -1;
+			}
+		};
+	}
+
+	protected static long getTruncatedCount() {
+		return NaturalLanguageMetrics.meter("extraction", "truncated").getCount();
+	}
+
+	@Test
+	public void testMultibyte() throws Exception {
+		assertEquals(TEXT, NaturalLanguageTextReader.read(streamBlob(TEXT, true), 0));
+		assertEquals(TEXT, NaturalLanguageTextReader.read(streamBlob(TEXT, true), TEXT.length()));
+		assertEquals(TEXT, NaturalLanguageTextReader.read(Blobs.createBlob(TEXT), 0));
+		assertEquals("", NaturalLanguageTextReader.read(streamBlob("", true), 0));
+	}
+
+	@Test
+	public void testUnknownLength() throws Exception {
+		assertEquals(TEXT, NaturalLanguageTextReader.read(streamBlob(TEXT, false), 0));
+
+		// Bigger than the initial capacity
+		StringBuilder sb = new StringBuilder();
+		while (sb.length() < 20000) {
+			sb.append(TEXT).append('\n');
+		}
+		String text = sb.toString();
+		assertEquals(text, NaturalLanguageTextReader.read(streamBlob(text, false), 0));
+		assertEquals(text.substring(0, 10000), NaturalLanguageTextReader.read(streamBlob(text, false), 10000));
+	}
+
+	@Test
+	public void testTruncation() throws Exception {
+
+		long truncated = getTruncatedCount();
+
+		// Exactly the limit: not truncated
+		assertEquals(TEXT, NaturalLanguageTextReader.read(streamBlob(TEXT, true), TEXT.length()));
+		assertEquals(TEXT, NaturalLanguageTextReader.read(streamBlob(TEXT, false), TEXT.length()));
+		assertEquals(truncated, getTruncatedCount());
+
+		assertEquals("Un été", NaturalLanguageTextReader.read(streamBlob(TEXT, true), 6));
+		assertEquals("Un été", NaturalLanguageTextReader.read(streamBlob(TEXT, false), 6));
+		assertEquals("Un été", NaturalLanguageTextReader.read(Blobs.createBlob(TEXT), 6));
+		assertEquals(truncated + 3, getTruncatedCount());
+	}
+
+	@Test
+	public void testHeadIsNotATruncation() throws Exception {
+
+		long truncated = getTruncatedCount();
+		assertEquals("Un été", NaturalLanguageTextReader.readHead(streamBlob(TEXT, true), 6));
+		assertEquals("Un été", NaturalLanguageTextReader.readHead(Blobs.createBlob(TEXT), 6));
+		assertEquals(TEXT, NaturalLanguageTextReader.readHead(streamBlob(TEXT, false), 0));
+		assertEquals(truncated, getTruncatedCount());
+	}
+
+	@Test
+	public void testSurrogatePairIsNotCut() throws Exception {
+
+		int emoji = TEXT.indexOf('\uD83D');
+		String beforeEmoji = TEXT.substring(0, emoji);
+		String withEmoji = TEXT.substring(0, emoji + 2);
+
+		// The limit falls between the 2 chars of the pair
+		assertEquals(beforeEmoji, NaturalLanguageTextReader.read(streamBlob(TEXT, true), emoji + 1));
+		assertEquals(beforeEmoji, NaturalLanguageTextReader.read(streamBlob(TEXT, false), emoji + 1));
+		assertEquals(beforeEmoji, NaturalLanguageTextReader.read(Blobs.createBlob(TEXT), emoji + 1));
+
+		assertEquals(withEmoji, NaturalLanguageTextReader.read(streamBlob(TEXT, true), emoji + 2));
+		assertEquals(withEmoji, NaturalLanguageTextReader.read(Blobs.createBlob(TEXT), emoji + 2));
+	}
+
+}
@@ -0,0 +1,135 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.core.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.nuxeo.natural.language.core.test.mock.MockNaturalLanguageResponse;
+import org.nuxeo.natural.language.service.api.NaturalLanguageEncoding;
+import org.nuxeo.natural.language.service.api.NaturalLanguageFeature;
+import org.nuxeo.natural.language.service.api.NaturalLanguageResponseCache;
+import org.nuxeo.natural.language.service.api.NaturalLanguageSamplingStrategy;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageSampledResponse;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageTextSampler;
+
+public class TestNaturalLanguageTextSampler {
+
+	protected static final String TEXT = "Paragraph one is here.\n\nParagraph two is here.\n\nParagraph three is here.\n\n"
+			+ "Paragraph four is here.\n\nParagraph five is here.\n\nParagraph six is here.";
+
+	@Test
+	public void testUnderBudget() {
+		String text = "Small text";
+		assertSame(text, NaturalLanguageTextSampler.sample(text, 100, NaturalLanguageSamplingStrategy.HEAD));
+		assertSame(text, NaturalLanguageTextSampler.sample(text, 0, NaturalLanguageSamplingStrategy.HEAD));
+	}
+
+	@Test
+	public void testHead() {
+		String sampled = NaturalLanguageTextSampler.sample(TEXT, 30, NaturalLanguageSamplingStrategy.HEAD);
+		assertTrue(sampled.length() <= 30);
+		assertTrue(TEXT.startsWith(sampled));
+		// Cut after a whitespace, not in the middle of a word
+		assertTrue(Character.isWhitespace(sampled.charAt(sampled.length() - 1)));
+	}
+
+	@Test
+	public void testHeadTail() {
+		String sampled = NaturalLanguageTextSampler.sample(TEXT, 60, NaturalLanguageSamplingStrategy.HEAD_TAIL);
+		assertTrue(sampled.length() <= 60);
+		assertTrue(sampled.startsWith("Paragraph one"));
+		assertTrue(sampled.endsWith("six is here."));
+	}
+
+	@Test
+	public void testParagraphs() {
+		String sampled = NaturalLanguageTextSampler.sample(TEXT, 60, NaturalLanguageSamplingStrategy.PARAGRAPHS);
+		assertTrue(sampled.length() <= 60);
+		// One paragraph every 3
+		assertEquals("Paragraph one is here.\n\nParagraph four is here.", sampled);
+	}
+
+	@Test
+	public void testUnevenParagraphs() {
+
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 10; i++) {
+			sb.append("Short paragraph ").append(i).append(".\n\n");
+		}
+		for (int i = 0; i < 50; i++) {
+			sb.append("Long paragraph words. ");
+		}
+		String text = sb.toString();
+
+		// The short paragraphs are a small part of the text: the sample is not
+		// one paragraph every text.length / maxChars paragraphs, it also takes
+		// the head of the long one
+		String sampled = NaturalLanguageTextSampler.sample(text, 120, NaturalLanguageSamplingStrategy.PARAGRAPHS);
+		assertTrue(sampled.length() <= 120);
+		assertTrue(sampled.length() > 60);
+		assertTrue(sampled.startsWith("Short paragraph 0.\n\nLong paragraph words. "));
+	}
+
+	@Test
+	public void testSampledResponse() throws Exception {
+		NaturalLanguageSampledResponse response = new NaturalLanguageSampledResponse(
+				new MockNaturalLanguageResponse(), NaturalLanguageSamplingStrategy.HEAD_TAIL, 1000, 100);
+		assertEquals(NaturalLanguageSamplingStrategy.HEAD_TAIL, response.getSamplingStrategy());
+		assertEquals(MockNaturalLanguageResponse.LANGUAGE, response.getLanguage());
+
+		JSONObject sampling = response.toJSON().getJSONObject("sampling");
+		assertEquals("HEAD_TAIL", sampling.getString("strategy"));
+		assertEquals(1000, sampling.getInt("originalLength"));
+		assertEquals(100, sampling.getInt("sampledLength"));
+	}
+
+	@Test
+	public void testDefaultStrategy() {
+		assertEquals(NaturalLanguageSamplingStrategy.HEAD_TAIL, NaturalLanguageSamplingStrategy.fromString(null));
+		assertEquals(NaturalLanguageSamplingStrategy.HEAD_TAIL, NaturalLanguageSamplingStrategy.fromString(" "));
+		assertEquals(NaturalLanguageSamplingStrategy.PARAGRAPHS,
+				NaturalLanguageSamplingStrategy.fromString("paragraphs"));
+	}
+
+	@Test
+	public void testCacheKeyDependsOnSampling() {
+
+		List<NaturalLanguageFeature> features = Collections.singletonList(NaturalLanguageFeature.ENTITIES);
+		NaturalLanguageEncoding encoding = NaturalLanguageEncoding.UTF8;
+		String key = NaturalLanguageResponseCache.buildKey("mock", TEXT, features, encoding);
+
+		// No budget: the text is not sampled
+		assertEquals(key, NaturalLanguageResponseCache.buildKey("mock", TEXT, features, encoding, 0,
+				NaturalLanguageSamplingStrategy.HEAD));
+
+		String head60 = NaturalLanguageResponseCache.buildKey("mock", TEXT, features, encoding, 60,
+				NaturalLanguageSamplingStrategy.HEAD);
+		assertNotEquals(key, head60);
+		assertNotEquals(head60, NaturalLanguageResponseCache.buildKey("mock", TEXT, features, encoding, 100,
+				NaturalLanguageSamplingStrategy.HEAD));
+		assertNotEquals(head60, NaturalLanguageResponseCache.buildKey("mock", TEXT, features, encoding, 60,
+				NaturalLanguageSamplingStrategy.HEAD_TAIL));
+	}
+
+}
@@ -132,7 +132,7 @@ public class TestOperations {
 		JSONObject obj = new JSONObject(result);
 		assertNotNull(obj);
 		assertFalse(obj.getBoolean("listenerEnabled"));
-		assertEquals(NaturalLanguage.DEFAULT_PROCESSING_CHAIN, obj.getString("defaultProcessingChainName"));
+		assertEquals("", obj.getString("defaultProcessingChainName"));
 		// The input is a document that we can process
 		assertTrue(obj.getBoolean("canProcessDocument"));
 
@@ -0,0 +1,112 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.core.test;
+
+import static org.junit.Assert.*;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.automation.test.AutomationFeature;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.event.EventService;
+import org.nuxeo.ecm.core.test.DefaultRepositoryInit;
+import org.nuxeo.ecm.core.test.annotations.Granularity;
+import org.nuxeo.ecm.core.test.annotations.RepositoryConfig;
+import org.nuxeo.ecm.core.work.api.WorkManager;
+import org.nuxeo.natural.language.core.test.mock.MockNaturalLanguageProvider;
+import org.nuxeo.natural.language.service.api.NaturalLanguage;
+import org.nuxeo.natural.language.service.api.NaturalLanguageDocumentCoalescer;
+import org.nuxeo.natural.language.service.api.NaturalLanguageProviderException;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageWork;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.LocalDeploy;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+import com.google.inject.Inject;
+
+/**
+ * The analysis of a document is deferred while the circuit breaker of the
+ * provider is open (see mock-provider-withCircuitBreaker-contrib.xml)
+ */
+@RunWith(FeaturesRunner.class)
+@Features(AutomationFeature.class)
+@RepositoryConfig(init = DefaultRepositoryInit.class, cleanup = Granularity.METHOD)
+@Deploy("nuxeo-natural-language-core")
+@LocalDeploy({ "nuxeo-natural-language:OSGI-INF/mock-provider-withCircuitBreaker-contrib.xml" })
+public class TestServiceWithCircuitBreaker {
+
+	@Inject
+	CoreSession coreSession;
+
+	@Inject
+	protected EventService eventService;
+
+	@Inject
+	protected WorkManager workManager;
+
+	@Inject
+	protected NaturalLanguage naturalLanguage;
+
+	@Inject
+	protected NaturalLanguageDocumentCoalescer documentCoalescer;
+
+	@After
+	public void cleanup() {
+		MockNaturalLanguageProvider.FAILURE = null;
+	}
+
+	protected void createDocumentAndWait(String name) throws InterruptedException {
+		DocumentModel doc = coreSession.createDocumentModel("/", name, "File");
+		doc.setPropertyValue("file:content", (Serializable) Blobs.createBlob("The text of " + name));
+		coreSession.createDocument(doc);
+		coreSession.save();
+		TransactionHelper.commitOrRollbackTransaction();
+		TransactionHelper.startTransaction();
+		eventService.waitForAsyncCompletion();
+		assertTrue(workManager.awaitCompletion(NaturalLanguageWork.CATEGORY, 20, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testAnalysisIsDeferredWhileTheCircuitIsOpen() throws Exception {
+
+		MockNaturalLanguageProvider.CALL_COUNT.set(0);
+		MockNaturalLanguageProvider.FAILURE = new NaturalLanguageProviderException("Unavailable", true);
+
+		// The failure opens the circuit, the document is not analyzed
+		createDocumentAndWait("test-doc-1");
+		assertEquals(1, MockNaturalLanguageProvider.CALL_COUNT.get());
+		assertEquals("OPEN", naturalLanguage.getServiceConfiguration(null).getJSONObject("providerPolicies")
+				.getJSONObject("mock").getJSONObject("circuitBreaker").getString("state"));
+		assertEquals(0, documentCoalescer.getDeferredCount());
+
+		// Circuit open: the provider is not called, the analysis is deferred
+		createDocumentAndWait("test-doc-2");
+		assertEquals(1, MockNaturalLanguageProvider.CALL_COUNT.get());
+		assertEquals(1, documentCoalescer.getDeferredCount());
+	}
+
+}
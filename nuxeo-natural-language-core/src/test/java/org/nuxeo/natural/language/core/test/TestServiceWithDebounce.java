@@ -0,0 +1,170 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.core.test;
+
+import static org.junit.Assert.*;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.automation.test.AutomationFeature;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.event.EventService;
+import org.nuxeo.ecm.core.test.DefaultRepositoryInit;
+import org.nuxeo.ecm.core.test.annotations.Granularity;
+import org.nuxeo.ecm.core.test.annotations.RepositoryConfig;
+import org.nuxeo.ecm.core.work.api.WorkManager;
+import org.nuxeo.natural.language.core.test.mock.MockNaturalLanguageProvider;
+import org.nuxeo.natural.language.service.api.NaturalLanguage;
+import org.nuxeo.natural.language.service.api.NaturalLanguageDocumentCoalescer;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageWork;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.LocalDeploy;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+import com.google.inject.Inject;
+
+@RunWith(FeaturesRunner.class)
+@Features(AutomationFeature.class)
+@RepositoryConfig(init = DefaultRepositoryInit.class, cleanup = Granularity.METHOD)
+@Deploy("nuxeo-natural-language-core")
+@LocalDeploy({ "nuxeo-natural-language:OSGI-INF/mock-provider-withDebounce-contrib.xml" })
+public class TestServiceWithDebounce {
+
+	@Inject
+	CoreSession coreSession;
+
+	@Inject
+	protected EventService eventService;
+
+	@Inject
+	protected WorkManager workManager;
+
+	@Inject
+	protected NaturalLanguage naturalLanguage;
+
+	@Inject
+	protected NaturalLanguageDocumentCoalescer documentCoalescer;
+
+	protected void commitAndStartTransaction() {
+		coreSession.save();
+		TransactionHelper.commitOrRollbackTransaction();
+		TransactionHelper.startTransaction();
+	}
+
+	protected void waitForAnalysis() throws InterruptedException {
+		long end = System.currentTimeMillis() + 20000;
+		do {
+			eventService.waitForAsyncCompletion();
+			assertTrue(workManager.awaitCompletion(NaturalLanguageWork.CATEGORY, 20, TimeUnit.SECONDS));
+			if (documentCoalescer.getDeferredCount() == 0) {
+				// The last deferred work may have been scheduled meanwhile
+				assertTrue(workManager.awaitCompletion(NaturalLanguageWork.CATEGORY, 20, TimeUnit.SECONDS));
+				return;
+			}
+			Thread.sleep(100);
+		} while (System.currentTimeMillis() < end);
+		fail("Analysis still deferred");
+	}
+
+	@Test
+	public void testModificationsAreCoalesced() throws Exception {
+
+		assertEquals(1000, documentCoalescer.getDebounceMillis());
+		MockNaturalLanguageProvider.CALL_COUNT.set(0);
+
+		DocumentModel doc = coreSession.createDocumentModel("/", "test-doc", "File");
+		doc.setPropertyValue("file:content", (Serializable) Blobs.createBlob("First version of the text"));
+		doc = coreSession.createDocument(doc);
+		commitAndStartTransaction();
+
+		doc.setPropertyValue("file:content", (Serializable) Blobs.createBlob("Second version of the text"));
+		doc = coreSession.saveDocument(doc);
+		commitAndStartTransaction();
+
+		doc.setPropertyValue("file:content", (Serializable) Blobs.createBlob("Third version of the text"));
+		doc = coreSession.saveDocument(doc);
+		commitAndStartTransaction();
+
+		waitForAnalysis();
+		doc.refresh();
+
+		// Analyzed once, with the latest blob
+		assertEquals(1, MockNaturalLanguageProvider.CALL_COUNT.get());
+		assertTrue(doc.hasFacet(NaturalLanguage.FACET_NAME));
+		Blob blob = (Blob) doc.getPropertyValue("file:content");
+		assertEquals(blob.getDigest(), doc.getPropertyValue(NaturalLanguage.XPATH_SOURCE_DIGEST));
+	}
+
+	protected DocumentModel createDocument(String name) {
+		DocumentModel doc = coreSession.createDocumentModel("/", name, "File");
+		doc.setPropertyValue("file:content", (Serializable) Blobs.createBlob("The text of " + name));
+		return coreSession.createDocument(doc);
+	}
+
+	protected Object getPendingDocuments() {
+		Map<String, Object> stats = documentCoalescer.getStatistics();
+		return stats.get("pendingDocuments");
+	}
+
+	@Test
+	public void testWindowIsForgottenWhenTheAnalysisFails() throws Exception {
+
+		MockNaturalLanguageProvider.CALL_COUNT.set(0);
+		MockNaturalLanguageProvider.FAILURE = new NuxeoException("Failure of the provider");
+		try {
+			createDocument("test-doc-failure");
+			commitAndStartTransaction();
+			waitForAnalysis();
+		} finally {
+			MockNaturalLanguageProvider.FAILURE = null;
+		}
+
+		assertEquals(1, MockNaturalLanguageProvider.CALL_COUNT.get());
+		assertEquals(0, getPendingDocuments());
+	}
+
+	@Test
+	public void testWindowIsForgottenWhenTheListenerIsDisabled() throws Exception {
+
+		MockNaturalLanguageProvider.CALL_COUNT.set(0);
+		createDocument("test-doc-disabled");
+		// Disabled after the event, before the work runs
+		naturalLanguage.setDocumentListenerEnabled(false);
+		try {
+			commitAndStartTransaction();
+			waitForAnalysis();
+		} finally {
+			naturalLanguage.setDocumentListenerEnabled(true);
+		}
+
+		assertEquals(0, MockNaturalLanguageProvider.CALL_COUNT.get());
+		assertEquals(0, getPendingDocuments());
+	}
+
+}
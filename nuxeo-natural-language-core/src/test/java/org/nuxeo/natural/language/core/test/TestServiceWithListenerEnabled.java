@@ -22,8 +22,9 @@ import static org.junit.Assert.*;
 
 import java.io.File;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
-import org.json.JSONException;
 import org.json.JSONObject;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -37,9 +38,13 @@ import org.nuxeo.ecm.core.event.EventService;
 import org.nuxeo.ecm.core.test.DefaultRepositoryInit;
 import org.nuxeo.ecm.core.test.annotations.Granularity;
 import org.nuxeo.ecm.core.test.annotations.RepositoryConfig;
+import org.nuxeo.ecm.core.work.api.WorkManager;
 import org.nuxeo.ecm.platform.mimetype.service.MimetypeRegistryService;
+import org.nuxeo.natural.language.core.test.mock.MockNaturalLanguageProvider;
 import org.nuxeo.natural.language.core.test.mock.MockNaturalLanguageResponse;
 import org.nuxeo.natural.language.service.api.NaturalLanguage;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageMetrics;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageWork;
 import org.nuxeo.runtime.test.runner.Deploy;
 import org.nuxeo.runtime.test.runner.Features;
 import org.nuxeo.runtime.test.runner.FeaturesRunner;
@@ -66,10 +71,13 @@ public class TestServiceWithListenerEnabled {
 	@Inject
 	protected EventService eventService;
 
+	@Inject
+	protected WorkManager workManager;
+
 	@Inject
 	protected NaturalLanguage naturalLanguage;
 
-	protected DocumentModel createTestDocAndWaitForAsyncCompletion(String title) {
+	protected DocumentModel createTestDocAndWaitForAsyncCompletion(String title) throws InterruptedException {
 
 		File file = FileUtils.getResourceFileFromContext(TEXT_FILE);
 		FileBlob fileBlob = new FileBlob(file);
@@ -86,15 +94,23 @@ public class TestServiceWithListenerEnabled {
 		TransactionHelper.startTransaction();
 
 		eventService.waitForAsyncCompletion();
+		assertTrue(workManager.awaitCompletion(NaturalLanguageWork.CATEGORY, 20, TimeUnit.SECONDS));
 
 		// ========================================
-		// The listener is asynchronous => need to refresh our instance
+		// The analysis is asynchronous => need to refresh our instance
 		// ========================================
 		doc.refresh();
 
 		return doc;
 	}
 
+	protected static void assertEntity(String name, String type, double salience, Object item) {
+		Map<?, ?> entity = (Map<?, ?>) item;
+		assertEquals(name, entity.get("name"));
+		assertEquals(type, entity.get("type"));
+		assertEquals(salience, (Double) entity.get("salience"), 0.0001);
+	}
+
 	@Test
 	public void testConfig() {
 		// Check against the mock-provider-withAutoAnalyze-contrib.xml file
@@ -115,7 +131,7 @@ public class TestServiceWithListenerEnabled {
 	}
 
 	@Test
-	public void testDocumentIsAnalyzed() throws JSONException {
+	public void testDocumentIsAnalyzed() throws Exception {
 
 		DocumentModel doc = createTestDocAndWaitForAsyncCompletion("test-doc");
 
@@ -130,6 +146,21 @@ public class TestServiceWithListenerEnabled {
 		assertEquals(MockNaturalLanguageResponse.SCORE, (double) obj.get("score"), 0.0);
 		assertEquals(MockNaturalLanguageResponse.MAGNITUDE, (double) obj.get("magnitude"), 0.0);
 
+		// Queryable fields
+		assertEquals(MockNaturalLanguageResponse.LANGUAGE, doc.getPropertyValue(NaturalLanguage.XPATH_LANGUAGE));
+		assertEquals(MockNaturalLanguageResponse.SCORE,
+				((Double) doc.getPropertyValue(NaturalLanguage.XPATH_SENTIMENT_SCORE)).floatValue(), 0.0);
+		assertEquals(MockNaturalLanguageResponse.MAGNITUDE,
+				((Double) doc.getPropertyValue(NaturalLanguage.XPATH_SENTIMENT_MAGNITUDE)).floatValue(), 0.0);
+
+		// The 3 most salient entities (maxEntities in the configuration)
+		List<?> entities = (List<?>) doc.getPropertyValue(NaturalLanguage.XPATH_ENTITIES);
+		assertEquals(3, entities.size());
+		assertEntity("Nuxeo", "ORGANIZATION", 0.6, entities.get(0));
+		assertEntity("Java", "OTHER", 0.4, entities.get(1));
+		assertEntity("Paris", "LOCATION", 0.2, entities.get(2));
+		assertEquals("Java", doc.getPropertyValue(NaturalLanguage.XPATH_ENTITIES + "/1/name"));
+
 		// This document should not need to be analyzed again...
 		boolean doAnalyze = naturalLanguage.canProcessDocument(doc);
 		assertFalse(doAnalyze);
@@ -141,7 +172,46 @@ public class TestServiceWithListenerEnabled {
 	}
 
 	@Test
-	public void testEnableDisableListener() {
+	public void testListenerDisabledByContextData() throws Exception {
+
+		File file = FileUtils.getResourceFileFromContext(TEXT_FILE);
+		FileBlob fileBlob = new FileBlob(file);
+		fileBlob.setMimeType("text/plain");
+
+		DocumentModel doc = coreSession.createDocumentModel("/", "test-doc-flag", "File");
+		doc.setPropertyValue("file:content", fileBlob);
+		doc.putContextData(NaturalLanguage.DISABLE_DOCUMENT_LISTENER, Boolean.TRUE);
+		doc = coreSession.createDocument(doc);
+
+		coreSession.save();
+		TransactionHelper.commitOrRollbackTransaction();
+		TransactionHelper.startTransaction();
+		eventService.waitForAsyncCompletion();
+		assertTrue(workManager.awaitCompletion(NaturalLanguageWork.CATEGORY, 20, TimeUnit.SECONDS));
+
+		doc.refresh();
+		assertFalse(doc.hasFacet(NaturalLanguage.FACET_NAME));
+	}
+
+	@Test
+	public void testProcessorSaveDoesNotTriggerTheListener() throws Exception {
+
+		MockNaturalLanguageProvider.CALL_COUNT.set(0);
+		long scheduled = NaturalLanguageMetrics.meter("listener", "scheduled").getCount();
+		long alreadyAnalyzed = NaturalLanguageMetrics.meter("documents", "alreadyAnalyzed").getCount();
+
+		DocumentModel doc = createTestDocAndWaitForAsyncCompletion("test-doc-save");
+		assertTrue(doc.hasFacet(NaturalLanguage.FACET_NAME));
+
+		// Only the creation scheduled a work. The listener ignored the save
+		// of the result: it did not even check the document
+		assertEquals(1, MockNaturalLanguageProvider.CALL_COUNT.get());
+		assertEquals(scheduled + 1, NaturalLanguageMetrics.meter("listener", "scheduled").getCount());
+		assertEquals(alreadyAnalyzed, NaturalLanguageMetrics.meter("documents", "alreadyAnalyzed").getCount());
+	}
+
+	@Test
+	public void testEnableDisableListener() throws Exception {
 
 		assertTrue(naturalLanguage.isDocumentListenerEnabled());
 
@@ -0,0 +1,175 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.core.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.automation.test.AutomationFeature;
+import org.nuxeo.ecm.core.test.DefaultRepositoryInit;
+import org.nuxeo.ecm.core.test.annotations.Granularity;
+import org.nuxeo.ecm.core.test.annotations.RepositoryConfig;
+import org.nuxeo.natural.language.core.test.mock.MockNaturalLanguageProvider;
+import org.nuxeo.natural.language.service.api.NaturalLanguage;
+import org.nuxeo.natural.language.service.api.NaturalLanguageCircuitOpenException;
+import org.nuxeo.natural.language.service.api.NaturalLanguageFeature;
+import org.nuxeo.natural.language.service.api.NaturalLanguageProviderException;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.LocalDeploy;
+
+import com.google.inject.Inject;
+
+/**
+ * Calls the service with a provider wrapped with all the policies (see
+ * mock-provider-withPolicies-contrib.xml), to check how they are stacked
+ */
+@RunWith(FeaturesRunner.class)
+@Features(AutomationFeature.class)
+@RepositoryConfig(init = DefaultRepositoryInit.class, cleanup = Granularity.METHOD)
+@Deploy("nuxeo-natural-language-core")
+@LocalDeploy({ "nuxeo-natural-language:OSGI-INF/mock-provider-withPolicies-contrib.xml" })
+public class TestServiceWithProviderPolicies {
+
+	protected static final List<NaturalLanguageFeature> FEATURES = Arrays
+			.asList(NaturalLanguageFeature.DOCUMENT_SENTIMENT);
+
+	@Inject
+	protected NaturalLanguage naturalLanguage;
+
+	@Before
+	public void reset() {
+		MockNaturalLanguageProvider.CALL_COUNT.set(0);
+		MockNaturalLanguageProvider.FAILURE = null;
+	}
+
+	@After
+	public void cleanup() {
+		MockNaturalLanguageProvider.FAILURE = null;
+	}
+
+	protected JSONObject getPolicies(String name) throws JSONException {
+		return naturalLanguage.getServiceConfiguration(null).getJSONObject("providerPolicies")
+				.getJSONObject("mock").getJSONObject(name);
+	}
+
+	protected void assertFails(String text) {
+		try {
+			naturalLanguage.processText(null, text, FEATURES, null);
+			fail("Expected the call to fail");
+		} catch (NaturalLanguageProviderException e) {
+			assertTrue(e.isRetryable());
+		}
+	}
+
+	@Test
+	public void testAllPoliciesAreStacked() throws JSONException {
+
+		JSONObject policies = naturalLanguage.getServiceConfiguration(null)
+				.getJSONObject("providerPolicies")
+				.getJSONObject("mock");
+		assertTrue(policies.has("circuitBreaker"));
+		assertTrue(policies.has("rateLimiter"));
+		assertTrue(policies.has("retry"));
+		assertTrue(policies.has("concurrencyLimiter"));
+		assertFalse(policies.has("hedging"));
+
+		long acquired = getPolicies("rateLimiter").getLong("acquired");
+		long succeeded = getPolicies("concurrencyLimiter").getLong("succeeded");
+		naturalLanguage.processText(null, "Some text", FEATURES, null);
+		assertEquals(1, MockNaturalLanguageProvider.CALL_COUNT.get());
+		assertEquals(acquired + 1, getPolicies("rateLimiter").getLong("acquired"));
+		assertEquals(succeeded + 1, getPolicies("concurrencyLimiter").getLong("succeeded"));
+		assertEquals("CLOSED", getPolicies("circuitBreaker").getString("state"));
+	}
+
+	@Test
+	public void testRetriesTakeRateLimitTokens() throws JSONException {
+
+		long acquired = getPolicies("rateLimiter").getLong("acquired");
+		long retries = getPolicies("retry").getLong("retries");
+		MockNaturalLanguageProvider.FAILURE = new NaturalLanguageProviderException("Resource exhausted", true);
+
+		// A quota error is retried, each attempt is paced by the rate limiter
+		assertFails("Over quota text");
+		assertEquals(3, MockNaturalLanguageProvider.CALL_COUNT.get());
+		assertEquals(retries + 2, getPolicies("retry").getLong("retries"));
+		assertEquals(acquired + 3, getPolicies("rateLimiter").getLong("acquired"));
+
+		// Also for the texts of a batch
+		MockNaturalLanguageProvider.FAILURE = null;
+		naturalLanguage.processTexts(null, Arrays.asList("Batch text 1", "Batch text 2"), FEATURES, null);
+		assertEquals(acquired + 5, getPolicies("rateLimiter").getLong("acquired"));
+	}
+
+	@Test
+	public void testRetriesAreOneCallForTheCircuitBreaker() throws Exception {
+
+		long acquired = getPolicies("rateLimiter").getLong("acquired");
+		long retries = getPolicies("retry").getLong("retries");
+		long exhausted = getPolicies("retry").getLong("exhausted");
+		MockNaturalLanguageProvider.FAILURE = new NaturalLanguageProviderException("Unavailable", true);
+
+		// The retry policy is inside the circuit breaker, but outside the
+		// limiters: each attempt is paced and takes a slot
+		assertFails("Failing text 1");
+		assertEquals(3, MockNaturalLanguageProvider.CALL_COUNT.get());
+		assertEquals(retries + 2, getPolicies("retry").getLong("retries"));
+		assertEquals(exhausted + 1, getPolicies("retry").getLong("exhausted"));
+		assertEquals(acquired + 3, getPolicies("rateLimiter").getLong("acquired"));
+		assertEquals(0, getPolicies("concurrencyLimiter").getInt("inFlight"));
+		assertEquals("CLOSED", getPolicies("circuitBreaker").getString("state"));
+		assertEquals(1, getPolicies("circuitBreaker").getInt("consecutiveFailures"));
+
+		// Second exhausted call => the circuit opens
+		assertFails("Failing text 2");
+		assertEquals(6, MockNaturalLanguageProvider.CALL_COUNT.get());
+		assertEquals("OPEN", getPolicies("circuitBreaker").getString("state"));
+
+		// The circuit breaker is the outer policy: the call does not reach
+		// the other ones
+		try {
+			naturalLanguage.processText(null, "Failing text 3", FEATURES, null);
+			fail("Expected the circuit to be open");
+		} catch (NaturalLanguageCircuitOpenException e) {
+			assertEquals("mock", e.getProviderName());
+		}
+		assertEquals(6, MockNaturalLanguageProvider.CALL_COUNT.get());
+		assertEquals(acquired + 6, getPolicies("rateLimiter").getLong("acquired"));
+		assertEquals(exhausted + 2, getPolicies("retry").getLong("exhausted"));
+
+		// Once the open delay is over, a successful trial closes the circuit
+		MockNaturalLanguageProvider.FAILURE = null;
+		Thread.sleep(250);
+		naturalLanguage.processText(null, "Some other text", FEATURES, null);
+		assertEquals(7, MockNaturalLanguageProvider.CALL_COUNT.get());
+		assertEquals("CLOSED", getPolicies("circuitBreaker").getString("state"));
+		assertEquals(0, getPolicies("circuitBreaker").getInt("consecutiveFailures"));
+	}
+
+}
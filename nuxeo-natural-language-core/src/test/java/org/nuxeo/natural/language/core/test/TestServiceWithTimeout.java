@@ -0,0 +1,164 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.core.test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.automation.AutomationService;
+import org.nuxeo.ecm.automation.OperationChain;
+import org.nuxeo.ecm.automation.OperationContext;
+import org.nuxeo.ecm.automation.test.AutomationFeature;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.test.DefaultRepositoryInit;
+import org.nuxeo.ecm.core.test.annotations.Granularity;
+import org.nuxeo.ecm.core.test.annotations.RepositoryConfig;
+import org.nuxeo.natural.language.core.test.mock.MockNaturalLanguageProvider;
+import org.nuxeo.natural.language.core.test.mock.MockNaturalLanguageResponse;
+import org.nuxeo.natural.language.operations.NaturalLanguageOnStringOp;
+import org.nuxeo.natural.language.service.api.NaturalLanguage;
+import org.nuxeo.natural.language.service.api.NaturalLanguageDeadlineException;
+import org.nuxeo.natural.language.service.api.NaturalLanguageFeature;
+import org.nuxeo.natural.language.service.api.NaturalLanguageResponse;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.LocalDeploy;
+
+import com.google.inject.Inject;
+
+/**
+ * The timeout passed by the caller replaces the default timeout of the
+ * provider (300ms, see mock-provider-withTimeout-contrib.xml), when it is
+ * longer as well as when it is shorter
+ */
+@RunWith(FeaturesRunner.class)
+@Features(AutomationFeature.class)
+@RepositoryConfig(init = DefaultRepositoryInit.class, cleanup = Granularity.METHOD)
+@Deploy("nuxeo-natural-language-core")
+@LocalDeploy({ "nuxeo-natural-language:OSGI-INF/mock-provider-withTimeout-contrib.xml" })
+public class TestServiceWithTimeout {
+
+	protected static final List<NaturalLanguageFeature> FEATURES = Arrays
+			.asList(NaturalLanguageFeature.DOCUMENT_SENTIMENT);
+
+	protected static final long LATENCY_MILLIS = 600;
+
+	@Inject
+	CoreSession coreSession;
+
+	@Inject
+	AutomationService automationService;
+
+	@Inject
+	protected NaturalLanguage naturalLanguage;
+
+	@Before
+	public void setUp() {
+		MockNaturalLanguageProvider.LATENCY_MILLIS = LATENCY_MILLIS;
+	}
+
+	@After
+	public void tearDown() {
+		MockNaturalLanguageProvider.LATENCY_MILLIS = 0;
+	}
+
+	protected static void assertDeadlineExceeded(Throwable t) {
+		for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+			if (cause instanceof NaturalLanguageDeadlineException) {
+				return;
+			}
+		}
+		throw new AssertionError("Expected the deadline to be exceeded", t);
+	}
+
+	@Test
+	public void testProviderDefaultTimeout() {
+
+		long start = System.currentTimeMillis();
+		try {
+			naturalLanguage.processText(null, "Default timeout", FEATURES, null);
+			fail("Expected the default timeout of the provider to fire");
+		} catch (Exception e) {
+			assertDeadlineExceeded(e);
+		}
+		assertTrue(System.currentTimeMillis() - start < LATENCY_MILLIS);
+	}
+
+	@Test
+	public void testLongerTimeoutIsHonoured() {
+
+		NaturalLanguageResponse response = naturalLanguage.processText(null, "Longer timeout", FEATURES, null,
+				5000);
+		assertEquals(MockNaturalLanguageResponse.LANGUAGE, response.getLanguage());
+	}
+
+	@Test
+	public void testShorterTimeoutFires() {
+
+		long start = System.currentTimeMillis();
+		try {
+			naturalLanguage.processText(null, "Shorter timeout", FEATURES, null, 100);
+			fail("Expected the timeout to fire");
+		} catch (Exception e) {
+			assertDeadlineExceeded(e);
+		}
+		assertTrue(System.currentTimeMillis() - start < 300);
+	}
+
+	protected OperationChain newChain(long timeoutMillis) {
+		OperationChain chain = new OperationChain("testTimeout");
+		chain.add(NaturalLanguageOnStringOp.ID)
+				.set("features", NaturalLanguageFeature.DOCUMENT_SENTIMENT.name())
+				.set("timeoutMillis", timeoutMillis)
+				.set("outputVariable", "result");
+		return chain;
+	}
+
+	@Test
+	public void testOperationTimeout() throws Exception {
+
+		// Longer than the default of the provider
+		OperationContext ctx = new OperationContext(coreSession);
+		ctx.setInput("Longer timeout of the operation");
+		automationService.run(ctx, newChain(5000));
+		NaturalLanguageResponse response = (NaturalLanguageResponse) ctx.get("result");
+		assertEquals(MockNaturalLanguageResponse.LANGUAGE, response.getLanguage());
+
+		// Shorter
+		ctx = new OperationContext(coreSession);
+		ctx.setInput("Shorter timeout of the operation");
+		long start = System.currentTimeMillis();
+		try {
+			automationService.run(ctx, newChain(100));
+			fail("Expected the timeout to fire");
+		} catch (Exception e) {
+			assertDeadlineExceeded(e);
+		}
+		assertTrue(System.currentTimeMillis() - start < 300);
+		assertNull(ctx.get("result"));
+	}
+
+}
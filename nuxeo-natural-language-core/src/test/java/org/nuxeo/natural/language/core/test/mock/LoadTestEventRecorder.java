@@ -0,0 +1,82 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.core.test.mock;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.event.DocumentEventTypes;
+import org.nuxeo.ecm.core.event.Event;
+import org.nuxeo.ecm.core.event.EventContext;
+import org.nuxeo.ecm.core.event.EventListener;
+import org.nuxeo.ecm.core.event.impl.DocumentEventContext;
+import org.nuxeo.natural.language.service.api.NaturalLanguage;
+
+/**
+ * Records the writes to the repository during a load test, and when the
+ * result of the analysis of each document was saved (the save of the
+ * document processor is the one disabling the listener)
+ *
+ * Configured in /src/test/resources/OSGI-INF/load-test-contrib.xml
+ *
+ * @since 9.10
+ */
+public class LoadTestEventRecorder implements EventListener {
+
+	public static final AtomicInteger CREATED_COUNT = new AtomicInteger();
+
+	public static final AtomicInteger MODIFIED_COUNT = new AtomicInteger();
+
+	public static final AtomicInteger ANALYSIS_SAVE_COUNT = new AtomicInteger();
+
+	/**
+	 * System.nanoTime() of the save of the analysis, by document id
+	 */
+	public static final Map<String, Long> ANALYZED_AT = new ConcurrentHashMap<>();
+
+	public static void reset() {
+		CREATED_COUNT.set(0);
+		MODIFIED_COUNT.set(0);
+		ANALYSIS_SAVE_COUNT.set(0);
+		ANALYZED_AT.clear();
+	}
+
+	@Override
+	public void handleEvent(Event event) {
+
+		EventContext ectx = event.getContext();
+		if (!(ectx instanceof DocumentEventContext)) {
+			return;
+		}
+
+		if (DocumentEventTypes.DOCUMENT_CREATED.equals(event.getName())) {
+			CREATED_COUNT.incrementAndGet();
+		} else {
+			MODIFIED_COUNT.incrementAndGet();
+			if (Boolean.TRUE.equals(ectx.getProperty(NaturalLanguage.DISABLE_DOCUMENT_LISTENER))) {
+				ANALYSIS_SAVE_COUNT.incrementAndGet();
+				DocumentModel doc = ((DocumentEventContext) ectx).getSourceDocument();
+				ANALYZED_AT.putIfAbsent(doc.getId(), System.nanoTime());
+			}
+		}
+	}
+
+}
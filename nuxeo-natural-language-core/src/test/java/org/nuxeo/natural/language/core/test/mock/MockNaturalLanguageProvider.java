@@ -21,8 +21,12 @@ package org.nuxeo.natural.language.core.test.mock;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.natural.language.service.api.NaturalLanguageDeadline;
+import org.nuxeo.natural.language.service.api.NaturalLanguageDeadlineException;
 import org.nuxeo.natural.language.service.api.NaturalLanguageEncoding;
 import org.nuxeo.natural.language.service.api.NaturalLanguageFeature;
 import org.nuxeo.natural.language.service.api.NaturalLanguageProvider;
@@ -40,6 +44,27 @@ public class MockNaturalLanguageProvider implements NaturalLanguageProvider {
 
 	public static final String NAME = "mock";
 
+	/**
+	 * Number of calls to processText, so tests can check the provider was
+	 * (not) called
+	 */
+	public static final AtomicInteger CALL_COUNT = new AtomicInteger();
+
+	/**
+	 * Time spent in each call to processText, to simulate a remote provider.
+	 * Fails when the deadline of the call comes first
+	 *
+	 * @since 9.10
+	 */
+	public static volatile long LATENCY_MILLIS = 0;
+
+	/**
+	 * Thrown by processText when set, to simulate a failing provider
+	 *
+	 * @since 9.10
+	 */
+	public static volatile RuntimeException FAILURE;
+
 	public MockNaturalLanguageProvider(Map<String, String> parameters) {
 
 	}
@@ -47,6 +72,25 @@ public class MockNaturalLanguageProvider implements NaturalLanguageProvider {
 	@Override
 	public NaturalLanguageResponse processText(String text, List<NaturalLanguageFeature> features,
 			NaturalLanguageEncoding encoding) throws NuxeoException {
+		CALL_COUNT.incrementAndGet();
+		if (FAILURE != null) {
+			throw FAILURE;
+		}
+		if (LATENCY_MILLIS > 0) {
+			// Like a remote provider, gives up at the deadline of the call
+			NaturalLanguageDeadline deadline = NaturalLanguageDeadline.current();
+			long remaining = deadline == null ? Long.MAX_VALUE
+					: TimeUnit.NANOSECONDS.toMillis(deadline.getRemainingNanos());
+			try {
+				Thread.sleep(Math.max(0, Math.min(LATENCY_MILLIS, remaining)));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new NuxeoException(e);
+			}
+			if (remaining < LATENCY_MILLIS) {
+				throw new NaturalLanguageDeadlineException("Deadline exceeded");
+			}
+		}
 		return new MockNaturalLanguageResponse();
 	}
 
@@ -18,6 +18,8 @@
  */
 package org.nuxeo.natural.language.core.test.mock;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.json.JSONException;
@@ -26,6 +28,7 @@ import org.nuxeo.natural.language.service.api.NaturalLanguageEntity;
 import org.nuxeo.natural.language.service.api.NaturalLanguageResponse;
 import org.nuxeo.natural.language.service.api.NaturalLanguageSentence;
 import org.nuxeo.natural.language.service.api.NaturalLanguageToken;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageEntityImpl;
 
 /**
  * A NaturalLanguageResponse mock-up returning hard coded values
@@ -40,6 +43,17 @@ public class MockNaturalLanguageResponse implements NaturalLanguageResponse {
 
 	public static final float MAGNITUDE = 0.3f;
 
+	/**
+	 * Not sorted by salience
+	 *
+	 * @since 9.10
+	 */
+	public static final List<NaturalLanguageEntity> ENTITIES = Collections.unmodifiableList(Arrays.asList(
+			new NaturalLanguageEntityImpl("Paris", "LOCATION", 0.2f, null, null),
+			new NaturalLanguageEntityImpl("Nuxeo", "ORGANIZATION", 0.6f, null, null),
+			new NaturalLanguageEntityImpl("Thibaud", "PERSON", 0.1f, null, null),
+			new NaturalLanguageEntityImpl("Java", "OTHER", 0.4f, null, null)));
+
 	@Override
 	public String getLanguage() {
 		return LANGUAGE;
@@ -62,7 +76,7 @@ public class MockNaturalLanguageResponse implements NaturalLanguageResponse {
 
 	@Override
 	public List<NaturalLanguageEntity> getEntities() {
-		return null;
+		return ENTITIES;
 	}
 
 	@Override
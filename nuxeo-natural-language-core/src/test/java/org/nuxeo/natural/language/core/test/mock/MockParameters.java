@@ -0,0 +1,50 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.core.test.mock;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds the parameters of a provider contribution for the tests
+ *
+ * @since 9.10
+ */
+public class MockParameters {
+
+	private MockParameters() {
+		// Utility class
+	}
+
+	/**
+	 * @param keyValues
+	 *            The names and values of the parameters, in turn
+	 */
+	public static Map<String, String> of(String... keyValues) {
+		if (keyValues.length % 2 != 0) {
+			throw new IllegalArgumentException("Expected names and values in pairs");
+		}
+		Map<String, String> params = new HashMap<>();
+		for (int i = 0; i < keyValues.length; i += 2) {
+			params.put(keyValues[i], keyValues[i + 1]);
+		}
+		return params;
+	}
+
+}
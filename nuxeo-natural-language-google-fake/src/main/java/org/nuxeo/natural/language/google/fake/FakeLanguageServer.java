@@ -0,0 +1,105 @@
+/*
+ * (C) Copyright 2015-2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+
+package org.nuxeo.natural.language.google.fake;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+
+/**
+ * An in-process gRPC server running a {@link FakeLanguageService}, to call
+ * without TLS nor credentials (see the <code>endpoint</code> and
+ * <code>endpoint.plaintext</code> parameters of the Google provider).
+ * <p>
+ * Can also be started alone, for load tests on a box without access to
+ * Google:
+ *
+ * <pre>
+ * java -cp ... org.nuxeo.natural.language.google.fake.FakeLanguageServer [port [medianLatencyMillis [sigma]]]
+ * </pre>
+ *
+ * @since 9.10
+ */
+public class FakeLanguageServer implements AutoCloseable {
+
+	protected final FakeLanguageService service;
+
+	protected final Server server;
+
+	/**
+	 * Starts a server on a free port
+	 */
+	public FakeLanguageServer() throws IOException {
+		this(0);
+	}
+
+	public FakeLanguageServer(int port) throws IOException {
+		this(port, new FakeLanguageService());
+	}
+
+	public FakeLanguageServer(int port, FakeLanguageService service) throws IOException {
+		this.service = service;
+		server = ServerBuilder.forPort(port).addService(service).build().start();
+	}
+
+	public FakeLanguageService getService() {
+		return service;
+	}
+
+	public int getPort() {
+		return server.getPort();
+	}
+
+	/**
+	 * @return the host:port to use as the <code>endpoint</code> of the
+	 *         provider
+	 */
+	public String getEndpoint() {
+		return "localhost:" + getPort();
+	}
+
+	@Override
+	public void close() {
+		server.shutdownNow();
+		try {
+			server.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		service.close();
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+		FakeLanguageServer server = new FakeLanguageServer(port);
+		if (args.length > 1) {
+			double sigma = args.length > 2 ? Double.parseDouble(args[2]) : 0.5;
+			server.getService().setLatency(FakeLatency.logNormal(Long.parseLong(args[1]), sigma));
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+
+		System.out.println("Fake Language service listening on " + server.getEndpoint());
+		server.server.awaitTermination();
+	}
+
+}
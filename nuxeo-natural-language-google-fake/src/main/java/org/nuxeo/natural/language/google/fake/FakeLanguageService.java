@@ -0,0 +1,393 @@
+/*
+ * (C) Copyright 2015-2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+
+package org.nuxeo.natural.language.google.fake;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.cloud.language.v1.AnalyzeEntitiesRequest;
+import com.google.cloud.language.v1.AnalyzeEntitiesResponse;
+import com.google.cloud.language.v1.AnalyzeSentimentRequest;
+import com.google.cloud.language.v1.AnalyzeSentimentResponse;
+import com.google.cloud.language.v1.AnalyzeSyntaxRequest;
+import com.google.cloud.language.v1.AnalyzeSyntaxResponse;
+import com.google.cloud.language.v1.AnnotateTextRequest;
+import com.google.cloud.language.v1.AnnotateTextRequest.Features;
+import com.google.cloud.language.v1.AnnotateTextResponse;
+import com.google.cloud.language.v1.Document;
+import com.google.cloud.language.v1.EncodingType;
+import com.google.cloud.language.v1.Entity;
+import com.google.cloud.language.v1.EntityMention;
+import com.google.cloud.language.v1.LanguageServiceGrpc.LanguageServiceImplBase;
+import com.google.cloud.language.v1.PartOfSpeech;
+import com.google.cloud.language.v1.Sentence;
+import com.google.cloud.language.v1.Sentiment;
+import com.google.cloud.language.v1.TextSpan;
+import com.google.cloud.language.v1.Token;
+
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * A stand-in for the Google Cloud Natural Language API, answering without
+ * network nor credentials:
+ * <ul>
+ * <li>Responses are computed from the text: sentences end with a
+ * punctuation, the sentiment counts a few positive and negative words,
+ * capitalized words are entities, tokens are separated by whitespaces. A
+ * canned response can be returned instead</li>
+ * <li>Each response is delayed following a {@link FakeLatency}, without
+ * blocking the gRPC threads</li>
+ * <li>A ratio of the calls fails with a given status</li>
+ * </ul>
+ * Settings can be changed while the service is running.
+ *
+ * @since 9.10
+ */
+public class FakeLanguageService extends LanguageServiceImplBase implements AutoCloseable {
+
+	protected static final Pattern SENTENCE = Pattern.compile("[^.!?]+[.!?]*");
+
+	protected static final Pattern WORD = Pattern.compile("\\S+");
+
+	protected static final Set<String> POSITIVE_WORDS = new HashSet<>(
+			Arrays.asList("good", "great", "excellent", "love", "happy", "nice", "best"));
+
+	protected static final Set<String> NEGATIVE_WORDS = new HashSet<>(
+			Arrays.asList("bad", "terrible", "awful", "hate", "sad", "poor", "worst"));
+
+	protected final ScheduledExecutorService scheduler;
+
+	protected volatile FakeLatency latency = FakeLatency.none();
+
+	protected volatile double errorRate = 0;
+
+	protected volatile Status errorStatus = Status.UNAVAILABLE;
+
+	protected volatile AnnotateTextResponse cannedResponse = null;
+
+	protected final AtomicLong requestCount = new AtomicLong();
+
+	protected final AtomicLong errorCount = new AtomicLong();
+
+	public FakeLanguageService() {
+		AtomicInteger threadCount = new AtomicInteger();
+		scheduler = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+			Thread thread = new Thread(r, "FakeLanguageService-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	public void setLatency(FakeLatency latency) {
+		this.latency = latency == null ? FakeLatency.none() : latency;
+	}
+
+	/**
+	 * @param errorRate
+	 *            The ratio of the calls failing, in [0, 1]
+	 * @param code
+	 *            The status of the failures, UNAVAILABLE by default
+	 */
+	public void setErrors(double errorRate, Status.Code code) {
+		this.errorRate = errorRate;
+		errorStatus = Status.fromCode(code == null ? Status.Code.UNAVAILABLE : code);
+	}
+
+	/**
+	 * @param response
+	 *            Returned for every call (only the parts of the dedicated
+	 *            RPCs). {@code null} computes the responses from the texts
+	 */
+	public void setCannedResponse(AnnotateTextResponse response) {
+		cannedResponse = response;
+	}
+
+	/**
+	 * Back to immediate and successful responses, computed from the texts
+	 */
+	public void reset() {
+		setLatency(null);
+		setErrors(0, null);
+		setCannedResponse(null);
+		requestCount.set(0);
+		errorCount.set(0);
+	}
+
+	/**
+	 * @return the number of calls received, including the failed ones
+	 */
+	public long getRequestCount() {
+		return requestCount.get();
+	}
+
+	/**
+	 * @return the number of injected errors
+	 */
+	public long getErrorCount() {
+		return errorCount.get();
+	}
+
+	@Override
+	public void annotateText(AnnotateTextRequest request, StreamObserver<AnnotateTextResponse> responseObserver) {
+		respond(responseObserver,
+				() -> annotate(request.getDocument(), request.getFeatures(), request.getEncodingType()), r -> r);
+	}
+
+	@Override
+	public void analyzeSentiment(AnalyzeSentimentRequest request,
+			StreamObserver<AnalyzeSentimentResponse> responseObserver) {
+		Features features = Features.newBuilder().setExtractDocumentSentiment(true).build();
+		respond(responseObserver, () -> annotate(request.getDocument(), features, request.getEncodingType()),
+				r -> AnalyzeSentimentResponse.newBuilder().setLanguage(r.getLanguage())
+						.setDocumentSentiment(r.getDocumentSentiment()).addAllSentences(r.getSentencesList())
+						.build());
+	}
+
+	@Override
+	public void analyzeEntities(AnalyzeEntitiesRequest request,
+			StreamObserver<AnalyzeEntitiesResponse> responseObserver) {
+		Features features = Features.newBuilder().setExtractEntities(true).build();
+		respond(responseObserver, () -> annotate(request.getDocument(), features, request.getEncodingType()),
+				r -> AnalyzeEntitiesResponse.newBuilder().setLanguage(r.getLanguage())
+						.addAllEntities(r.getEntitiesList()).build());
+	}
+
+	@Override
+	public void analyzeSyntax(AnalyzeSyntaxRequest request, StreamObserver<AnalyzeSyntaxResponse> responseObserver) {
+		Features features = Features.newBuilder().setExtractSyntax(true).build();
+		respond(responseObserver, () -> annotate(request.getDocument(), features, request.getEncodingType()),
+				r -> AnalyzeSyntaxResponse.newBuilder().setLanguage(r.getLanguage())
+						.addAllSentences(r.getSentencesList()).addAllTokens(r.getTokensList()).build());
+	}
+
+	/*
+	 * Sends the response, or the injected error, after the latency
+	 */
+	protected <T> void respond(StreamObserver<T> responseObserver, Supplier<AnnotateTextResponse> annotation,
+			Function<AnnotateTextResponse, T> converter) {
+
+		requestCount.incrementAndGet();
+		boolean fail = errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate;
+		Runnable task = () -> {
+			if (fail) {
+				errorCount.incrementAndGet();
+				send(responseObserver, null, errorStatus.withDescription("Injected error").asRuntimeException());
+				return;
+			}
+			T response;
+			try {
+				response = converter.apply(annotation.get());
+			} catch (RuntimeException e) {
+				send(responseObserver, null, Status.INTERNAL.withDescription(e.getMessage()).withCause(e)
+						.asRuntimeException());
+				return;
+			}
+			send(responseObserver, response, null);
+		};
+
+		long delay = latency.nextMillis();
+		if (delay <= 0) {
+			task.run();
+		} else {
+			scheduler.schedule(task, delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	protected <T> void send(StreamObserver<T> responseObserver, T response, Throwable error) {
+		try {
+			if (error != null) {
+				responseObserver.onError(error);
+			} else {
+				responseObserver.onNext(response);
+				responseObserver.onCompleted();
+			}
+		} catch (RuntimeException e) {
+			// The call was cancelled by the client while waiting
+		}
+	}
+
+	/**
+	 * @return the response of annotateText for all the features, without a
+	 *         call. Can be used as a fixture
+	 */
+	public AnnotateTextResponse annotate(String text, EncodingType encoding) {
+		Features features = Features.newBuilder().setExtractDocumentSentiment(true).setExtractEntities(true)
+				.setExtractSyntax(true).build();
+		return annotate(Document.newBuilder().setContent(text).setType(Document.Type.PLAIN_TEXT).build(), features,
+				encoding);
+	}
+
+	/**
+	 * @return the canned response, or the annotations computed from the text
+	 *         of the document
+	 */
+	protected AnnotateTextResponse annotate(Document document, Features features, EncodingType encoding) {
+
+		if (cannedResponse != null) {
+			return cannedResponse;
+		}
+
+		String text = document.getContent();
+		String language = document.getLanguage().isEmpty() ? "en" : document.getLanguage();
+		AnnotateTextResponse.Builder builder = AnnotateTextResponse.newBuilder().setLanguage(language);
+
+		if (features.getExtractDocumentSentiment() || features.getExtractSyntax()) {
+			float scoreSum = 0;
+			float magnitudeSum = 0;
+			Matcher matcher = SENTENCE.matcher(text);
+			while (matcher.find()) {
+				String sentence = matcher.group().trim();
+				if (sentence.isEmpty()) {
+					continue;
+				}
+				int start = text.indexOf(sentence, matcher.start());
+				Sentence.Builder sentenceBuilder = Sentence.newBuilder()
+						.setText(toSpan(text, sentence, start, encoding));
+				if (features.getExtractDocumentSentiment()) {
+					Sentiment sentiment = getSentiment(sentence);
+					sentenceBuilder.setSentiment(sentiment);
+					scoreSum += sentiment.getScore() * sentiment.getMagnitude();
+					magnitudeSum += sentiment.getMagnitude();
+				}
+				builder.addSentences(sentenceBuilder);
+			}
+			if (features.getExtractDocumentSentiment()) {
+				float score = magnitudeSum > 0 ? scoreSum / magnitudeSum : 0;
+				builder.setDocumentSentiment(Sentiment.newBuilder().setScore(score).setMagnitude(magnitudeSum));
+			}
+		}
+
+		if (features.getExtractEntities()) {
+			Map<String, Entity.Builder> entities = new LinkedHashMap<>();
+			int mentionCount = 0;
+			Matcher matcher = WORD.matcher(text);
+			while (matcher.find()) {
+				String word = stripPunctuation(matcher.group());
+				if (word.length() > 1 && Character.isUpperCase(word.codePointAt(0))) {
+					int start = matcher.start() + matcher.group().indexOf(word);
+					entities.computeIfAbsent(word,
+							k -> Entity.newBuilder().setName(k).setType(Entity.Type.OTHER))
+							.addMentions(EntityMention.newBuilder().setType(EntityMention.Type.PROPER)
+									.setText(toSpan(text, word, start, encoding)));
+					mentionCount++;
+				}
+			}
+			for (Entity.Builder entity : entities.values()) {
+				builder.addEntities(entity.setSalience((float) entity.getMentionsCount() / mentionCount));
+			}
+		}
+
+		if (features.getExtractSyntax()) {
+			Matcher matcher = WORD.matcher(text);
+			while (matcher.find()) {
+				String word = matcher.group();
+				builder.addTokens(Token.newBuilder().setText(toSpan(text, word, matcher.start(), encoding))
+						.setLemma(word.toLowerCase()).setPartOfSpeech(getPartOfSpeech(word)));
+			}
+		}
+
+		return builder.build();
+	}
+
+	protected static Sentiment getSentiment(String sentence) {
+
+		int positive = 0;
+		int negative = 0;
+		Matcher matcher = WORD.matcher(sentence);
+		while (matcher.find()) {
+			String word = stripPunctuation(matcher.group()).toLowerCase();
+			if (POSITIVE_WORDS.contains(word)) {
+				positive++;
+			} else if (NEGATIVE_WORDS.contains(word)) {
+				negative++;
+			}
+		}
+		int count = positive + negative;
+		float score = count == 0 ? 0 : (float) (positive - negative) / count;
+
+		return Sentiment.newBuilder().setScore(score).setMagnitude(0.4f * count).build();
+	}
+
+	protected static PartOfSpeech getPartOfSpeech(String word) {
+
+		PartOfSpeech.Builder builder = PartOfSpeech.newBuilder();
+		String stripped = stripPunctuation(word);
+		if (stripped.isEmpty()) {
+			builder.setTag(PartOfSpeech.Tag.PUNCT);
+		} else if (stripped.chars().allMatch(Character::isDigit)) {
+			builder.setTag(PartOfSpeech.Tag.NUM);
+		} else {
+			builder.setTag(PartOfSpeech.Tag.NOUN);
+			if (Character.isUpperCase(stripped.codePointAt(0))) {
+				builder.setProper(PartOfSpeech.Proper.PROPER);
+			}
+		}
+
+		return builder.build();
+	}
+
+	protected static String stripPunctuation(String word) {
+		return word.replaceAll("^\\p{Punct}+|\\p{Punct}+$", "");
+	}
+
+	/*
+	 * Offsets in the unit of the encoding, -1 if NONE, like the real service
+	 */
+	protected static TextSpan toSpan(String text, String content, int index, EncodingType encoding) {
+
+		int offset;
+		switch (encoding) {
+		case UTF8:
+			offset = text.substring(0, index).getBytes(StandardCharsets.UTF_8).length;
+			break;
+		case UTF16:
+			offset = index;
+			break;
+		case UTF32:
+			offset = text.codePointCount(0, index);
+			break;
+		default:
+			offset = -1;
+		}
+
+		return TextSpan.newBuilder().setContent(content).setBeginOffset(offset).build();
+	}
+
+	@Override
+	public void close() {
+		scheduler.shutdownNow();
+	}
+
+}
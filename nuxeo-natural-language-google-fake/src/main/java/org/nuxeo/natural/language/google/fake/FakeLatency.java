@@ -0,0 +1,106 @@
+/*
+ * (C) Copyright 2015-2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+
+package org.nuxeo.natural.language.google.fake;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The latency of the responses of the {@link FakeLanguageService}. Real
+ * services usually have a log-normal latency, with some spikes.
+ *
+ * @since 9.10
+ */
+public abstract class FakeLatency {
+
+	/**
+	 * @return the latency of the next response, in milliseconds
+	 */
+	public abstract long nextMillis();
+
+	/**
+	 * Immediate responses
+	 */
+	public static FakeLatency none() {
+		return fixed(0);
+	}
+
+	public static FakeLatency fixed(long millis) {
+		return new FakeLatency() {
+			@Override
+			public long nextMillis() {
+				return millis;
+			}
+		};
+	}
+
+	/**
+	 * @return a latency uniformly distributed in [minMillis, maxMillis]
+	 */
+	public static FakeLatency uniform(long minMillis, long maxMillis) {
+		if (maxMillis < minMillis) {
+			throw new IllegalArgumentException("maxMillis < minMillis");
+		}
+		return new FakeLatency() {
+			@Override
+			public long nextMillis() {
+				return ThreadLocalRandom.current().nextLong(minMillis, maxMillis + 1);
+			}
+		};
+	}
+
+	/**
+	 * @param medianMillis
+	 * @param sigma
+	 *            The standard deviation of the log of the latency. 0.5 gives a
+	 *            p99 about 3 times the median
+	 * @return a log-normal latency
+	 */
+	public static FakeLatency logNormal(long medianMillis, double sigma) {
+		double mu = Math.log(Math.max(1, medianMillis));
+		return new FakeLatency() {
+			@Override
+			public long nextMillis() {
+				return Math.round(Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian()));
+			}
+		};
+	}
+
+	/**
+	 * @param probability
+	 *            The probability of a spike, in [0, 1]
+	 * @param spikeMillis
+	 *            Added to the latency in case of a spike
+	 * @return this latency, with random spikes
+	 */
+	public FakeLatency withSpikes(double probability, long spikeMillis) {
+		FakeLatency base = this;
+		return new FakeLatency() {
+			@Override
+			public long nextMillis() {
+				long millis = base.nextMillis();
+				if (ThreadLocalRandom.current().nextDouble() < probability) {
+					millis += spikeMillis;
+				}
+				return millis;
+			}
+		};
+	}
+
+}
@@ -0,0 +1,198 @@
+/*
+ * (C) Copyright 2015-2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+
+package org.nuxeo.natural.language.google;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.auth.Credentials;
+import com.google.cloud.language.v1.LanguageServiceGrpc;
+import com.google.cloud.language.v1.LanguageServiceGrpc.LanguageServiceFutureStub;
+
+import io.grpc.CallCredentials;
+import io.grpc.ManagedChannel;
+import io.grpc.auth.MoreCallCredentials;
+import io.grpc.netty.NegotiationType;
+import io.grpc.netty.NettyChannelBuilder;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageParameters;
+
+/**
+ * A pool of gRPC channels to the Google Natural Language API. Each channel is
+ * one HTTP/2 connection, the requests are spread over the channels in turn,
+ * so the number of concurrent streams of a connection does not limit the
+ * throughput. Configured with the parameters of the provider contribution:
+ * <ul>
+ * <li><code>channel.poolSize</code>: number of channels (default 1)</li>
+ * <li><code>channel.executorThreads</code>: number of threads handling the
+ * responses of all the channels. 0 (default) uses the gRPC shared
+ * executor</li>
+ * <li><code>channel.keepAliveTimeMillis</code>: delay without activity after
+ * which a keepalive ping is sent. 0 (default) disables keepalive</li>
+ * <li><code>channel.keepAliveTimeoutMillis</code>: delay after which the
+ * connection is closed if the ping is not answered (default 20000)</li>
+ * <li><code>channel.maxInboundMessageSize</code>: max. size of a response in
+ * bytes (default 64MB, the syntax of a big text is big)</li>
+ * </ul>
+ *
+ * @since 9.10
+ */
+public class GoogleChannelPool {
+
+	private static final Log log = LogFactory.getLog(GoogleChannelPool.class);
+
+	public static final String POOL_SIZE_PARAM = "channel.poolSize";
+
+	public static final String EXECUTOR_THREADS_PARAM = "channel.executorThreads";
+
+	public static final String KEEP_ALIVE_TIME_MILLIS_PARAM = "channel.keepAliveTimeMillis";
+
+	public static final String KEEP_ALIVE_TIMEOUT_MILLIS_PARAM = "channel.keepAliveTimeoutMillis";
+
+	public static final String MAX_INBOUND_MESSAGE_SIZE_PARAM = "channel.maxInboundMessageSize";
+
+	public static final String DEFAULT_ENDPOINT = "language.googleapis.com:443";
+
+	public static final long DEFAULT_KEEP_ALIVE_TIMEOUT_MILLIS = 20000;
+
+	public static final int DEFAULT_MAX_INBOUND_MESSAGE_SIZE = 64 * 1024 * 1024;
+
+	protected static final long CLOSE_TIMEOUT_SECONDS = 5;
+
+	protected final List<ManagedChannel> channels = new ArrayList<>();
+
+	protected final List<LanguageServiceFutureStub> futureStubs = new ArrayList<>();
+
+	protected final ExecutorService executor;
+
+	protected final AtomicInteger next = new AtomicInteger();
+
+	/**
+	 * @param endpoint
+	 *            host:port of the API
+	 * @param plaintext
+	 *            If true, TLS is not used (local test servers only)
+	 * @param credentials
+	 *            The credentials sent with each call. Can be {@code null}
+	 * @param userAgent
+	 *            Can be {@code null}
+	 * @param parameters
+	 *            The parameters of the provider
+	 */
+	public GoogleChannelPool(String endpoint, boolean plaintext, Credentials credentials, String userAgent,
+			Map<String, String> parameters) {
+
+		int poolSize = Math.max(1, (int) NaturalLanguageParameters.getLong(parameters, POOL_SIZE_PARAM, 1));
+		int executorThreads = (int) NaturalLanguageParameters.getLong(parameters, EXECUTOR_THREADS_PARAM, 0);
+		if (executorThreads > 0) {
+			AtomicInteger count = new AtomicInteger();
+			executor = Executors.newFixedThreadPool(executorThreads, r -> {
+				Thread t = new Thread(r, "NaturalLanguage-google-grpc-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			});
+		} else {
+			executor = null;
+		}
+
+		CallCredentials callCredentials = credentials == null ? null : MoreCallCredentials.from(credentials);
+		for (int i = 0; i < poolSize; i++) {
+			ManagedChannel channel = buildChannel(endpoint, plaintext, userAgent, parameters);
+			channels.add(channel);
+			LanguageServiceFutureStub stub = LanguageServiceGrpc.newFutureStub(channel);
+			futureStubs.add(callCredentials == null ? stub : stub.withCallCredentials(callCredentials));
+		}
+	}
+
+	protected ManagedChannel buildChannel(String endpoint, boolean plaintext, String userAgent,
+			Map<String, String> parameters) {
+
+		NettyChannelBuilder builder = NettyChannelBuilder.forTarget(endpoint)
+				.maxInboundMessageSize((int) NaturalLanguageParameters.getLong(parameters,
+						MAX_INBOUND_MESSAGE_SIZE_PARAM, DEFAULT_MAX_INBOUND_MESSAGE_SIZE));
+		if (plaintext) {
+			builder.negotiationType(NegotiationType.PLAINTEXT);
+		}
+		if (StringUtils.isNotBlank(userAgent)) {
+			builder.userAgent(userAgent);
+		}
+		if (executor != null) {
+			builder.executor(executor);
+		}
+		long keepAliveTimeMillis = NaturalLanguageParameters.getLong(parameters, KEEP_ALIVE_TIME_MILLIS_PARAM, 0);
+		if (keepAliveTimeMillis > 0) {
+			builder.keepAliveTime(keepAliveTimeMillis, TimeUnit.MILLISECONDS)
+					.keepAliveTimeout(NaturalLanguageParameters.getLong(parameters, KEEP_ALIVE_TIMEOUT_MILLIS_PARAM,
+							DEFAULT_KEEP_ALIVE_TIMEOUT_MILLIS), TimeUnit.MILLISECONDS);
+		}
+
+		return builder.build();
+	}
+
+	public int getPoolSize() {
+		return channels.size();
+	}
+
+	/**
+	 * @return the stub of the next channel
+	 */
+	public LanguageServiceFutureStub getFutureStub() {
+		return futureStubs.get(Math.floorMod(next.getAndIncrement(), futureStubs.size()));
+	}
+
+	/**
+	 * Closes the channels, waiting a few seconds for the calls in progress.
+	 * All the channels share the same delay, whatever the size of the pool.
+	 */
+	public void close() {
+
+		channels.forEach(ManagedChannel::shutdown);
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(CLOSE_TIMEOUT_SECONDS);
+		try {
+			int cancelled = 0;
+			for (ManagedChannel channel : channels) {
+				long remaining = Math.max(0, deadline - System.nanoTime());
+				if (!channel.awaitTermination(remaining, TimeUnit.NANOSECONDS)) {
+					channel.shutdownNow();
+					cancelled++;
+				}
+			}
+			if (cancelled > 0) {
+				log.warn("Calls still in progress on " + cancelled + " channel(s) after " + CLOSE_TIMEOUT_SECONDS
+						+ "s, cancelling them");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			channels.forEach(ManagedChannel::shutdownNow);
+		}
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+}
@@ -23,27 +23,54 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import com.google.api.gax.core.CredentialsProvider;
 import com.google.api.gax.core.FixedCredentialsProvider;
 import com.google.auth.oauth2.GoogleCredentials;
+import com.google.cloud.language.v1.AnalyzeEntitiesRequest;
+import com.google.cloud.language.v1.AnalyzeSentimentRequest;
+import com.google.cloud.language.v1.AnalyzeSyntaxRequest;
 import com.google.cloud.language.v1.AnnotateTextRequest;
 import com.google.cloud.language.v1.AnnotateTextRequest.Features;
 import com.google.cloud.language.v1.AnnotateTextResponse;
 import com.google.cloud.language.v1.Document;
 import com.google.cloud.language.v1.Document.Type;
 import com.google.cloud.language.v1.LanguageServiceClient;
+import com.google.cloud.language.v1.LanguageServiceGrpc.LanguageServiceFutureStub;
 import com.google.cloud.language.v1.LanguageServiceSettings;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import io.grpc.Status;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.natural.language.service.api.NaturalLanguageDeadline;
+import org.nuxeo.natural.language.service.api.NaturalLanguageDeadlineException;
 import org.nuxeo.natural.language.service.api.NaturalLanguageEncoding;
 import org.nuxeo.natural.language.service.api.NaturalLanguageFeature;
 import org.nuxeo.natural.language.service.api.NaturalLanguageProvider;
+import org.nuxeo.natural.language.service.api.NaturalLanguageProviderException;
 import org.nuxeo.natural.language.service.api.NaturalLanguageResponse;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageMetrics;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageParameters;
 
 /**
  * Implementation of the "google" provider, using Google Natural Language API
@@ -52,24 +79,96 @@ import org.nuxeo.natural.language.service.api.NaturalLanguageResponse;
  */
 public class GoogleNaturalLanguageProvider implements NaturalLanguageProvider {
 
+	private static final Log log = LogFactory.getLog(GoogleNaturalLanguageProvider.class);
+
 	public static final String APP_NAME_PARAM = "appName";
 
 	public static final String CREDENTIAL_PATH_PARAM = "credentialFilePath";
 
 	public static final String CREDENTIAL_PATH_CONFIGURATION_PARAM = "org.nuxeo.natural.language.google.credentials";
 
+	/**
+	 * Max number of requests in flight for one call to processTexts
+	 *
+	 * @since 9.10
+	 */
+	public static final String MAX_CONCURRENT_REQUESTS_PARAM = "maxConcurrentRequests";
+
+	public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 16;
+
+	/**
+	 * Comma separated list of the gRPC status codes of the errors which can be
+	 * retried
+	 *
+	 * @since 9.10
+	 */
+	public static final String RETRYABLE_STATUS_CODES_PARAM = "retry.statusCodes";
+
+	public static final String DEFAULT_RETRYABLE_STATUS_CODES = "UNAVAILABLE,DEADLINE_EXCEEDED,RESOURCE_EXHAUSTED,"
+			+ "ABORTED,INTERNAL";
+
+	/**
+	 * If true, several features are requested with one RPC per feature, sent
+	 * in parallel, instead of a single annotateText RPC
+	 *
+	 * @since 9.10
+	 */
+	public static final String PARALLEL_FEATURES_PARAM = "routing.parallelFeatures";
+
+	/**
+	 * host:port of the API, to use another server than Google's (test
+	 * servers, proxies, ...)
+	 *
+	 * @since 9.10
+	 */
+	public static final String ENDPOINT_PARAM = "endpoint";
+
+	/**
+	 * If true, the endpoint is called without TLS and without credentials.
+	 * For local test servers only
+	 *
+	 * @since 9.10
+	 */
+	public static final String ENDPOINT_PLAINTEXT_PARAM = "endpoint.plaintext";
+
 	// see "Authenticating to the Cloud Natural Language API":
 	// https://cloud.google.com/natural-language/docs/auth
 	public static final String CREDENTIAL_ENV_VARIABLE = "GOOGLE_APPLICATION_CREDENTIALS";
 
+	/**
+	 * Name of the provider when the service does not give it
+	 *
+	 * @since 9.10
+	 */
+	public static final String DEFAULT_PROVIDER_NAME = "google";
+
 	protected Map<String, String> params;
 
+	/**
+	 * @since 9.10
+	 */
+	protected final String providerName;
+
 	protected String credentialsFilePath = null;
 
 	protected LanguageServiceClient languageServiceClient = null;
 
+	protected GoogleChannelPool channelPool = null;
+
+	protected Set<Status.Code> retryableStatusCodes = null;
+
 	public GoogleNaturalLanguageProvider(Map<String, String> parameters) {
 		params = parameters;
+		providerName = StringUtils.defaultIfBlank(NaturalLanguageParameters.get(parameters, PROVIDER_NAME_PARAM),
+				DEFAULT_PROVIDER_NAME);
+	}
+
+	/**
+	 * @return the name the provider is contributed with
+	 * @since 9.10
+	 */
+	public String getProviderName() {
+		return providerName;
 	}
 
 	// Should start with checking GOOGLE_APPLICATION_CREDENTIALS?
@@ -80,73 +179,374 @@ public class GoogleNaturalLanguageProvider implements NaturalLanguageProvider {
 			synchronized (this) {
 				if (languageServiceClient == null) {
 
-					final LanguageServiceSettings languageServiceSettings;
-					try (InputStream is = new FileInputStream(new File(getCredentialFilePath()))) {
-						final GoogleCredentials myCredentials = GoogleCredentials.fromStream(is)
-								.createScoped(LanguageServiceSettings.getDefaultServiceScopes());
+					final CredentialsProvider credentialsProvider = FixedCredentialsProvider.create(getCredentials());
 
-						final CredentialsProvider credentialsProvider = FixedCredentialsProvider.create(myCredentials);
+					final LanguageServiceSettings languageServiceSettings = LanguageServiceSettings.newBuilder()
+							.setCredentialsProvider(credentialsProvider)
+							.setTransportProvider(LanguageServiceSettings.defaultTransportProvider()).build();
 
-						languageServiceSettings = LanguageServiceSettings.newBuilder()
-								.setCredentialsProvider(credentialsProvider)
-								.setTransportProvider(LanguageServiceSettings.defaultTransportProvider()).build();
+					languageServiceClient = LanguageServiceClient.create(languageServiceSettings);
 
-						languageServiceClient = LanguageServiceClient.create(languageServiceSettings);
+				}
+			}
+		}
 
-					} catch (IOException ioe) {
-						throw new NuxeoException(ioe);
-					}
+		return languageServiceClient;
+	}
 
+	/**
+	 * The channels used by the provider for its own calls. The client
+	 * returned by {@link #getNativeClient()} has its own channel.
+	 *
+	 * @since 9.10
+	 */
+	protected GoogleChannelPool getChannelPool() {
+
+		if (channelPool == null) {
+			synchronized (this) {
+				if (channelPool == null) {
+					boolean plaintext = isPlaintext();
+					// Credentials are only sent over TLS
+					channelPool = new GoogleChannelPool(getEndpoint(), plaintext, plaintext ? null : getCredentials(),
+							getAppName(), params);
 				}
 			}
 		}
 
-		return languageServiceClient;
+		return channelPool;
+	}
+
+	/**
+	 * @since 9.10
+	 */
+	protected GoogleCredentials getCredentials() {
+		try (InputStream is = new FileInputStream(new File(getCredentialFilePath()))) {
+			return GoogleCredentials.fromStream(is).createScoped(LanguageServiceSettings.getDefaultServiceScopes());
+		} catch (IOException ioe) {
+			throw new NuxeoException(ioe);
+		}
+	}
+
+	/**
+	 * @since 9.10
+	 */
+	protected Document buildDocument(String text) {
+
+		Document.Builder docBuilder = Document.newBuilder();
+		docBuilder.setContent(text).setType(Type.PLAIN_TEXT);
+
+		return docBuilder.build();
+	}
+
+	protected AnnotateTextRequest buildRequest(String text, List<NaturalLanguageFeature> features,
+			NaturalLanguageEncoding encoding) {
+
+		AnnotateTextRequest.Builder requestBuilder = AnnotateTextRequest.newBuilder();
+
+		requestBuilder.setDocument(buildDocument(text));
+		if (encoding != null) {
+			requestBuilder.setEncodingTypeValue(encoding.getNumber());
+		}
+
+		boolean doEntities = features.contains(NaturalLanguageFeature.ENTITIES);
+		boolean doSentiment = features.contains(NaturalLanguageFeature.DOCUMENT_SENTIMENT);
+		boolean doSyntax = features.contains(NaturalLanguageFeature.SYNTAX);
+		Features requestFeatures = Features.newBuilder().setExtractDocumentSentiment(doSentiment)
+				.setExtractEntities(doEntities).setExtractSyntax(doSyntax).build();
+
+		requestBuilder.setFeatures(requestFeatures);
+
+		return requestBuilder.build();
 	}
 
+	/**
+	 * Sends the request(s) (see {@link #processTextAsync}) and waits for the
+	 * response
+	 */
 	@Override
 	public NaturalLanguageResponse processText(String text, List<NaturalLanguageFeature> features,
 			NaturalLanguageEncoding encoding) throws NuxeoException {
+		// Also waits for the RPC until the deadline, if any, then cancels it
+		return NaturalLanguageProvider.get(processTextAsync(text, features, encoding, null));
+	}
 
+	/**
+	 * Uses the futures returned by the gRPC stub, so no thread waits for the
+	 * response (the executor is not used). The deadline of the call, if any,
+	 * is sent with the RPC, which is cancelled if the deadline passes first.
+	 * <p>
+	 * A single feature is requested with its dedicated RPC (analyzeSentiment,
+	 * analyzeEntities, analyzeSyntax), whose response is smaller. Several
+	 * features are requested with annotateText, or with one dedicated RPC per
+	 * feature, sent in parallel, if the <code>routing.parallelFeatures</code>
+	 * parameter is true.
+	 *
+	 * @since 9.10
+	 */
+	@Override
+	public CompletableFuture<NaturalLanguageResponse> processTextAsync(String text,
+			List<NaturalLanguageFeature> features, NaturalLanguageEncoding encoding, Executor executor) {
+
+		CompletableFuture<NaturalLanguageResponse> result = new CompletableFuture<>();
 		try {
 
-			LanguageServiceClient language = getLanguageServiceClient();
+			NaturalLanguageDeadline deadline = NaturalLanguageDeadline.current();
+			LanguageServiceFutureStub stub = getChannelPool().getFutureStub();
+			if (deadline != null) {
+				stub = stub.withDeadlineAfter(deadline.getRemainingNanos(), TimeUnit.NANOSECONDS);
+			}
+			List<CompletableFuture<AnnotateTextResponse>> calls = sendRequests(stub, text, features, encoding);
+
+			// The first failure fails the result. The RPC may fail with
+			// DEADLINE_EXCEEDED before our own timer fires
+			for (CompletableFuture<AnnotateTextResponse> call : calls) {
+				call.whenComplete((response, t) -> {
+					if (t != null && deadline != null && deadline.isExpired()) {
+						result.completeExceptionally(
+								new NaturalLanguageDeadlineException("Deadline exceeded while waiting for Google"));
+					} else if (t != null) {
+						result.completeExceptionally(toNuxeoException(t));
+					}
+				});
+			}
+			CompletableFuture.allOf(calls.toArray(new CompletableFuture<?>[calls.size()])).thenRun(() -> {
+				List<AnnotateTextResponse> responses = new ArrayList<>(calls.size());
+				calls.forEach(call -> responses.add(call.join()));
+				responses.forEach(r -> NaturalLanguageMetrics.histogram("google", "responseBytes")
+						.update(r.getSerializedSize()));
+				result.complete(new GoogleNaturalLanguageResponse(merge(responses), providerName));
+			});
+
+			// Cancelling the result, or its deadline, or a failure, cancels the
+			// RPCs
+			result.whenComplete((response, t) -> calls.forEach(call -> call.cancel(true)));
+
+			if (deadline != null) {
+				deadline.orTimeout(result);
+			}
+
+		} catch (RuntimeException e) {
+			result.completeExceptionally(toNuxeoException(e));
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return one future per RPC sent, each one with the response converted to
+	 *         an {@link AnnotateTextResponse}
+	 * @since 9.10
+	 */
+	protected List<CompletableFuture<AnnotateTextResponse>> sendRequests(LanguageServiceFutureStub stub, String text,
+			List<NaturalLanguageFeature> features, NaturalLanguageEncoding encoding) {
+
+		Set<NaturalLanguageFeature> distinctFeatures = new LinkedHashSet<>(features);
+		List<CompletableFuture<AnnotateTextResponse>> calls = new ArrayList<>();
+		if (distinctFeatures.size() == 1 || isParallelFeatures()) {
+			Document document = buildDocument(text);
+			for (NaturalLanguageFeature feature : distinctFeatures) {
+				calls.add(sendRequest(stub, document, feature, encoding));
+			}
+		} else {
+			calls.add(toCompletableFuture(stub.annotateText(buildRequest(text, features, encoding)), r -> r));
+		}
 
-			AnnotateTextRequest request;
-			AnnotateTextRequest.Builder requestBuilder = AnnotateTextRequest.newBuilder();
+		return calls;
+	}
 
-			Document.Builder docBuilder = Document.newBuilder();
-			docBuilder.setContent(text).setType(Type.PLAIN_TEXT);
-			requestBuilder.setDocument(docBuilder.build());
+	/**
+	 * Sends the dedicated RPC of the feature
+	 *
+	 * @since 9.10
+	 */
+	protected CompletableFuture<AnnotateTextResponse> sendRequest(LanguageServiceFutureStub stub, Document document,
+			NaturalLanguageFeature feature, NaturalLanguageEncoding encoding) {
+
+		switch (feature) {
+		case DOCUMENT_SENTIMENT:
+			AnalyzeSentimentRequest.Builder sentimentRequest = AnalyzeSentimentRequest.newBuilder()
+					.setDocument(document);
+			if (encoding != null) {
+				sentimentRequest.setEncodingTypeValue(encoding.getNumber());
+			}
+			return toCompletableFuture(stub.analyzeSentiment(sentimentRequest.build()),
+					r -> AnnotateTextResponse.newBuilder().setLanguage(r.getLanguage())
+							.setDocumentSentiment(r.getDocumentSentiment()).addAllSentences(r.getSentencesList())
+							.build());
+		case ENTITIES:
+			AnalyzeEntitiesRequest.Builder entitiesRequest = AnalyzeEntitiesRequest.newBuilder().setDocument(document);
 			if (encoding != null) {
-				requestBuilder.setEncodingTypeValue(encoding.getNumber());
+				entitiesRequest.setEncodingTypeValue(encoding.getNumber());
 			}
+			return toCompletableFuture(stub.analyzeEntities(entitiesRequest.build()),
+					r -> AnnotateTextResponse.newBuilder().setLanguage(r.getLanguage())
+							.addAllEntities(r.getEntitiesList()).build());
+		case SYNTAX:
+			AnalyzeSyntaxRequest.Builder syntaxRequest = AnalyzeSyntaxRequest.newBuilder().setDocument(document);
+			if (encoding != null) {
+				syntaxRequest.setEncodingTypeValue(encoding.getNumber());
+			}
+			return toCompletableFuture(stub.analyzeSyntax(syntaxRequest.build()),
+					r -> AnnotateTextResponse.newBuilder().setLanguage(r.getLanguage())
+							.addAllSentences(r.getSentencesList()).addAllTokens(r.getTokensList()).build());
+		default:
+			throw new NuxeoException("Feature not supported by the Google provider: " + feature);
+		}
+	}
 
-			boolean doEntities = features.contains(NaturalLanguageFeature.ENTITIES);
-			boolean doSentiment = features.contains(NaturalLanguageFeature.DOCUMENT_SENTIMENT);
-			boolean doSyntax = features.contains(NaturalLanguageFeature.SYNTAX);
-			Features requestFeatures = Features.newBuilder().setExtractDocumentSentiment(doSentiment)
-					.setExtractEntities(doEntities).setExtractSyntax(doSyntax).build();
+	/**
+	 * Merges the responses of the RPCs sent for the features of a text. The
+	 * sentences of the sentiment analysis are preferred, as they have their
+	 * own sentiment.
+	 *
+	 * @since 9.10
+	 */
+	protected static AnnotateTextResponse merge(List<AnnotateTextResponse> responses) {
 
-			requestBuilder.setFeatures(requestFeatures);
+		if (responses.size() == 1) {
+			return responses.get(0);
+		}
 
-			request = requestBuilder.build();
-			AnnotateTextResponse response;
-			response = language.annotateText(request);
+		AnnotateTextResponse.Builder builder = AnnotateTextResponse.newBuilder();
+		for (AnnotateTextResponse response : responses) {
+			if (StringUtils.isEmpty(builder.getLanguage())) {
+				builder.setLanguage(response.getLanguage());
+			}
+			if (response.hasDocumentSentiment()) {
+				builder.setDocumentSentiment(response.getDocumentSentiment());
+				builder.clearSentences();
+				builder.addAllSentences(response.getSentencesList());
+			} else if (builder.getSentencesCount() == 0) {
+				builder.addAllSentences(response.getSentencesList());
+			}
+			builder.addAllEntities(response.getEntitiesList());
+			builder.addAllTokens(response.getTokensList());
+		}
 
-			GoogleNaturalLanguageResponse googleResponse = new GoogleNaturalLanguageResponse(response);
+		return builder.build();
+	}
 
-			return googleResponse;
+	/**
+	 * @return a future completed with the converted response of the RPC.
+	 *         Cancelling it cancels the RPC
+	 * @since 9.10
+	 */
+	protected static <T> CompletableFuture<AnnotateTextResponse> toCompletableFuture(ListenableFuture<T> future,
+			Function<T, AnnotateTextResponse> converter) {
 
-		} catch (IOException e) {
-			throw new NuxeoException(e);
-		} catch (Exception e) {
-			String coucou = "";
-			if(StringUtils.isNotBlank(coucou)) {
+		CompletableFuture<AnnotateTextResponse> result = new CompletableFuture<>();
+		Futures.addCallback(future, new FutureCallback<T>() {
 
+			@Override
+			public void onSuccess(T response) {
+				result.complete(converter.apply(response));
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				result.completeExceptionally(t);
+			}
+		}, MoreExecutors.directExecutor());
+
+		result.whenComplete((response, t) -> {
+			if (!future.isDone()) {
+				future.cancel(true);
+			}
+		});
+
+		return result;
+	}
+
+	protected boolean isParallelFeatures() {
+		return Boolean.parseBoolean(params.get(PARALLEL_FEATURES_PARAM));
+	}
+
+	/**
+	 * All the requests are sent asynchronously on the client channel (at most
+	 * <code>maxConcurrentRequests</code> in flight), so the executor is not
+	 * used. Does not wait for a slot after the deadline of the call.
+	 *
+	 * @since 9.10
+	 */
+	@Override
+	public List<NaturalLanguageResponse> processTexts(List<String> texts, List<NaturalLanguageFeature> features,
+			NaturalLanguageEncoding encoding, ExecutorService executor) throws NuxeoException {
+
+		List<CompletableFuture<NaturalLanguageResponse>> futures = new ArrayList<>(texts.size());
+		Semaphore inFlight = new Semaphore(getMaxConcurrentRequests());
+		NaturalLanguageDeadline deadline = NaturalLanguageDeadline.current();
+		try {
+			for (String text : texts) {
+				if (deadline == null) {
+					inFlight.acquire();
+				} else if (!inFlight.tryAcquire(deadline.getRemainingNanos(), TimeUnit.NANOSECONDS)) {
+					futures.forEach(f -> f.cancel(true));
+					throw new NaturalLanguageDeadlineException("Deadline exceeded while sending the texts");
+				}
+				CompletableFuture<NaturalLanguageResponse> future = processTextAsync(text, features, encoding,
+						executor);
+				future.whenComplete((response, t) -> inFlight.release());
+				futures.add(future);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			for (CompletableFuture<NaturalLanguageResponse> future : futures) {
+				future.cancel(true);
 			}
 			throw new NuxeoException(e);
 		}
+
+		return NaturalLanguageProvider.getAll(futures);
+	}
+
+	/**
+	 * Wraps the error in a {@link NaturalLanguageProviderException}, retryable
+	 * if its gRPC status code is one of the <code>retry.statusCodes</code>
+	 * parameter. NuxeoExceptions (invalid credentials, ...) are returned as
+	 * they are. gRPC errors are counted by status in the
+	 * <code>google.status.&lt;code&gt;</code> metrics.
+	 *
+	 * @param t
+	 * @return the exception to throw
+	 * @since 9.10
+	 */
+	protected NuxeoException toNuxeoException(Throwable t) {
+		if (t instanceof NuxeoException) {
+			return (NuxeoException) t;
+		}
+		Status.Code code = Status.fromThrowable(t).getCode();
+		NaturalLanguageMetrics.meter("google", "status", code.name()).mark();
+		return new NaturalLanguageProviderException(t, getRetryableStatusCodes().contains(code));
+	}
+
+	/**
+	 * A <code>RESOURCE_EXHAUSTED</code> (quota exceeded) or
+	 * <code>DEADLINE_EXCEEDED</code> gRPC status is a sign of overload.
+	 *
+	 * @since 9.10
+	 */
+	@Override
+	public boolean isOverload(Throwable t) {
+		if (NaturalLanguageProviderException.isOverload(t)) {
+			return true;
+		}
+		Status.Code code = Status.fromThrowable(t).getCode();
+		return code == Status.Code.RESOURCE_EXHAUSTED || code == Status.Code.DEADLINE_EXCEEDED;
+	}
+
+	protected Set<Status.Code> getRetryableStatusCodes() {
+		if (retryableStatusCodes == null) {
+			String value = params.get(RETRYABLE_STATUS_CODES_PARAM);
+			if (StringUtils.isBlank(value)) {
+				value = DEFAULT_RETRYABLE_STATUS_CODES;
+			}
+			Set<Status.Code> codes = new HashSet<>();
+			for (String code : StringUtils.split(value, ", ")) {
+				codes.add(Status.Code.valueOf(code.trim().toUpperCase()));
+			}
+			retryableStatusCodes = codes;
+		}
+		return retryableStatusCodes;
 	}
 
 	@Override
@@ -155,6 +555,29 @@ public class GoogleNaturalLanguageProvider implements NaturalLanguageProvider {
 				NaturalLanguageFeature.SYNTAX);
 	}
 
+	/**
+	 * Closes the channels of the provider, and its client
+	 *
+	 * @since 9.10
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (channelPool != null) {
+				channelPool.close();
+				channelPool = null;
+			}
+			if (languageServiceClient != null) {
+				try {
+					languageServiceClient.close();
+				} catch (Exception e) {
+					log.warn("Error while closing the Google Natural Language client", e);
+				}
+				languageServiceClient = null;
+			}
+		}
+	}
+
 	@Override
 	public LanguageServiceClient getNativeClient() {
 		try {
@@ -182,10 +605,33 @@ public class GoogleNaturalLanguageProvider implements NaturalLanguageProvider {
 		return credentialsFilePath;
 	}
 
+	/**
+	 * @since 9.10
+	 */
+	protected String getEndpoint() {
+		String endpoint = params.get(ENDPOINT_PARAM);
+		return StringUtils.isBlank(endpoint) ? GoogleChannelPool.DEFAULT_ENDPOINT : endpoint.trim();
+	}
+
+	/**
+	 * @since 9.10
+	 */
+	protected boolean isPlaintext() {
+		return Boolean.parseBoolean(params.get(ENDPOINT_PLAINTEXT_PARAM));
+	}
+
 	protected String getAppName() {
 		return params.get(APP_NAME_PARAM);
 	}
 
+	protected int getMaxConcurrentRequests() {
+		String value = params.get(MAX_CONCURRENT_REQUESTS_PARAM);
+		if (StringUtils.isBlank(value)) {
+			return DEFAULT_MAX_CONCURRENT_REQUESTS;
+		}
+		return Math.max(1, Integer.parseInt(value.trim()));
+	}
+
 	/**
 	 * Use by unit test
 	 *
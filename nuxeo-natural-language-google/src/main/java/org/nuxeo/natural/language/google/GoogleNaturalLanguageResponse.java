@@ -19,15 +19,20 @@
 package org.nuxeo.natural.language.google;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.nuxeo.natural.language.service.api.NaturalLanguageEntity;
+import org.nuxeo.natural.language.service.api.NaturalLanguageFeature;
 import org.nuxeo.natural.language.service.api.NaturalLanguageResponse;
 import org.nuxeo.natural.language.service.api.NaturalLanguageSentence;
 import org.nuxeo.natural.language.service.api.NaturalLanguageToken;
 import org.nuxeo.natural.language.service.impl.NaturalLanguageEntityImpl;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageEvents;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageEvents.Phase;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageEvents.Span;
 import org.nuxeo.natural.language.service.impl.NaturalLanguageSentenceImpl;
 import org.nuxeo.natural.language.service.impl.NaturalLanguageTokenImpl;
 
@@ -49,33 +54,38 @@ public class GoogleNaturalLanguageResponse implements NaturalLanguageResponse {
 
 	AnnotateTextResponse nativeResponse;
 
-	Sentiment sentimentDoc = null;
-
-	boolean sentimentDocTested = false;
-
-	List<NaturalLanguageSentence> sentences = null;
-
-	boolean sentencesTested = false;
-
-	List<NaturalLanguageToken> tokens = null;
+	/*
+	 * The response can be shared by concurrent callers (response cache,
+	 * batches): each list is mapped once, under the lock, and published
+	 * complete
+	 */
+	volatile List<NaturalLanguageSentence> sentences = null;
 
-	boolean tokensTested = false;
+	volatile List<NaturalLanguageToken> tokens = null;
 
-	List<NaturalLanguageEntity> entities = null;
+	volatile List<NaturalLanguageEntity> entities = null;
 
-	boolean entitiesTested = false;
+	protected final String providerName;
 
 	public GoogleNaturalLanguageResponse(AnnotateTextResponse response) {
+		this(response, GoogleNaturalLanguageProvider.DEFAULT_PROVIDER_NAME);
+	}
+
+	/**
+	 * @param response
+	 * @param providerName
+	 *            The name of the provider, reported in the events of the
+	 *            mapping
+	 * @since 9.10
+	 */
+	public GoogleNaturalLanguageResponse(AnnotateTextResponse response, String providerName) {
 		nativeResponse = response;
+		this.providerName = providerName;
 	}
 
 	protected Sentiment getDocumentSentiment() {
-		if (sentimentDoc == null && !sentimentDocTested) {
-			sentimentDoc = nativeResponse.getDocumentSentiment();
-			sentimentDocTested = true;
-		}
-
-		return sentimentDoc;
+		// Immutable message, no mapping
+		return nativeResponse.getDocumentSentiment();
 	}
 
 	// <--------------------- Language -------------------->
@@ -114,35 +124,73 @@ public class GoogleNaturalLanguageResponse implements NaturalLanguageResponse {
 	@Override
 	public List<NaturalLanguageSentence> getSentences() {
 
-		if (sentences == null && !sentencesTested) {
+		List<NaturalLanguageSentence> result = sentences;
+		if (result == null) {
+			synchronized (this) {
+				result = sentences;
+				if (result == null) {
+					result = mapSentences();
+					sentences = result;
+				}
+			}
+		}
+
+		return result;
+	}
 
+	/**
+	 * @since 9.10
+	 */
+	protected List<NaturalLanguageSentence> mapSentences() {
+
+		List<NaturalLanguageSentence> result = null;
+		try (Span span = beginMapping(NaturalLanguageFeature.DOCUMENT_SENTIMENT,
+				NaturalLanguageFeature.SYNTAX)) {
 			List<Sentence> googleSentences = nativeResponse.getSentencesList();
 			if (googleSentences != null) {
-				sentences = new ArrayList<NaturalLanguageSentence>();
+				result = new ArrayList<NaturalLanguageSentence>();
 				NaturalLanguageSentence finalSentence;
 				for (Sentence oneSentence : googleSentences) {
 					Sentiment sentiment = oneSentence.getSentiment();
 					finalSentence = new NaturalLanguageSentenceImpl(oneSentence.getText().getContent(),
 							sentiment.getScore(), sentiment.getMagnitude());
-					sentences.add(finalSentence);
+					result.add(finalSentence);
 				}
 			}
-
-			sentencesTested = true;
 		}
 
-		return sentences;
+		return result;
 	}
 
 	// <--------------------- Entities -------------------->
 	@Override
 	public List<NaturalLanguageEntity> getEntities() {
-		if (entities == null && !entitiesTested) {
 
+		List<NaturalLanguageEntity> result = entities;
+		if (result == null) {
+			synchronized (this) {
+				result = entities;
+				if (result == null) {
+					result = mapEntities();
+					entities = result;
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * @since 9.10
+	 */
+	protected List<NaturalLanguageEntity> mapEntities() {
+
+		List<NaturalLanguageEntity> result = null;
+		try (Span span = beginMapping(NaturalLanguageFeature.ENTITIES)) {
 			List<Entity> googleEntities = nativeResponse.getEntitiesList();
 			if (googleEntities != null) {
 				NaturalLanguageEntityImpl entity;
-				entities = new ArrayList<NaturalLanguageEntity>();
+				result = new ArrayList<NaturalLanguageEntity>();
 				for (Entity googleEntity : googleEntities) {
 					ArrayList<String> mentions = new ArrayList<String>();
 					List<EntityMention> googleMentions = googleEntity.getMentionsList();
@@ -160,27 +208,44 @@ public class GoogleNaturalLanguageResponse implements NaturalLanguageResponse {
 
 					entity = new NaturalLanguageEntityImpl(googleEntity.getName(), typeName, googleEntity.getSalience(),
 							mentions, googleEntity.getMetadataMap());
-					entities.add(entity);
+					result.add(entity);
 				}
 
 			}
-
-			entitiesTested = true;
 		}
 
-		return entities;
+		return result;
 	}
 
 	// <--------------------- Tokens -------------------->
 	@Override
 	public List<NaturalLanguageToken> getTokens() {
 
-		if (tokens == null && !tokensTested) {
+		List<NaturalLanguageToken> result = tokens;
+		if (result == null) {
+			synchronized (this) {
+				result = tokens;
+				if (result == null) {
+					result = mapTokens();
+					tokens = result;
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * @since 9.10
+	 */
+	protected List<NaturalLanguageToken> mapTokens() {
 
+		List<NaturalLanguageToken> result = null;
+		try (Span span = beginMapping(NaturalLanguageFeature.SYNTAX)) {
 			List<Token> googleTokens = nativeResponse.getTokensList();
 			if (googleTokens != null) {
 				NaturalLanguageTokenImpl token;
-				tokens = new ArrayList<NaturalLanguageToken>();
+				result = new ArrayList<NaturalLanguageToken>();
 				for (Token googleToken : googleTokens) {
 					String text = googleToken.getText().getContent(); // toString();
 					int beginOffset = googleToken.getText().getBeginOffset();
@@ -199,18 +264,25 @@ public class GoogleNaturalLanguageResponse implements NaturalLanguageResponse {
 
 					token = new NaturalLanguageTokenImpl(text, beginOffset, tagName, lemma, number, gender, mood,
 							person, proper, form, aspect, theCase);
-					tokens.add(token);
+					result.add(token);
 
 				}
 			}
-
-			tokensTested = true;
 		}
 
-		return tokens;
+		return result;
 	}
 
 	// <--------------------- Other -------------------->
+	/*
+	 * RESPONSE_MAPPING event of the first call to a getter, with the features
+	 * the mapped data comes from. Closed even if the mapping fails
+	 */
+	protected Span beginMapping(NaturalLanguageFeature... features) {
+		return NaturalLanguageEvents.begin(Phase.RESPONSE_MAPPING).provider(providerName)
+				.features(Arrays.asList(features));
+	}
+
 	@Override
 	public Object getNativeObject() {
 		return nativeResponse;
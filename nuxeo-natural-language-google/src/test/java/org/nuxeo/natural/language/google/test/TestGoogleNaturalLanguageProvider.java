@@ -47,6 +47,7 @@ import org.nuxeo.ecm.core.convert.api.ConversionService;
 import org.nuxeo.ecm.core.event.EventService;
 import org.nuxeo.ecm.platform.mimetype.service.MimetypeRegistryService;
 import org.nuxeo.ecm.platform.test.PlatformFeature;
+import org.nuxeo.natural.language.google.GoogleChannelPool;
 import org.nuxeo.natural.language.google.GoogleNaturalLanguageProvider;
 import org.nuxeo.natural.language.service.api.NaturalLanguage;
 import org.nuxeo.natural.language.service.api.NaturalLanguageEncoding;
@@ -393,6 +394,76 @@ public class TestGoogleNaturalLanguageProvider {
 
     }
 
+    @Test
+    public void testChannelPool() throws Exception {
+
+        Assume.assumeTrue("Credential are not set", areCredentialsSet());
+
+        Map<String, String> params = new HashMap<>();
+        params.put(GoogleNaturalLanguageProvider.APP_NAME_PARAM, "Nuxeo");
+        params.put(GoogleNaturalLanguageProvider.CREDENTIAL_PATH_PARAM,
+                System.getProperty(SimpleFeatureCustom.GOOGLE_CREDENTIALS_CONFIGURATION_PARAM));
+        params.put(GoogleChannelPool.POOL_SIZE_PARAM, "3");
+        params.put(GoogleChannelPool.EXECUTOR_THREADS_PARAM, "2");
+        params.put(GoogleChannelPool.KEEP_ALIVE_TIME_MILLIS_PARAM, "300000");
+        GoogleNaturalLanguageProvider provider = new GoogleNaturalLanguageProvider(params);
+
+        List<NaturalLanguageFeature> features = new ArrayList<NaturalLanguageFeature>();
+        features.add(NaturalLanguageFeature.DOCUMENT_SENTIMENT);
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            texts.add("Nuxeo is a great platform, test number " + i);
+        }
+        try {
+            // Spread over the 3 channels
+            List<NaturalLanguageResponse> responses = provider.processTexts(texts, features, null, null);
+            assertEquals(6, responses.size());
+            for (NaturalLanguageResponse response : responses) {
+                assertEquals("en", response.getLanguage());
+            }
+        } finally {
+            provider.close();
+        }
+
+    }
+
+    @Test
+    public void testFeatureRouting() throws Exception {
+
+        Assume.assumeTrue("Credential are not set", areCredentialsSet());
+
+        Map<String, String> params = new HashMap<>();
+        params.put(GoogleNaturalLanguageProvider.APP_NAME_PARAM, "Nuxeo");
+        params.put(GoogleNaturalLanguageProvider.CREDENTIAL_PATH_PARAM,
+                System.getProperty(SimpleFeatureCustom.GOOGLE_CREDENTIALS_CONFIGURATION_PARAM));
+        params.put(GoogleNaturalLanguageProvider.PARALLEL_FEATURES_PARAM, "true");
+        GoogleNaturalLanguageProvider provider = new GoogleNaturalLanguageProvider(params);
+
+        String text = "Nuxeo is a great platform. Paris is a beautiful city.";
+        try {
+            // Single feature, dedicated RPC
+            NaturalLanguageResponse response = provider.processText(text,
+                    Collections.singletonList(NaturalLanguageFeature.DOCUMENT_SENTIMENT), null);
+            assertEquals("en", response.getLanguage());
+            assertNotNull(response.getSentimentScore());
+            assertEquals(2, response.getSentences().size());
+            assertTrue(response.getEntities() == null || response.getEntities().isEmpty());
+
+            // One RPC per feature, merged
+            response = provider.processText(text,
+                    Arrays.asList(NaturalLanguageFeature.DOCUMENT_SENTIMENT, NaturalLanguageFeature.ENTITIES,
+                            NaturalLanguageFeature.SYNTAX), NaturalLanguageEncoding.UTF8);
+            assertEquals("en", response.getLanguage());
+            assertNotNull(response.getSentimentScore());
+            assertEquals(2, response.getSentences().size());
+            assertNotNull(NaturalLanguageEntity.findEntityForName(response.getEntities(), "Paris"));
+            assertFalse(response.getTokens().isEmpty());
+        } finally {
+            provider.close();
+        }
+
+    }
+
     protected GoogleNaturalLanguageProvider getGoogleNaturalLanguageProvider() {
         if (googleNaturalLanguageProvider != null) {
             return googleNaturalLanguageProvider;
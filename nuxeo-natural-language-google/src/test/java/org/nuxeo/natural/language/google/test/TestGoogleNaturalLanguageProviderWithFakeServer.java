@@ -0,0 +1,270 @@
+/*
+ * (C) Copyright 2015-2017 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.google.test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.natural.language.google.GoogleChannelPool;
+import org.nuxeo.natural.language.google.GoogleNaturalLanguageProvider;
+import org.nuxeo.natural.language.google.fake.FakeLanguageServer;
+import org.nuxeo.natural.language.google.fake.FakeLatency;
+import org.nuxeo.natural.language.service.api.NaturalLanguageDeadline;
+import org.nuxeo.natural.language.service.api.NaturalLanguageDeadlineException;
+import org.nuxeo.natural.language.service.api.NaturalLanguageEncoding;
+import org.nuxeo.natural.language.service.api.NaturalLanguageEntity;
+import org.nuxeo.natural.language.service.api.NaturalLanguageFeature;
+import org.nuxeo.natural.language.service.api.NaturalLanguageProviderException;
+import org.nuxeo.natural.language.service.api.NaturalLanguageResponse;
+import org.nuxeo.natural.language.service.api.NaturalLanguageToken;
+
+import com.google.cloud.language.v1.AnnotateTextRequest;
+import com.google.cloud.language.v1.AnnotateTextResponse;
+import com.google.cloud.language.v1.Document;
+import com.google.cloud.language.v1.LanguageServiceGrpc.LanguageServiceFutureStub;
+import com.google.cloud.language.v1.Sentiment;
+
+import io.grpc.Channel;
+import io.grpc.Status;
+
+/**
+ * Calls the provider against a local {@link FakeLanguageServer}: no
+ * credentials nor network needed.
+ */
+public class TestGoogleNaturalLanguageProviderWithFakeServer {
+
+    protected static final String TEXT = "Nuxeo is a great platform. Content is never bad in Paris!";
+
+    protected FakeLanguageServer server;
+
+    protected GoogleNaturalLanguageProvider provider;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new FakeLanguageServer();
+        Map<String, String> params = new HashMap<>();
+        params.put(GoogleNaturalLanguageProvider.ENDPOINT_PARAM, server.getEndpoint());
+        params.put(GoogleNaturalLanguageProvider.ENDPOINT_PLAINTEXT_PARAM, "true");
+        provider = new GoogleNaturalLanguageProvider(params);
+    }
+
+    @After
+    public void tearDown() {
+        provider.close();
+        server.close();
+    }
+
+    @Test
+    public void testSentiment() {
+
+        NaturalLanguageResponse response = provider.processText(TEXT,
+                Collections.singletonList(NaturalLanguageFeature.DOCUMENT_SENTIMENT), null);
+
+        assertEquals("en", response.getLanguage());
+        assertEquals(2, response.getSentences().size());
+        // "great" and "bad"
+        assertEquals(0.8f, response.getSentimentMagnitude(), 0.0001);
+        assertEquals(1, server.getService().getRequestCount());
+    }
+
+    @Test
+    public void testProviderName() {
+
+        assertEquals(GoogleNaturalLanguageProvider.DEFAULT_PROVIDER_NAME, provider.getProviderName());
+
+        // Given by the service, reported in the events of the response mapping
+        Map<String, String> params = new HashMap<>();
+        params.put(GoogleNaturalLanguageProvider.PROVIDER_NAME_PARAM, "google-eu");
+        GoogleNaturalLanguageProvider named = new GoogleNaturalLanguageProvider(params);
+        try {
+            assertEquals("google-eu", named.getProviderName());
+        } finally {
+            named.close();
+        }
+    }
+
+    @Test
+    public void testEntitiesAndSyntax() {
+
+        List<NaturalLanguageFeature> features = Arrays.asList(NaturalLanguageFeature.ENTITIES,
+                NaturalLanguageFeature.SYNTAX);
+        NaturalLanguageResponse response = provider.processText(TEXT, features, NaturalLanguageEncoding.UTF16);
+
+        List<NaturalLanguageEntity> entities = response.getEntities();
+        assertEquals(3, entities.size());
+        assertEquals("Nuxeo", entities.get(0).getName());
+
+        List<NaturalLanguageToken> tokens = response.getTokens();
+        assertEquals(11, tokens.size());
+        assertEquals("platform.", tokens.get(4).getText());
+        assertEquals(TEXT.indexOf("platform."), tokens.get(4).getBeginOffset());
+    }
+
+    @Test
+    public void testResponseIsSharedByThreads() throws Exception {
+
+        List<NaturalLanguageFeature> features = Arrays.asList(NaturalLanguageFeature.ENTITIES,
+                NaturalLanguageFeature.SYNTAX);
+        NaturalLanguageResponse response = provider.processText(TEXT, features, null);
+
+        // Like a response from the cache, mapped by concurrent callers
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<List<?>>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return Arrays.asList(response.getTokens(), response.getEntities(), response.getSentences());
+                }));
+            }
+            start.countDown();
+
+            List<?> first = results.get(0).get(10, TimeUnit.SECONDS);
+            assertEquals(11, ((List<?>) first.get(0)).size());
+            assertEquals(3, ((List<?>) first.get(1)).size());
+            assertEquals(2, ((List<?>) first.get(2)).size());
+            for (Future<List<?>> result : results) {
+                List<?> lists = result.get(10, TimeUnit.SECONDS);
+                for (int i = 0; i < lists.size(); i++) {
+                    // Mapped once
+                    assertSame(first.get(i), lists.get(i));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCannedResponse() {
+
+        server.getService().setCannedResponse(AnnotateTextResponse.newBuilder().setLanguage("fr")
+                .setDocumentSentiment(Sentiment.newBuilder().setScore(-0.5f).setMagnitude(2f)).build());
+
+        NaturalLanguageResponse response = provider.processText(TEXT,
+                Collections.singletonList(NaturalLanguageFeature.DOCUMENT_SENTIMENT), null);
+        assertEquals("fr", response.getLanguage());
+        assertEquals(-0.5f, response.getSentimentScore(), 0.0001);
+    }
+
+    @Test
+    public void testInjectedErrorIsRetryable() {
+
+        server.getService().setErrors(1, Status.Code.UNAVAILABLE);
+        try {
+            provider.processText(TEXT, Collections.singletonList(NaturalLanguageFeature.ENTITIES), null);
+            fail("Expected an error");
+        } catch (NaturalLanguageProviderException e) {
+            assertTrue(e.isRetryable());
+        }
+        assertEquals(1, server.getService().getErrorCount());
+
+        server.getService().setErrors(1, Status.Code.INVALID_ARGUMENT);
+        try {
+            provider.processText(TEXT, Collections.singletonList(NaturalLanguageFeature.ENTITIES), null);
+            fail("Expected an error");
+        } catch (NaturalLanguageProviderException e) {
+            assertFalse(e.isRetryable());
+        }
+    }
+
+    @Test
+    public void testInjectedErrorIsOverload() {
+
+        server.getService().setErrors(1, Status.Code.RESOURCE_EXHAUSTED);
+        try {
+            provider.processText(TEXT, Collections.singletonList(NaturalLanguageFeature.ENTITIES), null);
+            fail("Expected an error");
+        } catch (NaturalLanguageProviderException e) {
+            assertTrue(provider.isOverload(e));
+        }
+
+        server.getService().setErrors(1, Status.Code.INVALID_ARGUMENT);
+        try {
+            provider.processText(TEXT, Collections.singletonList(NaturalLanguageFeature.ENTITIES), null);
+            fail("Expected an error");
+        } catch (NaturalLanguageProviderException e) {
+            assertFalse(provider.isOverload(e));
+        }
+    }
+
+    @Test
+    public void testLatencyAndDeadline() {
+
+        server.getService().setLatency(FakeLatency.fixed(5000));
+        long start = System.currentTimeMillis();
+        try {
+            NaturalLanguageDeadline.call(NaturalLanguageDeadline.after(200), () -> provider.processText(TEXT,
+                    Collections.singletonList(NaturalLanguageFeature.SYNTAX), null));
+            fail("Expected the deadline to pass");
+        } catch (NaturalLanguageDeadlineException e) {
+            // ok
+        }
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    @Test
+    public void testChannelPoolIsRoundRobin() throws Exception {
+
+        Map<String, String> params = new HashMap<>();
+        params.put(GoogleChannelPool.POOL_SIZE_PARAM, "3");
+        GoogleChannelPool pool = new GoogleChannelPool(server.getEndpoint(), true, null, null, params);
+        try {
+            assertEquals(3, pool.getPoolSize());
+            AnnotateTextRequest request = AnnotateTextRequest.newBuilder()
+                    .setDocument(Document.newBuilder().setContent(TEXT).setType(Document.Type.PLAIN_TEXT))
+                    .setFeatures(AnnotateTextRequest.Features.newBuilder().setExtractDocumentSentiment(true))
+                    .build();
+            List<Channel> used = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                LanguageServiceFutureStub stub = pool.getFutureStub();
+                used.add(stub.getChannel());
+                // Each channel of the pool reaches the server
+                assertEquals("en", stub.annotateText(request).get().getLanguage());
+            }
+
+            assertEquals(3, new HashSet<>(used).size());
+            for (int i = 0; i < 3; i++) {
+                assertSame(used.get(i), used.get(i + 3));
+            }
+            assertEquals(6, server.getService().getRequestCount());
+        } finally {
+            pool.close();
+        }
+    }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.jfr;
+
+import org.nuxeo.natural.language.service.impl.NaturalLanguageEvents;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageEvents.Phase;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageEvents.Span;
+
+/**
+ * Creates the JFR events of the phases. Loaded by
+ * {@link NaturalLanguageEvents} when this jar is deployed and the JVM has
+ * the JFR API.
+ *
+ * @since 9.10
+ */
+public class NaturalLanguageJfrEventFactory implements NaturalLanguageEvents.Factory {
+
+	@Override
+	public Span begin(Phase phase, String documentId) {
+
+		NaturalLanguagePhaseEvent event;
+		switch (phase) {
+		case EXTRACTION:
+			event = new ExtractionEvent();
+			break;
+		case PROVIDER_CALL:
+			event = new ProviderCallEvent();
+			break;
+		case RESPONSE_MAPPING:
+			event = new ResponseMappingEvent();
+			break;
+		case JSON_SERIALIZATION:
+			event = new JsonSerializationEvent();
+			break;
+		default:
+			event = new DocumentSaveEvent();
+		}
+		event.documentId(documentId).begin();
+
+		return event;
+	}
+
+}
@@ -0,0 +1,88 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.jfr;
+
+import java.util.List;
+
+import org.nuxeo.natural.language.service.api.NaturalLanguageFeature;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageEvents.Span;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageMetrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * Base class of the events of the phases of an analysis. The event is
+ * committed when the span is closed, if it is enabled and above the
+ * threshold of the recording.
+ *
+ * @since 9.10
+ */
+@Category({ "Nuxeo", "Natural Language" })
+@StackTrace(false)
+public abstract class NaturalLanguagePhaseEvent extends Event implements Span {
+
+	@Label("Document Id")
+	@Description("The document being analyzed, if any")
+	protected String documentId;
+
+	@Label("Text Length")
+	@Description("Characters of the text, or of the JSON for the serialization")
+	protected long textLength;
+
+	@Label("Provider")
+	protected String provider;
+
+	@Label("Features")
+	protected String features;
+
+	protected NaturalLanguagePhaseEvent documentId(String documentId) {
+		this.documentId = documentId;
+		return this;
+	}
+
+	@Override
+	public Span provider(String providerName) {
+		provider = providerName;
+		return this;
+	}
+
+	@Override
+	public Span features(List<NaturalLanguageFeature> features) {
+		if (features != null && isEnabled()) {
+			this.features = NaturalLanguageMetrics.getFeaturesKey(features);
+		}
+		return this;
+	}
+
+	@Override
+	public Span textLength(long textLength) {
+		this.textLength = textLength;
+		return this;
+	}
+
+	@Override
+	public void close() {
+		commit();
+	}
+
+}
@@ -0,0 +1,157 @@
+/*
+ * (C) Copyright 2017 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Thibaud Arguillere
+ */
+package org.nuxeo.natural.language.jfr.test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.natural.language.jfr.DocumentSaveEvent;
+import org.nuxeo.natural.language.jfr.ExtractionEvent;
+import org.nuxeo.natural.language.jfr.ProviderCallEvent;
+import org.nuxeo.natural.language.jfr.ResponseMappingEvent;
+import org.nuxeo.natural.language.service.api.NaturalLanguageFeature;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageEvents;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageEvents.Phase;
+import org.nuxeo.natural.language.service.impl.NaturalLanguageEvents.Span;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Records the events of the phases in a JFR recording and reads them back.
+ */
+public class TestNaturalLanguageJfrEvents {
+
+	protected static final String EVENT_PREFIX = "org.nuxeo.natural.language.";
+
+	protected Path file;
+
+	@Before
+	public void setUp() throws IOException {
+		file = Files.createTempFile("natural-language-", ".jfr");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	protected List<RecordedEvent> readEvents() throws IOException {
+		return RecordingFile.readAllEvents(file)
+				.stream()
+				.filter(e -> e.getEventType().getName().startsWith(EVENT_PREFIX))
+				.collect(Collectors.toList());
+	}
+
+	protected static RecordedEvent getEvent(List<RecordedEvent> events, String name) {
+		List<RecordedEvent> found = events.stream()
+				.filter(e -> e.getEventType().getName().equals(EVENT_PREFIX + name))
+				.collect(Collectors.toList());
+		assertEquals("Events " + name, 1, found.size());
+		return found.get(0);
+	}
+
+	@Test
+	public void testPhasesAreRecorded() throws IOException {
+
+		// The factory of this module is loaded by the service
+		assertTrue(NaturalLanguageEvents.isEnabled());
+
+		try (Recording recording = new Recording()) {
+			recording.enable(ExtractionEvent.class).withoutThreshold();
+			recording.enable(ProviderCallEvent.class).withoutThreshold();
+			recording.enable(ResponseMappingEvent.class).withoutThreshold();
+			recording.disable(DocumentSaveEvent.class);
+			recording.start();
+
+			NaturalLanguageEvents.call("doc-1", () -> {
+				try (Span span = NaturalLanguageEvents.begin(Phase.EXTRACTION)) {
+					span.textLength(42);
+				}
+				try (Span span = NaturalLanguageEvents.begin(Phase.PROVIDER_CALL)
+						.provider("google-eu")
+						.features(Arrays.asList(NaturalLanguageFeature.ENTITIES,
+								NaturalLanguageFeature.DOCUMENT_SENTIMENT))
+						.textLength(42)) {
+					// The call
+				}
+				try (Span span = NaturalLanguageEvents.begin(Phase.DOCUMENT_SAVE)) {
+					// Not enabled in the recording
+				}
+				return null;
+			});
+			// Outside of the analysis of a document
+			try (Span span = NaturalLanguageEvents.begin(Phase.RESPONSE_MAPPING)
+					.provider("google-eu")
+					.features(null)) {
+				// The mapping
+			}
+
+			recording.stop();
+			recording.dump(file);
+		}
+
+		List<RecordedEvent> events = readEvents();
+		assertEquals(3, events.size());
+
+		RecordedEvent extraction = getEvent(events, "Extraction");
+		assertEquals("doc-1", extraction.getString("documentId"));
+		assertEquals(42, extraction.getLong("textLength"));
+		assertNull(extraction.getString("provider"));
+
+		RecordedEvent call = getEvent(events, "ProviderCall");
+		assertEquals("doc-1", call.getString("documentId"));
+		assertEquals("google-eu", call.getString("provider"));
+		assertEquals("DOCUMENT_SENTIMENT+ENTITIES", call.getString("features"));
+		assertEquals(42, call.getLong("textLength"));
+		assertFalse(call.getStartTime().isBefore(extraction.getEndTime()));
+
+		RecordedEvent mapping = getEvent(events, "ResponseMapping");
+		assertNull(mapping.getString("documentId"));
+		assertEquals("google-eu", mapping.getString("provider"));
+		assertNull(mapping.getString("features"));
+	}
+
+	@Test
+	public void testNothingIsRecordedWithoutRecording() throws IOException {
+
+		try (Span span = NaturalLanguageEvents.begin(Phase.EXTRACTION)) {
+			span.textLength(10);
+		}
+
+		try (Recording recording = new Recording()) {
+			recording.enable(ExtractionEvent.class);
+			recording.start();
+			recording.stop();
+			recording.dump(file);
+		}
+		assertTrue(readEvents().isEmpty());
+	}
+
+}